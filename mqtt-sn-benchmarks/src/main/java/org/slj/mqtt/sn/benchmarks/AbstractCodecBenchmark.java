@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.mqtt.sn.spi.IMqttsnCodec;
+import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.wire.MqttsnPacketHeader;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode of a single message type, in both the array and buffer forms, along with the cost
+ * of a header only peek.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public abstract class AbstractCodecBenchmark {
+
+    private IMqttsnCodec codec;
+    private IMqttsnMessage message;
+    private byte[] data;
+    private ByteBuffer buffer;
+
+    protected abstract IMqttsnCodec getCodec();
+
+    protected abstract SampleMessage getSample();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        codec = getCodec();
+        message = getSample().create(codec.createMessageFactory());
+        data = codec.encode(message);
+        buffer = ByteBuffer.allocate(data.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(message);
+    }
+
+    @Benchmark
+    public IMqttsnMessage decode() {
+        return codec.decode(data);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBuffer() {
+        buffer.clear();
+        codec.encode(message, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public IMqttsnMessage decodeBuffer() {
+        buffer.clear();
+        buffer.put(data);
+        buffer.flip();
+        return codec.decode(buffer);
+    }
+
+    @Benchmark
+    public MqttsnPacketHeader peek() {
+        return codec.peek(data);
+    }
+}
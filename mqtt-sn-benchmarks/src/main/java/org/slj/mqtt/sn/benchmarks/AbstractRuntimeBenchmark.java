@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.model.INetworkContext;
+import org.slj.mqtt.sn.model.MqttsnOptions;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.net.NetworkAddress;
+import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
+import org.slj.mqtt.sn.spi.MqttsnException;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Starts an in-memory runtime bound to a {@link LoopbackTransport} for the duration of a trial. The workspace is
+ * created in a fresh temporary directory so concurrent forks never contend for the workspace lock.
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractRuntimeBenchmark {
+
+    protected BenchmarkRuntime runtime;
+    protected IMqttsnRuntimeRegistry registry;
+    protected LoopbackTransport transport;
+    private int nextPort = 10000;
+
+    @Setup(Level.Trial)
+    public void startRuntime() throws Exception {
+        File path = Files.createTempDirectory("mqtt-sn-benchmarks").toFile();
+        MqttsnFilesystemStorageService storageService =
+                new MqttsnFilesystemStorageService(path, getClass().getSimpleName());
+        transport = new LoopbackTransport();
+        registry = BenchmarkRuntimeRegistry.defaultConfiguration(
+                storageService, createOptions(), transport, isClientMode());
+        configureRegistry((BenchmarkRuntimeRegistry) registry);
+        runtime = new BenchmarkRuntime();
+        runtime.start(registry);
+        setupState();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopRuntime() throws MqttsnException {
+        try {
+            runtime.stop();
+        } finally {
+            runtime.close();
+        }
+    }
+
+    protected MqttsnOptions createOptions(){
+        return new MqttsnOptions();
+    }
+
+    protected boolean isClientMode(){
+        return false;
+    }
+
+    /**
+     * Replace or add services on the default configuration before the runtime is started.
+     */
+    protected void configureRegistry(BenchmarkRuntimeRegistry registry){
+    }
+
+    /**
+     * Populate the registries once the runtime has started.
+     */
+    protected abstract void setupState() throws Exception;
+
+    /**
+     * Create an active session bound to its own loopback network address.
+     */
+    protected ISession createActiveSession(String clientId, int protocolVersion) throws MqttsnException {
+        INetworkContext networkContext = registry.getContextFactory().
+                createInitialNetworkContext(transport, NetworkAddress.localhost(nextPort++));
+        IClientIdentifierContext context = registry.getContextFactory().
+                createInitialApplicationContext(networkContext, clientId, protocolVersion);
+        registry.getNetworkRegistry().bindContexts(networkContext, context);
+        ISession session = registry.getSessionRegistry().getSession(context, true);
+        registry.getSessionRegistry().modifyClientState(session, ClientState.ACTIVE);
+        return session;
+    }
+}
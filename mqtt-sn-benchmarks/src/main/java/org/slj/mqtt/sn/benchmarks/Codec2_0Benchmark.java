@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+import org.slj.mqtt.sn.codec.MqttsnCodecs;
+import org.slj.mqtt.sn.spi.IMqttsnCodec;
+
+public class Codec2_0Benchmark extends AbstractCodecBenchmark {
+
+    //-- every type, version 2.0 adds AUTH
+    @Param({"ADVERTISE", "SEARCHGW", "GWINFO", "CONNECT", "CONNACK", "WILLTOPICREQ", "WILLTOPIC", "WILLMSGREQ",
+            "WILLMSG", "REGISTER", "REGACK", "PUBLISH_QOS0", "PUBLISH_QOS1", "PUBLISH_QOS2", "PUBLISH_QOSM1",
+            "PUBLISH_LARGE", "PUBACK", "PUBREC", "PUBREL", "PUBCOMP", "SUBSCRIBE", "SUBACK", "UNSUBSCRIBE", "UNSUBACK",
+            "PINGREQ", "PINGRESP", "DISCONNECT", "WILLTOPICUPD", "WILLTOPICRESP", "WILLMSGUPD", "WILLMSGRESP",
+            "HELO", "AUTH"})
+    public SampleMessage type;
+
+    @Override
+    protected IMqttsnCodec getCodec() {
+        return MqttsnCodecs.MQTTSN_CODEC_VERSION_2_0;
+    }
+
+    @Override
+    protected SampleMessage getSample() {
+        return type;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.mqtt.sn.utils.StripedLocks;
+import org.slj.mqtt.sn.utils.TransientObjectLocks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Acquire and release of the per client mutex used around queue operations, with each thread working on its own
+ * client id, comparing the weak map of transient locks with the striped locks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LockStripingBenchmark {
+
+    private final TransientObjectLocks transientLocks = new TransientObjectLocks();
+    private final StripedLocks stripedLocks = new StripedLocks();
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Client {
+        String id;
+        long counter;
+
+        @Setup(Level.Trial)
+        public void setup(LockStripingBenchmark benchmark) {
+            id = "client-" + benchmark.threads.incrementAndGet();
+        }
+    }
+
+    @Benchmark
+    public long transientObjectLocks(Client client) {
+        synchronized (transientLocks.mutex(client.id)){
+            return ++client.counter;
+        }
+    }
+
+    @Benchmark
+    public long stripedLocks(Client client) {
+        synchronized (stripedLocks.mutex(client.id)){
+            return ++client.counter;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.slj.mqtt.sn.impl.AbstractMqttsnTransport;
+import org.slj.mqtt.sn.model.INetworkContext;
+import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.utils.StringTable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * An in-process transport which never touches the network. Outbound packets are counted and handed to an optional
+ * sink (which may feed them straight back into {@link #receiveFromTransport}), so a runtime can be exercised
+ * end to end without sockets or a broker.
+ */
+public class LoopbackTransport extends AbstractMqttsnTransport {
+
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private volatile BiConsumer<INetworkContext, byte[]> sink;
+
+    public LoopbackTransport withSink(BiConsumer<INetworkContext, byte[]> sink){
+        this.sink = sink;
+        return this;
+    }
+
+    @Override
+    protected void writeToTransportInternal(INetworkContext context, byte[] data) {
+        packetsSent.incrementAndGet();
+        bytesSent.addAndGet(data.length);
+        BiConsumer<INetworkContext, byte[]> sink = this.sink;
+        if(sink != null){
+            sink.accept(context, data);
+        }
+    }
+
+    @Override
+    public void broadcast(IMqttsnMessage message) {
+        //-- nothing to broadcast to
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public String getName() {
+        return "mqtt-sn-loopback";
+    }
+
+    @Override
+    public int getPort() {
+        return 0;
+    }
+
+    @Override
+    public String getDescription() {
+        return "In process loopback transport";
+    }
+
+    @Override
+    public StringTable getTransportDetails() {
+        StringTable st = new StringTable("Property", "Value");
+        st.setTableName("Loopback Transport");
+        st.addRow("Packets sent", packetsSent.get());
+        st.addRow("Bytes sent", bytesSent.get());
+        return st;
+    }
+}
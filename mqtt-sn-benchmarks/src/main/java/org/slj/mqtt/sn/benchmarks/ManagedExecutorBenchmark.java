@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.mqtt.sn.model.MqttsnOptions;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares the managed executors backed by platform threads with the same executors backed by virtual threads, using
+ * a batch of tasks which each block briefly (as a task waiting on the network or a completion token would). On a JVM
+ * without virtual threads both variants run on platform threads, check the runtime log for the fallback warning.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManagedExecutorBenchmark extends AbstractRuntimeBenchmark {
+
+    static final int BATCH = 1000;
+    static final long BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"16", "256", "2048"})
+    public int threads;
+
+    private ExecutorService executorService;
+
+    @Override
+    protected MqttsnOptions createOptions() {
+        //-- keep the queue small enough that the pool grows to its maximum size
+        return super.createOptions().withVirtualThreads(virtualThreads).withQueueBackPressure(threads);
+    }
+
+    @Override
+    protected void setupState() {
+        executorService = runtime.createManagedExecutorService("benchmark-executor-", threads);
+    }
+
+    @Benchmark
+    public void blockingBatch() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++){
+            runtime.submit(executorService, () -> {
+                LockSupport.parkNanos(BLOCK_NANOS);
+                latch.countDown();
+            });
+        }
+        latch.await();
+    }
+}
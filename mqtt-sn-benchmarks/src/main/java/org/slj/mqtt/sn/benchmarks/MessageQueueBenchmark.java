@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.mqtt.sn.MqttsnConstants;
+import org.slj.mqtt.sn.PublishData;
+import org.slj.mqtt.sn.model.IDataRef;
+import org.slj.mqtt.sn.model.MqttsnQueueAcceptException;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
+import org.slj.mqtt.sn.spi.MqttsnException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offer and poll a single message through a session queue, the steady state for a gateway delivering
+ * to a connected subscriber.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageQueueBenchmark extends AbstractRuntimeBenchmark {
+
+    private ISession session;
+    private IDataRef dataRef;
+
+    @Override
+    protected void setupState() throws MqttsnException {
+        session = createActiveSession("queue-client", MqttsnConstants.PROTOCOL_VERSION_1_2);
+        dataRef = registry.getMessageRegistry().add(SampleMessage.payload(64));
+    }
+
+    @Benchmark
+    public IQueuedPublishMessage offerPoll() throws MqttsnException, MqttsnQueueAcceptException {
+        QueuedPublishMessageImpl queued = new QueuedPublishMessageImpl(dataRef,
+                new PublishData(SampleMessage.TOPIC, 1, false));
+        queued.setGrantedQoS(1);
+        registry.getMessageQueue().offer(session, queued);
+        return registry.getMessageQueue().poll(session);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.mqtt.sn.MqttsnConstants;
+import org.slj.mqtt.sn.PublishData;
+import org.slj.mqtt.sn.impl.ram.MqttsnInMemorySlotMessageStateService;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.model.IDataRef;
+import org.slj.mqtt.sn.model.TopicInfo;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
+import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.spi.IMqttsnMessageStateService;
+import org.slj.mqtt.sn.spi.MqttsnException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A QoS 1 send and acknowledge cycle through the message state service; the publish is encoded and written to the
+ * loopback transport, marked inflight, and then completed by a PUBACK as if it had arrived from the client. The
+ * {@code store} parameter selects the inflight store backing the service.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageStateServiceBenchmark extends AbstractRuntimeBenchmark {
+
+    @Param({"hash", "slot"})
+    public String store;
+
+    private IClientIdentifierContext context;
+    private TopicInfo topicInfo;
+    private IDataRef dataRef;
+
+    @Override
+    protected void configureRegistry(BenchmarkRuntimeRegistry registry) {
+        if("slot".equals(store)){
+            registry.withServiceReplaceIfExists(IMqttsnMessageStateService.class,
+                    new MqttsnInMemorySlotMessageStateService(isClientMode()));
+        }
+    }
+
+    @Override
+    protected void setupState() throws MqttsnException {
+        ISession session = createActiveSession("state-client", MqttsnConstants.PROTOCOL_VERSION_1_2);
+        context = session.getContext();
+        topicInfo = registry.getTopicRegistry().register(session, SampleMessage.TOPIC);
+        dataRef = registry.getMessageRegistry().add(SampleMessage.payload(64));
+    }
+
+    @Benchmark
+    public IMqttsnMessage sendAndAcknowledge() throws MqttsnException {
+        QueuedPublishMessageImpl queued = new QueuedPublishMessageImpl(dataRef,
+                new PublishData(SampleMessage.TOPIC, 1, false));
+        queued.setGrantedQoS(1);
+        registry.getMessageStateService().sendPublishMessage(context, topicInfo, queued);
+        IMqttsnMessage puback = registry.getMessageFactory().createPuback(
+                topicInfo.getTopicId(), MqttsnConstants.RETURN_CODE_ACCEPTED);
+        puback.setId(queued.getPacketId());
+        return registry.getMessageStateService().notifyMessageReceived(context, puback);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.mqtt.sn.PublishData;
+import org.slj.mqtt.sn.gateway.impl.MqttsnJacksonReaderWriter;
+import org.slj.mqtt.sn.impl.MqttsnBinaryReaderWriter;
+import org.slj.mqtt.sn.impl.MqttsnVMObjectReaderWriter;
+import org.slj.mqtt.sn.model.IntegerDataRef;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
+import org.slj.mqtt.sn.spi.IMqttsnObjectReaderWriter;
+import org.slj.mqtt.sn.spi.MqttsnException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write and read of a single queued message, the record written for every message a queue spills to disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObjectReaderWriterBenchmark {
+
+    @Param({"vm", "binary", "jackson"})
+    public String format;
+
+    private IMqttsnObjectReaderWriter readerWriter;
+    private QueuedPublishMessageImpl message;
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setup() throws MqttsnException {
+        readerWriter = create(format);
+        message = new QueuedPublishMessageImpl(new IntegerDataRef(1024),
+                new PublishData(SampleMessage.TOPIC, 1, false, SampleMessage.payload(64)));
+        message.setGrantedQoS(1);
+        message.setPacketId(12);
+        data = readerWriter.write(message);
+    }
+
+    @Benchmark
+    public byte[] write() throws MqttsnException {
+        return readerWriter.write(message);
+    }
+
+    @Benchmark
+    public QueuedPublishMessageImpl read() throws MqttsnException {
+        return readerWriter.load(QueuedPublishMessageImpl.class, data);
+    }
+
+    static IMqttsnObjectReaderWriter create(String format){
+        switch (format){
+            case "vm":
+                return new MqttsnVMObjectReaderWriter();
+            case "binary":
+                return new MqttsnBinaryReaderWriter();
+            case "jackson":
+                return new MqttsnJacksonReaderWriter();
+            default:
+                throw new IllegalArgumentException("unknown format " + format);
+        }
+    }
+}
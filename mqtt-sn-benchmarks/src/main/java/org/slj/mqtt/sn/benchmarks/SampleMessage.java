@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.slj.mqtt.sn.MqttsnConstants;
+import org.slj.mqtt.sn.codec.MqttsnCodecException;
+import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.spi.IMqttsnMessageFactory;
+
+/**
+ * A representative instance of every message type, built from whichever factory is supplied so the same
+ * samples can be used against each protocol version.
+ */
+public enum SampleMessage {
+
+    ADVERTISE {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createAdvertise(1, 900); }
+    },
+    SEARCHGW {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createSearchGw(1); }
+    },
+    GWINFO {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createGwinfo(1, "127.0.0.1:2442"); }
+    },
+    CONNECT {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createConnect(CLIENT_ID, 60, false, false, true, 1024, 0, 0); }
+    },
+    CONNACK {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createConnack(MqttsnConstants.RETURN_CODE_ACCEPTED); }
+    },
+    WILLTOPICREQ {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createWillTopicReq(); }
+    },
+    WILLTOPIC {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createWillTopic(1, false, TOPIC); }
+    },
+    WILLMSGREQ {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createWillMsgReq(); }
+    },
+    WILLMSG {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createWillMsg(payload(32)); }
+    },
+    REGISTER {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createRegister(ALIAS, TOPIC)); }
+    },
+    REGACK {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createRegack(MqttsnConstants.TOPIC_NORMAL, ALIAS, MqttsnConstants.RETURN_CODE_ACCEPTED)); }
+    },
+    PUBLISH_QOS0 {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createPublish(MqttsnConstants.QoS0, false, false, MqttsnConstants.TOPIC_TYPE.NORMAL, ALIAS, payload(64)); }
+    },
+    PUBLISH_QOS1 {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createPublish(MqttsnConstants.QoS1, false, false, MqttsnConstants.TOPIC_TYPE.NORMAL, ALIAS, payload(64))); }
+    },
+    PUBLISH_QOS2 {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createPublish(MqttsnConstants.QoS2, false, false, MqttsnConstants.TOPIC_TYPE.NORMAL, ALIAS, payload(64))); }
+    },
+    PUBLISH_QOSM1 {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createPublish(MqttsnConstants.QoSM1, false, false, MqttsnConstants.TOPIC_TYPE.PREDEFINED, ALIAS, payload(64)); }
+    },
+    PUBLISH_LARGE {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createPublish(MqttsnConstants.QoS1, false, false, MqttsnConstants.TOPIC_TYPE.NORMAL, ALIAS, payload(1024))); }
+    },
+    PUBACK {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createPuback(ALIAS, MqttsnConstants.RETURN_CODE_ACCEPTED)); }
+    },
+    PUBREC {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createPubrec()); }
+    },
+    PUBREL {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createPubrel()); }
+    },
+    PUBCOMP {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createPubcomp()); }
+    },
+    SUBSCRIBE {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createSubscribe(1, TOPIC)); }
+    },
+    SUBACK {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createSuback(1, ALIAS, MqttsnConstants.RETURN_CODE_ACCEPTED)); }
+    },
+    UNSUBSCRIBE {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createUnsubscribe(TOPIC)); }
+    },
+    UNSUBACK {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return withId(f.createUnsuback(MqttsnConstants.RETURN_CODE_ACCEPTED)); }
+    },
+    PINGREQ {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createPingreq(CLIENT_ID); }
+    },
+    PINGRESP {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createPingresp(); }
+    },
+    DISCONNECT {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createDisconnect(); }
+    },
+    WILLTOPICUPD {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createWillTopicupd(1, false, TOPIC); }
+    },
+    WILLTOPICRESP {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createWillTopicResp(MqttsnConstants.RETURN_CODE_ACCEPTED); }
+    },
+    WILLMSGUPD {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createWillMsgupd(payload(32)); }
+    },
+    WILLMSGRESP {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createWillMsgResp(MqttsnConstants.RETURN_CODE_ACCEPTED); }
+    },
+    HELO {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createHelo("mqtt-sn-benchmarks"); }
+    },
+    AUTH {
+        IMqttsnMessage create(IMqttsnMessageFactory f) { return f.createAuth("PLAIN", payload(16)); }
+    };
+
+    static final String CLIENT_ID = "benchmark-client";
+    static final String TOPIC = "benchmark/topic/path";
+    static final int ALIAS = 1;
+    static final int MSG_ID = 1;
+
+    abstract IMqttsnMessage create(IMqttsnMessageFactory factory) throws MqttsnCodecException;
+
+    static IMqttsnMessage withId(IMqttsnMessage message){
+        message.setId(MSG_ID);
+        return message;
+    }
+
+    static byte[] payload(int size){
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++){
+            payload[i] = (byte) (i % 0xFF);
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.mqtt.sn.PublishData;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.IntegerDataRef;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
+import org.slj.mqtt.sn.model.session.impl.SessionBeanImpl;
+import org.slj.mqtt.sn.model.session.impl.SubscriptionImpl;
+import org.slj.mqtt.sn.model.session.impl.TopicRegistrationImpl;
+import org.slj.mqtt.sn.spi.IMqttsnObjectReaderWriter;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.utils.TopicPath;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write and read of a whole session with its subscriptions, registrations and a short queue. Jackson is not included
+ * as the session beans have no default constructors for it to bind to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionReaderWriterBenchmark {
+
+    @Param({"vm", "binary"})
+    public String format;
+
+    private IMqttsnObjectReaderWriter readerWriter;
+    private SessionBeanImpl session;
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setup() throws MqttsnException {
+        readerWriter = ObjectReaderWriterBenchmark.create(format);
+        session = new SessionBeanImpl(new ClientIdentifierContext("session-client"), ClientState.ACTIVE);
+        session.setLastSeen(new Date());
+        session.setKeepAlive(60);
+        for (int i = 0; i < 10; i++){
+            session.addSubscription(new SubscriptionImpl(new TopicPath("sensors/" + i + "/#"), 1));
+            session.addTopicRegistration(new TopicRegistrationImpl("sensors/" + i + "/value", i + 1, true));
+        }
+        for (int i = 0; i < 20; i++){
+            QueuedPublishMessageImpl message = new QueuedPublishMessageImpl(new IntegerDataRef(i),
+                    new PublishData(SampleMessage.TOPIC, 1, false));
+            message.setGrantedQoS(1);
+            session.offer(message);
+        }
+        data = readerWriter.write(session);
+    }
+
+    @Benchmark
+    public byte[] write() throws MqttsnException {
+        return readerWriter.write(session);
+    }
+
+    @Benchmark
+    public SessionBeanImpl read() throws MqttsnException {
+        return readerWriter.load(SessionBeanImpl.class, data);
+    }
+}
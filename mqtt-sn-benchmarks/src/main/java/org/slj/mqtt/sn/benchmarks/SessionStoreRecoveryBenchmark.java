@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.mqtt.sn.impl.MqttsnBinaryReaderWriter;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.session.impl.SessionBeanImpl;
+import org.slj.mqtt.sn.model.session.impl.SubscriptionImpl;
+import org.slj.mqtt.sn.model.session.impl.TopicRegistrationImpl;
+import org.slj.mqtt.sn.spi.IMqttsnObjectReaderWriter;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.utils.Files;
+import org.slj.mqtt.sn.utils.TopicPath;
+import org.slj.mqtt.sn.utils.WriteAheadLogStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recovery of a durable session store holding a large number of sessions, each with a few subscriptions and topic
+ * registrations; either all from a snapshot, or (the worst case, before any checkpoint) all from the log.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionStoreRecoveryBenchmark {
+
+    @Param({"100000"})
+    public int sessions;
+
+    @Param({"snapshot", "log"})
+    public String source;
+
+    private IMqttsnObjectReaderWriter readerWriter;
+    private File dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, MqttsnException {
+        readerWriter = new MqttsnBinaryReaderWriter();
+        dir = java.nio.file.Files.createTempDirectory("session-store-benchmark").toFile();
+        Map<String, byte[]> state = new HashMap<>();
+        for (int i = 0; i < sessions; i++){
+            SessionBeanImpl session = new SessionBeanImpl(new ClientIdentifierContext("client-" + i), ClientState.DISCONNECTED);
+            session.setLastSeen(new Date());
+            session.setKeepAlive(60);
+            for (int j = 0; j < 3; j++){
+                session.addSubscription(new SubscriptionImpl(new TopicPath("devices/" + i + "/" + j + "/#"), 1));
+                session.addTopicRegistration(new TopicRegistrationImpl("devices/" + i + "/" + j, j + 1, true));
+            }
+            state.put(session.getContext().getId(), readerWriter.write(session));
+        }
+        try (WriteAheadLogStore store = new WriteAheadLogStore(dir, false)){
+            store.recover();
+            if("snapshot".equals(source)){
+                store.checkpoint(state.entrySet().iterator());
+            } else {
+                store.append(state, null);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public int recover() throws IOException, MqttsnException {
+        List<SessionBeanImpl> recovered = new ArrayList<>(sessions);
+        try (WriteAheadLogStore store = new WriteAheadLogStore(dir, false)){
+            for (byte[] record : store.recover().values()){
+                recovered.add(readerWriter.load(SessionBeanImpl.class, record));
+            }
+        }
+        return recovered.size();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.mqtt.sn.MqttsnConstants;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.spi.MqttsnIllegalFormatException;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out lookup against a subscription registry populated with a mix of exact and wildcard subscriptions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionRegistryBenchmark extends AbstractRuntimeBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int sessions;
+
+    @Override
+    protected void setupState() throws MqttsnException, MqttsnIllegalFormatException {
+        for (int i = 0; i < sessions; i++){
+            ISession session = createActiveSession("subscriber-" + i, MqttsnConstants.PROTOCOL_VERSION_1_2);
+            registry.getSubscriptionRegistry().subscribe(session, "sensors/" + i + "/temperature", 1);
+            registry.getSubscriptionRegistry().subscribe(session, "sensors/+/humidity", 1);
+            if(i % 10 == 0){
+                registry.getSubscriptionRegistry().subscribe(session, "sensors/#", 0);
+            }
+        }
+    }
+
+    @Benchmark
+    public Set<IClientIdentifierContext> matchExact() throws MqttsnException, MqttsnIllegalFormatException {
+        return registry.getSubscriptionRegistry().matches("sensors/1/temperature");
+    }
+
+    @Benchmark
+    public Set<IClientIdentifierContext> matchWildcard() throws MqttsnException, MqttsnIllegalFormatException {
+        return registry.getSubscriptionRegistry().matches("sensors/1/humidity");
+    }
+
+    @Benchmark
+    public Set<IClientIdentifierContext> matchNone() throws MqttsnException, MqttsnIllegalFormatException {
+        return registry.getSubscriptionRegistry().matches("actuators/1/state");
+    }
+}
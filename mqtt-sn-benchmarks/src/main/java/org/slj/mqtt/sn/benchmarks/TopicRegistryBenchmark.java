@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.slj.mqtt.sn.MqttsnConstants;
+import org.slj.mqtt.sn.model.TopicInfo;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.spi.MqttsnException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward (path to alias) and reverse (alias to path) lookups against a session holding a number of
+ * registrations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicRegistryBenchmark extends AbstractRuntimeBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int registrations;
+
+    private ISession session;
+    private String lastPath;
+    private int lastAlias;
+
+    @Override
+    protected void setupState() throws MqttsnException {
+        session = createActiveSession("topic-client", MqttsnConstants.PROTOCOL_VERSION_1_2);
+        for (int i = 0; i < registrations; i++){
+            lastPath = "devices/" + i + "/state";
+            lastAlias = registry.getTopicRegistry().register(session, lastPath).getTopicId();
+        }
+    }
+
+    @Benchmark
+    public TopicInfo lookup() throws MqttsnException {
+        return registry.getTopicRegistry().lookup(session, lastPath);
+    }
+
+    @Benchmark
+    public String lookupRegistered() throws MqttsnException {
+        return registry.getTopicRegistry().lookupRegistered(session, lastAlias);
+    }
+}
@@ -29,6 +29,7 @@ import org.slj.mqtt.sn.MqttsnSpecificationValidator;
 import org.slj.mqtt.sn.PublishData;
 import org.slj.mqtt.sn.client.MqttsnClientConnectException;
 import org.slj.mqtt.sn.client.impl.examples.Example;
+import org.slj.mqtt.sn.client.spi.IMqttsnAsyncClient;
 import org.slj.mqtt.sn.client.spi.IMqttsnClient;
 import org.slj.mqtt.sn.client.spi.MqttsnClientOptions;
 import org.slj.mqtt.sn.impl.AbstractMqttsnRuntime;
@@ -41,6 +42,10 @@ import org.slj.mqtt.sn.utils.MqttsnUtils;
 import org.slj.mqtt.sn.wire.version1_2.payload.MqttsnHelo;
 
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -51,7 +56,8 @@ import java.util.concurrent.TimeUnit;
  * by the configuration supplied.
  *
  * Connect, subscribe, unsubscribe and disconnect ( &amp; sleep) are blocking calls which are considered successful on
- * receipt of the correlated acknowledgement message.
+ * receipt of the correlated acknowledgement message. Each of these also has a non-blocking variant (see {@link IMqttsnAsyncClient})
+ * whose {@link CompletableFuture} is completed by the processing of the acknowledgement.
  *
  * Management of the sleeping client state can either be supervised by the application, or by the client itself. During
  * the sleep cycle, underlying resources (threads) are intelligently started and stopped. For example during sleep, the
@@ -63,7 +69,7 @@ import java.util.concurrent.TimeUnit;
  *
  * For example use, please refer to {@link Example}.
  */
-public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnClient {
+public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnAsyncClient {
     private volatile ISession session;
     private volatile int keepAlive;
     private volatile boolean cleanSession;
@@ -74,6 +80,7 @@ public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnClient
     private final Object functionMutex = new Object();
     private final boolean managedConnection;
     private final boolean autoReconnect;
+    private final Executor asyncExecutor = this::generalPurposeSubmit;
 
     /**
      * Construct a new client instance whose connection is NOT automatically managed. It will be up to the application
@@ -171,16 +178,7 @@ public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnClient
             if (session.getClientState() != ClientState.ACTIVE) {
                 startProcessing(false);
                 try {
-                    MqttsnSecurityOptions securityOptions = registry.getOptions().getSecurityOptions();
-                    IMqttsnMessage message = registry.getMessageFactory().createConnect(
-                            registry.getOptions().getContextId(), keepAlive,
-                            registry.getWillRegistry().hasWillMessage(session),
-                            (securityOptions != null && securityOptions.getAuthHandler() != null),
-                            cleanSession,
-                            registry.getOptions().getMaxProtocolMessageSize(),
-                            registry.getOptions().getDefaultMaxAwakeMessages(),
-                            registry.getOptions().getSessionExpiryInterval());
-
+                    IMqttsnMessage message = createConnect(session, keepAlive, cleanSession);
                     MqttsnWaitToken token = registry.getMessageStateService().sendMessage(session.getContext(), message);
                     Optional<IMqttsnMessage> response =
                             registry.getMessageStateService().waitForCompletion(session.getContext(), token);
@@ -199,6 +197,48 @@ public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnClient
         }
     }
 
+    @Override
+    /**
+     * @see {@link IMqttsnAsyncClient#connectAsync(int, boolean)}
+     */
+    public CompletableFuture<IMqttsnMessage> connectAsync(int keepAlive, boolean cleanSession) {
+        return supplyAsync(() -> {
+            this.keepAlive = keepAlive;
+            this.cleanSession = cleanSession;
+            ISession session = checkSession(false);
+            synchronized (functionMutex) {
+                clearState(cleanSession);
+                if (session.getClientState() == ClientState.ACTIVE) {
+                    return CompletableFuture.<IMqttsnMessage>completedFuture(null);
+                }
+                startProcessing(false);
+                MqttsnWaitToken token = registry.getMessageStateService().sendMessage(session.getContext(),
+                        createConnect(session, keepAlive, cleanSession));
+                return token.getFuture().handleAsync((response, error) -> {
+                    if(error == null){
+                        try {
+                            getRegistry().getSessionRegistry().modifyClientState(session, ClientState.ACTIVE);
+                            getRegistry().getSessionRegistry().modifyKeepAlive(session, keepAlive);
+                            startProcessing(true);
+                            return response;
+                        } catch(MqttsnException e){
+                            error = e;
+                        }
+                    }
+                    //-- something was not correct with the CONNECT, shut it down again
+                    logger.warn("error issuing CONNECT, disconnect");
+                    try {
+                        getRegistry().getSessionRegistry().modifyClientState(session, ClientState.DISCONNECTED);
+                        stopProcessing(true);
+                    } catch(MqttsnException e){
+                        logger.warn("error stopping processing after failed CONNECT", e);
+                    }
+                    throw new CompletionException(new MqttsnClientConnectException(unwrap(error)));
+                }, asyncExecutor);
+            }
+        }).thenCompose(f -> f);
+    }
+
     @Override
     /**
      * @see {@link IMqttsnClient#setWillData(WillDataImpl)}
@@ -288,6 +328,18 @@ public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnClient
                         dataRef, publishData));
     }
 
+    @Override
+    /**
+     * @see {@link IMqttsnAsyncClient#publishAsync(String, int, boolean, byte[])}
+     */
+    public CompletableFuture<IMqttsnMessage> publishAsync(String topicName, int QoS, boolean retained, byte[] data) {
+        try {
+            return completeFrom(CompletableFuture.completedFuture(publish(topicName, QoS, retained, data)));
+        } catch(Exception e){
+            return failedFuture(e);
+        }
+    }
+
     @Override
     /**
      * @see {@link IMqttsnClient#subscribe(String, int)}
@@ -298,19 +350,7 @@ public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnClient
         MqttsnSpecificationValidator.validateSubscribePath(topicName);
 
         ISession session = checkSession(true);
-
-        TopicInfo info = registry.getTopicRegistry().lookup(session, topicName, true);
-        IMqttsnMessage message;
-        if(info == null || info.getType() == MqttsnConstants.TOPIC_TYPE.SHORT ||
-                info.getType() == MqttsnConstants.TOPIC_TYPE.NORMAL){
-            //-- the spec is ambiguous here; where a normalId has been obtained, it still requires use of
-            //-- topicName string
-            message = registry.getMessageFactory().createSubscribe(QoS, topicName);
-        }
-        else {
-            //-- only predefined should use the topicId as an uint16
-            message = registry.getMessageFactory().createSubscribe(QoS, info.getType(), info.getTopicId());
-        }
+        IMqttsnMessage message = createSubscribe(session, topicName, QoS);
 
         synchronized (this){
             MqttsnWaitToken token = registry.getMessageStateService().sendMessage(session.getContext(), message);
@@ -319,6 +359,20 @@ public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnClient
         }
     }
 
+    @Override
+    /**
+     * @see {@link IMqttsnAsyncClient#subscribeAsync(String, int)}
+     */
+    public CompletableFuture<IMqttsnMessage> subscribeAsync(String topicName, int QoS) {
+        return sendAsync(() -> {
+            MqttsnSpecificationValidator.validateQoS(QoS);
+            MqttsnSpecificationValidator.validateSubscribePath(topicName);
+            ISession session = checkSession(true);
+            return registry.getMessageStateService().sendMessage(session.getContext(),
+                    createSubscribe(session, topicName, QoS));
+        });
+    }
+
     @Override
     /**
      * @see {@link IMqttsnClient#unsubscribe(String)}
@@ -328,19 +382,7 @@ public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnClient
         MqttsnSpecificationValidator.validateSubscribePath(topicName);
 
         ISession session = checkSession(true);
-
-        TopicInfo info = registry.getTopicRegistry().lookup(session, topicName, true);
-        IMqttsnMessage message;
-        if(info == null || info.getType() == MqttsnConstants.TOPIC_TYPE.SHORT ||
-                info.getType() == MqttsnConstants.TOPIC_TYPE.NORMAL){
-            //-- the spec is ambiguous here; where a normalId has been obtained, it still requires use of
-            //-- topicName string
-            message = registry.getMessageFactory().createUnsubscribe(topicName);
-        }
-        else {
-            //-- only predefined should use the topicId as an uint16
-            message = registry.getMessageFactory().createUnsubscribe(info.getType(), info.getTopicId());
-        }
+        IMqttsnMessage message = createUnsubscribe(session, topicName);
 
         synchronized (functionMutex){
             MqttsnWaitToken token = registry.getMessageStateService().sendMessage(session.getContext(), message);
@@ -349,6 +391,32 @@ public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnClient
         }
     }
 
+    @Override
+    /**
+     * @see {@link IMqttsnAsyncClient#unsubscribeAsync(String)}
+     */
+    public CompletableFuture<IMqttsnMessage> unsubscribeAsync(String topicName) {
+        return sendAsync(() -> {
+            MqttsnSpecificationValidator.validateSubscribePath(topicName);
+            ISession session = checkSession(true);
+            return registry.getMessageStateService().sendMessage(session.getContext(),
+                    createUnsubscribe(session, topicName));
+        });
+    }
+
+    @Override
+    /**
+     * @see {@link IMqttsnAsyncClient#registerAsync(String)}
+     */
+    public CompletableFuture<IMqttsnMessage> registerAsync(String topicName) {
+        return sendAsync(() -> {
+            MqttsnSpecificationValidator.validatePublishPath(topicName);
+            ISession session = checkSession(true);
+            return registry.getMessageStateService().sendMessage(session.getContext(),
+                    registry.getMessageFactory().createRegister(topicName));
+        });
+    }
+
     @Override
     /**
      * @see {@link IMqttsnClient#supervisedSleepWithWake(int, int, int, boolean)}
@@ -576,6 +644,105 @@ public class MqttsnClient extends AbstractMqttsnRuntime implements IMqttsnClient
         return registry.getOptions().getContextId();
     }
 
+    private IMqttsnMessage createConnect(ISession session, int keepAlive, boolean cleanSession) throws MqttsnException {
+        MqttsnSecurityOptions securityOptions = registry.getOptions().getSecurityOptions();
+        return registry.getMessageFactory().createConnect(
+                registry.getOptions().getContextId(), keepAlive,
+                registry.getWillRegistry().hasWillMessage(session),
+                (securityOptions != null && securityOptions.getAuthHandler() != null),
+                cleanSession,
+                registry.getOptions().getMaxProtocolMessageSize(),
+                registry.getOptions().getDefaultMaxAwakeMessages(),
+                registry.getOptions().getSessionExpiryInterval());
+    }
+
+    private IMqttsnMessage createSubscribe(ISession session, String topicName, int QoS) throws MqttsnException {
+        TopicInfo info = registry.getTopicRegistry().lookup(session, topicName, true);
+        if(info == null || info.getType() == MqttsnConstants.TOPIC_TYPE.SHORT ||
+                info.getType() == MqttsnConstants.TOPIC_TYPE.NORMAL){
+            //-- the spec is ambiguous here; where a normalId has been obtained, it still requires use of
+            //-- topicName string
+            return registry.getMessageFactory().createSubscribe(QoS, topicName);
+        }
+        else {
+            //-- only predefined should use the topicId as an uint16
+            return registry.getMessageFactory().createSubscribe(QoS, info.getType(), info.getTopicId());
+        }
+    }
+
+    private IMqttsnMessage createUnsubscribe(ISession session, String topicName) throws MqttsnException {
+        TopicInfo info = registry.getTopicRegistry().lookup(session, topicName, true);
+        if(info == null || info.getType() == MqttsnConstants.TOPIC_TYPE.SHORT ||
+                info.getType() == MqttsnConstants.TOPIC_TYPE.NORMAL){
+            //-- the spec is ambiguous here; where a normalId has been obtained, it still requires use of
+            //-- topicName string
+            return registry.getMessageFactory().createUnsubscribe(topicName);
+        }
+        else {
+            //-- only predefined should use the topicId as an uint16
+            return registry.getMessageFactory().createUnsubscribe(info.getType(), info.getTopicId());
+        }
+    }
+
+    /**
+     * Send on the general purpose executor (the send may block on the inflight window) and complete from the
+     * acknowledgement of the message sent.
+     */
+    private CompletableFuture<IMqttsnMessage> sendAsync(Callable<MqttsnWaitToken> send){
+        return completeFrom(supplyAsync(send));
+    }
+
+    /**
+     * A future completed from the token on the general purpose executor. Cancelling the future removes the message
+     * from inflight and releases the token, once the message has been handed to the state service.
+     */
+    private CompletableFuture<IMqttsnMessage> completeFrom(CompletableFuture<MqttsnWaitToken> sent){
+        CompletableFuture<IMqttsnMessage> future = sent.thenCompose(token -> token == null ?
+                CompletableFuture.<IMqttsnMessage>completedFuture(null) :
+                token.getFuture().thenApplyAsync(response -> response, asyncExecutor));
+        future.whenComplete((response, error) -> {
+            if(future.isCancelled()){
+                sent.thenAccept(token -> {
+                    ISession session = getSessionState();
+                    if(token != null && session != null){
+                        try {
+                            registry.getMessageStateService().cancelInflight(session.getContext(), token);
+                        } catch(MqttsnException e){
+                            logger.warn("error cancelling inflight message", e);
+                        }
+                    }
+                });
+            }
+        });
+        return future;
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(Callable<T> task){
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            generalPurposeSubmit(() -> {
+                try {
+                    future.complete(task.call());
+                } catch(Throwable e){
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch(Exception e){
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable t){
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable t){
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
     private void stateChangeResponseCheck(ISession session, MqttsnWaitToken token, Optional<IMqttsnMessage> response, ClientState newState)
             throws MqttsnExpectationFailedException {
         try {
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.client.spi;
+
+import org.slj.mqtt.sn.spi.IMqttsnMessage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An asynchronous variant of the {@link IMqttsnClient}. Each operation returns immediately with a {@link CompletableFuture}
+ * which is completed by the processing of the correlated acknowledgement from the gateway, so no application thread is
+ * parked waiting on a response, and calls may be composed with other non-blocking application code.
+ *
+ * Futures complete exceptionally with a {@link org.slj.mqtt.sn.spi.MqttsnExpectationFailedException} when the gateway
+ * responds with an error, or when the message expires from inflight without a response. Dependent actions run on the
+ * runtime's general purpose executor, never on the transport threads. Operations issued concurrently are not guaranteed
+ * to reach the gateway in the order they were called; compose on the returned futures where ordering matters.
+ *
+ * Cancelling a future returned by publish, subscribe, unsubscribe or register removes the message from inflight so it
+ * no longer occupies the inflight window, and releases anything waiting on its token. A PUBLISH which has not yet left
+ * the queue is still sent.
+ */
+public interface IMqttsnAsyncClient extends IMqttsnClient {
+
+    /**
+     * Issue a CONNECT packet. The future completes once the CONNACK has been received and the client is in the ACTIVE state.
+     *
+     * @param keepAlive - Time in seconds to keep the session alive before the gateway times you out
+     * @param cleanSession - Whether tidy up any existing session state on the gateway; including message queues, subscriptions and registrations
+     * @return a future completed with the CONNACK, or exceptionally with a {@link org.slj.mqtt.sn.client.MqttsnClientConnectException}
+     */
+    CompletableFuture<IMqttsnMessage> connectAsync(int keepAlive, boolean cleanSession);
+
+    /**
+     * Add a new message onto the queue to send to the gateway. The future completes when the delivery is confirmed by the
+     * gateway (PUBACK at QoS 1, PUBCOMP at QoS 2), or once the message has been written to the transport at QoS 0 and -1.
+     *
+     * @param topicName - The path to which you wish to send the data
+     * @param QoS - Quality of Service of the method, one of -1, 0 , 1, 2
+     * @param retained - is this a retained publish type
+     * @param data - The data you wish to send
+     * @return a future completed with the confirming message (if any)
+     */
+    CompletableFuture<IMqttsnMessage> publishAsync(String topicName, int QoS, boolean retained, byte[] data);
+
+    /**
+     * Subscribe the topic using the most appropriate topic scheme, as per {@link IMqttsnClient#subscribe(String, int)}.
+     *
+     * @param topicName - The path to subscribe to
+     * @param QoS - The quality of service of the subscription
+     * @return a future completed with the SUBACK
+     */
+    CompletableFuture<IMqttsnMessage> subscribeAsync(String topicName, int QoS);
+
+    /**
+     * Unsubscribe the topic using the most appropriate topic scheme, as per {@link IMqttsnClient#unsubscribe(String)}.
+     *
+     * @param topicName - The path to unsubscribe from
+     * @return a future completed with the UNSUBACK
+     */
+    CompletableFuture<IMqttsnMessage> unsubscribeAsync(String topicName);
+
+    /**
+     * Obtain a NORMAL topic alias for the topic from the gateway ahead of publishing to it. The alias is placed into the
+     * client's topic registry as the REGACK is processed.
+     *
+     * @param topicName - The path to register
+     * @return a future completed with the REGACK
+     */
+    CompletableFuture<IMqttsnMessage> registerAsync(String topicName);
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.client.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.MqttsnConstants;
+import org.slj.mqtt.sn.client.impl.MqttsnClient;
+import org.slj.mqtt.sn.client.impl.MqttsnClientMessageHandler;
+import org.slj.mqtt.sn.client.impl.MqttsnClientRuntimeRegistry;
+import org.slj.mqtt.sn.codec.MqttsnCodecs;
+import org.slj.mqtt.sn.impl.*;
+import org.slj.mqtt.sn.impl.metrics.MqttsnMetricsService;
+import org.slj.mqtt.sn.impl.ram.*;
+import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.model.INetworkContext;
+import org.slj.mqtt.sn.model.InflightMessage;
+import org.slj.mqtt.sn.model.MqttsnOptions;
+import org.slj.mqtt.sn.net.ContextTransportLocator;
+import org.slj.mqtt.sn.net.MqttsnUdpOptions;
+import org.slj.mqtt.sn.net.NetworkAddress;
+import org.slj.mqtt.sn.net.NetworkAddressRegistry;
+import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.spi.IMqttsnOriginatingMessageSource;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.spi.MqttsnExpectationFailedException;
+import org.slj.mqtt.sn.utils.Files;
+import org.slj.mqtt.sn.utils.StringTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives the asynchronous client against a transport which stands in for the gateway, answering each message the client
+ * sends with its acknowledgement, or not at all, so the completion of the futures can be checked without a network.
+ */
+public class AsyncClientTest {
+
+    static final int MAX_WAIT = 5000;
+    static final int MAX_TIME_INFLIGHT = 1000;
+    static final String TOPIC = "async/topic";
+
+    private File dir;
+    private GatewayTransport gateway;
+    private StateService stateService;
+    private MqttsnClient client;
+
+    @Before
+    public void setup() throws IOException, MqttsnException {
+        dir = java.nio.file.Files.createTempDirectory("async-client").toFile();
+        MqttsnOptions options = new MqttsnOptions().
+                withNetworkAddressEntry("gatewayId", NetworkAddress.localhost(MqttsnUdpOptions.DEFAULT_LOCAL_PORT)).
+                withContextId("async-client").
+                withMaxWait(MAX_WAIT).
+                withGeneralPurposeThreadCount(8).
+                withMaxTimeInflight(MAX_TIME_INFLIGHT);
+        gateway = new GatewayTransport();
+        stateService = new StateService();
+        //-- the default configuration, with a state service the tests can slow down
+        MqttsnClientRuntimeRegistry registry = (MqttsnClientRuntimeRegistry) new MqttsnClientRuntimeRegistry(
+                        new MqttsnFilesystemStorageService(dir, "async-client"), options).
+                withContextFactory(new MqttsnContextFactory()).
+                withTopicModifier(new MqttsnDefaultTopicModifier()).
+                withSessionRegistry(new MqttsnSessionRegistry()).
+                withSecurityService(new MqttsnSecurityService()).
+                withMetrics(new MqttsnMetricsService()).
+                withMessageHandler(new MqttsnClientMessageHandler()).
+                withMessageRegistry(new MqttsnInMemoryMessageRegistry()).
+                withTransportLocator(new ContextTransportLocator()).
+                withDeadLetterQueue(new MqttsnInMemoryDeadLetterQueue()).
+                withNetworkAddressRegistry(new NetworkAddressRegistry(options.getMaxNetworkAddressEntries())).
+                withTopicRegistry(new MqttsnInMemoryTopicRegistry()).
+                withWillRegistry(new MqttsnInMemoryWillRegistry()).
+                withSubscriptionRegistry(new MqttsnInMemorySubscriptionRegistry()).
+                withMessageQueue(new MqttsnInMemoryMessageQueue()).
+                withQueueProcessor(new MqttsnMessageQueueProcessor(true)).
+                withMessageStateService(stateService).
+                withTransport(gateway).
+                withCodec(MqttsnCodecs.MQTTSN_CODEC_VERSION_1_2);
+        client = new MqttsnClient();
+        client.start(registry);
+    }
+
+    @After
+    public void tearDown() throws IOException, MqttsnException {
+        try {
+            gateway.answer = true;
+            client.close();
+        } finally {
+            gateway.delayed.shutdownNow();
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testConnectCompletesOnConnack() throws Exception {
+        IMqttsnMessage connack = client.connectAsync(60, true).get(MAX_WAIT, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(connack);
+        Assert.assertEquals(MqttsnConstants.CONNACK, connack.getMessageType());
+        Assert.assertEquals(ClientState.ACTIVE, client.getSessionState().getClientState());
+    }
+
+    @Test
+    public void testSubscribeCompletesOnSuback() throws Exception {
+        connect();
+        IMqttsnMessage suback = client.subscribeAsync(TOPIC, 1).get(MAX_WAIT, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(MqttsnConstants.SUBACK, suback.getMessageType());
+    }
+
+    @Test
+    public void testRegisterAndPublishCompleteOnAck() throws Exception {
+        connect();
+        IMqttsnMessage regack = client.registerAsync(TOPIC).get(MAX_WAIT, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(MqttsnConstants.REGACK, regack.getMessageType());
+        IMqttsnMessage puback = client.publishAsync(TOPIC, 1, false, new byte[]{0x01}).
+                get(MAX_WAIT, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(MqttsnConstants.PUBACK, puback.getMessageType());
+    }
+
+    @Test
+    public void testTimeoutCompletesExceptionally() throws Exception {
+        connect();
+        gateway.answer = false;
+        CompletableFuture<IMqttsnMessage> future = client.subscribeAsync(TOPIC, 1);
+        assertFailed(future, MAX_TIME_INFLIGHT + MAX_WAIT);
+    }
+
+    @Test
+    public void testDisconnectCompletesExceptionally() throws Exception {
+        connect();
+        gateway.disconnect = true;
+        CompletableFuture<IMqttsnMessage> future = client.subscribeAsync(TOPIC, 1);
+        assertFailed(future, MAX_WAIT);
+    }
+
+    @Test
+    public void testCancelClearsToken() throws Exception {
+        connect();
+        gateway.answer = false;
+        CompletableFuture<IMqttsnMessage> future = client.subscribeAsync(TOPIC, 1);
+        IMqttsnMessage subscribe = gateway.nextReceived(MqttsnConstants.SUBSCRIBE);
+        Assert.assertNotNull("the subscribe should be sent", subscribe);
+        Assert.assertEquals(1, countInflight());
+
+        Assert.assertTrue(future.cancel(false));
+        //-- well inside the inflight timeout, so it is the cancel which clears it rather than the reaper
+        long deadline = System.currentTimeMillis() + MAX_TIME_INFLIGHT / 2;
+        while(countInflight() > 0 && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("cancelling should remove the message from inflight", 0, countInflight());
+
+        //-- the window is free, so a new message can be sent and acknowledged
+        gateway.answer = true;
+        IMqttsnMessage suback = client.subscribeAsync(TOPIC, 1).get(MAX_WAIT, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(MqttsnConstants.SUBACK, suback.getMessageType());
+    }
+
+    @Test
+    public void testConcurrentCallsShareWindowOfOne() throws Exception {
+        connect();
+        //-- hold each answer back so every other call finds the window taken and has to wait for it, and widen the
+        //-- gap between a sender finding the window free and taking it, so a second sender would find it free too
+        gateway.delay = 20;
+        stateService.addDelay = 20;
+        List<CompletableFuture<IMqttsnMessage>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++){
+            futures.add(i % 2 == 0 ? client.subscribeAsync(TOPIC + i, 1) : client.registerAsync(TOPIC + i));
+        }
+        for (CompletableFuture<IMqttsnMessage> future : futures){
+            Assert.assertNotNull("each call should wait for the window rather than fail",
+                    future.get(MAX_WAIT, TimeUnit.MILLISECONDS));
+        }
+        Assert.assertEquals("the window should never be exceeded", 1, stateService.maxInflight.get());
+        Assert.assertEquals(0, countInflight());
+    }
+
+    private void connect() throws Exception {
+        client.connectAsync(60, true).get(MAX_WAIT, TimeUnit.MILLISECONDS);
+        gateway.received.clear();
+    }
+
+    private int countInflight() throws MqttsnException {
+        return client.getRegistry().getMessageStateService().countInflight(
+                client.getSessionState().getContext(), IMqttsnOriginatingMessageSource.LOCAL);
+    }
+
+    private static void assertFailed(CompletableFuture<IMqttsnMessage> future, long wait) throws Exception {
+        try {
+            future.get(wait, TimeUnit.MILLISECONDS);
+            Assert.fail("the future should complete exceptionally");
+        } catch(ExecutionException e){
+            Assert.assertTrue("unexpected cause " + e.getCause(),
+                    e.getCause() instanceof MqttsnExpectationFailedException);
+        }
+    }
+
+    /**
+     * Pauses before each message is added to inflight, after the window has been checked
+     */
+    static class StateService extends MqttsnInMemoryMessageStateService {
+
+        volatile long addDelay = 0;
+        final AtomicInteger maxInflight = new AtomicInteger();
+
+        StateService() {
+            super(true);
+        }
+
+        @Override
+        protected void addInflightMessage(IClientIdentifierContext context, Integer messageId, InflightMessage message) {
+            if(addDelay > 0){
+                try {
+                    Thread.sleep(addDelay);
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.addInflightMessage(context, messageId, message);
+            if(message.getOriginatingMessageSource() == IMqttsnOriginatingMessageSource.LOCAL){
+                maxInflight.accumulateAndGet(getInflightMessages(context, IMqttsnOriginatingMessageSource.LOCAL).size(),
+                        Math::max);
+            }
+        }
+    }
+
+    /**
+     * Decodes what the client sends and, when answering, replies with the acknowledgement the gateway would send
+     */
+    static class GatewayTransport extends AbstractMqttsnTransport {
+
+        final BlockingQueue<IMqttsnMessage> received = new LinkedBlockingQueue<>();
+        volatile boolean answer = true;
+        volatile boolean disconnect = false;
+        volatile long delay = 0;
+        final ScheduledExecutorService delayed = Executors.newSingleThreadScheduledExecutor();
+        private int nextTopicId = 1;
+
+        @Override
+        protected void writeToTransportInternal(INetworkContext context, byte[] data) {
+            IMqttsnMessage message = getRegistry().getCodec().decode(data);
+            received.add(message);
+            IMqttsnMessage reply = reply(message);
+            if(reply != null){
+                if(reply.needsId()) reply.setId(message.getId());
+                byte[] encoded = getRegistry().getCodec().encode(reply);
+                if(delay > 0){
+                    delayed.schedule(() -> receiveFromTransport(context, encoded), delay, TimeUnit.MILLISECONDS);
+                } else {
+                    receiveFromTransport(context, encoded);
+                }
+            }
+        }
+
+        protected IMqttsnMessage reply(IMqttsnMessage message){
+            int type = message.getMessageType();
+            if(type == MqttsnConstants.DISCONNECT){
+                return getRegistry().getMessageFactory().createDisconnect();
+            }
+            if(type == MqttsnConstants.PINGREQ){
+                return getRegistry().getMessageFactory().createPingresp();
+            }
+            if(type == MqttsnConstants.CONNECT){
+                return getRegistry().getMessageFactory().createConnack(MqttsnConstants.RETURN_CODE_ACCEPTED);
+            }
+            if(disconnect){
+                return getRegistry().getMessageFactory().createDisconnect();
+            }
+            if(!answer){
+                return null;
+            }
+            switch (type){
+                case MqttsnConstants.SUBSCRIBE:
+                    return getRegistry().getMessageFactory().createSuback(1, 0, MqttsnConstants.RETURN_CODE_ACCEPTED);
+                case MqttsnConstants.UNSUBSCRIBE:
+                    return getRegistry().getMessageFactory().createUnsuback(MqttsnConstants.RETURN_CODE_ACCEPTED);
+                case MqttsnConstants.REGISTER:
+                    return getRegistry().getMessageFactory().createRegack(MqttsnConstants.TOPIC_NORMAL,
+                            nextTopicId++, MqttsnConstants.RETURN_CODE_ACCEPTED);
+                case MqttsnConstants.PUBLISH:
+                    return getRegistry().getMessageFactory().createPuback(0, MqttsnConstants.RETURN_CODE_ACCEPTED);
+                default:
+                    return null;
+            }
+        }
+
+        IMqttsnMessage nextReceived(int type) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + MAX_WAIT;
+            IMqttsnMessage message;
+            while((message = received.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) != null){
+                if(message.getMessageType() == type) return message;
+            }
+            return null;
+        }
+
+        @Override
+        public void broadcast(IMqttsnMessage message) {
+        }
+
+        @Override
+        public StringTable getTransportDetails() {
+            StringTable st = new StringTable("Property", "Value");
+            st.setTableName("Gateway Transport");
+            return st;
+        }
+
+        @Override
+        public String getName() {
+            return "mqtt-sn-gateway-stub";
+        }
+
+        @Override
+        public int getPort() {
+            return 0;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Answers as the gateway";
+        }
+    }
+}
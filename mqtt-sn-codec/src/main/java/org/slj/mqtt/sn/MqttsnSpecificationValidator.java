@@ -261,6 +261,15 @@ public class MqttsnSpecificationValidator {
         }
     }
 
+    public static void validatePacketLength(int length){
+        if(length < 2){
+            throw new MqttsnCodecException("malformed mqtt-sn packet, small ("+length+")");
+        }
+        if(length > MqttsnConstants.UNSIGNED_MAX_16){
+            throw new MqttsnCodecException("malformed mqtt-sn packet, large ("+length+")");
+        }
+    }
+
     public static void validateUInt8(int field) throws MqttsnCodecException {
         if (!validUInt8(field)) {
             throw new MqttsnCodecException("invalid unsigned 8 bit number - " + field);
@@ -24,12 +24,18 @@
 
 package org.slj.mqtt.sn.codec;
 
+import org.slj.mqtt.sn.MqttsnSpecificationValidator;
 import org.slj.mqtt.sn.spi.IMqttsnCodec;
 import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.wire.MqttsnPacketHeader;
 import org.slj.mqtt.sn.wire.MqttsnWireUtils;
 import org.slj.mqtt.sn.wire.AbstractMqttsnMessage;
 import org.slj.mqtt.sn.wire.version1_2.payload.AbstractMqttsnMessageWithFlagsField;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
 /**
  * Base class for simple codec implementations. This version will only support message
  * types defined by the local abstract, the marker interfaces allow support for any
@@ -55,6 +61,33 @@ public abstract class AbstractMqttsnCodec implements IMqttsnCodec {
         return msg;
     }
 
+    @Override
+    public IMqttsnMessage decode(ByteBuffer buffer)
+            throws MqttsnCodecException {
+        int length = MqttsnWireUtils.readMessageLength(buffer);
+        if(length == -1 || length > buffer.remaining()){
+            throw new MqttsnCodecException(
+                    String.format("incomplete message, declared length %s, %s bytes remaining", length, buffer.remaining()));
+        }
+        int start = buffer.position();
+        int limit = buffer.limit();
+        AbstractMqttsnMessage msg = createInstance(buffer, length);
+        try {
+            //-- confine the message to its own frame so it cannot read into the next
+            buffer.limit(start + length);
+            msg.decode(buffer);
+        } catch(BufferUnderflowException e){
+            throw new MqttsnCodecException("malformed message, data underflow", e);
+        } finally {
+            buffer.limit(limit);
+            buffer.position(start + length);
+        }
+        if(strict)
+            validate(msg);
+
+        return msg;
+    }
+
     @Override
     public byte[] encode(IMqttsnMessage msg) throws MqttsnCodecException {
         if (!AbstractMqttsnMessage.class.isAssignableFrom(msg.getClass()))
@@ -62,6 +95,49 @@ public abstract class AbstractMqttsnCodec implements IMqttsnCodec {
         return ((AbstractMqttsnMessage) msg).encode();
     }
 
+    @Override
+    public void encode(IMqttsnMessage msg, ByteBuffer buffer) throws MqttsnCodecException {
+        if (!AbstractMqttsnMessage.class.isAssignableFrom(msg.getClass()))
+            throw new MqttsnCodecException("unsupported message formats in codec");
+        int start = buffer.position();
+        try {
+            ((AbstractMqttsnMessage) msg).encode(buffer);
+        } catch(BufferOverflowException e){
+            buffer.position(start);
+            throw new MqttsnCodecException("buffer too small to accommodate data", e);
+        }
+    }
+
+    @Override
+    public MqttsnPacketHeader peek(byte[] data) throws MqttsnCodecException {
+        if(data == null || data.length < 2 ||
+                (MqttsnWireUtils.isLargeMessage(data) && data.length < 4)){
+            throw new MqttsnCodecException("insufficient data to read message header");
+        }
+        MqttsnPacketHeader header = new MqttsnPacketHeader(MqttsnWireUtils.readMessageType(data),
+                MqttsnWireUtils.readMessageLength(data), MqttsnWireUtils.isLargeMessage(data) ? 4 : 2);
+        peekVariableHeader(data, header);
+        return header;
+    }
+
+    /**
+     * Populate the flags, topic id and message id of the header according to the layout of its message type. Indexes
+     * passed to {@link #peekUInt8} and {@link #peekUInt16} are those of the 2 byte header form, and are adjusted for
+     * large messages.
+     */
+    protected void peekVariableHeader(byte[] data, MqttsnPacketHeader header) {
+    }
+
+    protected static int peekUInt8(byte[] data, MqttsnPacketHeader header, int idx) {
+        idx += header.getHeaderLength() - 2;
+        return idx < data.length ? data[idx] & 0xFF : MqttsnPacketHeader.NOT_PRESENT;
+    }
+
+    protected static int peekUInt16(byte[] data, MqttsnPacketHeader header, int idx) {
+        idx += header.getHeaderLength() - 2;
+        return idx + 1 < data.length ? MqttsnWireUtils.read16bit(data[idx], data[idx + 1]) : MqttsnPacketHeader.NOT_PRESENT;
+    }
+
     protected void validateLengthEquals(byte[] data, int length) throws MqttsnCodecException {
         if (data.length != length) {
             throw new MqttsnCodecException(
@@ -76,6 +152,20 @@ public abstract class AbstractMqttsnCodec implements IMqttsnCodec {
         }
     }
 
+    protected void validateLengthEquals(int dataLength, int length) throws MqttsnCodecException {
+        if (dataLength != length) {
+            throw new MqttsnCodecException(
+                    String.format("invalid data length %s, must be %s bytes", dataLength, length));
+        }
+    }
+
+    protected void validateLengthGreaterThanOrEquals(int dataLength, int length) throws MqttsnCodecException {
+        if (dataLength < length) {
+            throw new MqttsnCodecException(
+                    String.format("invalid data length %s, must be gt or eq to %s bytes", dataLength, length));
+        }
+    }
+
     @Override
     public int getQoS(IMqttsnMessage message, boolean convertMinus1) {
         return convertMinus1 ? Math.max(getQoS(message), 0) : getQoS(message);
@@ -86,7 +176,18 @@ public abstract class AbstractMqttsnCodec implements IMqttsnCodec {
         return MqttsnWireUtils.toBinary(encode(message));
     }
 
-    protected abstract IMqttsnMessage createInstance(byte[] data) throws MqttsnCodecException;
+    protected IMqttsnMessage createInstance(byte[] data) throws MqttsnCodecException {
+        MqttsnSpecificationValidator.validatePacketLength(data);
+        AbstractMqttsnMessage msg = createInstance(ByteBuffer.wrap(data), data.length);
+        msg.decode(data);
+        return msg;
+    }
+
+    /**
+     * Create the (undecoded) message instance for the frame starting at the position of the buffer,
+     * validating the frame length for the message type. The buffer position is not modified.
+     */
+    protected abstract AbstractMqttsnMessage createInstance(ByteBuffer frame, int length) throws MqttsnCodecException;
 
     protected abstract int getQoS(IMqttsnMessage message);
 }
@@ -233,4 +233,9 @@ public abstract class AbstractMqttsnMessageFactory implements IMqttsnMessageFact
     public IMqttsnMessage createEncapsulatedMessage(String wirelessNodeId, int radius, byte[] messageData) throws MqttsnCodecException {
        throw new MqttsnCodecException("message not supported by codec");
     }
+
+    @Override
+    public void release(IMqttsnMessage message) {
+        //-- by default nothing is pooled
+    }
 }
@@ -27,8 +27,11 @@ package org.slj.mqtt.sn.spi;
 import org.slj.mqtt.sn.PublishData;
 import org.slj.mqtt.sn.codec.MqttsnCodecException;
 import org.slj.mqtt.sn.codec.MqttsnUnsupportedVersionException;
+import org.slj.mqtt.sn.wire.MqttsnPacketHeader;
 import org.slj.mqtt.sn.wire.version1_2.payload.MqttsnPublish;
 
+import java.nio.ByteBuffer;
+
 /**
  * A codec contains all the functionality to marshall and unmarshall
  * wire traffic in the format specified by the implementation. Further,
@@ -136,6 +139,33 @@ public interface IMqttsnCodec {
      */
     byte[] encode(IMqttsnMessage message) throws MqttsnCodecException;
 
+    /**
+     * Decode a single message, in place, from the buffer starting at its current position. On return the position
+     * of the buffer will have advanced past the message, so consecutive calls may be used to read a
+     * buffer containing many messages.
+     *
+     * @throws MqttsnCodecException - something went wrong when decoding the data, or the buffer did not contain a complete message
+     */
+    IMqttsnMessage decode(ByteBuffer buffer) throws MqttsnCodecException, MqttsnUnsupportedVersionException;
+
+    /**
+     * Encode the message directly into the buffer at its current position, advancing the position past the
+     * message. No intermediate array is used.
+     *
+     * @throws MqttsnCodecException - something went wrong when encoding the data, or the buffer had insufficient space
+     * (in which case the position of the buffer is left unchanged)
+     */
+    void encode(IMqttsnMessage message, ByteBuffer buffer) throws MqttsnCodecException;
+
+    /**
+     * Read the routing relevant fields (type, length, flags, topic id and message id) straight from the data
+     * without constructing the message, allowing a runtime to filter packets before paying for a full decode.
+     * Only the header is checked, so a packet which peeks successfully may still fail to decode.
+     *
+     * @throws MqttsnCodecException - the data was too short to contain a header
+     */
+    MqttsnPacketHeader peek(byte[] data) throws MqttsnCodecException;
+
     /**
      * A message factory will contruct messages using convenience methods
      * that hide the complexity of the underlying wire format
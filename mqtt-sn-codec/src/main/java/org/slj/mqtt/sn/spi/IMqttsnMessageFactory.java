@@ -426,4 +426,13 @@ public interface IMqttsnMessageFactory {
     										byte[] senderId,
     										int monotonicCounter,
     										byte[] encapsulatedPacket) throws MqttsnCodecException;
-}
\ No newline at end of file
+
+    /**
+     * Hand a message created by this factory (or decoded by its codec) back for reuse. Only PUBACK, PINGREQ
+     * and PINGRESP are recycled, others are ignored; PUBLISH is not pooled since it is handed on to the
+     * application. The caller must own the only reference to the message, and must not touch it once released.
+     *
+     * @param message - the message which is no longer referenced by the runtime
+     */
+    void release(IMqttsnMessage message);
+}
@@ -28,6 +28,7 @@ import org.slj.mqtt.sn.MqttsnConstants;
 import org.slj.mqtt.sn.codec.MqttsnCodecException;
 import org.slj.mqtt.sn.spi.IMqttsnMessage;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 public abstract class AbstractMqttsnMessage implements IMqttsnMessage {
@@ -36,6 +37,9 @@ public abstract class AbstractMqttsnMessage implements IMqttsnMessage {
     protected int id;
     protected int returnCode;
 
+    //-- set while the instance is sitting in a MqttsnMessagePool
+    transient boolean pooled;
+
     public AbstractMqttsnMessage() {
         messageType = getMessageType();
     }
@@ -61,6 +65,15 @@ public abstract class AbstractMqttsnMessage implements IMqttsnMessage {
         return returnCode != MqttsnConstants.RETURN_CODE_ACCEPTED;
     }
 
+    /**
+     * Restore the instance to its newly constructed state before it is handed back out by a
+     * {@link MqttsnMessagePool}. Pooled types must override to clear their own fields.
+     */
+    protected void reset() {
+        id = 0;
+        returnCode = 0;
+    }
+
     /**
      * Reads the remaining body from the data allowing for a header size defined in its smallest
      * form for convenience but adjusted if the data is an extended type ie. > 255 bytes
@@ -182,6 +195,72 @@ public abstract class AbstractMqttsnMessage implements IMqttsnMessage {
 
     public abstract byte[] encode() throws MqttsnCodecException;
 
+    /**
+     * Decode the message from the buffer, starting at its current position and consuming the message.
+     * By default the message is copied out and decoded from the array; message types on the
+     * hot path override this to read their fields in place.
+     */
+    public void decode(ByteBuffer buffer) throws MqttsnCodecException {
+        byte[] arr = new byte[MqttsnWireUtils.readMessageLength(buffer)];
+        buffer.get(arr);
+        decode(arr);
+    }
+
+    /**
+     * Encode the message into the buffer at its current position. By default the message is encoded
+     * to an array and copied into the buffer; message types on the hot path override this to write
+     * their fields in place.
+     */
+    public void encode(ByteBuffer buffer) throws MqttsnCodecException {
+        buffer.put(encode());
+    }
+
+    /**
+     * Consume the length header and message type from the buffer.
+     * @return the number of bytes of the message which remain following the message type
+     */
+    protected static int readHeader(ByteBuffer buffer) {
+        int remaining;
+        if(MqttsnWireUtils.isLargeMessage(buffer)){
+            buffer.get();
+            remaining = readUInt16(buffer) - 4;
+        } else {
+            remaining = (buffer.get() & 0xFF) - 2;
+        }
+        buffer.get();
+        return remaining;
+    }
+
+    /**
+     * Write the length header for a message of the total length supplied (which must include the
+     * 2 additional bytes needed by the extended header for messages larger than 255 bytes).
+     */
+    protected static void writeHeader(ByteBuffer buffer, int length) {
+        if(length > 0xFF){
+            buffer.put((byte) 0x01);
+            writeUInt16(buffer, length);
+        } else {
+            buffer.put((byte) length);
+        }
+    }
+
+    protected static byte[] readBytes(ByteBuffer buffer, int length) {
+        if(length < 0 || length > buffer.remaining())
+            throw new MqttsnCodecException(String.format("invalid field length %s, %s bytes remaining", length, buffer.remaining()));
+        byte[] arr = new byte[length];
+        buffer.get(arr);
+        return arr;
+    }
+
+    protected static int readUInt16(ByteBuffer buffer) {
+        return MqttsnWireUtils.read16bit(buffer.get(), buffer.get());
+    }
+
+    protected static void writeUInt16(ByteBuffer buffer, int value) {
+        buffer.put((byte) (value >> 8));
+        buffer.put((byte) value);
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder(getMessageName());
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.wire;
+
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, per-thread pool of recyclable message instances. An instance is only reused once it has been
+ * explicitly released back to the pool, so when nothing is released an acquisition costs a thread local
+ * lookup before falling back to the supplier.
+ *
+ * Released messages are reset to their initial state. A message must not be touched by its previous owner
+ * once it has been released.
+ */
+public final class MqttsnMessagePool<T extends AbstractMqttsnMessage> {
+
+    public static final int DEFAULT_MAX_PER_THREAD = 64;
+
+    private final Supplier<T> supplier;
+    private final int maxPerThread;
+    private final ThreadLocal<ArrayDeque<T>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+
+    public MqttsnMessagePool(Supplier<T> supplier) {
+        this(supplier, DEFAULT_MAX_PER_THREAD);
+    }
+
+    public MqttsnMessagePool(Supplier<T> supplier, int maxPerThread) {
+        this.supplier = supplier;
+        this.maxPerThread = maxPerThread;
+    }
+
+    public T acquire(){
+        T message = pool.get().pollLast();
+        if(message == null){
+            return supplier.get();
+        }
+        message.pooled = false;
+        return message;
+    }
+
+    /**
+     * Return the message to the calling thread's pool.
+     * @return true if the message was pooled, false if it was already pooled or the pool is full
+     */
+    public boolean release(T message){
+        if(message.pooled) return false;
+        ArrayDeque<T> queue = pool.get();
+        if(queue.size() >= maxPerThread) return false;
+        message.reset();
+        message.pooled = true;
+        queue.addLast(message);
+        return true;
+    }
+}
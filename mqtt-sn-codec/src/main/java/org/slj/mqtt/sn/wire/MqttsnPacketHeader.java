@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.wire;
+
+import org.slj.mqtt.sn.MqttsnConstants;
+
+/**
+ * The routing relevant fields of a packet, read straight from the wire by
+ * {@link org.slj.mqtt.sn.spi.IMqttsnCodec#peek(byte[])} without constructing the message. Fields which are not
+ * carried by the message type (or could not be read) are reported as {@link #NOT_PRESENT}.
+ */
+public final class MqttsnPacketHeader {
+
+    public static final int NOT_PRESENT = -1;
+
+    private int messageType;
+    private int length;
+    private int headerLength;
+    private int flags = NOT_PRESENT;
+    private int topicId = NOT_PRESENT;
+    private int msgId = NOT_PRESENT;
+
+    public MqttsnPacketHeader(int messageType, int length, int headerLength) {
+        this.messageType = messageType;
+        this.length = length;
+        this.headerLength = headerLength;
+    }
+
+    public int getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return the total length of the packet as declared on the wire, including the header
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the size of the length and type header; 2 bytes, or 4 bytes for messages larger than 255 bytes
+     */
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    public boolean hasFlags() {
+        return flags != NOT_PRESENT;
+    }
+
+    /**
+     * @return the raw flags byte (as an unsigned value), or {@link #NOT_PRESENT}
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    public void setFlags(int flags) {
+        this.flags = flags;
+    }
+
+    /**
+     * @return the QoS in the flags, where 0b11 is reported as {@link MqttsnConstants#QoSM1}, or {@link #NOT_PRESENT}
+     * if the message does not carry flags. Since -1 is a valid QoS, check {@link #hasFlags()} first.
+     */
+    public int getQoS() {
+        if(!hasFlags()) return NOT_PRESENT;
+        int QoS = (flags & 0x60) >> 5;
+        return QoS == 3 ? MqttsnConstants.QoSM1 : QoS;
+    }
+
+    public int getTopicIdType() {
+        return hasFlags() ? flags & 0x03 : NOT_PRESENT;
+    }
+
+    public boolean isDupRedelivery() {
+        return hasFlags() && (flags & 0x80) != 0;
+    }
+
+    public boolean isRetainedPublish() {
+        return hasFlags() && (flags & 0x10) != 0;
+    }
+
+    public int getTopicId() {
+        return topicId;
+    }
+
+    public void setTopicId(int topicId) {
+        this.topicId = topicId;
+    }
+
+    public int getMsgId() {
+        return msgId;
+    }
+
+    public void setMsgId(int msgId) {
+        this.msgId = msgId;
+    }
+
+    @Override
+    public String toString() {
+        return "MqttsnPacketHeader{" +
+                "messageType=" + messageType +
+                ", length=" + length +
+                ", flags=" + flags +
+                ", topicId=" + topicId +
+                ", msgId=" + msgId +
+                '}';
+    }
+}
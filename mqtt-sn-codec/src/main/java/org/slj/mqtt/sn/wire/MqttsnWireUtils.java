@@ -24,6 +24,8 @@
 
 package org.slj.mqtt.sn.wire;
 
+import java.nio.ByteBuffer;
+
 public class MqttsnWireUtils {
 
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
@@ -78,6 +80,19 @@ public class MqttsnWireUtils {
         return data[0] == 0x01;
     }
 
+    public static boolean isLargeMessage(ByteBuffer buffer) {
+        return buffer.get(buffer.position()) == 0x01;
+    }
+
+    /**
+     * Read the type of the message starting at the current position of the buffer, without
+     * modifying the position of the buffer.
+     */
+    public static int readMessageType(ByteBuffer buffer) {
+        int pos = buffer.position();
+        return isLargeMessage(buffer) ? buffer.get(pos + 3) & 0xFF : buffer.get(pos + 1) & 0xFF;
+    }
+
     public static int readMessageLength(byte[] data) {
         int length = 0;
         if (isLargeMessage(data)) {
@@ -89,4 +104,21 @@ public class MqttsnWireUtils {
         }
         return length;
     }
-}
\ No newline at end of file
+
+    /**
+     * Read the length of the message starting at the current position of the buffer, without
+     * modifying the position of the buffer.
+     * @param buffer - buffer whose position marks the start of a message
+     * @return the length of the message, or -1 when there are not enough bytes remaining to read the length header
+     */
+    public static int readMessageLength(ByteBuffer buffer) {
+        int pos = buffer.position();
+        int remaining = buffer.remaining();
+        if(remaining < 1) return -1;
+        if(buffer.get(pos) == 0x01){
+            if(remaining < 3) return -1;
+            return ((buffer.get(pos + 1) & 0xFF) << 8) + (buffer.get(pos + 2) & 0xFF);
+        }
+        return buffer.get(pos) & 0xFF;
+    }
+}
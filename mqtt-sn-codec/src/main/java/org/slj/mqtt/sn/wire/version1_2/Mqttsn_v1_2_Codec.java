@@ -34,10 +34,13 @@ import org.slj.mqtt.sn.spi.IMqttsnMessage;
 import org.slj.mqtt.sn.spi.IMqttsnMessageFactory;
 import org.slj.mqtt.sn.spi.IMqttsnMessageValidator;
 import org.slj.mqtt.sn.wire.AbstractMqttsnMessage;
+import org.slj.mqtt.sn.wire.MqttsnPacketHeader;
 import org.slj.mqtt.sn.wire.MqttsnWireUtils;
 import org.slj.mqtt.sn.wire.version1_2.payload.*;
 import org.slj.mqtt.sn.wire.version2_0.payload.MqttsnConnect_V2_0;
 
+import java.nio.ByteBuffer;
+
 public class Mqttsn_v1_2_Codec extends AbstractMqttsnCodec {
 
     protected volatile IMqttsnMessageFactory messageFactory;
@@ -146,150 +149,183 @@ public class Mqttsn_v1_2_Codec extends AbstractMqttsnCodec {
 
 
 
-    protected AbstractMqttsnMessage createInstance(byte[] data)
+    @Override
+    protected void peekVariableHeader(byte[] data, MqttsnPacketHeader header) {
+        switch (header.getMessageType()) {
+            case MqttsnConstants.PUBLISH:
+            case MqttsnConstants.SUBACK:
+                header.setFlags(peekUInt8(data, header, 2));
+                header.setTopicId(peekUInt16(data, header, 3));
+                header.setMsgId(peekUInt16(data, header, 5));
+                break;
+            case MqttsnConstants.PUBACK:
+            case MqttsnConstants.REGISTER:
+            case MqttsnConstants.REGACK:
+                header.setTopicId(peekUInt16(data, header, 2));
+                header.setMsgId(peekUInt16(data, header, 4));
+                break;
+            case MqttsnConstants.SUBSCRIBE:
+            case MqttsnConstants.UNSUBSCRIBE:
+                header.setFlags(peekUInt8(data, header, 2));
+                header.setMsgId(peekUInt16(data, header, 3));
+                break;
+            case MqttsnConstants.PUBREC:
+            case MqttsnConstants.PUBREL:
+            case MqttsnConstants.PUBCOMP:
+            case MqttsnConstants.UNSUBACK:
+                header.setMsgId(peekUInt16(data, header, 2));
+                break;
+            case MqttsnConstants.CONNECT:
+            case MqttsnConstants.WILLTOPIC:
+            case MqttsnConstants.WILLTOPICUPD:
+                header.setFlags(peekUInt8(data, header, 2));
+                break;
+        }
+    }
+
+    @Override
+    protected AbstractMqttsnMessage createInstance(ByteBuffer frame, int length)
             throws MqttsnCodecException, MqttsnUnsupportedVersionException {
 
-        MqttsnSpecificationValidator.validatePacketLength(data);
+        MqttsnSpecificationValidator.validatePacketLength(length);
 
         AbstractMqttsnMessage msg = null;
-        int msgType = MqttsnWireUtils.readMessageType(data);
+        int msgType = MqttsnWireUtils.readMessageType(frame);
 
         switch (msgType) {
             case MqttsnConstants.ADVERTISE:
-                validateLengthGreaterThanOrEquals(data, 3);
+                validateLengthGreaterThanOrEquals(length, 3);
                 msg = new MqttsnAdvertise();
                 break;
             case MqttsnConstants.SEARCHGW:
-                validateLengthEquals(data, 3);
+                validateLengthEquals(length, 3);
                 msg = new MqttsnSearchGw();
                 break;
             case MqttsnConstants.GWINFO:
-                validateLengthGreaterThanOrEquals(data, 3);
+                validateLengthGreaterThanOrEquals(length, 3);
                 msg = new MqttsnGwInfo();
                 break;
             case MqttsnConstants.CONNECT:
 
                 //-- check version - version 1.2 should allow 0 in as it seems most clients send 0
                 int version = MqttsnConstants.PROTOCOL_VERSION_UNKNOWN;
-                if(data[0] == 0x01){
-                    version = data[5];
+                if(MqttsnWireUtils.isLargeMessage(frame)){
+                    version = frame.get(frame.position() + 5);
                 } else {
-                    version = data[3];
+                    version = frame.get(frame.position() + 3);
                 }
 
                 if(version != MqttsnConstants.PROTOCOL_VERSION_1_2){
                     throw new MqttsnUnsupportedVersionException("codec version mismatch ["+version+"] found non 1.2 message");
                 } else {
-                    validateLengthGreaterThanOrEquals(data, 6);
+                    validateLengthGreaterThanOrEquals(length, 6);
                     msg = new MqttsnConnect();
                 }
 
                 break;
             case MqttsnConstants.CONNACK:
-                validateLengthEquals(data, 3);
+                validateLengthEquals(length, 3);
                 msg = new MqttsnConnack();
                 break;
             case MqttsnConstants.REGISTER:
-                validateLengthGreaterThanOrEquals(data, 7);
+                validateLengthGreaterThanOrEquals(length, 7);
                 msg = new MqttsnRegister();
                 break;
             case MqttsnConstants.REGACK:
-                validateLengthEquals(data, 7);
+                validateLengthEquals(length, 7);
                 msg = new MqttsnRegack();
                 break;
             case MqttsnConstants.PUBLISH:
-                validateLengthGreaterThanOrEquals(data, 7);
+                validateLengthGreaterThanOrEquals(length, 7);
                 msg = new MqttsnPublish();
-                msg.decode(data);
                 break;
             case MqttsnConstants.PUBACK:
-                validateLengthEquals(data, 7);
-                msg = new MqttsnPuback();
+                validateLengthEquals(length, 7);
+                msg = Mqttsn_v1_2_MessageFactory.PUBACK_POOL.acquire();
                 break;
             case MqttsnConstants.PUBCOMP:
-                validateLengthEquals(data, 4);
+                validateLengthEquals(length, 4);
                 msg = new MqttsnPubcomp();
                 break;
             case MqttsnConstants.PUBREC:
-                validateLengthEquals(data, 4);
+                validateLengthEquals(length, 4);
                 msg = new MqttsnPubrec();
                 break;
             case MqttsnConstants.PUBREL:
-                validateLengthEquals(data, 4);
+                validateLengthEquals(length, 4);
                 msg = new MqttsnPubrel();
                 break;
             case MqttsnConstants.PINGREQ:
-                validateLengthGreaterThanOrEquals(data, 2);
-                msg = new MqttsnPingreq();
+                validateLengthGreaterThanOrEquals(length, 2);
+                msg = Mqttsn_v1_2_MessageFactory.PINGREQ_POOL.acquire();
                 break;
             case MqttsnConstants.PINGRESP:
-                validateLengthEquals(data, 2);
-                msg = new MqttsnPingresp();
+                validateLengthEquals(length, 2);
+                msg = Mqttsn_v1_2_MessageFactory.PINGRESP_POOL.acquire();
                 break;
             case MqttsnConstants.DISCONNECT:
-                validateLengthGreaterThanOrEquals(data, 2);
+                validateLengthGreaterThanOrEquals(length, 2);
                 msg = new MqttsnDisconnect();
                 break;
             case MqttsnConstants.SUBSCRIBE:
-                validateLengthGreaterThanOrEquals(data, 6);
+                validateLengthGreaterThanOrEquals(length, 6);
                 msg = new MqttsnSubscribe();
                 break;
             case MqttsnConstants.SUBACK:
-                validateLengthEquals(data, 8);
+                validateLengthEquals(length, 8);
                 msg = new MqttsnSuback();
                 break;
             case MqttsnConstants.UNSUBSCRIBE:
-                validateLengthGreaterThanOrEquals(data, 6);
+                validateLengthGreaterThanOrEquals(length, 6);
                 msg = new MqttsnUnsubscribe();
                 break;
             case MqttsnConstants.UNSUBACK:
-                validateLengthEquals(data, 4);
+                validateLengthEquals(length, 4);
                 msg = new MqttsnUnsuback();
                 break;
             case MqttsnConstants.WILLTOPICREQ:
-                validateLengthEquals(data, 2);
+                validateLengthEquals(length, 2);
                 msg = new MqttsnWilltopicreq();
                 break;
             case MqttsnConstants.WILLTOPIC:
-                validateLengthGreaterThanOrEquals(data, 3);
+                validateLengthGreaterThanOrEquals(length, 3);
                 msg = new MqttsnWilltopic();
                 break;
             case MqttsnConstants.WILLMSGREQ:
-                validateLengthEquals(data, 2);
+                validateLengthEquals(length, 2);
                 msg = new MqttsnWillmsgreq();
                 break;
             case MqttsnConstants.WILLMSG:
-                validateLengthGreaterThanOrEquals(data, 2);
+                validateLengthGreaterThanOrEquals(length, 2);
                 msg = new MqttsnWillmsg();
                 break;
             case MqttsnConstants.WILLTOPICUPD:
-                validateLengthGreaterThanOrEquals(data, 3);
+                validateLengthGreaterThanOrEquals(length, 3);
                 msg = new MqttsnWilltopicudp();
                 break;
             case MqttsnConstants.WILLTOPICRESP:
-                validateLengthEquals(data, 3);
+                validateLengthEquals(length, 3);
                 msg = new MqttsnWilltopicresp();
                 break;
             case MqttsnConstants.WILLMSGUPD:
-                validateLengthGreaterThanOrEquals(data, 2);
+                validateLengthGreaterThanOrEquals(length, 2);
                 msg = new MqttsnWillmsgupd();
                 break;
             case MqttsnConstants.WILLMSGRESP:
-                validateLengthEquals(data, 3);
+                validateLengthEquals(length, 3);
                 msg = new MqttsnWillmsgresp();
                 break;
             case MqttsnConstants.HELO:
-                validateLengthGreaterThanOrEquals(data, 2);
+                validateLengthGreaterThanOrEquals(length, 2);
                 msg = new MqttsnHelo();
                 break;
             case MqttsnConstants.ENCAPSMSG:
-                validateLengthGreaterThanOrEquals(data, 5);
+                validateLengthGreaterThanOrEquals(length, 5);
                 msg = new MqttsnEncapsmsg();
                 break;
             default:
                 throw new MqttsnCodecException(String.format("unknown message type [%s]", msgType));
         }
-        msg.decode(data);
         return msg;
     }
 
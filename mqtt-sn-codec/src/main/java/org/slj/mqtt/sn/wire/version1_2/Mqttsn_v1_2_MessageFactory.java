@@ -30,6 +30,7 @@ import org.slj.mqtt.sn.codec.AbstractMqttsnMessageFactory;
 import org.slj.mqtt.sn.codec.MqttsnCodecException;
 import org.slj.mqtt.sn.spi.IMqttsnMessage;
 import org.slj.mqtt.sn.spi.IMqttsnMessageFactory;
+import org.slj.mqtt.sn.wire.MqttsnMessagePool;
 import org.slj.mqtt.sn.wire.MqttsnWireUtils;
 import org.slj.mqtt.sn.wire.version1_2.payload.*;
 import org.slj.mqtt.sn.wire.version2_0.Mqttsn_v2_0_MessageFactory;
@@ -40,6 +41,11 @@ public class Mqttsn_v1_2_MessageFactory extends AbstractMqttsnMessageFactory {
     private static volatile Mqttsn_v1_2_MessageFactory instanceStrict;
     private static volatile Mqttsn_v1_2_MessageFactory instanceRelaxed;
 
+    //-- per thread pools of the high churn types, shared with the codec; only populated by release()
+    static final MqttsnMessagePool<MqttsnPuback> PUBACK_POOL = new MqttsnMessagePool<>(MqttsnPuback::new);
+    static final MqttsnMessagePool<MqttsnPingreq> PINGREQ_POOL = new MqttsnMessagePool<>(MqttsnPingreq::new);
+    static final MqttsnMessagePool<MqttsnPingresp> PINGRESP_POOL = new MqttsnMessagePool<>(MqttsnPingresp::new);
+
     protected Mqttsn_v1_2_MessageFactory(boolean strict) {
         super(strict);
     }
@@ -265,7 +271,7 @@ public class Mqttsn_v1_2_MessageFactory extends AbstractMqttsnMessageFactory {
 
     @Override
     public IMqttsnMessage createPuback(int topicId, int returnCode) throws MqttsnCodecException {
-        MqttsnPuback msg = new MqttsnPuback();
+        MqttsnPuback msg = PUBACK_POOL.acquire();
         msg.setTopicId(topicId);
         msg.setReturnCode(returnCode);
         validate(msg);
@@ -376,7 +382,7 @@ public class Mqttsn_v1_2_MessageFactory extends AbstractMqttsnMessageFactory {
     @Override
     public IMqttsnMessage createPingreq(String clientId) throws MqttsnCodecException {
 
-        MqttsnPingreq msg = new MqttsnPingreq();
+        MqttsnPingreq msg = PINGREQ_POOL.acquire();
         msg.setClientId(clientId);
         validate(msg);
         return msg;
@@ -384,7 +390,7 @@ public class Mqttsn_v1_2_MessageFactory extends AbstractMqttsnMessageFactory {
 
     @Override
     public IMqttsnMessage createPingresp() throws MqttsnCodecException {
-        MqttsnPingresp msg = new MqttsnPingresp();
+        MqttsnPingresp msg = PINGRESP_POOL.acquire();
         validate(msg);
         return msg;
     }
@@ -435,4 +441,15 @@ public class Mqttsn_v1_2_MessageFactory extends AbstractMqttsnMessageFactory {
         validate(msg);
         return msg;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void release(IMqttsnMessage message) {
+        if(message instanceof MqttsnPuback){
+            PUBACK_POOL.release((MqttsnPuback) message);
+        } else if(message instanceof MqttsnPingreq){
+            PINGREQ_POOL.release((MqttsnPingreq) message);
+        } else if(message instanceof MqttsnPingresp){
+            PINGRESP_POOL.release((MqttsnPingresp) message);
+        }
+    }
+}
@@ -44,6 +44,12 @@ public class MqttsnPingreq extends AbstractMqttsnMessage
         this.clientId = clientId;
     }
 
+    @Override
+    protected void reset() {
+        super.reset();
+        clientId = null;
+    }
+
     @Override
     public int getMessageType() {
         return MqttsnConstants.PINGREQ;
@@ -46,6 +46,12 @@ public class MqttsnPuback extends AbstractMqttsnMessage implements IMqttsnMessag
         this.topicId = topicId;
     }
 
+    @Override
+    protected void reset() {
+        super.reset();
+        topicId = 0;
+    }
+
     @Override
     public int getMessageType() {
         return MqttsnConstants.PUBACK;
@@ -30,6 +30,7 @@ import org.slj.mqtt.sn.codec.MqttsnCodecException;
 import org.slj.mqtt.sn.spi.IMqttsnMessageValidator;
 import org.slj.mqtt.sn.spi.IMqttsnPublishPacket;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class MqttsnPublish extends AbstractMqttsnMessageWithTopicData implements IMqttsnMessageValidator, IMqttsnPublishPacket {
@@ -62,6 +63,28 @@ public class MqttsnPublish extends AbstractMqttsnMessageWithTopicData implements
     }
 
 
+    @Override
+    public void decode(ByteBuffer buffer) throws MqttsnCodecException {
+        int remaining = readHeader(buffer);
+        readFlags(buffer.get());
+        setTopicData(readBytes(buffer, 2));
+        id = readUInt16(buffer);
+        data = readBytes(buffer, remaining - 5);
+    }
+
+    @Override
+    public void encode(ByteBuffer buffer) throws MqttsnCodecException {
+        int length = data.length + 7;
+        if (length > 0xFF) {
+            length += 2;
+        }
+        writeHeader(buffer, length);
+        buffer.put((byte) getMessageType());
+        buffer.put(writeFlags());
+        buffer.put(topicData);
+        writeUInt16(buffer, id);
+        buffer.put(data);
+    }
 
     @Override
     public byte[] encode() throws MqttsnCodecException {
@@ -32,10 +32,13 @@ import org.slj.mqtt.sn.codec.MqttsnUnsupportedVersionException;
 import org.slj.mqtt.sn.spi.IMqttsnMessage;
 import org.slj.mqtt.sn.spi.IMqttsnMessageFactory;
 import org.slj.mqtt.sn.wire.AbstractMqttsnMessage;
+import org.slj.mqtt.sn.wire.MqttsnPacketHeader;
 import org.slj.mqtt.sn.wire.MqttsnWireUtils;
 import org.slj.mqtt.sn.wire.version1_2.Mqttsn_v1_2_Codec;
 import org.slj.mqtt.sn.wire.version2_0.payload.*;
 
+import java.nio.ByteBuffer;
+
 public class Mqttsn_v2_0_Codec extends Mqttsn_v1_2_Codec {
 
     public Mqttsn_v2_0_Codec(boolean strict) {
@@ -119,89 +122,123 @@ public class Mqttsn_v2_0_Codec extends Mqttsn_v1_2_Codec {
     }
 
     @Override
-    protected AbstractMqttsnMessage createInstance(byte[] data) throws MqttsnCodecException, MqttsnUnsupportedVersionException {
+    protected void peekVariableHeader(byte[] data, MqttsnPacketHeader header) {
+        switch (header.getMessageType()) {
+            case MqttsnConstants.PUBLISH_M1:
+                header.setFlags(peekUInt8(data, header, 3));
+                if(header.getTopicIdType() != MqttsnConstants.TOPIC_FULL){
+                    header.setTopicId(peekUInt16(data, header, 4));
+                }
+                break;
+            case MqttsnConstants.PUBLISH:
+                //-- mirrors the layouts of MqttsnPublish_V2_0, which vary by QoS
+                header.setFlags(peekUInt8(data, header, 2));
+                if(!header.hasFlags()) break;
+                int QoS = header.getQoS();
+                int topicIdx = QoS == MqttsnConstants.QoSM1 ? 4 : QoS == MqttsnConstants.QoS0 ? 3 : 5;
+                if(QoS > MqttsnConstants.QoS0){
+                    header.setMsgId(peekUInt16(data, header, 3));
+                }
+                if(header.getTopicIdType() != MqttsnConstants.TOPIC_FULL){
+                    header.setTopicId(peekUInt16(data, header, topicIdx));
+                }
+                break;
+            case MqttsnConstants.PUBACK:
+                header.setMsgId(peekUInt16(data, header, 2));
+                break;
+            case MqttsnConstants.REGACK:
+                header.setFlags(peekUInt8(data, header, 2));
+                header.setTopicId(peekUInt16(data, header, 3));
+                header.setMsgId(peekUInt16(data, header, 5));
+                break;
+            default:
+                super.peekVariableHeader(data, header);
+        }
+    }
+
+    @Override
+    protected AbstractMqttsnMessage createInstance(ByteBuffer frame, int length)
+            throws MqttsnCodecException, MqttsnUnsupportedVersionException {
 
-        MqttsnSpecificationValidator.validatePacketLength(data);
+        MqttsnSpecificationValidator.validatePacketLength(length);
 
         AbstractMqttsnMessage msg;
-        int msgType = MqttsnWireUtils.readMessageType(data);
+        int msgType = MqttsnWireUtils.readMessageType(frame);
 
         switch (msgType) {
             case MqttsnConstants.AUTH:
-                validateLengthGreaterThanOrEquals(data, 5);
+                validateLengthGreaterThanOrEquals(length, 5);
                 msg = new MqttsnAuth();
                 break;
             case MqttsnConstants.CONNECT:
                 //-- check version
                 int version = MqttsnConstants.PROTOCOL_VERSION_UNKNOWN;
-                if(data[0] == 0x01){
-                    version = data[5];
+                if(MqttsnWireUtils.isLargeMessage(frame)){
+                    version = frame.get(frame.position() + 5);
                 } else {
-                    version = data[3];
+                    version = frame.get(frame.position() + 3);
                 }
 
                 if(version != MqttsnConstants.PROTOCOL_VERSION_2_0){
                     throw new MqttsnUnsupportedVersionException("codec version mismatch ["+version+"] found non 2.0 message");
                 } else {
-                    validateLengthGreaterThanOrEquals(data, 12);
+                    validateLengthGreaterThanOrEquals(length, 12);
                     msg = new MqttsnConnect_V2_0();
                 }
                 break;
             case MqttsnConstants.CONNACK:
-                validateLengthGreaterThanOrEquals(data, 7);
+                validateLengthGreaterThanOrEquals(length, 7);
                 msg = new MqttsnConnack_V2_0();
                 break;
             case MqttsnConstants.REGACK:
-                validateLengthEquals(data, 8);
+                validateLengthEquals(length, 8);
                 msg = new MqttsnRegack_V2_0();
                 break;
             case MqttsnConstants.PUBLISH:
             case MqttsnConstants.PUBLISH_M1:
-                validateLengthGreaterThanOrEquals(data, 6);
+                validateLengthGreaterThanOrEquals(length, 6);
                 msg = new MqttsnPublish_V2_0();
-                msg.decode(data);
                 break;
             case MqttsnConstants.PUBACK:
-                validateLengthEquals(data, 5);
-                msg = new MqttsnPuback_V2_0();
+                validateLengthEquals(length, 5);
+                msg = Mqttsn_v2_0_MessageFactory.PUBACK_POOL.acquire();
                 break;
             case MqttsnConstants.PINGREQ:
-                validateLengthGreaterThanOrEquals(data, 2);
-                msg = new MqttsnPingreq_V2_0();
+                validateLengthGreaterThanOrEquals(length, 2);
+                msg = Mqttsn_v2_0_MessageFactory.PINGREQ_POOL.acquire();
                 break;
             case MqttsnConstants.PINGRESP:
-                validateLengthGreaterThanOrEquals(data, 2);
-                msg = new MqttsnPingresp_V2_0();
+                validateLengthGreaterThanOrEquals(length, 2);
+                msg = Mqttsn_v2_0_MessageFactory.PINGRESP_POOL.acquire();
                 break;
             case MqttsnConstants.DISCONNECT:
-                validateLengthGreaterThanOrEquals(data, 2);
+                validateLengthGreaterThanOrEquals(length, 2);
                 msg = new MqttsnDisconnect_V2_0();
                 break;
             case MqttsnConstants.SUBSCRIBE:
-                validateLengthGreaterThanOrEquals(data, 7);
+                validateLengthGreaterThanOrEquals(length, 7);
                 msg = new MqttsnSubscribe_V2_0();
                 break;
             case MqttsnConstants.SUBACK:
-                validateLengthEquals(data, 8);
+                validateLengthEquals(length, 8);
                 msg = new MqttsnSuback_V2_0();
                 break;
             case MqttsnConstants.UNSUBSCRIBE:
-                validateLengthGreaterThanOrEquals(data, 7);
+                validateLengthGreaterThanOrEquals(length, 7);
                 msg = new MqttsnUnsubscribe_V2_0();
                 break;
             case MqttsnConstants.UNSUBACK:
-                validateLengthEquals(data, 5);
+                validateLengthEquals(length, 5);
                 msg = new MqttsnUnsuback_V2_0();
                 break;
             case MqttsnConstants.PROTECTION:
-                validateLengthGreaterThanOrEquals(data, 18);
+                validateLengthGreaterThanOrEquals(length, 18);
                 msg = new MqttsnProtection();
                 break;
             default:
-                msg = super.createInstance(data);
+                msg = super.createInstance(frame, length);
                 break;
         }
-        msg.decode(data);
         return msg;
     }
 
@@ -30,6 +30,7 @@ import org.slj.mqtt.sn.codec.MqttsnCodecException;
 import org.slj.mqtt.sn.spi.IMqttsnMessage;
 import org.slj.mqtt.sn.spi.IMqttsnMessageFactory;
 import org.slj.mqtt.sn.spi.IProtectionScheme;
+import org.slj.mqtt.sn.wire.MqttsnMessagePool;
 import org.slj.mqtt.sn.wire.version1_2.Mqttsn_v1_2_MessageFactory;
 import org.slj.mqtt.sn.wire.version2_0.payload.*;
 
@@ -39,6 +40,11 @@ public class Mqttsn_v2_0_MessageFactory extends Mqttsn_v1_2_MessageFactory imple
     private static volatile Mqttsn_v2_0_MessageFactory instanceStrict;
     private static volatile Mqttsn_v2_0_MessageFactory instanceRelaxed;
 
+    //-- per thread pools of the high churn types, shared with the codec; only populated by release()
+    static final MqttsnMessagePool<MqttsnPuback_V2_0> PUBACK_POOL = new MqttsnMessagePool<>(MqttsnPuback_V2_0::new);
+    static final MqttsnMessagePool<MqttsnPingreq_V2_0> PINGREQ_POOL = new MqttsnMessagePool<>(MqttsnPingreq_V2_0::new);
+    static final MqttsnMessagePool<MqttsnPingresp_V2_0> PINGRESP_POOL = new MqttsnMessagePool<>(MqttsnPingresp_V2_0::new);
+
 
     protected Mqttsn_v2_0_MessageFactory(boolean strict) {
         super(strict);
@@ -166,7 +172,7 @@ public class Mqttsn_v2_0_MessageFactory extends Mqttsn_v1_2_MessageFactory imple
 
     @Override
     public IMqttsnMessage createPuback(int topicId, int returnCode) throws MqttsnCodecException {
-        MqttsnPuback_V2_0 msg = new MqttsnPuback_V2_0();
+        MqttsnPuback_V2_0 msg = PUBACK_POOL.acquire();
         msg.setReturnCode(returnCode);
         validate(msg);
         return msg;
@@ -259,7 +265,7 @@ public class Mqttsn_v2_0_MessageFactory extends Mqttsn_v1_2_MessageFactory imple
 
     @Override
     public IMqttsnMessage createPingreq(String clientId) throws MqttsnCodecException {
-        MqttsnPingreq_V2_0 msg = new MqttsnPingreq_V2_0();
+        MqttsnPingreq_V2_0 msg = PINGREQ_POOL.acquire();
         msg.setClientId(clientId);
         msg.setMaxMessages(0);
         validate(msg);
@@ -268,7 +274,7 @@ public class Mqttsn_v2_0_MessageFactory extends Mqttsn_v1_2_MessageFactory imple
 
     @Override
     public IMqttsnMessage createPingresp() throws MqttsnCodecException {
-        MqttsnPingresp_V2_0 msg = new MqttsnPingresp_V2_0();
+        MqttsnPingresp_V2_0 msg = PINGRESP_POOL.acquire();
         msg.setMessagesRemaining(0);
         validate(msg);
         return msg;
@@ -318,4 +324,17 @@ public class Mqttsn_v2_0_MessageFactory extends Mqttsn_v1_2_MessageFactory imple
         msg.setEncapsulatedPacket(encapsulatedPacket);
         return msg;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void release(IMqttsnMessage message) {
+        if(message instanceof MqttsnPuback_V2_0){
+            PUBACK_POOL.release((MqttsnPuback_V2_0) message);
+        } else if(message instanceof MqttsnPingreq_V2_0){
+            PINGREQ_POOL.release((MqttsnPingreq_V2_0) message);
+        } else if(message instanceof MqttsnPingresp_V2_0){
+            PINGRESP_POOL.release((MqttsnPingresp_V2_0) message);
+        } else {
+            super.release(message);
+        }
+    }
+}
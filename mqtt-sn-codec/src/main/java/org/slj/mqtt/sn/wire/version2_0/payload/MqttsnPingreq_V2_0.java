@@ -35,6 +35,13 @@ public class MqttsnPingreq_V2_0 extends AbstractMqttsnMessage implements IMqttsn
     protected int maxMessages = 0;
     protected String clientId;
 
+    @Override
+    protected void reset() {
+        super.reset();
+        maxMessages = 0;
+        clientId = null;
+    }
+
     @Override
     public int getMessageType() {
         return MqttsnConstants.PINGREQ;
@@ -34,6 +34,12 @@ public class MqttsnPingresp_V2_0 extends AbstractMqttsnMessage implements IMqtts
 
     protected int messagesRemaining = 0;
 
+    @Override
+    protected void reset() {
+        super.reset();
+        messagesRemaining = 0;
+    }
+
     @Override
     public int getMessageType() {
         return MqttsnConstants.PINGRESP;
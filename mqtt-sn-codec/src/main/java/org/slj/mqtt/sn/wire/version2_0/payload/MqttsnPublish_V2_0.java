@@ -32,6 +32,7 @@ import org.slj.mqtt.sn.spi.IMqttsnPublishPacket;
 import org.slj.mqtt.sn.wire.AbstractMqttsnMessage;
 import org.slj.mqtt.sn.wire.MqttsnWireUtils;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class MqttsnPublish_V2_0 extends AbstractMqttsnMessage implements IMqttsnMessageValidator, IMqttsnPublishPacket {
@@ -211,6 +212,99 @@ public class MqttsnPublish_V2_0 extends AbstractMqttsnMessage implements IMqttsn
         }
     }
 
+    @Override
+    public void decode(ByteBuffer buffer) throws MqttsnCodecException {
+
+        int pos = buffer.position();
+        boolean isPublishM1 = MqttsnWireUtils.readMessageType(buffer) == MqttsnConstants.PUBLISH_M1;
+        int headerLength = MqttsnWireUtils.isLargeMessage(buffer) ? 4 : 2;
+        byte flags = buffer.get(pos + headerLength + (isPublishM1 ? 1 : 0));
+        if(!isPublishM1 && (flags & 0x60) == 0x60){
+            //-- a QoS -1 publish on the normal type uses the limited layout offset from the flags; leave that to the array form
+            super.decode(buffer);
+            return;
+        }
+
+        int remaining = readHeader(buffer);
+        if(isPublishM1){
+            protocolVersion = (short) (buffer.get() & 0xFF);
+            remaining--;
+        }
+        readFlags(buffer.get());
+        remaining--;
+        int qos = getQoS();
+        if(isPublishM1 && qos != MqttsnConstants.QoSM1){
+            throw new MqttsnCodecException("invalid QoS detected ("+qos+") for PUBLISH_M1 packet type");
+        }
+
+        //-- packet id format
+        if(qos != MqttsnConstants.QoSM1 && qos != MqttsnConstants.QoS0){
+            id = readUInt16(buffer);
+            remaining -= 2;
+        }
+
+        if(topicIdType == MqttsnConstants.TOPIC_FULL){
+            //first 2 bytes of payload are topic length
+            topicLength = readUInt16(buffer);
+            remaining -= 2;
+        } else {
+            topicLength = 2;
+        }
+        setTopicData(readBytes(buffer, topicLength));
+        data = readBytes(buffer, remaining - topicLength);
+    }
+
+    @Override
+    public void encode(ByteBuffer buffer) throws MqttsnCodecException {
+
+        int qos = getQoS();
+        int length = data.length + topicLength - 2;
+        if(qos == MqttsnConstants.QoSM1){
+            length += 6;
+        } else if (qos == MqttsnConstants.QoS0) {
+            length += 5;
+        } else {
+            length += 7;
+        }
+
+        //-- only write in place when the topic data fills exactly the space given to it by the length
+        int topicBytes = topicIdType == MqttsnConstants.TOPIC_FULL ? topicData.length : 2;
+        if(topicBytes != topicLength){
+            super.encode(buffer);
+            return;
+        }
+
+        if ((length) > 0xFF) {
+            length += 2;
+        }
+        writeHeader(buffer, length);
+        buffer.put((byte) getMessageType());
+
+        if(qos == MqttsnConstants.QoSM1){
+            //write the protocolVersion
+            buffer.put((byte) protocolVersion);
+        }
+
+        buffer.put(writeFlags());
+
+        //-- encode the packetid for varient 2 packet types
+        if(qos >= 1){
+            writeUInt16(buffer, id);
+        }
+
+        if(topicIdType == MqttsnConstants.TOPIC_FULL){
+            topicLength = topicLength == 0 ? topicIdType == MqttsnConstants.TOPIC_FULL ? topicData.length : 2 : 2;
+            writeUInt16(buffer, topicLength);
+            buffer.put(topicData);
+        }
+        else{
+            buffer.put(topicData[0]);
+            buffer.put(topicData[1]);
+        }
+
+        buffer.put(data);
+    }
+
     @Override
     public byte[] encode() throws MqttsnCodecException {
 
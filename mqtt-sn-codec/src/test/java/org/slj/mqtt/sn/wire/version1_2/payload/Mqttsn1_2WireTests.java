@@ -33,8 +33,10 @@ import org.slj.mqtt.sn.codec.MqttsnCodecs;
 import org.slj.mqtt.sn.spi.IMqttsnCodec;
 import org.slj.mqtt.sn.spi.IMqttsnMessage;
 import org.slj.mqtt.sn.spi.IMqttsnMessageFactory;
+import org.slj.mqtt.sn.wire.MqttsnPacketHeader;
 import org.slj.mqtt.sn.wire.MqttsnWireUtils;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.BitSet;
 
@@ -402,9 +404,101 @@ public class Mqttsn1_2WireTests {
         byte[] reencoded = codec.encode(decoded);
         Assert.assertArrayEquals("binary content should match", arr, reencoded);
 
+        //-- the buffer forms must be wire compatible with the array forms
+        testBufferWireMessage(message, arr);
 
+        //-- the header peek must agree with the full decode
+        testPeekWireMessage(message, arr);
     }
 
+    protected void testPeekWireMessage(IMqttsnMessage message, byte[] arr) throws MqttsnCodecException {
+
+        MqttsnPacketHeader header = codec.peek(arr);
+        Assert.assertEquals("peeked type should match", MqttsnWireUtils.readMessageType(arr), header.getMessageType());
+        Assert.assertEquals("peeked length should match", arr.length, header.getLength());
+        if(header.getMsgId() != MqttsnPacketHeader.NOT_PRESENT){
+            Assert.assertEquals("peeked msgId should match", message.getId(), header.getMsgId());
+        }
+        if(codec.isPublish(message)){
+            Assert.assertTrue("publish should carry flags", header.hasFlags());
+            Assert.assertEquals("peeked QoS should match", codec.getQoS(message, false), header.getQoS());
+        }
+    }
+
+
+    protected void testBufferWireMessage(IMqttsnMessage message, byte[] arr) throws MqttsnCodecException {
+
+        //-- encode into a buffer surrounded by unrelated data
+        ByteBuffer buffer = ByteBuffer.allocate(arr.length + 8);
+        buffer.put((byte) 0xFF);
+        codec.encode(message, buffer);
+        Assert.assertEquals("buffer should be positioned after the message", arr.length + 1, buffer.position());
+        buffer.put((byte) 0xFF);
+        buffer.flip();
+        buffer.get();
+
+        byte[] encoded = new byte[arr.length];
+        buffer.duplicate().get(encoded);
+        Assert.assertArrayEquals("binary content should match", arr, encoded);
+
+        IMqttsnMessage decoded = codec.decode(buffer);
+        Assert.assertEquals("buffer should be positioned after the message", arr.length + 1, buffer.position());
+        Assert.assertEquals("message content should match", message.toString(), decoded.toString());
+        Assert.assertArrayEquals("binary content should match", arr, codec.encode(decoded));
+
+        //-- and the same via a direct buffer
+        ByteBuffer direct = ByteBuffer.allocateDirect(arr.length);
+        codec.encode(decoded, direct);
+        Assert.assertFalse("message should fill the buffer", direct.hasRemaining());
+        direct.flip();
+        Assert.assertEquals("message content should match", message.toString(), codec.decode(direct).toString());
+    }
+
+    @Test
+    public void testDecodeConsecutiveMessagesFromBuffer() throws MqttsnCodecException {
+
+        IMqttsnMessage publish = factory.createPublish(MqttsnConstants.QoS1, false, false,
+                MqttsnConstants.TOPIC_TYPE.PREDEFINED, _alias, payload(MqttsnConstants.MAX_PUBLISH_LENGTH));
+        publish.setId(_msgId);
+        IMqttsnMessage puback = factory.createPuback(_alias, MqttsnConstants.RETURN_CODE_ACCEPTED);
+        puback.setId(_msgId);
+        IMqttsnMessage pingresp = factory.createPingresp();
+
+        ByteBuffer buffer = ByteBuffer.allocate(MqttsnConstants.UNSIGNED_MAX_16 + 64);
+        codec.encode(publish, buffer);
+        codec.encode(puback, buffer);
+        codec.encode(pingresp, buffer);
+        buffer.flip();
+
+        Assert.assertEquals(publish.toString(), codec.decode(buffer).toString());
+        Assert.assertEquals(puback.toString(), codec.decode(buffer).toString());
+        Assert.assertEquals(pingresp.toString(), codec.decode(buffer).toString());
+        Assert.assertFalse("all messages should have been consumed", buffer.hasRemaining());
+    }
+
+    @Test
+    public void testEncodeBufferTooSmall() throws MqttsnCodecException {
+
+        IMqttsnMessage message = factory.createPublish(MqttsnConstants.QoS0, false, false,
+                MqttsnConstants.TOPIC_TYPE.PREDEFINED, _alias, payload(64));
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        buffer.put((byte) 0xFF);
+        try {
+            codec.encode(message, buffer);
+            Assert.fail("encode should fail when the buffer has insufficient space");
+        } catch(MqttsnCodecException e){
+            Assert.assertEquals("buffer position should be unchanged", 1, buffer.position());
+        }
+    }
+
+    @Test(expected = MqttsnCodecException.class)
+    public void testDecodeIncompleteMessage() throws MqttsnCodecException {
+
+        IMqttsnMessage message = factory.createPublish(MqttsnConstants.QoS0, false, false,
+                MqttsnConstants.TOPIC_TYPE.PREDEFINED, _alias, payload(64));
+        byte[] arr = codec.encode(message);
+        codec.decode(ByteBuffer.wrap(arr, 0, arr.length - 1));
+    }
 
     @Test
     public void testFlags() throws MqttsnCodecException {
@@ -27,6 +27,7 @@ package org.slj.mqtt.sn.impl;
 import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
 import org.slj.mqtt.sn.spi.MqttsnException;
 import org.slj.mqtt.sn.spi.AbstractMqttsnService;
+import org.slj.mqtt.sn.utils.VirtualThreads;
 
 public abstract class AbstractMqttsnBackoffThreadService
         extends AbstractMqttsnService implements Runnable {
@@ -45,8 +46,12 @@ public abstract class AbstractMqttsnBackoffThreadService
             String name = getDaemonName();
             name = name == null ? getClass().getSimpleName().toLowerCase() : name;
             String threadName = String.format("mqtt-sn-deamon-%s-%s", name, System.identityHashCode(registry.getRuntime()));
-            t = new Thread(registry.getRuntime().getThreadGroup(), this, threadName);
-            t.setPriority(Thread.MIN_PRIORITY);
+            if(registry.getRuntime().isVirtualThreads()){
+                t = VirtualThreads.createThread(threadName, this);
+            } else {
+                t = new Thread(registry.getRuntime().getThreadGroup(), this, threadName);
+                t.setPriority(Thread.MIN_PRIORITY);
+            }
             t.setDaemon(true);
             t.start();
             t.setUncaughtExceptionHandler((t, e) ->
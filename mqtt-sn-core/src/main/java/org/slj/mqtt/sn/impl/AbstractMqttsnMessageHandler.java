@@ -25,6 +25,7 @@
 package org.slj.mqtt.sn.impl;
 
 import java.io.IOException;
+import java.util.List;
 import org.slj.mqtt.sn.MqttsnConstants;
 import org.slj.mqtt.sn.MqttsnSpecificationValidator;
 import org.slj.mqtt.sn.codec.MqttsnCodecException;
@@ -157,6 +158,10 @@ public abstract class AbstractMqttsnMessageHandler
 
             afterResponse(context, message, response);
 
+            if(registry.getOptions().isMessagePooling()){
+                releaseMessages(message, response);
+            }
+
         } catch(MqttsnException e){
             logger.warn("handled with disconnect error encountered during receive;", e);
             handleResponse(context,
@@ -167,6 +172,37 @@ public abstract class AbstractMqttsnMessageHandler
         }
     }
 
+    /**
+     * Hand the inbound message and its response back to the factory once the lifecycle has completed. Nothing is
+     * released while traffic listeners are registered, as they may retain the messages they are given.
+     */
+    protected void releaseMessages(IMqttsnMessage message, IMqttsnMessage response) {
+        List<IMqttsnTrafficListener> listeners = registry.getRuntime().getTrafficListeners();
+        if(listeners != null && !listeners.isEmpty()){
+            return;
+        }
+        IMqttsnMessageFactory factory = registry.getMessageFactory();
+        if(canRelease(message, true)){
+            factory.release(message);
+        }
+        if(response != null && canRelease(response, false)){
+            factory.release(response);
+        }
+    }
+
+    /**
+     * Only messages which are guaranteed not to be referenced after the lifecycle can be released. Inbound acks
+     * are handed to wait tokens and inbound publishes to the application, so are retained; responses created by
+     * the handler have been encoded synchronously onto the transport by this point.
+     */
+    protected boolean canRelease(IMqttsnMessage message, boolean inbound) {
+        int type = message.getMessageType();
+        if(inbound){
+            return type == MqttsnConstants.PINGREQ;
+        }
+        return type == MqttsnConstants.PINGRESP || type == MqttsnConstants.PUBACK;
+    }
+
     protected void beforeHandle(IMqttsnMessageContext context, IMqttsnMessage message) throws MqttsnException {
 
     }
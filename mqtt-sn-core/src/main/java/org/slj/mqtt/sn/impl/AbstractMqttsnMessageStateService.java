@@ -50,6 +50,8 @@ public abstract class AbstractMqttsnMessageStateService
     protected Map<IClientIdentifierContext, Long> lastMessageReceived;
     protected Map<LastIdContext, Integer> lastUsedMsgIds;
     protected Map<IClientIdentifierContext, ScheduledFuture<IMqttsnMessageQueueProcessor.RESULT>> flushOperations;
+    protected Set<IClientIdentifierContext> flushRequests;
+    protected Map<IClientIdentifierContext, Object> inflightWindows;
     protected ScheduledExecutorService executorService = null;
     protected int loopTimeout;
 
@@ -60,69 +62,72 @@ public abstract class AbstractMqttsnMessageStateService
     @Override
     public synchronized void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
         flushOperations = new HashMap<>();
+        flushRequests = new HashSet<>();
         executorService = runtime.getRuntime().createManagedScheduledExecutorService("mqtt-sn-scheduled-queue-flush-",
                 runtime.getOptions().getQueueProcessorThreadCount());
         lastUsedMsgIds = Collections.synchronizedMap(new HashMap<>());
         lastMessageReceived = Collections.synchronizedMap(new HashMap<>());
         lastMessageSent = Collections.synchronizedMap(new HashMap<>());
         lastActiveMessage = Collections.synchronizedMap(new HashMap<>());
+        inflightWindows = new ConcurrentHashMap<>();
         loopTimeout  = runtime.getOptions().getStateLoopTimeout();
         super.start(runtime);
     }
 
+    /**
+     * Schedule the queue for the context to be processed after the given delay, replacing any existing work item. The
+     * schedule and its registration happen under the work list monitor, so the task cannot observe the work list before
+     * it has been registered.
+     */
     protected void scheduleWork(IClientIdentifierContext context, int time, TimeUnit unit){
-        boolean process = !flushOperations.containsKey(context) ||
-                !flushOperations.get(context).isDone();
-        ScheduledFuture<IMqttsnMessageQueueProcessor.RESULT> future = null;
-        if(process){
-            future = executorService.schedule(() -> {
+        synchronized (flushOperations){
+            ScheduledFuture<IMqttsnMessageQueueProcessor.RESULT> future = executorService.schedule(() -> {
                         IMqttsnMessageQueueProcessor.RESULT result =
                                 IMqttsnMessageQueueProcessor.RESULT.REMOVE_PROCESS;
-                        boolean shouldProcess = !flushOperations.containsKey(context) ||
-                                !flushOperations.get(context).isDone();
+                        boolean shouldProcess;
+                        synchronized (flushOperations){
+                            shouldProcess = flushOperations.containsKey(context);
+                        }
 
                         logger.debug("!! processing scheduled work for context {} -> {}", context, shouldProcess);
 
                         if(shouldProcess){
                             result = processQueue(context);
-                            switch(result){
-                                case REMOVE_PROCESS:
-                                    synchronized (flushOperations){
-                                        flushOperations.remove(context);
-                                    }
-                                    logger.debug("removed context from work list {}", context);
-                                    break;
-                                case BACKOFF_PROCESS:
-                                    Long lastReceived = lastMessageReceived.get(context);
-                                    long delta = lastReceived == null ? 0 : System.currentTimeMillis() - lastReceived;
-                                    boolean remove = registry.getOptions().getActiveContextTimeout() < delta;
-                                    logger.debug("backoff requested for {}, activity delta is {}, remove work ? {}", context, delta, remove);
-                                    if(remove){
-                                        synchronized (flushOperations){
+                            synchronized (flushOperations){
+                                //-- a flush requested while we were processing may have arrived after the queue was
+                                //-- found empty, so it must not be dropped along with this work item
+                                boolean requested = flushRequests.remove(context);
+                                switch(result){
+                                    case REMOVE_PROCESS:
+                                        if(requested){
+                                            scheduleWork(context, 1, TimeUnit.MILLISECONDS);
+                                        } else {
                                             flushOperations.remove(context);
+                                            logger.debug("removed context from work list {}", context);
                                         }
-                                    }
-                                    else {
-                                        scheduleWork(context, Math.max(100, registry.getOptions().getMinFlushTime()), TimeUnit.MILLISECONDS);
-                                    }
-                                    break;
-                                case REPROCESS:
-                                    scheduleWork(context, Math.max(1, registry.getOptions().getMinFlushTime()), TimeUnit.MILLISECONDS);
+                                        break;
+                                    case BACKOFF_PROCESS:
+                                        Long lastReceived = lastMessageReceived.get(context);
+                                        long delta = lastReceived == null ? 0 : System.currentTimeMillis() - lastReceived;
+                                        boolean remove = registry.getOptions().getActiveContextTimeout() < delta;
+                                        logger.debug("backoff requested for {}, activity delta is {}, remove work ? {}", context, delta, remove);
+                                        if(remove && !requested){
+                                            flushOperations.remove(context);
+                                        }
+                                        else {
+                                            scheduleWork(context, Math.max(100, registry.getOptions().getMinFlushTime()), TimeUnit.MILLISECONDS);
+                                        }
+                                        break;
+                                    case REPROCESS:
+                                        scheduleWork(context, Math.max(1, registry.getOptions().getMinFlushTime()), TimeUnit.MILLISECONDS);
+                                }
                             }
-                        } else {
-                            flushOperations.remove(context);
                         }
                         logger.debug("context {} flush completed with {}", context, result);
                         return result;
                     }, time, unit);
+            flushOperations.put(context, future);
         }
-
-        if(future != null){
-            synchronized (flushOperations){
-                flushOperations.put(context, future);
-            }
-        }
-
     }
 
     protected IMqttsnMessageQueueProcessor.RESULT processQueue(IClientIdentifierContext context){
@@ -136,11 +141,10 @@ public abstract class AbstractMqttsnMessageStateService
 
     @Override
     public void unscheduleFlush(IClientIdentifierContext context) {
-        ScheduledFuture<?> future = null;
-        if(flushOperations.containsKey(context)) {
-            synchronized (flushOperations) {
-                future = flushOperations.remove(context);
-            }
+        ScheduledFuture<?> future;
+        synchronized (flushOperations) {
+            flushRequests.remove(context);
+            future = flushOperations.remove(context);
         }
         if(future != null){
             future.cancel(false);
@@ -149,16 +153,39 @@ public abstract class AbstractMqttsnMessageStateService
 
     @Override
     public void scheduleFlush(IClientIdentifierContext context)  {
-        if(!flushOperations.containsKey(context) ||
-                flushOperations.get(context).isDone()){
-            
-            logger.debug("scheduling flush for {}", context);
-            if(executorService != null &&
-                    !executorService.isTerminated() && !executorService.isShutdown()){
+        if(executorService == null ||
+                executorService.isTerminated() || executorService.isShutdown()){
+            return;
+        }
+        synchronized (flushOperations){
+            ScheduledFuture<?> existing = flushOperations.get(context);
+            if(existing == null || existing.isDone()){
+                logger.debug("scheduling flush for {}", context);
                 scheduleWork(context,
                         ThreadLocalRandom.current().nextInt(1, 10), TimeUnit.MILLISECONDS);
+            } else {
+                //-- work is already pending or running, make sure it looks at the queue again before it retires
+                flushRequests.add(context);
             }
+        }
+    }
 
+    @Override
+    public void scheduleFlush(Collection<IClientIdentifierContext> contexts)  {
+        if(executorService == null ||
+                executorService.isTerminated() || executorService.isShutdown()){
+            return;
+        }
+        synchronized (flushOperations){
+            for (IClientIdentifierContext context : contexts){
+                ScheduledFuture<?> existing = flushOperations.get(context);
+                if(existing == null || existing.isDone()){
+                    scheduleWork(context,
+                            ThreadLocalRandom.current().nextInt(1, 10), TimeUnit.MILLISECONDS);
+                } else {
+                    flushRequests.add(context);
+                }
+            }
         }
     }
 
@@ -248,52 +275,51 @@ public abstract class AbstractMqttsnMessageStateService
         IMqttsnOriginatingMessageSource source = MqttsnMessageRules.isAck(message, true) ?
                 IMqttsnOriginatingMessageSource.REMOTE : IMqttsnOriginatingMessageSource.LOCAL;
 
-        int count = countInflight(context, source);
-        if(count >= registry.getOptions().getMaxMessagesInflight()) {
-            if (clientMode) {
-                int retry = 0;
-                while ((count = countInflight(context, source)) >=
-                        registry.getOptions().getMaxMessagesInflight()
-                        && ++retry <
-                        registry.getOptions().getMaxErrorRetries()) {
-                    try {
-                        long sleep = MqttsnUtils.getExponentialBackoff(retry, true);
-                        logger.debug("exp. backoff ({}) for client send {}, max inflight reached for direction {} ",
-                                sleep, message, source);
-                        Thread.sleep(sleep);
-                    } catch(Exception e){
+        //-- the window is checked and the slot taken under the window monitor of the context, so concurrent senders
+        //-- cannot each find the same slot free
+        MqttsnWaitToken token = null;
+        boolean requiresResponse = MqttsnMessageRules.requiresResponse(getRegistry().getCodec(), message);
+        Object window = inflightWindows.computeIfAbsent(context, c -> new Object());
+        boolean reserve = false;
+        while(true) {
+            synchronized (window){
+                int count;
+                if(reserve || (count = countInflight(context, source)) < registry.getOptions().getMaxMessagesInflight()){
+                    if(requiresResponse){
+                        token = markInflight(source, context, message, queuedPublishMessage);
                     }
+                    break;
+                }
+                if (!clientMode) {
+                    logger.warn("{} max inflight message number reached ({}), fail-fast for sending {} - {}", context, count, source, message);
+                    throw new MqttsnExpectationFailedException("max number of inflight messages reached for " + source);
                 }
 
-                Optional<InflightMessage> blockingMessage =
-                        getInflightMessages(context, source).values().stream().findFirst();
-                if (blockingMessage.isPresent()) {
-                    MqttsnWaitToken token = blockingMessage.get().getToken();
-                    if (token != null) {
-                        waitForCompletion(context, token);
-                        if (!token.isError() && token.isComplete()) {
-                            //-- recurse point
-                            return sendMessageInternal(context, message, queuedPublishMessage);
-                        } else {
-                            logger.warn("unable to send, partial send in progress with token {}", token);
-                            throw new MqttsnExpectationFailedException("unable to send message, partial send in progress");
-                        }
-                    }
+                //-- block until an acknowledgement (in any order) or an expiry frees a slot in the window
+                logger.debug("inflight window full ({}) for client send {}, waiting on window for direction {}",
+                        count, message, source);
+                if(awaitInflightWindow(context, source, registry.getOptions().getMaxWait())){
+                    continue;
                 }
-            } else {
-                logger.warn("{} max inflight message number reached ({}), fail-fast for sending {} - {}", context, count, source, message);
-                throw new MqttsnExpectationFailedException("max number of inflight messages reached for " + source);
+            }
+
+            //-- waited on outside the window monitor, which is needed to signal the slot free
+            Optional<InflightMessage> blockingMessage =
+                    getInflightMessages(context, source).values().stream().findFirst();
+            MqttsnWaitToken blockingToken = blockingMessage.map(InflightMessage::getToken).orElse(null);
+            if (blockingToken == null) {
+                reserve = true;
+                continue;
+            }
+            waitForCompletion(context, blockingToken);
+            if (blockingToken.isError() || !blockingToken.isComplete()) {
+                logger.warn("unable to send, partial send in progress with token {}", blockingToken);
+                throw new MqttsnExpectationFailedException("unable to send message, partial send in progress");
             }
         }
 
         try {
 
-            MqttsnWaitToken token = null;
-            boolean requiresResponse;
-            if((requiresResponse = MqttsnMessageRules.requiresResponse(getRegistry().getCodec(), message))){
-                token = markInflight(source, context, message, queuedPublishMessage);
-            }
-
             logger.debug("mqtt-sn state [{} -> {}] sending message {}, marking inflight ? {}",
                                 registry.getOptions().getContextId(), context, message, requiresResponse);
 
@@ -313,6 +339,15 @@ public abstract class AbstractMqttsnMessageStateService
                     }
                     lastMessageSent.put(context, time);
                     confirmPublish(op);
+
+                    //-- nothing will acknowledge a QoS 0 publish so its token completes once it is on the wire
+                    MqttsnWaitToken sent = queuedPublishMessage.getToken();
+                    if(sent != null){
+                        synchronized (sent){
+                            sent.markComplete();
+                            sent.notifyAll();
+                        }
+                    }
                 };
             } else {
                 callback = () -> {
@@ -619,6 +654,10 @@ public abstract class AbstractMqttsnMessageStateService
         }
 
         addInflightMessage(context, msgId, inflight);
+        final Integer packetId = msgId;
+        inflight.setTimeout(registry.getTimerService().schedule(
+                () -> expireInflight(context, source, packetId, inflight),
+                registry.getOptions().getMaxTimeInflight(), TimeUnit.MILLISECONDS));
         logger.debug("[{} - {}] marking {} message {} inflight id context {}",
                     registry.getOptions().getContextId(), context, source, message, idContext);
         return inflight.getToken();
@@ -654,6 +693,78 @@ public abstract class AbstractMqttsnMessageStateService
         clearInflightInternal(context, 0);
     }
 
+    @Override
+    public boolean cancelInflight(IClientIdentifierContext context, MqttsnWaitToken token) throws MqttsnException {
+        boolean removed = false;
+        Map<Integer, InflightMessage> messages = getInflightMessages(context, IMqttsnOriginatingMessageSource.LOCAL);
+        if(messages != null && !messages.isEmpty()){
+            List<Map.Entry<Integer, InflightMessage>> entries;
+            synchronized (messages){
+                entries = new ArrayList<>(messages.entrySet());
+            }
+            for (Map.Entry<Integer, InflightMessage> entry : entries){
+                InflightMessage inflight = entry.getValue();
+                if(inflight != null && inflight.getToken() == token &&
+                        removeInflight(context, IMqttsnOriginatingMessageSource.LOCAL, entry.getKey(), inflight)){
+                    logger.info("cancelled inflight message {} for {}", inflight.getMessage(), context);
+                    signalInflightWindow(context);
+                    removed = true;
+                    break;
+                }
+            }
+        }
+        synchronized (token){
+            if(!token.isComplete()){
+                token.markError("cancelled whilst awaiting response");
+            }
+            token.notifyAll();
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean awaitCanSend(IClientIdentifierContext context, long waitTime) throws MqttsnException {
+        return awaitInflightWindow(context, IMqttsnOriginatingMessageSource.LOCAL, waitTime);
+    }
+
+    /**
+     * Block the calling thread until the number of messages inflight in the given direction drops below the
+     * configured maximum, or the wait time elapses. Waiters are woken by {@link #signalInflightWindow(IClientIdentifierContext)}
+     * whenever a message leaves the inflight space for the context.
+     *
+     * @return true if there is capacity in the window
+     */
+    protected boolean awaitInflightWindow(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, long waitTime) throws MqttsnException {
+        int max = registry.getOptions().getMaxMessagesInflight();
+        Object window = inflightWindows.computeIfAbsent(context, c -> new Object());
+        long deadline = System.currentTimeMillis() + waitTime;
+        try {
+            synchronized (window){
+                long remaining;
+                while(countInflight(context, source) >= max &&
+                        (remaining = deadline - System.currentTimeMillis()) > 0){
+                    window.wait(remaining);
+                }
+                return countInflight(context, source) < max;
+            }
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new MqttsnRuntimeException(e);
+        }
+    }
+
+    /**
+     * Wake any threads waiting for capacity in the inflight window of the context
+     */
+    protected void signalInflightWindow(IClientIdentifierContext context){
+        Object window = inflightWindows.get(context);
+        if(window != null){
+            synchronized (window){
+                window.notifyAll();
+            }
+        }
+    }
+
     @Override
     public void clear(IClientIdentifierContext context) throws MqttsnException {
         logger.info("clearing down message state for context {}", context);
@@ -663,6 +774,8 @@ public abstract class AbstractMqttsnMessageStateService
         lastMessageSent.remove(context);
         lastUsedMsgIds.remove(LastIdContext.from(context, IMqttsnOriginatingMessageSource.REMOTE));
         lastUsedMsgIds.remove(LastIdContext.from(context, IMqttsnOriginatingMessageSource.LOCAL));
+        signalInflightWindow(context);
+        inflightWindows.remove(context);
     }
 
     protected void clearInflightInternal(IClientIdentifierContext context, long evictionTime) throws MqttsnException {
@@ -684,11 +797,33 @@ public abstract class AbstractMqttsnMessageStateService
                         if(evictionTime == 0 ||
                                 f.getTime() + registry.getOptions().getMaxTimeInflight() < evictionTime){
                             messageItr.remove();
+                            f.cancelTimeout();
                             reapInflight(context, f);
                         }
                     }
                 }
             }
+            signalInflightWindow(context);
+        }
+    }
+
+    /**
+     * Called from the timer when a message has been inflight for the maximum allowed time. The message is only reaped
+     * if the same instance is still inflight under its packet id, it may since have been confirmed or replaced.
+     */
+    protected void expireInflight(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source,
+                                  Integer packetId, InflightMessage inflight) {
+        if(source == IMqttsnOriginatingMessageSource.REMOTE &&
+                !registry.getOptions().isReapReceivingMessages()){
+            return;
+        }
+        try {
+            if(removeInflight(context, source, packetId, inflight)){
+                signalInflightWindow(context);
+                reapInflight(context, inflight);
+            }
+        } catch(MqttsnException e){
+            logger.warn("error occurred expiring inflight message;", e);
         }
     }
 
@@ -801,6 +936,12 @@ public abstract class AbstractMqttsnMessageStateService
 
     protected abstract void addInflightMessage(IClientIdentifierContext context, Integer packetId, InflightMessage message) throws MqttsnException ;
 
+    /**
+     * Remove the inflight message only if the given instance is the one held against the packet id
+     * @return true if the message was removed
+     */
+    protected abstract boolean removeInflight(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, Integer packetId, InflightMessage expected) throws MqttsnException ;
+
     protected abstract InflightMessage getInflightMessage(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, Integer packetId) throws MqttsnException ;
 
     protected abstract Map<Integer, InflightMessage>  getInflightMessages(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source) throws MqttsnException;
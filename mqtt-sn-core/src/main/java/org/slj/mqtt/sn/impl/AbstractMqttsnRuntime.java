@@ -38,6 +38,7 @@ import org.slj.mqtt.sn.model.session.ISession;
 import org.slj.mqtt.sn.spi.*;
 import org.slj.mqtt.sn.utils.TopicPath;
 import org.slj.mqtt.sn.utils.Environment;
+import org.slj.mqtt.sn.utils.VirtualThreads;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -70,6 +71,7 @@ public abstract class AbstractMqttsnRuntime implements Thread.UncaughtExceptionH
     private long startedAt;
     private final Object monitor = new Object();
     protected volatile boolean running = false;
+    private volatile boolean virtualThreads = false;
 
     public final void start(IMqttsnRuntimeRegistry reg) throws MqttsnException {
         start(reg, false);
@@ -98,6 +100,13 @@ public abstract class AbstractMqttsnRuntime implements Thread.UncaughtExceptionH
 
             running = true;
 
+            virtualThreads = registry.getOptions().isVirtualThreads();
+            if(virtualThreads && !VirtualThreads.isSupported()){
+                logger.warn("virtual threads requested but not supported by this JVM ({}), using platform threads",
+                        java.lang.System.getProperty("java.version"));
+                virtualThreads = false;
+            }
+
             generalUseExecutorService =
                     createManagedExecutorService("mqtt-sn-general-purpose-thread-",
                             reg.getOptions().getGeneralPurposeThreadCount());
@@ -346,6 +355,10 @@ public abstract class AbstractMqttsnRuntime implements Thread.UncaughtExceptionH
     }
 
     protected ThreadFactory createManagedThreadFactory(String name, int threadPriority){
+        if(virtualThreads){
+            //-- virtual threads have a fixed priority and no thread group
+            return VirtualThreads.createFactory(name, this);
+        }
         ThreadFactory tf = new ThreadFactory() {
             volatile int count = 0;
             @Override
@@ -377,6 +390,40 @@ public abstract class AbstractMqttsnRuntime implements Thread.UncaughtExceptionH
         return executorService;
     }
 
+    /**
+     * Create a centrally managed striped executor, each stripe is a single thread so work submitted against the same key
+     * is processed in order. When a stripe's queue reaches the back pressure limit the submitting thread blocks rather than
+     * running the task itself, since caller-runs would allow a task to overtake those already queued for its key.
+     */
+    public synchronized MqttsnStripedExecutor createManagedStripedExecutorService(String name, int threadCount){
+
+        ExecutorService[] stripes = new ExecutorService[Math.max(1, threadCount)];
+        for (int i = 0; i < stripes.length; i++){
+            BlockingQueue<Runnable> queue
+                    = new LinkedBlockingQueue<>(registry.getOptions().getQueueBackPressure());
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0,
+                    TimeUnit.MILLISECONDS, queue,
+                    createManagedThreadFactory(String.format("%s%s-", name, i), Thread.MIN_PRIORITY + 1),
+                    (r, executor) -> {
+                        if(executor.isShutdown()){
+                            throw new RejectedExecutionException("stripe has been shutdown");
+                        }
+                        try {
+                            executor.getQueue().put(r);
+                        } catch(InterruptedException e){
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("interrupted waiting for stripe capacity", e);
+                        }
+                    });
+            managedExecutorServices.add(stripes[i]);
+        }
+        return new MqttsnStripedExecutor(stripes);
+    }
+
+    public void closeManagedExecutorService(MqttsnStripedExecutor executor){
+        executor.getStripes().forEach(this::closeManagedExecutorService);
+    }
+
     /**
      * Create a centrally managed scheduled executor service with managed group
      */
@@ -410,6 +457,13 @@ public abstract class AbstractMqttsnRuntime implements Thread.UncaughtExceptionH
         submit(generalUseExecutorService, r);
     }
 
+    /**
+     * @return - true when the managed executors and daemon services of this runtime are using virtual threads
+     */
+    public boolean isVirtualThreads(){
+        return virtualThreads;
+    }
+
     /**
      * @return - The thread group for this runtime
      */
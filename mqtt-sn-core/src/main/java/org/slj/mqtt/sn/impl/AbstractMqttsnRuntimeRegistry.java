@@ -72,6 +72,11 @@ public abstract class AbstractMqttsnRuntimeRegistry implements IMqttsnRuntimeReg
 
         //ensure the storage system is added to managed lifecycle
         withService(storageService);
+
+        //-- services schedule their deadlines on the timer, so one is always available
+        if(!getOptionalService(IMqttsnTimerService.class).isPresent()){
+            withTimerService(new MqttsnHashedWheelTimer());
+        }
     }
 
     protected void initNetworkRegistry(){
@@ -186,6 +191,11 @@ public abstract class AbstractMqttsnRuntimeRegistry implements IMqttsnRuntimeReg
         return this;
     }
 
+    public AbstractMqttsnRuntimeRegistry withTimerService(IMqttsnTimerService timerService){
+        withService(timerService);
+        return this;
+    }
+
     @Override
     public MqttsnOptions getOptions() {
         return options;
@@ -332,6 +342,11 @@ public abstract class AbstractMqttsnRuntimeRegistry implements IMqttsnRuntimeReg
         return getOptionalService(IMqttsnDeadLetterQueue.class).orElse(null);
     }
 
+    @Override
+    public IMqttsnTimerService getTimerService() {
+        return getService(IMqttsnTimerService.class);
+    }
+
     @Override
     public List<IMqttsnService> getServices() {
         List<IMqttsnService> sorted = new ArrayList<>();
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.slj.mqtt.sn.impl;
+
+import org.slj.mqtt.sn.net.MqttsnTcpOptions;
+import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
+import org.slj.mqtt.sn.spi.MqttsnException;
+
+import javax.net.ssl.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.*;
+import java.security.cert.CertificateException;
+import java.util.Enumeration;
+
+/**
+ * Base for the TCP IP transports, which can run in either client or server mode and optionally use
+ * SSL (TLS) for secure communication.
+ */
+public abstract class AbstractMqttsnTcpTransport
+        extends AbstractMqttsnTransport {
+
+    protected final MqttsnTcpOptions options;
+    protected boolean clientMode = false;
+    protected final Object monitor = new Object();
+
+    public AbstractMqttsnTcpTransport(MqttsnTcpOptions options, boolean clientMode) {
+        this.options = options;
+        this.clientMode = clientMode;
+    }
+
+    @Override
+    public synchronized void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
+        try {
+            super.start(runtime);
+            options.processFromSystemPropertyOverrides();
+            running = false;
+            if(clientMode){
+                logger.info("running in client mode, establishing tcp connection...");
+                connectClient();
+            } else {
+                logger.info("running in server mode, establishing tcp acceptors...");
+                startServer();
+            }
+            running = true;
+            synchronized (monitor){
+                monitor.notifyAll();
+            }
+        } catch(Exception e){
+            running = false;
+            throw new MqttsnException(e);
+        }
+    }
+
+    protected abstract void connectClient() throws Exception;
+
+    protected abstract void startServer() throws Exception;
+
+    protected SSLContext initSSLContext()
+            throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException, UnrecoverableKeyException, KeyManagementException {
+
+        String keyStorePath = options.getKeyStorePath();
+        String trustStorePath = options.getTrustStorePath();
+        logger.info("initting SSL context with keystore {}, truststore {}", keyStorePath, trustStorePath);
+
+        //-- keystore
+        KeyStore keyStore = null;
+        KeyManager[] keyManagers = null;
+        if(keyStorePath != null){
+            File f = new File(keyStorePath);
+            if(!f.exists() || !f.canRead())
+                throw new KeyStoreException("unable to read keyStore " + keyStorePath);
+
+            keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            KeyManagerFactory kmf = KeyManagerFactory
+                    .getInstance(KeyManagerFactory.getDefaultAlgorithm());
+
+            try(InputStream keyStoreData = new FileInputStream(f)) {
+                char[] password = options.getKeyStorePassword().toCharArray();
+                keyStore.load(keyStoreData, password);
+                Enumeration<String> aliases = keyStore.aliases();
+                while(aliases.hasMoreElements()){
+                    String el = aliases.nextElement();
+                    logger.info("keystore contains alias {}", el);
+                }
+                kmf.init(keyStore, password);
+                keyManagers = kmf.getKeyManagers();
+            }
+        }
+
+        TrustManager[] trustManagers = null;
+        if(trustStorePath == null){
+            logger.warn("!! ssl operating in trust-all mode, do not use this in production, nominate a trust store !!");
+            TrustManager trustAllCerts = new X509TrustManager() {
+                public java.security.cert.X509Certificate[] getAcceptedIssuers() {
+                    return null;
+                }
+                public void checkClientTrusted(java.security.cert.X509Certificate[] certs, String authType) {
+                }
+                public void checkServerTrusted(java.security.cert.X509Certificate[] certs, String authType) {
+                }
+            };
+            trustManagers = new TrustManager[] { trustAllCerts };
+        } else {
+            File f = new File(trustStorePath);
+            if(!f.exists() || !f.canRead())
+                throw new KeyStoreException("unable to read trustStore " + trustStorePath);
+
+            KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            try(InputStream trustStoreData = new FileInputStream(f)) {
+                char[] password = options.getTrustStorePassword().toCharArray();
+                trustStore.load(trustStoreData, password);
+                Enumeration<String> aliases = keyStore.aliases();
+                while(aliases.hasMoreElements()){
+                    String el = aliases.nextElement();
+                    logger.info("truststore contains alias {}", el);
+                }
+                TrustManagerFactory tmf = TrustManagerFactory
+                        .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                tmf.init(keyStore);
+                trustManagers = tmf.getTrustManagers();
+            }
+        }
+        SSLContext ctx = SSLContext.getInstance(options.getSslAlgorithm());
+        logger.info("ssl initialised with algo {}", ctx.getProtocol());
+        logger.info("ssl initialised with JCSE provider {}", ctx.getProvider());
+        logger.info("ssl initialised with {} key manager(s)", keyManagers == null ? null : keyManagers.length);
+        logger.info("ssl initialised with {} trust manager(s)", trustManagers == null ? null : trustManagers.length);
+        ctx.init(keyManagers, trustManagers, new SecureRandom());
+//                SecureRandom.getInstanceStrong());
+        return ctx;
+
+    }
+
+    @Override
+    public void broadcast(IMqttsnMessage message) throws MqttsnException {
+        throw new UnsupportedOperationException("broadcast not supported on TCP");
+    }
+
+    @Override
+    public String getName() {
+        return "mqtt-sn-tcp";
+    }
+
+    @Override
+    public int getPort() {
+        return options.getPort();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Exposes a TCP/IP port which is optionally protected by TLS. TCP requires a socket connection to the gateway which is created using a SYN, SYN ACK and ACK.";
+    }
+}
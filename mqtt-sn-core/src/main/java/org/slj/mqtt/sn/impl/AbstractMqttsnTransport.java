@@ -31,6 +31,7 @@ import org.slj.mqtt.sn.model.IMqttsnMessageContext;
 import org.slj.mqtt.sn.model.INetworkContext;
 import org.slj.mqtt.sn.model.IPacketTXRXJob;
 import org.slj.mqtt.sn.spi.*;
+import org.slj.mqtt.sn.wire.MqttsnPacketHeader;
 import org.slj.mqtt.sn.wire.version1_2.payload.MqttsnAdvertise;
 
 import java.util.List;
@@ -50,6 +51,13 @@ public abstract class AbstractMqttsnTransport
         boolean isDisconnect = false;
         try {
 
+            //-- inspect the header first so packets we would discard never pay for a full decode
+            MqttsnPacketHeader header = getRegistry().getCodec().peek(data);
+            isDisconnect = header.getMessageType() == MqttsnConstants.DISCONNECT;
+            if(!preDecode(networkContext, header)){
+                return;
+            }
+
             IMqttsnMessage message = getRegistry().getCodec().decode(data);
             isDisconnect = registry.getCodec().isDisconnect(message);
             logger.debug("receiving {} protocol bytes {} from {} on thread {}",
@@ -164,6 +172,47 @@ public abstract class AbstractMqttsnTransport
         }
     }
 
+    /**
+     * Called with the header of every inbound packet before it is decoded. Packets arriving on a context with no bound
+     * session, which are not able to establish one, can only ever be answered with a DISCONNECT so are handled here
+     * without being decoded. Override to apply rate limiting or further authorisation checks from the header alone.
+     *
+     * @return true if the packet should be decoded and processed, false if it has been dealt with
+     */
+    protected boolean preDecode(INetworkContext networkContext, MqttsnPacketHeader header) {
+        if(canEstablishContext(header) ||
+                registry.getNetworkRegistry().hasBoundSessionContext(networkContext)){
+            return true;
+        }
+        if(header.getMessageType() != MqttsnConstants.DISCONNECT){
+            logger.warn("{} received from unbound context {}, send disconnect without decoding",
+                    header, networkContext.getNetworkAddress());
+            writeMqttSnMessageToTransport(networkContext,
+                    registry.getMessageFactory().createDisconnect(), false);
+        } else {
+            logger.warn("received DISCONNECT from not authd context, ignore {}",
+                    networkContext.getNetworkAddress());
+        }
+        return false;
+    }
+
+    /**
+     * The packet types which may authorise a network context that does not yet have a bound session.
+     */
+    protected boolean canEstablishContext(MqttsnPacketHeader header) {
+        switch (header.getMessageType()) {
+            case MqttsnConstants.CONNECT:
+            case MqttsnConstants.PINGREQ:
+            case MqttsnConstants.ADVERTISE:
+            case MqttsnConstants.PUBLISH_M1:
+                return true;
+            case MqttsnConstants.PUBLISH:
+                return header.hasFlags() && header.getQoS() == MqttsnConstants.QoSM1;
+            default:
+                return false;
+        }
+    }
+
     @Override
     public Future<IPacketTXRXJob> writeToTransportWithCallback(INetworkContext context, IMqttsnMessage message, Runnable r) {
         return writeMqttSnMessageToTransport(context, message, true, r);
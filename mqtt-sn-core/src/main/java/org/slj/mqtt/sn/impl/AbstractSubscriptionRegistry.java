@@ -24,13 +24,17 @@
 
 package org.slj.mqtt.sn.impl;
 
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
 import org.slj.mqtt.sn.model.session.ISession;
 import org.slj.mqtt.sn.model.session.ISubscription;
 import org.slj.mqtt.sn.model.session.impl.SubscriptionImpl;
 import org.slj.mqtt.sn.spi.*;
 import org.slj.mqtt.sn.utils.TopicPath;
 
+import java.text.ParseException;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 public abstract class AbstractSubscriptionRegistry
@@ -78,6 +82,36 @@ public abstract class AbstractSubscriptionRegistry
         throw new MqttsnException("no matching subscription found for client");
     }
 
+    /**
+     * Resolves the QoS for each matching context from its subscriptions, implementations holding the QoS in their
+     * index should override this
+     */
+    @Override
+    public Map<IClientIdentifierContext, Integer> matchesWithQoS(String topicPath)
+            throws MqttsnException, MqttsnIllegalFormatException {
+        Set<IClientIdentifierContext> contexts = matches(topicPath);
+        Map<IClientIdentifierContext, Integer> matches = new HashMap<>(contexts.size() * 2);
+        for (IClientIdentifierContext context : contexts){
+            ISession session = getRegistry().getSessionRegistry().getSession(context, false);
+            if(session == null) continue;
+            String modified = getRegistry().getTopicModifier().modifyTopic(context, topicPath);
+            int qos = -1;
+            try {
+                for (ISubscription sub : readSubscriptions(session)){
+                    if(sub.getTopicPath().matches(modified)){
+                        qos = Math.max(qos, sub.getGrantedQoS());
+                    }
+                }
+            } catch(ParseException e){
+                throw new MqttsnException(e);
+            }
+            if(qos >= 0){
+                matches.put(context, qos);
+            }
+        }
+        return matches;
+    }
+
     public abstract Set<ISubscription> readSubscriptions(ISession session) throws MqttsnException ;
 
     public abstract void clear(ISession session) ;
@@ -42,19 +42,20 @@ public abstract class AbstractTopicRegistry
 
     @Override
     public TopicInfo register(ISession session, String topicPath) throws MqttsnException {
-        Map<String, Integer> map = getRegistrationMapInternal(session, false);
-        if(map.size() >= registry.getOptions().getMaxTopicsInRegistry()){
-            logger.warn("max number of registered topics reached for client {} >= {}", session, map.size());
+        Collection<Integer> aliases = getRegisteredAliases(session);
+        if(aliases.size() >= registry.getOptions().getMaxTopicsInRegistry()){
+            logger.warn("max number of registered topics reached for client {} >= {}", session, aliases.size());
             throw new MqttsnException("max number of registered topics reached for client");
         }
-        synchronized (map){
+        synchronized (session){
             int alias;
-            if(map.containsKey(topicPath)){
-                alias = map.get(topicPath);
+            ITopicRegistration existing = lookupRegistration(session, topicPath);
+            if(existing != null){
+                alias = existing.getAliasId();
                 addOrUpdateRegistration(session,
                         getRegistry().getTopicModifier().modifyTopic(session.getContext(), topicPath), alias);
             } else {
-                alias = MqttsnUtils.getNextLeaseId(map.values(), Math.max(1, registry.getOptions().getAliasStartAt()));
+                alias = MqttsnUtils.getNextLeaseId(aliases, Math.max(1, registry.getOptions().getAliasStartAt()));
                 addOrUpdateRegistration(session,
                         getRegistry().getTopicModifier().modifyTopic(session.getContext(), topicPath), alias);
             }
@@ -68,14 +69,14 @@ public abstract class AbstractTopicRegistry
 
         logger.debug("mqtt-sn topic-registry [{} -> {}] registering {} -> {}", registry.getOptions().getContextId(), session, topicPath, topicAlias);
 
-        Map<String, Integer> map = getRegistrationMapInternal(session, false);
-        if(map.containsKey(topicPath)){
+        if(lookupRegistration(session, topicPath) != null){
             //update existing
             addOrUpdateRegistration(session,
                     getRegistry().getTopicModifier().modifyTopic(session.getContext(), topicPath), topicAlias);
         } else {
-            if(map.size() >= registry.getOptions().getMaxTopicsInRegistry()){
-                logger.warn("max number of registered topics reached for client {} >= {}", session.getContext(), map.size());
+            int size = getRegisteredAliases(session).size();
+            if(size >= registry.getOptions().getMaxTopicsInRegistry()){
+                logger.warn("max number of registered topics reached for client {} >= {}", session.getContext(), size);
                 throw new MqttsnException("max number of registered topics reached for client");
             }
             addOrUpdateRegistration(session,
@@ -85,8 +86,8 @@ public abstract class AbstractTopicRegistry
 
     @Override
     public boolean registered(ISession session, String topicPath) throws MqttsnException {
-        Map<String, Integer> map = getRegistrationMapInternal(session, false);
-        return map.containsKey(getRegistry().getTopicModifier().modifyTopic(session.getContext(), topicPath));
+        return lookupRegistration(session,
+                getRegistry().getTopicModifier().modifyTopic(session.getContext(), topicPath)) != null;
     }
 
     @Override
@@ -119,23 +120,17 @@ public abstract class AbstractTopicRegistry
 
     @Override
     public String lookupRegistered(ISession session, int topicAlias) throws MqttsnException {
-        Map<String, Integer> map = getRegistrationMapInternal(session, false);
-        synchronized (map){
-            Iterator<String> itr = map.keySet().iterator();
-            while(itr.hasNext()){
-                String topicPath = itr.next();
-                Integer i = map.get(topicPath);
-                if(i != null && i.intValue() == topicAlias)
-                    return getRegistry().getTopicModifier().modifyTopic(session.getContext(), topicPath);
-            }
-        }
-        return null;
+        ITopicRegistration registration = lookupRegistration(session, topicAlias);
+        return registration == null ? null :
+                getRegistry().getTopicModifier().modifyTopic(session.getContext(), registration.getTopicPath());
     }
 
     @Override
     public Integer lookupRegistered(ISession session, String topicPath, boolean confirmedOnly) throws MqttsnException {
-        Map<String, Integer> map = getRegistrationMapInternal(session, confirmedOnly);
-        return map.get(getRegistry().getTopicModifier().modifyTopic(session.getContext(), topicPath));
+        ITopicRegistration registration = lookupRegistration(session,
+                getRegistry().getTopicModifier().modifyTopic(session.getContext(), topicPath));
+        return registration == null || confirmedOnly && !registration.isConfirmed() ?
+                null : registration.getAliasId();
     }
 
     @Override
@@ -146,17 +141,9 @@ public abstract class AbstractTopicRegistry
 
     @Override
     public String lookupPredefined(ISession session, int topicAlias) throws MqttsnException {
-        Map<String, Integer> predefinedMap = getPredefinedTopicsForInteger(session);
-        synchronized (predefinedMap){
-            Iterator<String> itr = predefinedMap.keySet().iterator();
-            while(itr.hasNext()){
-                String topicPath = itr.next();
-                Integer i = predefinedMap.get(topicPath);
-                if(i != null && i.intValue() == topicAlias)
-                    return getRegistry().getTopicModifier().modifyTopic(session == null ? null : session.getContext(), topicPath);
-            }
-        }
-        return null;
+        String topicPath = getPredefinedTopicsForInteger(session).get(topicAlias);
+        return topicPath == null ? null :
+                getRegistry().getTopicModifier().modifyTopic(session == null ? null : session.getContext(), topicPath);
     }
 
     @Override
@@ -234,22 +221,27 @@ public abstract class AbstractTopicRegistry
         return info;
     }
 
-    protected Map<String, Integer> getRegistrationMapInternal(ISession session, boolean confirmedOnly) throws MqttsnException{
-        Set<ITopicRegistration> set = getRegistrations(session);
-        Map<String, Integer> map = new HashMap<>();
-        Iterator<ITopicRegistration> itr = set.iterator();
-        while(itr.hasNext()){
-            ITopicRegistration reg = itr.next();
-            if(!confirmedOnly || reg.isConfirmed()){
-                map.put(reg.getTopicPath(), reg.getAliasId());
-            }
-        }
-        return map;
-    }
-
     protected abstract boolean addOrUpdateRegistration(ISession session, String topicPath, int alias) throws MqttsnException;
 
-    protected abstract Map<String, Integer> getPredefinedTopicsForInteger(ISession session) throws MqttsnException;
+    /**
+     * @return the registration held by the session for the topicPath, or null
+     */
+    protected abstract ITopicRegistration lookupRegistration(ISession session, String topicPath) throws MqttsnException;
+
+    /**
+     * @return the registration held by the session for the alias, or null
+     */
+    protected abstract ITopicRegistration lookupRegistration(ISession session, int topicAlias) throws MqttsnException;
+
+    /**
+     * @return the aliases in use by the registrations held by the session
+     */
+    protected abstract Collection<Integer> getRegisteredAliases(ISession session) throws MqttsnException;
+
+    /**
+     * @return the predefined topics keyed by their alias
+     */
+    protected abstract Map<Integer, String> getPredefinedTopicsForInteger(ISession session) throws MqttsnException;
 
     protected abstract Map<String, Integer> getPredefinedTopicsForString(ISession session) throws MqttsnException;
 }
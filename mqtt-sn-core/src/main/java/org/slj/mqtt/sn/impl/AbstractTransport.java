@@ -14,7 +14,7 @@ import java.util.concurrent.Future;
 
 public abstract class AbstractTransport extends AbstractMqttsnService implements ITransport {
 
-    protected ExecutorService ingressProtocolProcessor;
+    protected MqttsnStripedExecutor ingressProtocolProcessor;
     protected ExecutorService egressProtocolProcessor;
 
     protected final Logger wireLogger = LoggerFactory.getLogger("wire");
@@ -22,7 +22,7 @@ public abstract class AbstractTransport extends AbstractMqttsnService implements
     @Override
     public void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
         super.start(runtime);
-        ingressProtocolProcessor = runtime.getRuntime().createManagedExecutorService(
+        ingressProtocolProcessor = runtime.getRuntime().createManagedStripedExecutorService(
                 String.format("%s-transport-ingress-%s-", getName(), System.identityHashCode(runtime)),
                 runtime.getOptions().getTransportIngressThreadCount());
         egressProtocolProcessor = runtime.getRuntime().createManagedExecutorService(
@@ -129,8 +129,9 @@ public abstract class AbstractTransport extends AbstractMqttsnService implements
             return;
         }
 
+        //-- striped by context so packets from a single device are processed in the order they were received
         final byte[] d = data;
-        getRegistry().getRuntime().submit(ingressProtocolProcessor,
+        getRegistry().getRuntime().submit(ingressProtocolProcessor.forKey(context),
                 () -> receiveFromTransportInternal(context, d), context);
     }
 
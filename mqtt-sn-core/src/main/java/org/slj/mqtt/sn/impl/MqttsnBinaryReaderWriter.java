@@ -0,0 +1,587 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.impl;
+
+import org.slj.mqtt.sn.PublishData;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.model.IDataRef;
+import org.slj.mqtt.sn.model.IntegerDataRef;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
+import org.slj.mqtt.sn.model.session.ISubscription;
+import org.slj.mqtt.sn.model.session.ITopicRegistration;
+import org.slj.mqtt.sn.model.session.IWillData;
+import org.slj.mqtt.sn.model.session.impl.*;
+import org.slj.mqtt.sn.spi.IMqttsnObjectReaderWriter;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.utils.TopicPath;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact binary reader writer for the objects the runtime persists (queued messages, sessions, subscriptions, topic
+ * registrations and their parts). Each type has a hand written codec, so there is no reflection and no class metadata
+ * in the output; integers are written as zig-zag varints and strings as length prefixed UTF-8.
+ *
+ * Every record starts with the format version it was written with, followed by a type id, and codecs are passed the
+ * version when reading so that layouts can evolve while older records remain readable. Codecs for further types can
+ * be added with {@link #withCodec(int, Class, Codec)}; anything without a codec falls back to java serialization.
+ */
+public class MqttsnBinaryReaderWriter implements IMqttsnObjectReaderWriter {
+
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Type ids below this value are reserved for the built in codecs
+     */
+    public static final int MIN_CUSTOM_TYPE_ID = 128;
+
+    static final int TYPE_NULL = 0;
+    static final int TYPE_JAVA = 1;
+    static final int TYPE_INTEGER_DATA_REF = 2;
+    static final int TYPE_PUBLISH_DATA = 3;
+    static final int TYPE_QUEUED_PUBLISH_MESSAGE = 4;
+    static final int TYPE_CLIENT_IDENTIFIER_CONTEXT = 5;
+    static final int TYPE_SUBSCRIPTION = 6;
+    static final int TYPE_TOPIC_REGISTRATION = 7;
+    static final int TYPE_WILL_DATA = 8;
+    static final int TYPE_SESSION = 9;
+    static final int TYPE_SESSION_BEAN = 10;
+
+    final static int BUFFER = 128;
+
+    private final Map<Class<?>, Registration<?>> byClass = new ConcurrentHashMap<>();
+    private final Map<Integer, Registration<?>> byType = new ConcurrentHashMap<>();
+
+    public MqttsnBinaryReaderWriter() {
+        register(TYPE_INTEGER_DATA_REF, IntegerDataRef.class, new IntegerDataRefCodec());
+        register(TYPE_PUBLISH_DATA, PublishData.class, new PublishDataCodec());
+        register(TYPE_QUEUED_PUBLISH_MESSAGE, QueuedPublishMessageImpl.class, new QueuedPublishMessageCodec());
+        register(TYPE_CLIENT_IDENTIFIER_CONTEXT, ClientIdentifierContext.class, new ClientIdentifierContextCodec());
+        register(TYPE_SUBSCRIPTION, SubscriptionImpl.class, new SubscriptionCodec());
+        register(TYPE_TOPIC_REGISTRATION, TopicRegistrationImpl.class, new TopicRegistrationCodec());
+        register(TYPE_WILL_DATA, WillDataImpl.class, new WillDataCodec());
+        register(TYPE_SESSION, SessionImpl.class, new SessionCodec());
+        register(TYPE_SESSION_BEAN, SessionBeanImpl.class, new SessionBeanCodec());
+    }
+
+    /**
+     * Register a codec for a further type. The type id is written into every record so must remain stable
+     * @param typeId - the id to write the type with, at least {@link #MIN_CUSTOM_TYPE_ID}
+     */
+    public <T extends Serializable> MqttsnBinaryReaderWriter withCodec(int typeId, Class<T> clz, Codec<T> codec){
+        if(typeId < MIN_CUSTOM_TYPE_ID){
+            throw new IllegalArgumentException("type ids below " + MIN_CUSTOM_TYPE_ID + " are reserved");
+        }
+        register(typeId, clz, codec);
+        return this;
+    }
+
+    @Override
+    public byte[] write(Serializable o) throws MqttsnException {
+        try {
+            BinaryOutput out = new BinaryOutput(BUFFER);
+            out.writeVarInt(FORMAT_VERSION);
+            out.writeObject(o);
+            return out.toByteArray();
+        } catch(Exception e){
+            throw new MqttsnException("error in marshalling object to binary", e);
+        }
+    }
+
+    @Override
+    public <T extends Serializable> T load(Class<? extends T> clz, byte[] arr) throws MqttsnException {
+        try {
+            BinaryInput in = new BinaryInput(arr);
+            int version = in.readVarInt();
+            if(version < 1 || version > FORMAT_VERSION){
+                throw new IOException("unsupported binary format version " + version);
+            }
+            in.version = version;
+            Object o = in.readObject();
+            if(o != null && !clz.isInstance(o)){
+                throw new IOException("record of type " + o.getClass().getName() + " is not a " + clz.getName());
+            }
+            return clz.cast(o);
+        } catch(Exception e){
+            throw new MqttsnException("error in unmarshalling object from binary", e);
+        }
+    }
+
+    private <T> void register(int typeId, Class<T> clz, Codec<T> codec){
+        Registration<T> registration = new Registration<>(typeId, codec);
+        if(byType.putIfAbsent(typeId, registration) != null){
+            throw new IllegalArgumentException("type id " + typeId + " already registered");
+        }
+        byClass.put(clz, registration);
+    }
+
+    /**
+     * Reads and writes the fields of one type. Implementations should only ever append fields to the layout, reading
+     * them conditionally on the version of the record being read.
+     */
+    public interface Codec<T> {
+
+        void write(BinaryOutput out, T value) throws IOException;
+
+        T read(BinaryInput in, int version) throws IOException;
+    }
+
+    private static class Registration<T> {
+        final int typeId;
+        final Codec<T> codec;
+
+        Registration(int typeId, Codec<T> codec) {
+            this.typeId = typeId;
+            this.codec = codec;
+        }
+    }
+
+    public final class BinaryOutput {
+
+        private byte[] buf;
+        private int count;
+
+        BinaryOutput(int size) {
+            buf = new byte[size];
+        }
+
+        public void writeByte(int b) {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        public void writeBoolean(boolean b) {
+            writeByte(b ? 1 : 0);
+        }
+
+        /**
+         * Write an unsigned varint, 7 bits per byte
+         */
+        public void writeVarInt(int v) {
+            ensure(5);
+            while((v & ~0x7F) != 0){
+                buf[count++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        public void writeVarLong(long v) {
+            ensure(10);
+            while((v & ~0x7FL) != 0){
+                buf[count++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        /**
+         * Write a signed int zig-zag encoded, so small negative values stay small
+         */
+        public void writeInt(int v) {
+            writeVarInt((v << 1) ^ (v >> 31));
+        }
+
+        public void writeLong(long v) {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+
+        public void writeBytes(byte[] b) {
+            if(b == null){
+                writeVarInt(0);
+            } else {
+                writeVarInt(b.length + 1);
+                ensure(b.length);
+                System.arraycopy(b, 0, buf, count, b.length);
+                count += b.length;
+            }
+        }
+
+        public void writeString(String s) {
+            writeBytes(s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public void writeDate(Date d) {
+            writeBoolean(d != null);
+            if(d != null) writeLong(d.getTime());
+        }
+
+        /**
+         * Write a nested value with its type id, using its registered codec where there is one
+         */
+        @SuppressWarnings("unchecked")
+        public void writeObject(Object o) throws IOException {
+            if(o == null){
+                writeVarInt(TYPE_NULL);
+                return;
+            }
+            Registration<Object> registration = (Registration<Object>) byClass.get(o.getClass());
+            if(registration != null){
+                writeVarInt(registration.typeId);
+                registration.codec.write(this, o);
+            } else {
+                writeVarInt(TYPE_JAVA);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(BUFFER);
+                try (ObjectOutputStream oos = new ObjectOutputStream(baos)){
+                    oos.writeObject(o);
+                }
+                writeBytes(baos.toByteArray());
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        private void ensure(int n) {
+            if(count + n > buf.length){
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + n));
+            }
+        }
+    }
+
+    public final class BinaryInput {
+
+        private final byte[] buf;
+        private int pos;
+        private int version;
+
+        BinaryInput(byte[] buf) {
+            this.buf = buf;
+        }
+
+        public int readByte() throws IOException {
+            if(pos >= buf.length) throw new EOFException("record truncated");
+            return buf[pos++] & 0xFF;
+        }
+
+        public boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        public int readVarInt() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 32; shift += 7){
+                int b = readByte();
+                v |= (b & 0x7F) << shift;
+                if((b & 0x80) == 0) return v;
+            }
+            throw new IOException("malformed varint");
+        }
+
+        public long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7){
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0) return v;
+            }
+            throw new IOException("malformed varlong");
+        }
+
+        public int readInt() throws IOException {
+            int v = readVarInt();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        public long readLong() throws IOException {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        public byte[] readBytes() throws IOException {
+            int length = readVarInt() - 1;
+            if(length < 0) return null;
+            if(length > buf.length - pos) throw new EOFException("record truncated");
+            byte[] b = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return b;
+        }
+
+        public String readString() throws IOException {
+            int length = readVarInt() - 1;
+            if(length < 0) return null;
+            if(length > buf.length - pos) throw new EOFException("record truncated");
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        public Date readDate() throws IOException {
+            return readBoolean() ? new Date(readLong()) : null;
+        }
+
+        public Object readObject() throws IOException {
+            int typeId = readVarInt();
+            switch (typeId){
+                case TYPE_NULL:
+                    return null;
+                case TYPE_JAVA:
+                    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes()))){
+                        return ois.readObject();
+                    } catch(ClassNotFoundException e){
+                        throw new IOException(e);
+                    }
+                default:
+                    Registration<?> registration = byType.get(typeId);
+                    if(registration == null){
+                        throw new IOException("no codec registered for type id " + typeId);
+                    }
+                    return registration.codec.read(this, version);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T readObject(Class<T> clz) throws IOException {
+            Object o = readObject();
+            if(o != null && !clz.isInstance(o)){
+                throw new IOException("expected " + clz.getName() + " but read " + o.getClass().getName());
+            }
+            return (T) o;
+        }
+    }
+
+    static class IntegerDataRefCodec implements Codec<IntegerDataRef> {
+
+        @Override
+        public void write(BinaryOutput out, IntegerDataRef value) {
+            Integer id = value.getId();
+            out.writeBoolean(id != null);
+            if(id != null) out.writeInt(id);
+        }
+
+        @Override
+        public IntegerDataRef read(BinaryInput in, int version) throws IOException {
+            return new IntegerDataRef(in.readBoolean() ? in.readInt() : null);
+        }
+    }
+
+    static class PublishDataCodec implements Codec<PublishData> {
+
+        @Override
+        public void write(BinaryOutput out, PublishData value) {
+            out.writeString(value.getTopicPath());
+            out.writeInt(value.getQos());
+            out.writeBoolean(value.isRetained());
+            out.writeBytes(value.getData());
+        }
+
+        @Override
+        public PublishData read(BinaryInput in, int version) throws IOException {
+            String topicPath = in.readString();
+            int qos = in.readInt();
+            boolean retained = in.readBoolean();
+            return new PublishData(topicPath, qos, retained, in.readBytes());
+        }
+    }
+
+    static class QueuedPublishMessageCodec implements Codec<QueuedPublishMessageImpl> {
+
+        @Override
+        public void write(BinaryOutput out, QueuedPublishMessageImpl value) throws IOException {
+            out.writeObject(value.getData());
+            out.writeObject(value.getDataRefId());
+            out.writeLong(value.getCreated());
+            out.writeVarInt(value.getRetryCount());
+            out.writeVarInt(value.getPacketId());
+            out.writeInt(value.getGrantedQoS());
+        }
+
+        @Override
+        public QueuedPublishMessageImpl read(BinaryInput in, int version) throws IOException {
+            QueuedPublishMessageImpl message = new QueuedPublishMessageImpl();
+            message.setData(in.readObject(PublishData.class));
+            message.setDataRefId(in.readObject(IDataRef.class));
+            message.setCreated(in.readLong());
+            message.setRetryCount(in.readVarInt());
+            message.setPacketId(in.readVarInt());
+            message.setGrantedQoS(in.readInt());
+            return message;
+        }
+    }
+
+    static class ClientIdentifierContextCodec implements Codec<ClientIdentifierContext> {
+
+        @Override
+        public void write(BinaryOutput out, ClientIdentifierContext value) {
+            out.writeString(value.getId());
+            out.writeBoolean(value.isAssignedClientId());
+            out.writeInt(value.getProtocolVersion());
+        }
+
+        @Override
+        public ClientIdentifierContext read(BinaryInput in, int version) throws IOException {
+            ClientIdentifierContext context = new ClientIdentifierContext(in.readString());
+            context.setAssignedClientId(in.readBoolean());
+            context.setProtocolVersion(in.readInt());
+            return context;
+        }
+    }
+
+    static class SubscriptionCodec implements Codec<SubscriptionImpl> {
+
+        @Override
+        public void write(BinaryOutput out, SubscriptionImpl value) {
+            out.writeString(value.getTopicPath() == null ? null : value.getTopicPath().toString());
+            out.writeInt(value.getGrantedQoS());
+        }
+
+        @Override
+        public SubscriptionImpl read(BinaryInput in, int version) throws IOException {
+            String topicPath = in.readString();
+            return new SubscriptionImpl(topicPath == null ? null : new TopicPath(topicPath), in.readInt());
+        }
+    }
+
+    static class TopicRegistrationCodec implements Codec<TopicRegistrationImpl> {
+
+        @Override
+        public void write(BinaryOutput out, TopicRegistrationImpl value) {
+            out.writeString(value.getTopicPath());
+            out.writeVarInt(value.getAliasId());
+            out.writeBoolean(value.isConfirmed());
+        }
+
+        @Override
+        public TopicRegistrationImpl read(BinaryInput in, int version) throws IOException {
+            String topicPath = in.readString();
+            int aliasId = in.readVarInt();
+            return new TopicRegistrationImpl(topicPath, aliasId, in.readBoolean());
+        }
+    }
+
+    static class WillDataCodec implements Codec<WillDataImpl> {
+
+        @Override
+        public void write(BinaryOutput out, WillDataImpl value) {
+            out.writeString(value.getTopicPath() == null ? null : value.getTopicPath().toString());
+            out.writeInt(value.getQos());
+            out.writeBoolean(value.isRetained());
+            out.writeBytes(value.getData());
+        }
+
+        @Override
+        public WillDataImpl read(BinaryInput in, int version) throws IOException {
+            String topicPath = in.readString();
+            int qos = in.readInt();
+            boolean retained = in.readBoolean();
+            return new WillDataImpl(topicPath == null ? null : new TopicPath(topicPath), in.readBytes(), qos, retained);
+        }
+    }
+
+    static class SessionCodec implements Codec<SessionImpl> {
+
+        @Override
+        public void write(BinaryOutput out, SessionImpl value) throws IOException {
+            out.writeObject(value.getContext());
+            writeSession(out, value);
+        }
+
+        @Override
+        public SessionImpl read(BinaryInput in, int version) throws IOException {
+            SessionImpl session = new SessionImpl(in.readObject(IClientIdentifierContext.class), null);
+            readSession(in, session);
+            return session;
+        }
+
+        static void writeSession(BinaryOutput out, SessionImpl value) {
+            ClientState state = value.getClientState();
+            out.writeInt(state == null ? -1 : state.getCode());
+            out.writeDate(value.getLastSeen());
+            out.writeDate(value.getSessionStarted());
+            out.writeInt(value.getKeepAlive());
+            out.writeLong(value.getSessionExpiryInterval());
+            out.writeInt(value.getMaxPacketSize());
+            out.writeInt(value.getProtocolVersion());
+        }
+
+        static void readSession(BinaryInput in, SessionImpl session) throws IOException {
+            int code = in.readInt();
+            ClientState state = code < 0 ? null : ClientState.fromCode(code);
+            if(code >= 0 && state == null){
+                throw new IOException("unknown client state " + code);
+            }
+            session.setClientState(state);
+            session.setLastSeen(in.readDate());
+            session.setSessionStarted(in.readDate());
+            session.setKeepAlive(in.readInt());
+            session.setSessionExpiryInterval(in.readLong());
+            session.setMaxPacketSize(in.readInt());
+            session.setProtocolVersion(in.readInt());
+        }
+    }
+
+    static class SessionBeanCodec implements Codec<SessionBeanImpl> {
+
+        @Override
+        public void write(BinaryOutput out, SessionBeanImpl value) throws IOException {
+            out.writeObject(value.getContext());
+            SessionCodec.writeSession(out, value);
+            out.writeVarInt(value.getSubscriptions().size());
+            for (ISubscription subscription : value.getSubscriptions()){
+                out.writeObject(subscription);
+            }
+            Map<String, ITopicRegistration> registrations = value.getRegistrations();
+            out.writeVarInt(registrations.size());
+            for (ITopicRegistration registration : registrations.values()){
+                out.writeObject(registration);
+            }
+            out.writeObject(value.getWillData());
+            IQueuedPublishMessage[] queue = value.getQueuedMessages();
+            out.writeVarInt(queue.length);
+            for (IQueuedPublishMessage message : queue){
+                out.writeObject(message);
+            }
+        }
+
+        @Override
+        public SessionBeanImpl read(BinaryInput in, int version) throws IOException {
+            SessionBeanImpl session = new SessionBeanImpl(in.readObject(IClientIdentifierContext.class), null);
+            SessionCodec.readSession(in, session);
+            try {
+                for (int i = in.readVarInt(); i > 0; i--){
+                    session.addSubscription(in.readObject(ISubscription.class));
+                }
+                for (int i = in.readVarInt(); i > 0; i--){
+                    session.addTopicRegistration(in.readObject(ITopicRegistration.class));
+                }
+            } catch(MqttsnException e){
+                throw new IOException(e);
+            }
+            session.setWillData(in.readObject(IWillData.class));
+            for (int i = in.readVarInt(); i > 0; i--){
+                session.offer(in.readObject(IQueuedPublishMessage.class));
+            }
+            return session;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.impl;
+
+import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.model.IDataRef;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.model.session.ISubscription;
+import org.slj.mqtt.sn.model.session.ITopicRegistration;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
+import org.slj.mqtt.sn.model.session.impl.SessionBeanImpl;
+import org.slj.mqtt.sn.spi.IMqttsnObjectReaderWriter;
+import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.utils.WriteAheadLogStore;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A session registry which persists its sessions to a {@link WriteAheadLogStore} in the workspace of the storage
+ * service, so that sessions (and with them subscriptions, topic registrations, will data and the in memory portion of
+ * the message queue) survive a restart of the runtime. Devices which connect with clean session false then resume
+ * their session without having to re-subscribe.
+ *
+ * Sessions notify the registry when they change, and the changed sessions are written to the log as whole records by
+ * a single background writer every flush interval, so many changes to the same session within an interval cost a single
+ * write. The last seen time is not written as a change; it is written with the session when something else changes.
+ *
+ * The queue is not part of the session record. Each queued message is a record of its own, written when it is
+ * offered and deleted when it is taken from the queue, so traffic through a queue costs a record per message rather
+ * than a rewrite of the session and everything queued on it. A message offered and taken within the same flush
+ * interval is never written. Queued messages reference their payloads in the message registry, so the payload is
+ * written with the message and re-added to the message registry on recovery.
+ *
+ * Once the log passes the checkpoint threshold the full state is written as a new snapshot and the log begins
+ * again. Changes made since the last flush are lost on a crash; with sync enabled every flush is also forced to the
+ * storage device.
+ */
+public class MqttsnDurableSessionRegistry extends MqttsnSessionRegistry {
+
+    static final String DIR = "_session-store";
+
+    //-- queued message records are keyed [prefix][client id][prefix][sequence], which cannot collide with a client id
+    static final char QUEUE_KEY_PREFIX = '\u0000';
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 250;
+    public static final long DEFAULT_CHECKPOINT_THRESHOLD_BYTES = 64 * 1024 * 1024;
+
+    private final IMqttsnObjectReaderWriter readWriter;
+    private final long flushIntervalMillis;
+    private final long checkpointThresholdBytes;
+    private final boolean sync;
+    private final Set<IClientIdentifierContext> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+    private final Consumer<ISession> listener = s -> dirty.add(s.getContext());
+
+    //-- the record key of each queued message (messages are compared by identity), the messages offered since the last
+    //-- flush and the keys of the messages taken since the last flush
+    private final Map<IQueuedPublishMessage, String> queueKeys = new ConcurrentHashMap<>();
+    private final Map<String, IQueuedPublishMessage> queueUpserts = new ConcurrentHashMap<>();
+    private final Set<String> queueDeletes = ConcurrentHashMap.newKeySet();
+    private final AtomicLong queueSequence = new AtomicLong();
+    private final SessionBeanImpl.QueueListener queueListener = new SessionBeanImpl.QueueListener() {
+        @Override
+        public void offered(SessionBeanImpl session, IQueuedPublishMessage message) {
+            String key = queueKeys.computeIfAbsent(message, m -> queueKey(session.getContext().getId(),
+                    queueSequence.incrementAndGet()));
+            queueUpserts.put(key, message);
+        }
+
+        @Override
+        public void removed(SessionBeanImpl session, IQueuedPublishMessage message) {
+            String key = queueKeys.remove(message);
+            //-- if the writer has already taken the upsert, the delete follows it in the next flush
+            if(key != null && queueUpserts.remove(key) == null){
+                queueDeletes.add(key);
+            }
+        }
+    };
+    private WriteAheadLogStore store;
+    private ScheduledExecutorService executorService;
+
+    public MqttsnDurableSessionRegistry() {
+        this(new MqttsnBinaryReaderWriter(), DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_CHECKPOINT_THRESHOLD_BYTES, false);
+    }
+
+    /**
+     * @param readWriter - used to write the session beans, must support {@link SessionBeanImpl} and its contents
+     * @param flushIntervalMillis - how often changed sessions are written to the log
+     * @param checkpointThresholdBytes - the log size after which a new snapshot is written
+     * @param sync - force every flush to the storage device
+     */
+    public MqttsnDurableSessionRegistry(IMqttsnObjectReaderWriter readWriter, long flushIntervalMillis,
+                                        long checkpointThresholdBytes, boolean sync) {
+        this.readWriter = readWriter;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.checkpointThresholdBytes = checkpointThresholdBytes;
+        this.sync = sync;
+    }
+
+    @Override
+    public void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
+        super.start(runtime);
+        try {
+            store = new WriteAheadLogStore(new File(
+                    runtime.getStorageService().getWorkspaceRoot(), DIR), sync);
+            recover();
+        } catch(IOException e){
+            throw new MqttsnException("unable to recover session store;", e);
+        }
+        executorService = runtime.getRuntime().createManagedScheduledExecutorService("mqtt-sn-session-store-", 1);
+        executorService.scheduleWithFixedDelay(this::flushQuietly,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws MqttsnException {
+        try {
+            if(executorService != null){
+                getRegistry().getRuntime().closeManagedExecutorService(executorService);
+            }
+            if(store != null){
+                flush();
+                store.close();
+            }
+        } catch(IOException e){
+            throw new MqttsnException("error closing session store;", e);
+        } finally {
+            super.stop();
+        }
+    }
+
+    @Override
+    public ISession createNewSession(IClientIdentifierContext context) {
+        ISession session = super.createNewSession(context);
+        listen((SessionBeanImpl) session);
+        deleted.remove(context.getId());
+        dirty.add(context);
+        return session;
+    }
+
+    @Override
+    public void clear(ISession session, boolean clearNetworking) throws MqttsnException {
+        try {
+            super.clear(session, clearNetworking);
+        } finally {
+            if(session instanceof SessionBeanImpl){
+                SessionBeanImpl bean = (SessionBeanImpl) session;
+                //-- anything left on the queue goes with the session
+                for (IQueuedPublishMessage message : bean.getQueuedMessages()){
+                    queueListener.removed(bean, message);
+                }
+                bean.setChangeListener(null);
+                bean.setQueueListener(null);
+            }
+            dirty.remove(session.getContext());
+            deleted.add(session.getContext().getId());
+        }
+    }
+
+    protected void listen(SessionBeanImpl session){
+        session.setChangeListener(listener);
+        session.setQueueListener(queueListener);
+    }
+
+    protected void recover() throws IOException, MqttsnException {
+        long start = System.currentTimeMillis();
+        Map<String, byte[]> state = store.recover();
+        Map<String, SessionBeanImpl> sessions = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : state.entrySet()){
+            if(isQueueKey(entry.getKey())) continue;
+            SessionBeanImpl session = readWriter.load(SessionBeanImpl.class, entry.getValue());
+            //-- no connection survives a restart, sleeping devices are left asleep
+            if(session.getClientState() == ClientState.ACTIVE || session.getClientState() == ClientState.AWAKE){
+                session.setClientState(ClientState.LOST);
+            }
+            sessions.put(session.getContext().getId(), session);
+        }
+        int restored = 0;
+        int dropped = 0;
+        for (Map.Entry<String, byte[]> entry : state.entrySet()){
+            String key = entry.getKey();
+            if(!isQueueKey(key)) continue;
+            int idx = key.lastIndexOf(QUEUE_KEY_PREFIX);
+            queueSequence.accumulateAndGet(Long.parseLong(key.substring(idx + 1)), Math::max);
+            SessionBeanImpl session = sessions.get(key.substring(1, idx));
+            if(session == null){
+                dropped++;
+                continue;
+            }
+            Map<IDataRef, byte[]> payloads = new HashMap<>(1);
+            QueuedPublishMessageImpl message = (QueuedPublishMessageImpl)
+                    decodeRecord(readWriter, entry.getValue(), payloads);
+            byte[] payload = payloads.get(message.getDataRefId());
+            if(payload == null){
+                dropped++;
+                continue;
+            }
+            message.setDataRefId(getRegistry().getMessageRegistry().add(payload));
+            session.offer(message);
+            queueKeys.put(message, key);
+            restored++;
+        }
+        for (SessionBeanImpl session : sessions.values()){
+            addSession(session);
+            listen(session);
+        }
+        if(dropped > 0){
+            logger.warn("{} queued messages could not be recovered from the session store", dropped);
+        }
+        logger.info("recovered {} sessions and {} queued messages from {} in {}ms", sessions.size(), restored,
+                store.getDirectory(), System.currentTimeMillis() - start);
+
+        //-- fold the replayed log into a new snapshot to keep the next recovery short
+        if(store.getLogSize() > 0){
+            checkpoint();
+        }
+    }
+
+    /**
+     * Write the sessions and queued messages changed (or removed) since the last flush to the log, checkpointing if the
+     * log has grown past the threshold. Only ever called from the single writer thread, or once that has stopped.
+     */
+    protected void flush() throws IOException, MqttsnException {
+        if(dirty.isEmpty() && deleted.isEmpty() &&
+                queueUpserts.isEmpty() && queueDeletes.isEmpty()) return;
+
+        //-- removals first, a session cleared and recreated since the last flush is then upserted after its delete;
+        //-- a message taken once its upsert has been claimed below has its delete written by the next flush
+        List<String> deletes = new ArrayList<>();
+        drain(deleted, deletes);
+        drain(queueDeletes, deletes);
+        Map<String, byte[]> upserts = new HashMap<>();
+        Iterator<IClientIdentifierContext> itr = dirty.iterator();
+        while(itr.hasNext()){
+            IClientIdentifierContext context = itr.next();
+            itr.remove();
+            ISession session = sessionLookup.get(context);
+            if(session != null){
+                upserts.put(context.getId(), encode(session));
+            }
+        }
+        for (String key : queueUpserts.keySet()){
+            //-- claimed atomically, if the message has been taken in the meantime it is never written
+            IQueuedPublishMessage message = queueUpserts.remove(key);
+            if(message != null){
+                byte[] record = encode(message);
+                if(record != null){
+                    upserts.put(key, record);
+                }
+            }
+        }
+        store.append(upserts, deletes);
+        if(store.getLogSize() > checkpointThresholdBytes){
+            checkpoint();
+        }
+    }
+
+    protected void checkpoint() throws IOException {
+        long start = System.currentTimeMillis();
+        Iterator<ISession> sessions = iterator();
+        store.checkpoint(new Iterator<Map.Entry<String, byte[]>>() {
+
+            private final Deque<Map.Entry<String, byte[]>> pending = new ArrayDeque<>();
+
+            @Override
+            public boolean hasNext() {
+                while(pending.isEmpty() && sessions.hasNext()){
+                    queue(sessions.next());
+                }
+                return !pending.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                return pending.poll();
+            }
+
+            private void queue(ISession session) {
+                try {
+                    pending.add(new AbstractMap.SimpleImmutableEntry<>(session.getContext().getId(), encode(session)));
+                    for (IQueuedPublishMessage message : getSessionBean(session).getQueuedMessages()){
+                        //-- a message without a key has been taken since, or is about to be written by its offer
+                        String key = queueKeys.get(message);
+                        byte[] record = key == null ? null : encode(message);
+                        if(record != null){
+                            pending.add(new AbstractMap.SimpleImmutableEntry<>(key, record));
+                        }
+                    }
+                } catch(MqttsnException e){
+                    throw new UncheckedIOException(new IOException(e));
+                }
+            }
+        });
+        logger.info("session store checkpoint generation {} in {}ms",
+                store.getGeneration(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * The session record holds everything but the queue, whose messages are records of their own
+     */
+    protected byte[] encode(ISession session) throws MqttsnException {
+        SessionBeanImpl bean = getSessionBean(session);
+        SessionBeanImpl record = new SessionBeanImpl(bean.getContext(), bean.getClientState());
+        record.setLastSeen(bean.getLastSeen());
+        record.setSessionStarted(bean.getSessionStarted());
+        record.setKeepAlive(bean.getKeepAlive());
+        record.setSessionExpiryInterval(bean.getSessionExpiryInterval());
+        record.setMaxPacketSize(bean.getMaxPacketSize());
+        record.setProtocolVersion(bean.getProtocolVersion());
+        record.setWillData(bean.getWillData());
+        for (ISubscription subscription : bean.getSubscriptions()){
+            record.addSubscription(subscription);
+        }
+        for (ITopicRegistration registration : bean.getRegistrations().values()){
+            record.addTopicRegistration(registration);
+        }
+        return readWriter.write(record);
+    }
+
+    /**
+     * @return the record of the message and its payload, or null if the payload is no longer in the message registry
+     */
+    protected byte[] encode(IQueuedPublishMessage message) throws MqttsnException {
+        byte[] payload = getRegistry().getMessageRegistry().get(message.getDataRefId());
+        if(payload == null) return null;
+        return encodeRecord(readWriter, message, Collections.singletonMap(message.getDataRefId(), payload));
+    }
+
+    private void flushQuietly(){
+        try {
+            flush();
+        } catch(Exception e){
+            logger.error("error flushing session store", e);
+        }
+    }
+
+    static String queueKey(String clientId, long sequence){
+        return QUEUE_KEY_PREFIX + clientId + QUEUE_KEY_PREFIX + sequence;
+    }
+
+    static boolean isQueueKey(String key){
+        return !key.isEmpty() && key.charAt(0) == QUEUE_KEY_PREFIX;
+    }
+
+    private static <T> void drain(Set<T> source, Collection<T> target){
+        Iterator<T> itr = source.iterator();
+        while(itr.hasNext()){
+            target.add(itr.next());
+            itr.remove();
+        }
+    }
+
+    /**
+     * A queued message record is [int length][queued message][int count] followed by count [int length][data ref][int length][payload]
+     */
+    public static byte[] encodeRecord(IMqttsnObjectReaderWriter readWriter, IQueuedPublishMessage message,
+                                      Map<IDataRef, byte[]> payloads) throws MqttsnException {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(baos);
+            writeBytes(out, readWriter.write(message));
+            out.writeInt(payloads.size());
+            for (Map.Entry<IDataRef, byte[]> entry : payloads.entrySet()){
+                writeBytes(out, readWriter.write(entry.getKey()));
+                writeBytes(out, entry.getValue());
+            }
+            out.flush();
+            return baos.toByteArray();
+        } catch(IOException e){
+            throw new MqttsnException(e);
+        }
+    }
+
+    /**
+     * @param payloads - populated with the payloads held in the record
+     */
+    public static IQueuedPublishMessage decodeRecord(IMqttsnObjectReaderWriter readWriter, byte[] record,
+                                                     Map<IDataRef, byte[]> payloads) throws MqttsnException {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            IQueuedPublishMessage message = readWriter.load(QueuedPublishMessageImpl.class, readBytes(in));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++){
+                IDataRef ref = readWriter.load(IDataRef.class, readBytes(in));
+                payloads.put(ref, readBytes(in));
+            }
+            return message;
+        } catch(IOException e){
+            throw new MqttsnException(e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] arr) throws IOException {
+        out.writeInt(arr.length);
+        out.write(arr);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] arr = new byte[in.readInt()];
+        in.readFully(arr);
+        return arr;
+    }
+}
@@ -34,6 +34,7 @@ import java.io.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
@@ -544,6 +545,7 @@ class Predefined implements Serializable {
     public Map<String, Integer> alias;
     public Predefined(){}
     public Predefined(final Map<String, Integer> alias){
-        this.alias = alias;
+        //-- store a plain copy, the options map is not itself serializable
+        this.alias = new HashMap<>(alias);
     }
 }
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.impl;
+
+import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
+import org.slj.mqtt.sn.spi.IMqttsnTimeout;
+import org.slj.mqtt.sn.spi.IMqttsnTimerService;
+import org.slj.mqtt.sn.spi.MqttsnException;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A hashed wheel timer (after Varghese &amp; Lauck) driven by a single daemon thread. Deadlines are hashed into one of
+ * a fixed number of buckets by tick; each tick the worker visits one bucket and only touches the timeouts held in it, so
+ * the cost of a tick is proportional to the number of deadlines falling in that slot rather than the total scheduled.
+ * Deadlines further away than one revolution of the wheel carry a count of remaining rounds.
+ *
+ * Scheduling and cancellation are lock free hand-offs to the worker via queues, only the worker thread touches the
+ * buckets. The resolution of the timer is the tick duration.
+ */
+public class MqttsnHashedWheelTimer extends AbstractMqttsnBackoffThreadService implements IMqttsnTimerService {
+
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    //-- bound the work done moving new timeouts onto the wheel per tick so a burst cannot stall expiry
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private final long tickMillis;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private volatile long startTime;
+    private long tick;
+
+    public MqttsnHashedWheelTimer(){
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param tickMillis - the resolution of the timer
+     * @param wheelSize - the number of buckets, rounded up to a power of 2
+     */
+    public MqttsnHashedWheelTimer(long tickMillis, int wheelSize){
+        if(tickMillis < 1) throw new IllegalArgumentException("tick duration must be at least 1 millisecond");
+        if(wheelSize < 1 || wheelSize > (1 << 30)) throw new IllegalArgumentException("wheel size must be between 1 and 2^30");
+        int size = 1;
+        while(size < wheelSize) size <<= 1;
+        this.tickMillis = tickMillis;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++){
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startTime = now();
+    }
+
+    @Override
+    public synchronized void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
+        startTime = now();
+        tick = 0;
+        super.start(runtime);
+    }
+
+    @Override
+    public IMqttsnTimeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if(task == null) throw new NullPointerException("task must not be null");
+        long deadline = now() - startTime + Math.max(0, unit.toMillis(delay));
+        Timeout timeout = new Timeout(this, task, deadline);
+        pendingCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    @Override
+    protected long doWork() {
+        long elapsed = now() - startTime;
+        while((tick + 1) * tickMillis <= elapsed){
+            processCancelled();
+            transferPending();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+        return Math.max(1, (tick + 1) * tickMillis - (now() - startTime));
+    }
+
+    private void transferPending(){
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++){
+            Timeout timeout = pendingTimeouts.poll();
+            if(timeout == null) break;
+            if(timeout.state != Timeout.ST_INIT) continue;
+            long calculated = timeout.deadline / tickMillis;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            //-- anything already overdue goes into the current bucket
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void processCancelled(){
+        Timeout timeout;
+        while((timeout = cancelledTimeouts.poll()) != null){
+            if(timeout.bucket != null){
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void runTask(Timeout timeout){
+        try {
+            timeout.task.run();
+        } catch(Throwable t){
+            logger.warn("timer task threw an exception", t);
+        }
+    }
+
+    @Override
+    protected String getDaemonName() {
+        return "timer";
+    }
+
+    private static long now(){
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Doubly linked list of timeouts in a slot, only ever accessed by the worker thread
+     */
+    private final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout){
+            timeout.bucket = this;
+            if(head == null){
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(){
+            Timeout timeout = head;
+            while(timeout != null){
+                Timeout next = timeout.next;
+                if(timeout.remainingRounds <= 0){
+                    remove(timeout);
+                    if(timeout.markExpired()){
+                        runTask(timeout);
+                    }
+                } else if(timeout.state == Timeout.ST_CANCELLED){
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout){
+            if(timeout.bucket != this) return;
+            Timeout next = timeout.next;
+            if(timeout.prev != null){
+                timeout.prev.next = next;
+            }
+            if(next != null){
+                next.prev = timeout.prev;
+            }
+            if(timeout == head){
+                head = next;
+            }
+            if(timeout == tail){
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    private static final class Timeout implements IMqttsnTimeout {
+
+        static final int ST_INIT = 0, ST_CANCELLED = 1, ST_EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final MqttsnHashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state = ST_INIT;
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+        private Bucket bucket;
+
+        Timeout(MqttsnHashedWheelTimer timer, Runnable task, long deadline){
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if(!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)){
+                return false;
+            }
+            timer.pendingCount.decrementAndGet();
+            timer.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        boolean markExpired(){
+            if(STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)){
+                timer.pendingCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+    }
+}
@@ -71,8 +71,11 @@ public class MqttsnMessageQueueProcessor
             return RESULT.REMOVE_PROCESS;
         }
 
-        //-- this checks the inflight if its > 0 we cannot send
-        if(!registry.getMessageStateService().canSend(context)) {
+        //-- this checks the inflight if its > 0 we cannot send; a client pipelining over a window greater than 1 blocks
+        //-- on its window rather than backing off, with a window of 1 the next flush is triggered by the ack as before
+        if(!registry.getMessageStateService().canSend(context) &&
+                !(clientMode && registry.getOptions().getMaxMessagesInflight() > 1 &&
+                        registry.getMessageStateService().awaitCanSend(context, registry.getOptions().getMaxWait()))) {
             logger.debug("state service determined cant send at the moment {}, remove process and allow protocol processor to schedule new check", context);
             return RESULT.BACKOFF_PROCESS;
         }
@@ -129,7 +132,9 @@ public class MqttsnMessageQueueProcessor
             //-- let the reaper check on delivery
             try {
                 MqttsnWaitToken token = registry.getMessageStateService().sendPublishMessage(context, info, queuedMessage);
-                if (clientMode) {
+                //-- with a window greater than 1 the client pipelines its publishes; acks release the window as they
+                //-- arrive and failed deliveries are re-queued when they expire from inflight
+                if (clientMode && registry.getOptions().getMaxMessagesInflight() <= 1) {
                     if(token != null){
                         registry.getMessageStateService().waitForCompletion(context, token);
                         if(token.isError()){
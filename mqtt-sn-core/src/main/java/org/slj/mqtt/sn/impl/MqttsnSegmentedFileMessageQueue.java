@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.impl;
+
+import org.slj.mqtt.sn.impl.ram.MqttsnInMemoryMessageQueue;
+import org.slj.mqtt.sn.model.IDataRef;
+import org.slj.mqtt.sn.model.MqttsnQueueAcceptException;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
+import org.slj.mqtt.sn.spi.IMqttsnObjectReaderWriter;
+import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.spi.MqttsnRuntimeException;
+import org.slj.mqtt.sn.utils.Files;
+import org.slj.mqtt.sn.utils.MqttsnUtils;
+import org.slj.mqtt.sn.utils.SegmentedFileQueue;
+import org.slj.mqtt.sn.wire.MqttsnWireUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A message queue which holds the head of each session queue in memory, and once the in memory portion passes the
+ * disk storage threshold, appends further messages to a per session {@link SegmentedFileQueue} in the workspace. As the
+ * in memory portion drains it is refilled in batches from the head of the disk queue, which only advances a cursor, so
+ * the cost of draining is linear in the size of the backlog. While anything is held on disk new messages are appended
+ * behind it to preserve FIFO order.
+ *
+ * Disk queues found in the workspace at startup are recovered (see {@link SegmentedFileQueue}) and reattached when the
+ * session with the same client id is next seen. The queued records are metadata only, the payloads themselves are
+ * resolved from the message registry, so the registry must also be durable for recovered messages to be deliverable.
+ */
+public class MqttsnSegmentedFileMessageQueue extends MqttsnInMemoryMessageQueue {
+
+    static final String DIR = "_message-queues-segmented";
+
+    private final IMqttsnObjectReaderWriter readWriter;
+    private final int segmentSize;
+    private final boolean memoryMapped;
+    private final Map<String, SegmentedFileQueue> queues = new ConcurrentHashMap<>();
+    private final Map<IDataRef, DataRefPin> pins = new ConcurrentHashMap<>();
+    private volatile File root;
+
+    public MqttsnSegmentedFileMessageQueue(IMqttsnObjectReaderWriter readWriter) {
+        this(readWriter, SegmentedFileQueue.DEFAULT_SEGMENT_SIZE, true);
+    }
+
+    public MqttsnSegmentedFileMessageQueue(IMqttsnObjectReaderWriter readWriter, int segmentSize, boolean memoryMapped) {
+        this.readWriter = readWriter;
+        this.segmentSize = segmentSize;
+        this.memoryMapped = memoryMapped;
+    }
+
+    @Override
+    public void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
+        super.start(runtime);
+        initialize();
+    }
+
+    @Override
+    public void stop() throws MqttsnException {
+        super.stop();
+        for (SegmentedFileQueue queue : queues.values()){
+            try {
+                queue.close();
+            } catch(IOException e){
+                logger.warn("error closing disk queue {}", queue.getDirectory(), e);
+            }
+        }
+        queues.clear();
+    }
+
+    protected synchronized void initialize() throws MqttsnException {
+        File f = new File(getRegistry().getStorageService().getWorkspaceRoot(), DIR);
+        if(!f.exists() && !f.mkdirs()){
+            throw new MqttsnException("unable to create message queue directory " + f);
+        }
+        root = f;
+        File[] existing = root.listFiles(File::isDirectory);
+        if(existing != null){
+            for (File dir : existing){
+                try {
+                    SegmentedFileQueue queue = new SegmentedFileQueue(dir, segmentSize, memoryMapped);
+                    if(queue.isEmpty()){
+                        queue.delete();
+                    } else {
+                        logger.info("recovered {} queued messages from disk {}", queue.size(), dir.getName());
+                        queues.put(dir.getName(), queue);
+                    }
+                } catch(IOException e){
+                    logger.error("unable to recover disk queue {}", dir, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void offerInternal(ISession session, IQueuedPublishMessage message)
+            throws MqttsnException, MqttsnQueueAcceptException {
+        try {
+            synchronized (locks.mutex(session.getContext().getId())) {
+                SegmentedFileQueue queue = getQueue(session, false);
+                if((queue != null && !queue.isEmpty()) || thresholdExceeded(session)) {
+                    logger.debug("message queue threshold exceeded, append to disk {}", session.getContext());
+                    queue = queue == null ? getQueue(session, true) : queue;
+                    queue.append(readWriter.write(message));
+                    pin(message.getDataRefId());
+                } else {
+                    super.offerInternal(session, message);
+                }
+            }
+        } catch(IOException e){
+            throw new MqttsnException("error appending to disk queue;", e);
+        }
+    }
+
+    @Override
+    public IQueuedPublishMessage poll(ISession session){
+        synchronized (locks.mutex(session.getContext().getId())){
+            return super.poll(session);
+        }
+    }
+
+    @Override
+    public IQueuedPublishMessage peek(ISession session){
+        try {
+            synchronized (locks.mutex(session.getContext().getId())){
+                SegmentedFileQueue queue;
+                if(super.queueSize(session) == 0 &&
+                        (queue = getQueue(session, false)) != null && !queue.isEmpty()){
+                    int max = getRegistry().getOptions().getMaxMessagesInQueue();
+                    int threshold = getRegistry().getOptions().getMessageQueueDiskStorageThreshold();
+                    int batch = Math.max(1, (int) MqttsnUtils.percentOf(threshold, max));
+                    List<byte[]> records = queue.poll(batch);
+                    logger.debug("moving {} messages from disk to memory {}", records.size(), session.getContext());
+                    for (byte[] record : records){
+                        QueuedPublishMessageImpl message =
+                                readWriter.load(QueuedPublishMessageImpl.class, record);
+                        IDataRef ref = unpin(message.getDataRefId());
+                        if(ref != null) message.setDataRefId(ref);
+                        super.offerInternal(session, message);
+                    }
+                }
+            }
+            return super.peek(session);
+        } catch(Exception e){
+            throw new MqttsnRuntimeException(e);
+        }
+    }
+
+    @Override
+    public long queueSize(ISession session) throws MqttsnException {
+        synchronized (locks.mutex(session.getContext().getId())){
+            long size = super.queueSize(session);
+            SegmentedFileQueue queue = getQueue(session, false);
+            return queue == null ? size : size + queue.size();
+        }
+    }
+
+    @Override
+    public void clear(ISession session) {
+        if(session == null) return;
+        synchronized (locks.mutex(session.getContext().getId())){
+            super.clear(session);
+            SegmentedFileQueue queue = queues.remove(fileNameSafe(session.getContext().getId()));
+            if(queue != null){
+                try {
+                    release(queue);
+                    queue.delete();
+                } catch(Exception e){
+                    throw new MqttsnRuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all disk queues, leaving the in memory portion of each session queue intact
+     */
+    public void clearFilesystemOnly() throws MqttsnException {
+        try {
+            for (SegmentedFileQueue queue : queues.values()){
+                queue.close();
+            }
+            queues.clear();
+            pins.clear();
+            Files.delete(root);
+        } catch(IOException e){
+            throw new MqttsnException(e);
+        } finally {
+            initialize();
+        }
+    }
+
+    protected boolean thresholdExceeded(ISession session) {
+        int count = getSessionBean(session).getQueueSize();
+        int max = getRegistry().getOptions().getMaxMessagesInQueue();
+        int threshold = getRegistry().getOptions().getMessageQueueDiskStorageThreshold();
+        return MqttsnUtils.percent(count, max) > threshold;
+    }
+
+    protected SegmentedFileQueue getQueue(ISession session, boolean createIfNotExists) {
+        String name = fileNameSafe(session.getContext().getId());
+        SegmentedFileQueue queue = queues.get(name);
+        if(queue == null && createIfNotExists){
+            queue = queues.computeIfAbsent(name, n -> {
+                try {
+                    return new SegmentedFileQueue(new File(root, n), segmentSize, memoryMapped);
+                } catch(IOException e){
+                    throw new MqttsnRuntimeException(e);
+                }
+            });
+        }
+        return queue;
+    }
+
+    /**
+     * Drain the disk queue releasing the data references held on behalf of its records
+     */
+    private void release(SegmentedFileQueue queue) throws IOException, MqttsnException {
+        List<byte[]> records;
+        while(!(records = queue.poll(getRegistry().getOptions().getMaxMessagesInQueue())).isEmpty()){
+            for (byte[] record : records){
+                unpin(readWriter.load(QueuedPublishMessageImpl.class, record).getDataRefId());
+            }
+        }
+    }
+
+    /**
+     * The message registry holds data weakly against the reference instance, so while a message is on disk the original
+     * reference must be held strongly; it is handed back to the message when it returns to memory
+     */
+    private void pin(IDataRef ref){
+        if(ref == null) return;
+        pins.compute(ref, (k, pin) -> {
+            if(pin == null) pin = new DataRefPin(ref);
+            pin.count++;
+            return pin;
+        });
+    }
+
+    private IDataRef unpin(IDataRef ref){
+        if(ref == null) return null;
+        IDataRef[] original = new IDataRef[1];
+        pins.computeIfPresent(ref, (k, pin) -> {
+            original[0] = pin.ref;
+            return --pin.count == 0 ? null : pin;
+        });
+        return original[0];
+    }
+
+    private static String fileNameSafe(String clientId){
+        return MqttsnWireUtils.toHex(clientId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class DataRefPin {
+        private final IDataRef ref;
+        private int count;
+
+        DataRefPin(IDataRef ref) {
+            this.ref = ref;
+        }
+    }
+}
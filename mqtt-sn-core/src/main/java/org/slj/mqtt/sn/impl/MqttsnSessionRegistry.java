@@ -37,6 +37,7 @@ import org.slj.mqtt.sn.spi.MqttsnRuntimeException;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Created bean based session objects which can encapsulate the storage of session elements
@@ -45,9 +46,14 @@ public class MqttsnSessionRegistry extends AbstractMqttsnSessionBeanRegistry imp
 
     protected Map<IClientIdentifierContext, ISession> sessionLookup;
 
+    //-- the number of sessions in the lookup in each state, maintained as sessions are added, removed and change state
+    //-- so the counts (which back the snapshot metrics) never need to visit the sessions
+    private final Map<ClientState, LongAdder> stateCounts = createStateCounts();
+
     public void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
         super.start(runtime);
         sessionLookup = new ConcurrentHashMap<>();
+        stateCounts.values().forEach(LongAdder::reset);
         registerMetrics(runtime);
     }
 
@@ -58,10 +64,38 @@ public class MqttsnSessionRegistry extends AbstractMqttsnSessionBeanRegistry imp
 
         logger.info("creating new session for {}", context);
         ISession session = new SessionBeanImpl(context, ClientState.DISCONNECTED);
-        sessionLookup.put(context, session);
+        addSession(session);
         return session;
     }
 
+    /**
+     * Add the session to the lookup, replacing any held for the same context, and count it in its current state
+     */
+    protected void addSession(ISession session){
+        synchronized (session){
+            ISession previous = sessionLookup.put(session.getContext(), session);
+            if(previous != null && previous != session){
+                adjustStateCount(previous.getClientState(), -1);
+            }
+            if(previous != session){
+                adjustStateCount(session.getClientState(), 1);
+            }
+        }
+    }
+
+    /**
+     * Remove the session held for the context from the lookup, and from the count of its current state
+     */
+    protected void removeSession(IClientIdentifierContext context){
+        ISession session = sessionLookup.get(context);
+        if(session == null) return;
+        synchronized (session){
+            if(sessionLookup.remove(context, session)){
+                adjustStateCount(session.getClientState(), -1);
+            }
+        }
+    }
+
     @Override
     public ISession getSession(IClientIdentifierContext context, boolean createIfNotExists) throws MqttsnException {
         ISession session = sessionLookup.get(context);
@@ -126,7 +160,7 @@ public class MqttsnSessionRegistry extends AbstractMqttsnSessionBeanRegistry imp
             }
             cleanSession(session.getContext(), true);
         } finally {
-            sessionLookup.remove(session.getContext());
+            removeSession(session.getContext());
         }
     }
 
@@ -162,10 +196,27 @@ public class MqttsnSessionRegistry extends AbstractMqttsnSessionBeanRegistry imp
 
     @Override
     public long countSessions(ClientState state) {
-        synchronized (sessionLookup){
-            return sessionLookup.values().stream().filter(s ->
+        LongAdder count = state == null ? null : stateCounts.get(state);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Compare the maintained state counts against a full count of the sessions; the two can only legitimately differ
+     * while state changes are in progress, so this is intended for tests and diagnostics on a quiet registry.
+     * @return true if every state count matches the sessions held
+     */
+    public boolean checkStateCounts() {
+        boolean consistent = true;
+        for (ClientState state : ClientState.values()){
+            long counted = sessionLookup.values().stream().filter(s ->
                     s.getClientState() == state).count();
+            long maintained = countSessions(state);
+            if(counted != maintained){
+                logger.warn("session state count for {} is {}, but {} sessions are in that state", state, maintained, counted);
+                consistent = false;
+            }
         }
+        return consistent;
     }
 
     @Override
@@ -184,7 +235,16 @@ public class MqttsnSessionRegistry extends AbstractMqttsnSessionBeanRegistry imp
 
     @Override
     public void modifyClientState(ISession session, ClientState state){
-        getSessionBean(session).setClientState(state);
+        SessionBeanImpl bean = getSessionBean(session);
+        synchronized (bean){
+            ClientState previous = bean.getClientState();
+            bean.setClientState(state);
+            //-- a session no longer (or not yet) in the lookup is not counted
+            if(previous != state && sessionLookup.get(bean.getContext()) == bean){
+                adjustStateCount(previous, -1);
+                adjustStateCount(state, 1);
+            }
+        }
         logger.info("setting session-state as '{}' {}", state, session);
     }
 
@@ -219,6 +279,20 @@ public class MqttsnSessionRegistry extends AbstractMqttsnSessionBeanRegistry imp
         logger.info("setting session-maxPacketSize as '{}}' {}", maxPacketSize, session);
     }
 
+    private void adjustStateCount(ClientState state, int delta){
+        if(state != null){
+            stateCounts.get(state).add(delta);
+        }
+    }
+
+    private static Map<ClientState, LongAdder> createStateCounts(){
+        Map<ClientState, LongAdder> counts = new EnumMap<>(ClientState.class);
+        for (ClientState state : ClientState.values()){
+            counts.put(state, new LongAdder());
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
     protected void registerMetrics(IMqttsnRuntimeRegistry runtime){
         if(runtime.getMetrics() != null){
             runtime.getMetrics().registerMetric(new MqttsnSnapshotMetric(IMqttsnMetrics.SESSION_ACTIVE_REGISTRY_COUNT, "A count of the number of sessions marked in the 'ACTIVE' state resident in the runtime.",
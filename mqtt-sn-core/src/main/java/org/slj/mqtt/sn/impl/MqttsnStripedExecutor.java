@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A fixed set of single threaded executors (stripes) where work is assigned to a stripe by key. All tasks
+ * submitted for the same key are run by the same thread in the order they were submitted, whilst different keys
+ * are spread across the stripes to make use of more than one core. Typically the key is the {@link org.slj.mqtt.sn.model.INetworkContext}
+ * so a device's packets are processed in the order they arrived.
+ *
+ * Instances should be obtained from {@link AbstractMqttsnRuntime#createManagedStripedExecutorService(String, int)}
+ * so the stripes are managed (and closed) alongside the other runtime executors.
+ */
+public class MqttsnStripedExecutor {
+
+    private final ExecutorService[] stripes;
+
+    public MqttsnStripedExecutor(ExecutorService[] stripes){
+        if(stripes == null || stripes.length == 0)
+            throw new IllegalArgumentException("striped executor requires at least 1 stripe");
+        this.stripes = stripes;
+    }
+
+    /**
+     * @param key - the ordering key, tasks with equal keys are always assigned the same stripe
+     * @return the single threaded executor responsible for the key
+     */
+    public ExecutorService forKey(Object key){
+        return stripes[stripe(key, stripes.length)];
+    }
+
+    public int getStripeCount(){
+        return stripes.length;
+    }
+
+    public List<ExecutorService> getStripes(){
+        return Collections.unmodifiableList(Arrays.asList(stripes));
+    }
+
+    static int stripe(Object key, int count){
+        int h = key == null ? 0 : key.hashCode();
+        //-- spread the high bits down as address hashes tend to differ only in the port
+        h ^= (h >>> 16);
+        return (h & 0x7FFFFFFF) % count;
+    }
+}
@@ -33,9 +33,16 @@ public interface IMqttsnMetrics {
     String NETWORK_BYTES_IN = "NETWORK_BYTES_IN";
     String NETWORK_BYTES_OUT = "NETWORK_BYTES_OUT";
 
+    //-- per receiver shard metrics are suffixed with the shard index
+    String NETWORK_SHARD_PACKETS_IN = "NETWORK_SHARD_PACKETS_IN_";
+    String NETWORK_SHARD_BYTES_IN = "NETWORK_SHARD_BYTES_IN_";
+
     String PUBLISH_MESSAGE_IN = "PUBLISH_MESSAGE_IN";
     String PUBLISH_MESSAGE_OUT = "PUBLISH_MESSAGE_OUT";
 
+    String SUBSCRIPTION_MATCH_CACHE_HIT = "SUBSCRIPTION_MATCH_CACHE_HIT";
+    String SUBSCRIPTION_MATCH_CACHE_MISS = "SUBSCRIPTION_MATCH_CACHE_MISS";
+
     String NETWORK_REGISTRY_COUNT = "NETWORK_REGISTRY_COUNT";
     String TOPIC_REGISTRY_COUNT = "TOPIC_REGISTRY_COUNT";
     String MESSAGE_REGISTRY_COUNT = "MESSAGE_REGISTRY_COUNT";
@@ -47,6 +47,11 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * @deprecated every refill from the overflow file rewrites the remainder of the file, so draining is quadratic in the
+ * size of the backlog; use {@link org.slj.mqtt.sn.impl.MqttsnSegmentedFileMessageQueue}
+ */
+@Deprecated
 public class MqttsnFileBackedInMemoryMessageQueue
         extends MqttsnInMemoryMessageQueue {
 
@@ -25,6 +25,7 @@
 package org.slj.mqtt.sn.impl.ram;
 
 import org.slj.mqtt.sn.impl.AbstractMqttsnSessionBeanRegistry;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
 import org.slj.mqtt.sn.model.MqttsnDeadLetterQueueBean;
 import org.slj.mqtt.sn.model.MqttsnQueueAcceptException;
 import org.slj.mqtt.sn.model.MqttsnWaitToken;
@@ -32,12 +33,15 @@ import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
 import org.slj.mqtt.sn.model.session.ISession;
 import org.slj.mqtt.sn.spi.IMqttsnMessageQueue;
 import org.slj.mqtt.sn.spi.MqttsnException;
-import org.slj.mqtt.sn.utils.TransientObjectLocks;
+import org.slj.mqtt.sn.utils.StripedLocks;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class MqttsnInMemoryMessageQueue
         extends AbstractMqttsnSessionBeanRegistry implements IMqttsnMessageQueue {
 
-    protected final TransientObjectLocks locks = new TransientObjectLocks();
+    protected final StripedLocks locks = new StripedLocks();
 
     @Override
     public long queueSize(ISession session) throws MqttsnException {
@@ -59,6 +63,38 @@ public class MqttsnInMemoryMessageQueue
         }
     }
 
+    @Override
+    public final boolean[] offerAll(List<ISession> sessions, List<IQueuedPublishMessage> messages)
+            throws MqttsnException {
+
+        if(sessions.size() != messages.size())
+            throw new MqttsnException("each session must be offered a message");
+        boolean[] accepted = new boolean[sessions.size()];
+        List<IClientIdentifierContext> flush = new ArrayList<>(sessions.size());
+        try {
+            for (int i = 0; i < sessions.size(); i++){
+                ISession session = sessions.get(i);
+                IQueuedPublishMessage message = messages.get(i);
+                synchronized (locks.mutex(session.getContext().getId())){
+                    try {
+                        checkQueueSizeRestrictions(session, message);
+                        offerInternal(session, message);
+                        accepted[i] = true;
+                        flush.add(session.getContext());
+                    } catch(MqttsnQueueAcceptException e){
+                        //-- the queue was full, the message has been dead lettered
+                    } catch(MqttsnException e){
+                        logger.warn("unable to offer message to session, skipping ({})", session.getContext(), e);
+                    }
+                }
+            }
+        } finally {
+            if(!flush.isEmpty() && registry.getMessageStateService() != null)
+                registry.getMessageStateService().scheduleFlush(flush);
+        }
+        return accepted;
+    }
+
     @Override
     public final MqttsnWaitToken offerWithToken(ISession session, IQueuedPublishMessage message)
             throws MqttsnException, MqttsnQueueAcceptException {
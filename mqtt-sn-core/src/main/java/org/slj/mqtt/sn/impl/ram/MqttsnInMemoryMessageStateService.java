@@ -50,44 +50,60 @@ public class MqttsnInMemoryMessageStateService
     }
 
     @Override
-    protected long doWork() {
-        long nextWork = super.doWork();
-        synchronized (inflightMessages) {
-            Iterator<IClientIdentifierContext> itr = inflightMessages.keySet().iterator();
-            while (itr.hasNext()) {
-                try {
-                    IClientIdentifierContext context = itr.next();
-                    clearInflightInternal(context, System.currentTimeMillis());
-                    Pair<Map<Integer, InflightMessage>, Map<Integer, InflightMessage>> pair =
-                            inflightMessages.get(context);
-                    if(pair != null && pair.getLeft().size() == 0 && pair.getRight().size() == 0){
-                        logger.debug("removing inflight key for context {}", context);
-                        itr.remove();
-                    }
-                } catch(MqttsnException e){
-                    logger.warn("error occurred during inflight eviction run;", e);
-                }
-            }
+    public void clear(IClientIdentifierContext context) throws MqttsnException{
+        inflightMessages.remove(context);
+    }
+
+    @Override
+    public InflightMessage removeInflight(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, Integer packetId) {
+        Pair<Map<Integer, InflightMessage>, Map<Integer, InflightMessage>> pair = inflightMessages.get(context);
+        if(pair == null) return null;
+        InflightMessage inflight = select(pair, source).remove(packetId);
+        if(inflight != null){
+            inflight.cancelTimeout();
+            removeIfEmpty(context, pair);
+            signalInflightWindow(context);
         }
-        return nextWork;
+        return inflight;
     }
 
     @Override
-    public void clear(IClientIdentifierContext context) throws MqttsnException{
-        inflightMessages.remove(context);
+    protected boolean removeInflight(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, Integer packetId, InflightMessage expected) {
+        //-- do not recreate the inflight maps for a context which has since been cleared
+        Pair<Map<Integer, InflightMessage>, Map<Integer, InflightMessage>> pair = inflightMessages.get(context);
+        if(pair == null) return false;
+        Map<Integer, InflightMessage> map = select(pair, source);
+        synchronized (map){
+            if(map.get(packetId) != expected){
+                return false;
+            }
+            map.remove(packetId);
+        }
+        removeIfEmpty(context, pair);
+        return true;
     }
 
     @Override
-    public InflightMessage removeInflight(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, Integer packetId) {
-        Map<Integer, InflightMessage> map = getInflightMessages(context, source);
-        return map.remove(packetId);
+    protected void clearInflightInternal(IClientIdentifierContext context, long evictionTime) throws MqttsnException {
+        super.clearInflightInternal(context, evictionTime);
+        Pair<Map<Integer, InflightMessage>, Map<Integer, InflightMessage>> pair = inflightMessages.get(context);
+        if(pair != null){
+            removeIfEmpty(context, pair);
+        }
     }
 
     @Override
     protected void addInflightMessage(IClientIdentifierContext context, Integer messageId, InflightMessage message) {
-        Map<Integer, InflightMessage> map = getInflightMessages(context, message.getOriginatingMessageSource());
-        synchronized (map){
-            map.put(messageId, message);
+        while(true){
+            Pair<Map<Integer, InflightMessage>, Map<Integer, InflightMessage>> pair = getOrCreateInflight(context);
+            Map<Integer, InflightMessage> map = select(pair, message.getOriginatingMessageSource());
+            synchronized (map){
+                //-- the pair may have been removed as empty since it was looked up, if so add to its replacement
+                if(inflightMessages.get(context) == pair){
+                    map.put(messageId, message);
+                    return;
+                }
+            }
         }
     }
 
@@ -103,8 +119,18 @@ public class MqttsnInMemoryMessageStateService
         return exists;
     }
 
+    /**
+     * The inflight messages for a context, a context with nothing inflight has no entry so an empty map is returned
+     * rather than creating one
+     */
     @Override
     public Map<Integer, InflightMessage> getInflightMessages(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source) {
+        Pair<Map<Integer, InflightMessage>, Map<Integer, InflightMessage>> pair = inflightMessages.get(context);
+        logger.debug("inflight for {} is {}", context, pair);
+        return pair == null ? Collections.emptyMap() : select(pair, source);
+    }
+
+    protected Pair<Map<Integer, InflightMessage>, Map<Integer, InflightMessage>> getOrCreateInflight(IClientIdentifierContext context) {
         Pair<Map<Integer, InflightMessage>, Map<Integer, InflightMessage>> pair = inflightMessages.get(context);
         if(pair == null){
             synchronized (this){
@@ -115,8 +141,30 @@ public class MqttsnInMemoryMessageStateService
                 }
             }
         }
-        logger.debug("inflight for {} is {}", context, pair);
+        return pair;
+    }
+
+    /**
+     * Drop the entry for a context once nothing is inflight in either direction, so contexts which have
+     * come and gone do not accumulate. Adds check the entry is still current under the map lock, so holding
+     * both map locks here means nothing can be added to a pair as it is removed.
+     */
+    protected void removeIfEmpty(IClientIdentifierContext context, Pair<Map<Integer, InflightMessage>, Map<Integer, InflightMessage>> pair) {
+        if(!pair.getLeft().isEmpty() || !pair.getRight().isEmpty()) return;
+        synchronized (pair.getLeft()){
+            synchronized (pair.getRight()){
+                synchronized (inflightMessages){
+                    if(pair.getLeft().isEmpty() && pair.getRight().isEmpty() &&
+                            inflightMessages.get(context) == pair){
+                        inflightMessages.remove(context);
+                    }
+                }
+            }
+        }
+    }
 
+    private static Map<Integer, InflightMessage> select(Pair<Map<Integer, InflightMessage>, Map<Integer, InflightMessage>> pair,
+                                                        IMqttsnOriginatingMessageSource source){
         //left is sending right is receiving
         return source == IMqttsnOriginatingMessageSource.LOCAL ? pair.getLeft() : pair.getRight();
     }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.impl.ram;
+
+import org.slj.mqtt.sn.impl.AbstractMqttsnMessageStateService;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.model.InflightMessage;
+import org.slj.mqtt.sn.spi.IMqttsnOriginatingMessageSource;
+import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.utils.IntSlotMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory message state service whose inflight messages are held in primitive int-keyed slot maps
+ * ({@link IntSlotMap}), one pair per context sized from {@link org.slj.mqtt.sn.model.MqttsnOptions#getMaxMessagesInflight()}.
+ * Contexts are held in a concurrent map so lookups never share a monitor across contexts. Message ids still arrive
+ * boxed through the state service methods, they are unboxed here and stored without per-entry nodes or
+ * {@link Integer} keys.
+ */
+public class MqttsnInMemorySlotMessageStateService
+        extends AbstractMqttsnMessageStateService {
+
+    protected Map<IClientIdentifierContext, ContextInflight> inflightMessages;
+
+    public MqttsnInMemorySlotMessageStateService(boolean clientMode) {
+        super(clientMode);
+    }
+
+    @Override
+    public synchronized void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
+        inflightMessages = new ConcurrentHashMap<>();
+        super.start(runtime);
+    }
+
+    @Override
+    public void clear(IClientIdentifierContext context) throws MqttsnException {
+        inflightMessages.remove(context);
+    }
+
+    @Override
+    public InflightMessage removeInflight(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, Integer packetId) {
+        ContextInflight inflight = inflightMessages.get(context);
+        if(inflight == null) return null;
+        InflightMessage message = inflight.get(source).remove(packetId.intValue());
+        if(message != null){
+            message.cancelTimeout();
+            removeIfEmpty(context, inflight);
+            signalInflightWindow(context);
+        }
+        return message;
+    }
+
+    @Override
+    protected boolean removeInflight(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, Integer packetId, InflightMessage expected) {
+        //-- do not recreate the inflight maps for a context which has since been cleared
+        ContextInflight inflight = inflightMessages.get(context);
+        if(inflight == null || !inflight.get(source).removeIfSame(packetId.intValue(), expected)) return false;
+        removeIfEmpty(context, inflight);
+        return true;
+    }
+
+    @Override
+    protected void clearInflightInternal(IClientIdentifierContext context, long evictionTime) throws MqttsnException {
+        super.clearInflightInternal(context, evictionTime);
+        ContextInflight inflight = inflightMessages.get(context);
+        if(inflight != null){
+            removeIfEmpty(context, inflight);
+        }
+    }
+
+    @Override
+    protected void addInflightMessage(IClientIdentifierContext context, Integer messageId, InflightMessage message) {
+        while(true){
+            ContextInflight inflight = getOrCreate(context);
+            IntSlotMap<InflightMessage> map = inflight.get(message.getOriginatingMessageSource());
+            synchronized (map){
+                //-- the entry may have been removed as empty since it was looked up, if so add to its replacement
+                if(inflightMessages.get(context) == inflight){
+                    map.put(messageId.intValue(), message);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    protected InflightMessage getInflightMessage(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, Integer packetId) {
+        ContextInflight inflight = inflightMessages.get(context);
+        return inflight == null ? null : inflight.get(source).get(packetId.intValue());
+    }
+
+    @Override
+    protected boolean inflightExists(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, Integer packetId) {
+        ContextInflight inflight = inflightMessages.get(context);
+        boolean exists = inflight != null && inflight.get(source).containsKey(packetId.intValue());
+        logger.debug("context {} -> inflight exists for id {} ? {}", context, packetId, exists);
+        return exists;
+    }
+
+    /**
+     * The inflight messages for a context, a context with nothing inflight has no entry so an empty map is returned
+     * rather than creating one
+     */
+    @Override
+    public Map<Integer, InflightMessage> getInflightMessages(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source) {
+        ContextInflight inflight = inflightMessages.get(context);
+        return inflight == null ? Collections.emptyMap() : inflight.get(source);
+    }
+
+    public List<IClientIdentifierContext> getActiveInflights(){
+        return new ArrayList<>(inflightMessages.keySet());
+    }
+
+    protected ContextInflight getOrCreate(IClientIdentifierContext context){
+        ContextInflight inflight = inflightMessages.get(context);
+        if(inflight == null){
+            inflight = inflightMessages.computeIfAbsent(context,
+                    c -> new ContextInflight(registry.getOptions().getMaxMessagesInflight()));
+        }
+        return inflight;
+    }
+
+    /**
+     * Drop the entry for a context once nothing is inflight in either direction. Adds check the entry is still
+     * current under the slot map lock, so holding both slot map locks here means nothing can be added to an
+     * entry as it is removed.
+     */
+    protected void removeIfEmpty(IClientIdentifierContext context, ContextInflight inflight) {
+        if(!inflight.local.isEmpty() || !inflight.remote.isEmpty()) return;
+        synchronized (inflight.local){
+            synchronized (inflight.remote){
+                if(inflight.local.isEmpty() && inflight.remote.isEmpty()){
+                    inflightMessages.remove(context, inflight);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected String getDaemonName() {
+        return "message-state";
+    }
+
+    protected static class ContextInflight {
+
+        //-- local is sending, remote is receiving
+        private final IntSlotMap<InflightMessage> local;
+        private final IntSlotMap<InflightMessage> remote;
+
+        public ContextInflight(int maxMessagesInflight){
+            local = new IntSlotMap<>(maxMessagesInflight);
+            remote = new IntSlotMap<>(maxMessagesInflight);
+        }
+
+        public IntSlotMap<InflightMessage> get(IMqttsnOriginatingMessageSource source){
+            return source == IMqttsnOriginatingMessageSource.LOCAL ? local : remote;
+        }
+    }
+}
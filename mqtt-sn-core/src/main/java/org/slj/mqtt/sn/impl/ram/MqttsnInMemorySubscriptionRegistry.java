@@ -27,42 +27,139 @@ package org.slj.mqtt.sn.impl.ram;
 import org.slj.mqtt.sn.MqttsnConstants;
 import org.slj.mqtt.sn.MqttsnSpecificationValidator;
 import org.slj.mqtt.sn.impl.AbstractSubscriptionRegistry;
+import org.slj.mqtt.sn.impl.metrics.IMqttsnMetrics;
+import org.slj.mqtt.sn.impl.metrics.MqttsnCountingMetric;
 import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.model.MqttsnOptions;
 import org.slj.mqtt.sn.model.session.ISession;
 import org.slj.mqtt.sn.model.session.ISubscription;
+import org.slj.mqtt.sn.spi.IMqttsnMetricsService;
 import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
 import org.slj.mqtt.sn.spi.MqttsnException;
 import org.slj.mqtt.sn.spi.MqttsnIllegalFormatException;
+import org.slj.mqtt.sn.utils.MqttsnTopicTree;
+import org.slj.mqtt.sn.utils.TopicMatchCache;
 import org.slj.mqtt.tree.MqttTree;
 import org.slj.mqtt.tree.MqttTreeException;
 import org.slj.mqtt.tree.MqttTreeLimitExceededException;
 
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Subscriptions are held on the session bean and indexed in an {@link MqttTree}. The members of the tree carry the
+ * granted QoS alongside the context, so a single traversal of the tree yields both the recipients of a topic and the
+ * QoS each is subscribed at.
+ *
+ * The results of matching are cached by publish topic (up to {@link MqttsnOptions#getSubscriptionMatchCacheSize()}
+ * topics, beyond which the least recently used is evicted). When a subscription is added, changed or removed only the
+ * cached topics its filter matches are invalidated, found through the index the cache keeps of its topics.
+ */
 public class MqttsnInMemorySubscriptionRegistry
         extends AbstractSubscriptionRegistry {
 
-    private MqttTree<IClientIdentifierContext> tree;
+    private MqttTree<SubscriptionMember> tree;
+    private TopicMatchCache<Map<IClientIdentifierContext, Integer>> matchCache;
+    private final AtomicLong modifications = new AtomicLong();
 
     @Override
     public synchronized void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
         super.start(runtime);
-        tree = new MqttTree<>(MqttsnConstants.PATH_SEP, true);
+        tree = new MqttsnTopicTree<>(MqttsnConstants.PATH_SEP, true);
         tree.withMaxMembersAtLevel(1024 * 1024);
+        int matchCacheSize = runtime.getOptions().getSubscriptionMatchCacheSize();
+        matchCache = matchCacheSize > 0 ? new TopicMatchCache<>(matchCacheSize) : null;
+        indexExistingSessions();
+        registerMetrics(runtime);
+    }
+
+    @Override
+    public void stop() throws MqttsnException {
+        super.stop();
+        if(matchCache != null){
+            matchCache.clear();
+        }
+    }
+
+    /**
+     * Sessions may already be resident when the registry starts (for example recovered from a durable session store),
+     * so their subscriptions need adding to the index for them to receive matching publishes without re-subscribing
+     */
+    protected void indexExistingSessions() throws MqttsnException {
+        Iterator<ISession> itr = getRegistry().getSessionRegistry().iterator();
+        while(itr.hasNext()){
+            ISession session = itr.next();
+            for (ISubscription subscription : readSubscriptions(session)){
+                index(session, subscription);
+            }
+        }
     }
 
+    /**
+     * @return an unmodifiable set of the matching contexts
+     */
     @Override
     public Set<IClientIdentifierContext> matches(String topicPath) throws MqttsnException, MqttsnIllegalFormatException {
+        return matchesWithQoS(topicPath).keySet();
+    }
+
+    /**
+     * @return an unmodifiable map of the matching contexts, which may be shared with other callers through the cache
+     */
+    @Override
+    public Map<IClientIdentifierContext, Integer> matchesWithQoS(String topicPath)
+            throws MqttsnException, MqttsnIllegalFormatException {
+
+        TopicMatchCache<Map<IClientIdentifierContext, Integer>> cache = topicPath == null ? null : matchCache;
+        if(cache != null){
+            Map<IClientIdentifierContext, Integer> cached = cache.get(topicPath);
+            if(cached != null){
+                incrementMetric(IMqttsnMetrics.SUBSCRIPTION_MATCH_CACHE_HIT);
+                return cached;
+            }
+            incrementMetric(IMqttsnMetrics.SUBSCRIPTION_MATCH_CACHE_MISS);
+        }
 
         if (!MqttsnSpecificationValidator.isValidPublishTopic(
                 topicPath)) {
             throw new MqttsnIllegalFormatException("invalid topic format detected");
         }
-        Set<IClientIdentifierContext> treeMatches = matchFromTree(topicPath);
-        return treeMatches;
+        long version = modifications.get();
+        Set<SubscriptionMember> members = matchFromTree(topicPath);
+        Map<IClientIdentifierContext, Integer> matches = new HashMap<>(members.size() * 2);
+        for (SubscriptionMember member : members){
+            //-- overlapping subscriptions are granted the highest of their QoS
+            matches.merge(member.context, member.qos, Math::max);
+        }
+        matches = Collections.unmodifiableMap(matches);
+        if(cache != null){
+            cache(cache, topicPath, matches, version);
+        }
+        return matches;
+    }
+
+    private void cache(TopicMatchCache<Map<IClientIdentifierContext, Integer>> cache, String topicPath,
+                       Map<IClientIdentifierContext, Integer> matches, long version){
+        cache.put(topicPath, matches);
+        //-- the index changed while matching, the result may predate an invalidation so cannot be kept
+        if(modifications.get() != version){
+            cache.remove(topicPath, matches);
+        }
+    }
+
+    /**
+     * Remove the cached matches for every topic the filter matches. The modification count is moved on first, so a
+     * match which was computed before the change is not cached after it.
+     */
+    protected void invalidate(ISubscription subscription) {
+        modifications.incrementAndGet();
+        TopicMatchCache<Map<IClientIdentifierContext, Integer>> cache = matchCache;
+        if(cache != null){
+            cache.invalidate(subscription.getTopicPath().toString());
+        }
     }
 
-    protected Set<IClientIdentifierContext> matchFromTree(String topicPath) throws MqttsnException {
+    protected Set<SubscriptionMember> matchFromTree(String topicPath) throws MqttsnException {
         try {
             return tree.search(topicPath);
         } catch (MqttTreeException e) {
@@ -84,27 +181,25 @@ public class MqttsnInMemorySubscriptionRegistry
             throw new MqttsnIllegalFormatException("invalid topic format detected");
         }
 
-        boolean existed = getSessionBean(session).removeSubscription(subscription);
+        ISubscription existing = findSubscription(session, subscription);
+        getSessionBean(session).removeSubscription(subscription);
         getSessionBean(session).addSubscription(subscription);
-        if(!existed){
-            try {
-                tree.subscribe(subscription.getTopicPath().toString(), session.getContext());
-            } catch (MqttTreeLimitExceededException | MqttTreeException e) {
-                throw new MqttsnException(e);
-            }
+        if(existing == null){
+            index(session, subscription);
+        } else if(existing.getGrantedQoS() != subscription.getGrantedQoS()){
+            //-- the QoS is part of the indexed member so an upgrade or downgrade replaces it
+            unindex(session, existing);
+            index(session, subscription);
         }
-        return !existed;
+        return existing == null;
     }
 
     @Override
     protected boolean removeSubscription(ISession session, ISubscription subscription) throws MqttsnException{
+        ISubscription existing = findSubscription(session, subscription);
         boolean removed = getSessionBean(session).removeSubscription(subscription);
-        if(removed){
-            try {
-                tree.unsubscribe(subscription.getTopicPath().toString(), session.getContext());
-            } catch (MqttTreeException e) {
-                throw new MqttsnException(e);
-            }
+        if(removed && existing != null){
+            unindex(session, existing);
         }
         return removed;
     }
@@ -122,7 +217,9 @@ public class MqttsnInMemorySubscriptionRegistry
         Set<ISubscription> all = readSubscriptions(session);
         for(ISubscription s : all){
             try {
-                removeSubscription(session, s);
+                if(getSessionBean(session).removeSubscription(s)){
+                    unindex(session, s);
+                }
             } catch (MqttsnException e) {
                 logger.warn("error clearing subscription from session", e);
             }
@@ -133,4 +230,88 @@ public class MqttsnInMemorySubscriptionRegistry
     public Set<String> readAllSubscribedTopicPaths() {
         return tree.getDistinctPaths(true);
     }
+
+    /**
+     * The subscription held by the session for the same topic path, which carries the QoS it was indexed with
+     */
+    protected ISubscription findSubscription(ISession session, ISubscription subscription){
+        for (ISubscription s : readSubscriptions(session)){
+            if(s.equals(subscription)){
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private void index(ISession session, ISubscription subscription) throws MqttsnException {
+        try {
+            tree.subscribe(subscription.getTopicPath().toString(),
+                    new SubscriptionMember(session.getContext(), subscription.getGrantedQoS()));
+        } catch (MqttTreeLimitExceededException | MqttTreeException e) {
+            throw new MqttsnException(e);
+        } finally {
+            invalidate(subscription);
+        }
+    }
+
+    private void unindex(ISession session, ISubscription subscription) throws MqttsnException {
+        try {
+            tree.unsubscribe(subscription.getTopicPath().toString(),
+                    new SubscriptionMember(session.getContext(), subscription.getGrantedQoS()));
+        } catch (MqttTreeException e) {
+            throw new MqttsnException(e);
+        } finally {
+            invalidate(subscription);
+        }
+    }
+
+    private void incrementMetric(String name){
+        IMqttsnMetricsService metrics = getRegistry().getMetrics();
+        if(metrics != null){
+            metrics.getMetric(name).increment(1);
+        }
+    }
+
+    protected void registerMetrics(IMqttsnRuntimeRegistry runtime){
+        if(runtime.getMetrics() != null){
+            runtime.getMetrics().registerMetric(new MqttsnCountingMetric(IMqttsnMetrics.SUBSCRIPTION_MATCH_CACHE_HIT, "The number of subscription matches served from the match cache in the time period.",
+                    IMqttsnMetrics.DEFAULT_MAX_SAMPLES, IMqttsnMetrics.DEFAULT_SAMPLES_TIME_MILLIS));
+            runtime.getMetrics().registerMetric(new MqttsnCountingMetric(IMqttsnMetrics.SUBSCRIPTION_MATCH_CACHE_MISS, "The number of subscription matches which were not in the match cache in the time period.",
+                    IMqttsnMetrics.DEFAULT_MAX_SAMPLES, IMqttsnMetrics.DEFAULT_SAMPLES_TIME_MILLIS));
+        }
+    }
+
+    /**
+     * A member of the subscription tree; equal by context and QoS so that where a context holds overlapping
+     * subscriptions at different QoS, the search result retains each of them
+     */
+    protected static final class SubscriptionMember {
+
+        final IClientIdentifierContext context;
+        final int qos;
+
+        SubscriptionMember(IClientIdentifierContext context, int qos) {
+            this.context = context;
+            this.qos = qos;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SubscriptionMember that = (SubscriptionMember) o;
+            return qos == that.qos && context.equals(that.context);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * context.hashCode() + qos;
+        }
+
+        @Override
+        public String toString() {
+            return context + "@" + qos;
+        }
+    }
+
 }
@@ -25,6 +25,7 @@
 package org.slj.mqtt.sn.impl.ram;
 
 import org.slj.mqtt.sn.impl.AbstractTopicRegistry;
+import org.slj.mqtt.sn.model.MqttsnOptions;
 import org.slj.mqtt.sn.model.session.ISession;
 import org.slj.mqtt.sn.model.session.ITopicRegistration;
 import org.slj.mqtt.sn.model.session.impl.TopicRegistrationImpl;
@@ -38,6 +39,10 @@ import java.util.stream.Collectors;
 public class MqttsnInMemoryTopicRegistry
         extends AbstractTopicRegistry {
 
+    //-- the predefined topics by alias, shared by all sessions and rebuilt only when the predefined topics on the
+    //-- options are replaced or their version changes
+    private volatile PredefinedIndex predefinedIndex = new PredefinedIndex(null, -1, Collections.emptyMap());
+
     @Override
     public Set<ITopicRegistration> getRegistrations(ISession session) throws MqttsnException {
         Map<String, ITopicRegistration> registrations = getSessionBean(session).getRegistrations();
@@ -59,6 +64,21 @@ public class MqttsnInMemoryTopicRegistry
         return getSessionBean(session).addTopicRegistration(new TopicRegistrationImpl(topicPath, alias, true));
     }
 
+    @Override
+    protected ITopicRegistration lookupRegistration(ISession session, String topicPath) throws MqttsnException {
+        return getSessionBean(session).getTopicRegistration(topicPath);
+    }
+
+    @Override
+    protected ITopicRegistration lookupRegistration(ISession session, int topicAlias) throws MqttsnException {
+        return getSessionBean(session).getTopicRegistration(topicAlias);
+    }
+
+    @Override
+    protected Collection<Integer> getRegisteredAliases(ISession session) throws MqttsnException {
+        return getSessionBean(session).getRegisteredAliases();
+    }
+
     @Override
     protected Map<String, Integer> getPredefinedTopicsForString(ISession session) {
         Map<String, Integer> m = registry.getOptions().getPredefinedTopics();
@@ -66,8 +86,23 @@ public class MqttsnInMemoryTopicRegistry
     }
 
     @Override
-    protected Map<String, Integer> getPredefinedTopicsForInteger(ISession session) {
-        return getPredefinedTopicsForString(session);
+    protected Map<Integer, String> getPredefinedTopicsForInteger(ISession session) {
+        MqttsnOptions options = registry.getOptions();
+        Map<String, Integer> predefinedTopics = options.getPredefinedTopics();
+        //-- read the version before indexing, so a change made while indexing is picked up on the next lookup
+        int version = options.getPredefinedTopicsVersion();
+        PredefinedIndex index = predefinedIndex;
+        if(index.source != predefinedTopics || index.version != version){
+            predefinedIndex = index = new PredefinedIndex(predefinedTopics, version,
+                    predefinedTopics == null ? Collections.emptyMap() : indexPredefinedTopics(predefinedTopics));
+        }
+        return index.byAlias;
+    }
+
+    protected static Map<Integer, String> indexPredefinedTopics(Map<String, Integer> predefinedTopics){
+        Map<Integer, String> index = new HashMap<>(predefinedTopics.size() * 2);
+        predefinedTopics.forEach((topicPath, alias) -> index.put(alias, topicPath));
+        return Collections.unmodifiableMap(index);
     }
 
     @Override
@@ -91,4 +126,17 @@ public class MqttsnInMemoryTopicRegistry
             throw new MqttsnRuntimeException(e);
         }
     }
+
+    private static final class PredefinedIndex {
+
+        private final Map<String, Integer> source;
+        private final int version;
+        private final Map<Integer, String> byAlias;
+
+        PredefinedIndex(Map<String, Integer> source, int version, Map<Integer, String> byAlias){
+            this.source = source;
+            this.version = version;
+            this.byAlias = byAlias;
+        }
+    }
 }
@@ -25,5 +25,28 @@
 package org.slj.mqtt.sn.model;
 
 public enum ClientState {
-    ACTIVE, DISCONNECTED, AWAKE, ASLEEP, LOST
+
+    //-- codes are persisted with a session, so they must never be changed or reused
+    ACTIVE(0), DISCONNECTED(1), AWAKE(2), ASLEEP(3), LOST(4);
+
+    private final int code;
+
+    ClientState(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @param code - a code previously obtained from {@link #getCode()}
+     * @return the state with the code, or null when there is no such state
+     */
+    public static ClientState fromCode(int code) {
+        for (ClientState state : values()){
+            if(state.code == code) return state;
+        }
+        return null;
+    }
 }
@@ -26,12 +26,14 @@ package org.slj.mqtt.sn.model;
 
 import org.slj.mqtt.sn.spi.IMqttsnMessage;
 import org.slj.mqtt.sn.spi.IMqttsnOriginatingMessageSource;
+import org.slj.mqtt.sn.spi.IMqttsnTimeout;
 
 import java.io.Serializable;
 
 public class InflightMessage implements Serializable {
 
     transient MqttsnWaitToken token;
+    transient IMqttsnTimeout timeout;
     private IMqttsnMessage message;
     private long time;
     private IMqttsnOriginatingMessageSource source;
@@ -63,6 +65,24 @@ public class InflightMessage implements Serializable {
         this.time = time;
     }
 
+    public IMqttsnTimeout getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(IMqttsnTimeout timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Cancel the pending inflight timeout, if there is one, once the message has left the inflight state
+     */
+    public void cancelTimeout() {
+        IMqttsnTimeout t = timeout;
+        if(t != null){
+            t.cancel();
+        }
+    }
+
     @Override
     public String toString() {
         return "InflightMessage{" +
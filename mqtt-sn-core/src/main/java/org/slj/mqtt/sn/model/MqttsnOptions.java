@@ -27,8 +27,8 @@ package org.slj.mqtt.sn.model;
 import org.slj.mqtt.sn.MqttsnSpecificationValidator;
 import org.slj.mqtt.sn.net.NetworkAddress;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The options class allows you to control aspects of the MQTT-SN engines lifecycle and functionality. The options
@@ -75,6 +75,16 @@ public class MqttsnOptions extends AbstractOptions {
      */
     public static final boolean DEFAULT_WIRE_LOGGING_ENABLED = false;
 
+    /**
+     * Message instances are not recycled by default
+     */
+    public static final boolean DEFAULT_MESSAGE_POOLING = false;
+
+    /**
+     * Managed executors and daemon services use platform threads by default
+     */
+    public static final boolean DEFAULT_VIRTUAL_THREADS = false;
+
     /**
      * By default, discovery is NOT enabled on either the client or the gateway.
      */
@@ -207,6 +217,11 @@ public class MqttsnOptions extends AbstractOptions {
      */
     public static final int DEFAULT_MESSAGE_QUEUE_DISK_STORAGE_THRESHOLD = 5;
 
+    /**
+     * The number of distinct publish topics whose subscription matches are cached, 0 disables the cache
+     */
+    public static final int DEFAULT_SUBSCRIPTION_MATCH_CACHE_SIZE = 10000;
+
     /**
      * By default, specify 0 (unlimited) max messages in awake flush
      */
@@ -252,6 +267,8 @@ public class MqttsnOptions extends AbstractOptions {
     public int pingDivisor = DEFAULT_PING_DIVISOR;
     public int maxProtocolMessageSize = DEFAULT_MAX_PROTOCOL_SIZE;
     public boolean wireLoggingEnabled = DEFAULT_WIRE_LOGGING_ENABLED;
+    public boolean messagePooling = DEFAULT_MESSAGE_POOLING;
+    public boolean virtualThreads = DEFAULT_VIRTUAL_THREADS;
     public int activeContextTimeout = DEFAULT_ACTIVE_CONTEXT_TIMEOUT;
     public int stateLoopTimeout = DEFAULT_STATE_LOOP_TIMEOUT;
     public String logPattern = DEFAULT_SIMPLE_LOG_PATTERN;
@@ -261,8 +278,10 @@ public class MqttsnOptions extends AbstractOptions {
     public boolean reapReceivingMessages = DEFAULT_REAP_RECEIVING_MESSAGES;
     public boolean metricsEnabled = DEFAULT_METRICS_ENABLED;
     public int messageQueueDiskStorageThreshold = DEFAULT_MESSAGE_QUEUE_DISK_STORAGE_THRESHOLD;
+    public int subscriptionMatchCacheSize = DEFAULT_SUBSCRIPTION_MATCH_CACHE_SIZE;
     public MqttsnSecurityOptions securityOptions;
-    public Map<String, Integer> predefinedTopics = new HashMap<>();
+    public Map<String, Integer> predefinedTopics = new PredefinedTopics();
+    private final AtomicInteger predefinedTopicsVersion = new AtomicInteger();
     public volatile Map<String, NetworkAddress> networkAddressEntries;
     public MqttsnClientCredentials clientCredentials =
             new MqttsnClientCredentials(true);
@@ -280,6 +299,20 @@ public class MqttsnOptions extends AbstractOptions {
         return this;
     }
 
+    /**
+     * The maximum number of distinct publish topics for which the subscription registry caches the matching
+     * subscribers. Cached entries are invalidated as subscriptions which match them change. Set to 0 to disable
+     * the cache.
+     *
+     * @param subscriptionMatchCacheSize
+     * @return this configuration
+     * @see {@link MqttsnOptions#DEFAULT_SUBSCRIPTION_MATCH_CACHE_SIZE}
+     */
+    public MqttsnOptions withSubscriptionMatchCacheSize(int subscriptionMatchCacheSize) {
+        this.subscriptionMatchCacheSize = subscriptionMatchCacheSize;
+        return this;
+    }
+
     /**
      * When enabled, the GW will allow publishes that have NO session context
      * to publish at -1, otherwise to publish at -1 a previous context must have been established
@@ -417,6 +450,35 @@ public class MqttsnOptions extends AbstractOptions {
         return this;
     }
 
+    /**
+     * When enabled, the high churn messages (PINGREQ, PINGRESP, PUBACK) are handed back to the message factory
+     * for reuse once the runtime has finished with them. Messages are never recycled while traffic listeners are
+     * registered, since listeners may hold onto them.
+     *
+     * @param messagePooling - recycle message instances once the runtime has finished with them
+     * @return this configuration
+     * @see {@link MqttsnOptions#DEFAULT_MESSAGE_POOLING}
+     */
+    public MqttsnOptions withMessagePooling(boolean messagePooling) {
+        this.messagePooling = messagePooling;
+        return this;
+    }
+
+    /**
+     * When enabled, and the JVM supports them (JDK 21+), the workers of the managed executors and the daemon service
+     * threads are virtual threads. The executors keep their configured thread counts and back pressure, so ordering
+     * guarantees are unchanged, but a blocked worker no longer holds an OS thread, allowing far larger pools and many more
+     * runtimes per JVM. On JVMs without virtual threads the option is ignored with a warning.
+     *
+     * @param virtualThreads - use virtual threads for managed executors and daemon services
+     * @return this configuration
+     * @see {@link MqttsnOptions#DEFAULT_VIRTUAL_THREADS}
+     */
+    public MqttsnOptions withVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
 
     /**
      * How many threads should be used to process connected context message queues
@@ -433,7 +495,8 @@ public class MqttsnOptions extends AbstractOptions {
     }
 
     /**
-     * How many threads should be made available in the managed pool to handle ingress processing.
+     * How many threads should be made available in the managed pool to handle ingress processing. Each network context
+     * is pinned to one of these threads, so packets from a single device are always processed in the order they arrived.
      *
      * @param transportIngressThreadCount - When transportProtocolHandoffThreadCount is set to true, how many threads should be made available in the
      *                                            managed pool to handle processing
@@ -567,6 +630,9 @@ public class MqttsnOptions extends AbstractOptions {
      * Maximum number of messages allowed INFLIGHT at any given point in time. NB: the specification allows for a single message in flight in either direction.
      * WARNING: changing this default value could lead to unpredictable behaviour depending on the gateway capability.
      *
+     * When set greater than 1 a client will pipeline its QoS 1 and 2 publishes as a sliding window; acknowledgements may arrive
+     * in any order, and senders block until a slot in the window is released rather than waiting on each confirmation in turn.
+     *
      * @param maxMessagesInflight - Maximum number of messages allowed INFLIGHT at any given point in time. NB: the specification allows for a single message in flight in either direction.
      * @return this configuration
      * @see {@link MqttsnOptions#DEFAULT_MAX_MESSAGES_IN_FLIGHT}
@@ -604,9 +670,19 @@ public class MqttsnOptions extends AbstractOptions {
         MqttsnSpecificationValidator.validateTopicAlias(alias);
 
         predefinedTopics.put(topicPath, alias);
+        predefinedTopicsChanged();
         return this;
     }
 
+    /**
+     * Signal that the predefined topics have changed, so views derived from the predefined topics (such as the
+     * lookup by alias) are rebuilt. Changes made through {@link #getPredefinedTopics()} are counted by the map
+     * itself, this is only needed where the predefinedTopics field has been replaced by a map which is later modified.
+     */
+    public void predefinedTopicsChanged() {
+        predefinedTopicsVersion.incrementAndGet();
+    }
+
 
     /**
      * The number at which messageIds start, typically this should be 1.
@@ -838,6 +914,10 @@ public class MqttsnOptions extends AbstractOptions {
         return predefinedTopics;
     }
 
+    public int getPredefinedTopicsVersion() {
+        return predefinedTopicsVersion.get();
+    }
+
     public int getMaxMessagesInflight() {
         return maxMessagesInflight;
     }
@@ -882,6 +962,14 @@ public class MqttsnOptions extends AbstractOptions {
         return wireLoggingEnabled;
     }
 
+    public boolean isMessagePooling() {
+        return messagePooling;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
     public int getActiveContextTimeout() {
         return activeContextTimeout;
     }
@@ -950,6 +1038,10 @@ public class MqttsnOptions extends AbstractOptions {
         return messageQueueDiskStorageThreshold;
     }
 
+    public int getSubscriptionMatchCacheSize() {
+        return subscriptionMatchCacheSize;
+    }
+
     public MqttsnClientCredentials getClientCredentials() {
         return clientCredentials;
     }
@@ -965,4 +1057,99 @@ public class MqttsnOptions extends AbstractOptions {
     public boolean getAnonymousPublishAllowed() {
         return anonymousPublishAllowed;
     }
-}
\ No newline at end of file
+
+    /**
+     * The default predefined topic map, which bumps the predefined topics version on every modification, whether
+     * made directly or through its views, iterators or entries.
+     */
+    private final class PredefinedTopics extends AbstractMap<String, Integer> {
+
+        private final Map<String, Integer> topics = new HashMap<>();
+
+        @Override
+        public Integer get(Object key) {
+            return topics.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return topics.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return topics.size();
+        }
+
+        @Override
+        public Integer put(String key, Integer value) {
+            Integer previous = topics.put(key, value);
+            predefinedTopicsChanged();
+            return previous;
+        }
+
+        @Override
+        public Integer remove(Object key) {
+            if(!topics.containsKey(key)) return null;
+            Integer previous = topics.remove(key);
+            predefinedTopicsChanged();
+            return previous;
+        }
+
+        @Override
+        public void clear() {
+            topics.clear();
+            predefinedTopicsChanged();
+        }
+
+        @Override
+        public Set<Entry<String, Integer>> entrySet() {
+            return new AbstractSet<Entry<String, Integer>>() {
+                @Override
+                public Iterator<Entry<String, Integer>> iterator() {
+                    Iterator<Entry<String, Integer>> itr = topics.entrySet().iterator();
+                    return new Iterator<Entry<String, Integer>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return itr.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Integer> next() {
+                            return new PredefinedTopic(itr.next());
+                        }
+
+                        @Override
+                        public void remove() {
+                            itr.remove();
+                            predefinedTopicsChanged();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return topics.size();
+                }
+            };
+        }
+    }
+
+    private final class PredefinedTopic extends AbstractMap.SimpleEntry<String, Integer> {
+
+        private final Map.Entry<String, Integer> entry;
+
+        PredefinedTopic(Map.Entry<String, Integer> entry) {
+            super(entry);
+            this.entry = entry;
+        }
+
+        @Override
+        public Integer setValue(Integer value) {
+            super.setValue(value);
+            Integer previous = entry.setValue(value);
+            predefinedTopicsChanged();
+            return previous;
+        }
+    }
+}
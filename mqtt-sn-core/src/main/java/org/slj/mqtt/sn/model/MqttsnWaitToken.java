@@ -26,6 +26,9 @@ package org.slj.mqtt.sn.model;
 
 import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
 import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.spi.MqttsnExpectationFailedException;
+
+import java.util.concurrent.CompletableFuture;
 
 public class MqttsnWaitToken {
 
@@ -36,6 +39,7 @@ public class MqttsnWaitToken {
     private volatile IMqttsnMessage responseMessage;
 
     private volatile String detail;
+    private volatile CompletableFuture<IMqttsnMessage> future;
 
     public MqttsnWaitToken(IQueuedPublishMessage queuedPublishMessage){
         this.queuedPublishMessage = queuedPublishMessage;
@@ -81,11 +85,39 @@ public class MqttsnWaitToken {
         this.detail = detail;
         complete = true;
         error = true;
+        completeFuture(future);
     }
 
     public void markComplete() {
         this.complete = true;
         this.error = false;
+        completeFuture(future);
+    }
+
+    /**
+     * A view of the token which completes as the token does, without parking a thread. The future completes with the
+     * response message (which may be null) when the token is marked complete, or exceptionally with a
+     * {@link MqttsnExpectationFailedException} when the token is marked in error.
+     */
+    public CompletableFuture<IMqttsnMessage> getFuture() {
+        CompletableFuture<IMqttsnMessage> f = future;
+        if(f == null){
+            synchronized (this){
+                if((f = future) == null){
+                    future = f = new CompletableFuture<>();
+                }
+            }
+            if(complete) completeFuture(f);
+        }
+        return f;
+    }
+
+    private void completeFuture(CompletableFuture<IMqttsnMessage> f) {
+        if(f != null){
+            if(error) f.completeExceptionally(new MqttsnExpectationFailedException(
+                    detail == null ? "token was marked invalid by state machine" : detail));
+            else f.complete(responseMessage);
+        }
     }
 
     public String getDetail() {
@@ -30,6 +30,7 @@ import org.slj.mqtt.sn.model.MqttsnWaitToken;
 import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Lightweight meta-data reference to a message which will reside in client queues. NOTE: the payload of
@@ -46,6 +47,10 @@ public class QueuedPublishMessageImpl implements Serializable, Comparable, IQueu
     private transient MqttsnWaitToken token;
     private int grantedQoS;
 
+    //-- orders messages created in the same millisecond by the order they were created
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private transient long sequence = SEQUENCE.incrementAndGet();
+
     public QueuedPublishMessageImpl() {
     }
 
@@ -119,6 +124,10 @@ public class QueuedPublishMessageImpl implements Serializable, Comparable, IQueu
         return created;
     }
 
+    public void setCreated(long created) {
+        this.created = created;
+    }
+
     public int getPacketId() {
         return packetId;
     }
@@ -130,8 +139,9 @@ public class QueuedPublishMessageImpl implements Serializable, Comparable, IQueu
     @Override
     public int compareTo(Object o) {
         if(o instanceof QueuedPublishMessageImpl){
-            return (int) (created - ((QueuedPublishMessageImpl)o).getCreated());
-//            return created.compareTo(((MqttsnQueuedPublishMessageImpl)o).getCreated());
+            QueuedPublishMessageImpl other = (QueuedPublishMessageImpl) o;
+            int c = Long.compare(created, other.getCreated());
+            return c != 0 ? c : Long.compare(sequence, other.sequence);
         }
         return 0;
     }
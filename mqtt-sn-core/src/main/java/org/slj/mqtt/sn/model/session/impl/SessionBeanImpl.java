@@ -42,19 +42,30 @@ public class SessionBeanImpl extends SessionImpl {
     private static final int INITIAL_CAPACITY = 8;
     private Set<ISubscription> subscriptionSet = ConcurrentHashMap.newKeySet();
     private Map<String, ITopicRegistration> registrationMap = new ConcurrentHashMap<>(INITIAL_CAPACITY);
+    //-- reverse index of the registrations by alias, kept in step with the registrationMap
+    private Map<Integer, ITopicRegistration> aliasMap = new ConcurrentHashMap<>(INITIAL_CAPACITY);
     private Queue<IQueuedPublishMessage> messageQueue = new PriorityBlockingQueue<>(INITIAL_CAPACITY);
     private IWillData willData;
+    private transient volatile QueueListener queueListener;
 
     public SessionBeanImpl(IClientIdentifierContext context, ClientState state) {
         super(context, state);
     }
 
     public boolean addSubscription(ISubscription subscription){
-        return subscriptionSet.add(subscription);
+        try {
+            return subscriptionSet.add(subscription);
+        } finally {
+            changed();
+        }
     }
 
     public boolean removeSubscription(ISubscription subscription){
-        return subscriptionSet.remove(subscription);
+        try {
+            return subscriptionSet.remove(subscription);
+        } finally {
+            changed();
+        }
     }
 
     public boolean addTopicRegistration(ITopicRegistration registration) throws MqttsnException {
@@ -66,21 +77,63 @@ public class SessionBeanImpl extends SessionImpl {
             throw new MqttsnException("unable to register topicAlias 0");
         }
 
-        if(registrationMap.values().stream().anyMatch(p -> p.getAliasId() == registration.getAliasId() &&
-                !registration.equals(p.getTopicPath()))){
-            throw new MqttsnException("registration with topicId exists for different topicId");
+        synchronized (aliasMap){
+            ITopicRegistration existing = aliasMap.get(registration.getAliasId());
+            if(existing != null && !existing.getTopicPath().equals(registration.getTopicPath())){
+                throw new MqttsnException("registration with topicId exists for different topicId");
+            }
+            try {
+                ITopicRegistration previous = registrationMap.put(registration.getTopicPath(), registration);
+                if(previous != null && previous.getAliasId() != registration.getAliasId()){
+                    aliasMap.remove(previous.getAliasId());
+                }
+                aliasMap.put(registration.getAliasId(), registration);
+                return previous == null;
+            } finally {
+                changed();
+            }
         }
-        return registrationMap.put(registration.getTopicPath(), registration) == null;
     }
 
     public boolean removeTopicRegistration(ITopicRegistration registration){
-        return registrationMap.remove(registration.getTopicPath()) != null;
+        synchronized (aliasMap){
+            try {
+                ITopicRegistration removed = registrationMap.remove(registration.getTopicPath());
+                if(removed != null){
+                    aliasMap.remove(removed.getAliasId());
+                }
+                return removed != null;
+            } finally {
+                changed();
+            }
+        }
+    }
+
+    public ITopicRegistration getTopicRegistration(String topicPath){
+        return registrationMap.get(topicPath);
+    }
+
+    public ITopicRegistration getTopicRegistration(int aliasId){
+        return aliasMap.get(aliasId);
+    }
+
+    /**
+     * @return a view of the aliases currently in use by the registrations
+     */
+    public Set<Integer> getRegisteredAliases(){
+        return Collections.unmodifiableSet(aliasMap.keySet());
     }
 
     public boolean offer(IQueuedPublishMessage message){
+        boolean offered;
         synchronized (messageQueue){
-            return messageQueue.offer(message);
+            offered = messageQueue.offer(message);
         }
+        QueueListener listener = queueListener;
+        if(offered && listener != null){
+            listener.offered(this, message);
+        }
+        return offered;
     }
 
     public int getQueueSize(){
@@ -92,11 +145,24 @@ public class SessionBeanImpl extends SessionImpl {
     }
 
     public IQueuedPublishMessage poll(){
-        return messageQueue.poll();
+        IQueuedPublishMessage message = messageQueue.poll();
+        QueueListener listener = queueListener;
+        if(message != null && listener != null){
+            listener.removed(this, message);
+        }
+        return message;
+    }
+
+    /**
+     * @return a snapshot of the queued messages, not in any particular order
+     */
+    public IQueuedPublishMessage[] getQueuedMessages(){
+        return messageQueue.toArray(new IQueuedPublishMessage[0]);
     }
 
     public void clearSubscriptions(){
         subscriptionSet.clear();
+        changed();
     }
 
     public Set<ISubscription> getSubscriptions(){
@@ -113,14 +179,38 @@ public class SessionBeanImpl extends SessionImpl {
 
     public void setWillData(IWillData willData) {
         this.willData = willData;
+        changed();
     }
 
     public void clearMessageQueue(){
-        messageQueue.clear();
+        if(queueListener == null){
+            messageQueue.clear();
+        } else {
+            while(poll() != null);
+        }
+    }
+
+    /**
+     * Install a callback to be notified, on the modifying thread, of each message added to or removed from the queue.
+     * Changes to the queue do not notify the change listener.
+     */
+    public void setQueueListener(QueueListener queueListener) {
+        this.queueListener = queueListener;
+    }
+
+    public interface QueueListener {
+
+        void offered(SessionBeanImpl session, IQueuedPublishMessage message);
+
+        void removed(SessionBeanImpl session, IQueuedPublishMessage message);
     }
 
     public void clearRegistrations(){
-        registrationMap.clear();
+        synchronized (aliasMap){
+            registrationMap.clear();
+            aliasMap.clear();
+        }
+        changed();
     }
 
     @Override
@@ -29,10 +29,14 @@ import org.slj.mqtt.sn.model.IClientIdentifierContext;
 import org.slj.mqtt.sn.model.ClientState;
 import org.slj.mqtt.sn.model.session.ISession;
 
+import java.io.Serializable;
 import java.util.Date;
 import java.util.Objects;
+import java.util.function.Consumer;
 
-public class SessionImpl implements ISession {
+public class SessionImpl implements ISession, Serializable {
+
+    private static final long serialVersionUID = 4315839437461820641L;
 
     protected final IClientIdentifierContext context;
     protected volatile ClientState state;
@@ -42,6 +46,7 @@ public class SessionImpl implements ISession {
     protected Date sessionStarted;
     protected int maxPacketSize;
     protected int protocolVersion = MqttsnConstants.PROTOCOL_VERSION_UNKNOWN;
+    protected transient volatile Consumer<ISession> changeListener;
 
     public SessionImpl(final IClientIdentifierContext context, ClientState state){
         this.context = context;
@@ -60,6 +65,7 @@ public class SessionImpl implements ISession {
 
     public void setProtocolVersion(int protocolVersion) {
         this.protocolVersion = protocolVersion;
+        changed();
     }
 
 
@@ -70,7 +76,11 @@ public class SessionImpl implements ISession {
 
 
     public void setClientState(ClientState state) {
+        ClientState previous = this.state;
         this.state = state;
+        if(previous != state){
+            changed();
+        }
     }
 
     @Override
@@ -78,6 +88,9 @@ public class SessionImpl implements ISession {
         return lastSeen;
     }
 
+    /**
+     * The last seen time is touched by every interaction, so unlike the other state it does not notify the change listener
+     */
     public void setLastSeen(Date lastSeen) {
         this.lastSeen = lastSeen;
     }
@@ -89,6 +102,7 @@ public class SessionImpl implements ISession {
 
     public void setKeepAlive(int keepAlive) {
         this.keepAlive = keepAlive;
+        changed();
     }
 
     @Override
@@ -98,6 +112,7 @@ public class SessionImpl implements ISession {
 
     public void setSessionExpiryInterval(long sessionExpiryInterval) {
         this.sessionExpiryInterval = sessionExpiryInterval;
+        changed();
     }
 
     @Override
@@ -107,6 +122,7 @@ public class SessionImpl implements ISession {
 
     public void setSessionStarted(Date sessionStarted) {
         this.sessionStarted = sessionStarted;
+        changed();
     }
 
     @Override
@@ -116,6 +132,7 @@ public class SessionImpl implements ISession {
 
     public void setMaxPacketSize(int maxPacketSize) {
         this.maxPacketSize = maxPacketSize;
+        changed();
     }
 
     @Override
@@ -138,6 +155,22 @@ public class SessionImpl implements ISession {
         sessionStarted = null;
         lastSeen = null;
         maxPacketSize = 0;
+        changed();
+    }
+
+    /**
+     * Install a callback to be notified, on the modifying thread, whenever the state held by the session changes (other
+     * than the last seen time)
+     */
+    public void setChangeListener(Consumer<ISession> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    protected void changed(){
+        Consumer<ISession> listener = changeListener;
+        if(listener != null){
+            listener.accept(this);
+        }
     }
 
     @Override
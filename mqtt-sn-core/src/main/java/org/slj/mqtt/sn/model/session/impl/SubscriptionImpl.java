@@ -27,9 +27,12 @@ package org.slj.mqtt.sn.model.session.impl;
 import org.slj.mqtt.sn.model.session.ISubscription;
 import org.slj.mqtt.sn.utils.TopicPath;
 
+import java.io.Serializable;
 import java.util.Objects;
 
-public class SubscriptionImpl implements ISubscription {
+public class SubscriptionImpl implements ISubscription, Serializable {
+
+    private static final long serialVersionUID = -2960473284960253612L;
 
     private final TopicPath topicPath;
     private int grantedQoS;
@@ -26,7 +26,11 @@ package org.slj.mqtt.sn.model.session.impl;
 
 import org.slj.mqtt.sn.model.session.ITopicRegistration;
 
-public class TopicRegistrationImpl implements ITopicRegistration {
+import java.io.Serializable;
+
+public class TopicRegistrationImpl implements ITopicRegistration, Serializable {
+
+    private static final long serialVersionUID = 1839258127743542203L;
 
     private boolean confirmed;
     private final String topicPath;
@@ -0,0 +1,624 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.net;
+
+import org.slj.mqtt.sn.impl.AbstractMqttsnTcpTransport;
+import org.slj.mqtt.sn.model.INetworkContext;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.spi.MqttsnRuntimeException;
+import org.slj.mqtt.sn.spi.NetworkRegistryException;
+import org.slj.mqtt.sn.utils.StringTable;
+import org.slj.mqtt.sn.wire.MqttsnWireUtils;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking TCP IP implementation. Rather than dedicating a thread to each connection, connections are
+ * multiplexed across a small, fixed number of event loops (see {@link MqttsnTcpOptions#withEventLoopThreads(int)}),
+ * each of which owns a {@link Selector}. Each connection reuses its own read buffer, from which length prefixed
+ * MQTT-SN frames are reassembled. TLS is supported via an {@link SSLEngine} when the options are marked secure.
+ *
+ * Connection registration semantics match those of the blocking {@link MqttsnTcpTransport}.
+ */
+public class MqttsnNioTcpTransport
+        extends AbstractMqttsnTcpTransport {
+
+    private final Map<INetworkContext, Connection> connections = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile boolean active = false;
+    private EventLoop[] eventLoops;
+    private ServerSocketChannel serverChannel;
+    private SSLContext sslContext;
+    protected volatile Connection clientConnection;
+
+    public MqttsnNioTcpTransport(MqttsnTcpOptions options, boolean clientMode) {
+        super(options, clientMode);
+    }
+
+    @Override
+    public synchronized void stop() throws MqttsnException {
+        super.stop();
+        active = false;
+        try {
+            logger.info("closing nio tcp transport, closing {} connection(s)...", connections.size());
+            for (Connection connection : new ArrayList<>(connections.values())) {
+                connection.close(null, false);
+            }
+            if(clientConnection != null){
+                clientConnection.close(null, false);
+            }
+            if(serverChannel != null){
+                serverChannel.close();
+            }
+            if(eventLoops != null){
+                for (EventLoop loop : eventLoops) {
+                    loop.close();
+                }
+            }
+        } catch(IOException e){
+            throw new MqttsnException(e);
+        } finally {
+            clientConnection = null;
+            serverChannel = null;
+            eventLoops = null;
+        }
+    }
+
+    @Override
+    protected void writeToTransportInternal(INetworkContext context, byte[] data) {
+        try {
+            Connection connection;
+            if(clientMode){
+                if(clientConnection == null){
+                    //-- in edge cases, we may get called by other services when still connecting..
+                    //-- so defend against that
+                    synchronized (monitor){
+                        logger.warn("waiting for TCP stack to come up...");
+                        monitor.wait(options.getConnectTimeout() + 1000);
+                    }
+                }
+                connection = clientConnection;
+            } else {
+                connection = connections.get(context);
+                if(connection == null) throw new IOException("no connected handler for context");
+            }
+            if(connection != null){
+                connection.write(data);
+            }
+        } catch(IOException | InterruptedException e){
+            throw new MqttsnRuntimeException("error writing to connection;", e);
+        }
+    }
+
+    @Override
+    protected void connectClient() throws Exception {
+        //-- check we have a valid network location to connect to
+        Optional<INetworkContext> remoteAddress = registry.getNetworkRegistry().first();
+        if(!remoteAddress.isPresent()) throw new MqttsnException("need a remote location to connect to found <null>");
+        INetworkContext remoteContext = remoteAddress.get();
+
+        if(options.isSecure()){
+            sslContext = initSSLContext();
+        }
+
+        SocketChannel channel = SocketChannel.open();
+        try {
+            //bind to the LOCAL address if specified, else bind to the OS default
+            if(options.getHost() != null){
+                channel.bind(new InetSocketAddress(options.getHost(), options.getPort()));
+            }
+            channel.socket().setKeepAlive(options.isTcpKeepAliveEnabled());
+            channel.socket().setTcpNoDelay(true);
+
+            InetSocketAddress r = remoteContext.getNetworkAddress().toSocketAddress();
+            logger.info("connecting client channel to {} -> {}",
+                    remoteContext.getNetworkAddress().getHostAddress(), remoteContext.getNetworkAddress().getPort());
+
+            //-- connect in blocking mode to honour the connect timeout, then hand over to the event loop
+            channel.socket().connect(r, options.getConnectTimeout());
+            channel.configureBlocking(false);
+        } catch(IOException e){
+            channel.close();
+            throw e;
+        }
+
+        startEventLoops(1);
+        clientConnection = new Connection(remoteContext, channel, eventLoops[0], createEngine(true));
+        clientConnection.register();
+    }
+
+    @Override
+    protected void startServer() throws Exception {
+        int port = options.getPort();
+        if(options.isSecure()){
+            logger.info("running in secure mode, tcp with TLS...");
+            sslContext = initSSLContext();
+            port = options.getSecurePort();
+        }
+
+        startEventLoops(Math.max(1, options.getEventLoopThreads()));
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(port));
+
+        logger.info("starting NIO TCP listener, accepting {} connections on port {} across {} event loop(s)",
+                options.getMaxClientConnections(), port, eventLoops.length);
+
+        final ServerSocketChannel channel = serverChannel;
+        eventLoops[0].execute(() -> {
+            try {
+                channel.register(eventLoops[0].selector, SelectionKey.OP_ACCEPT);
+            } catch(ClosedChannelException e){
+                logger.error("unable to register server channel;", e);
+            }
+        });
+    }
+
+    protected void startEventLoops(int threads) throws IOException {
+        active = true;
+        eventLoops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++){
+            eventLoops[i] = new EventLoop(i);
+            eventLoops[i].start();
+        }
+    }
+
+    protected SSLEngine createEngine(boolean client) {
+        if(sslContext == null) return null;
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(client);
+        if(options.getSslProtocols() != null) {
+            engine.setEnabledProtocols(options.getSslProtocols());
+        }
+        if(options.getCipherSuites() != null){
+            engine.setEnabledCipherSuites(options.getCipherSuites());
+        }
+        return engine;
+    }
+
+    protected void accept(ServerSocketChannel server) {
+        SocketChannel channel;
+        while(active){
+            try {
+                if((channel = server.accept()) == null) return;
+            } catch(IOException e){
+                logger.error("error encountered accepting connection;", e);
+                return;
+            }
+            try {
+                if(connections.size() >= options.getMaxClientConnections()){
+                    logger.warn("max connection limit reached, disconnecting socket");
+                    channel.close();
+                } else {
+                    InetSocketAddress address = (InetSocketAddress) channel.getRemoteAddress();
+                    logger.info("new connection accepted from {}", address);
+                    channel.configureBlocking(false);
+                    channel.socket().setKeepAlive(options.isTcpKeepAliveEnabled());
+                    channel.socket().setTcpNoDelay(true);
+                    INetworkContext context = registry.getNetworkRegistry().getContext(address);
+                    if(context == null){
+                        NetworkAddress networkAddress = NetworkAddress.from(address);
+                        //-- if the network context does not exist in the registry, a new one is created by the factory -
+                        //- NB: this is NOT auth, this is simply creating a context to which we can respond, auth can
+                        //-- happen during the mqtt-sn context creation, at which point we can talk back to the device
+                        //-- with error packets and the like
+                        context = registry.getContextFactory().createInitialNetworkContext(this, networkAddress);
+                    }
+                    EventLoop loop = eventLoops[Math.abs(nextLoop.getAndIncrement() % eventLoops.length)];
+                    Connection connection = new Connection(context, channel, loop, createEngine(false));
+                    connections.put(context, connection);
+                    connection.register();
+                }
+            } catch (NetworkRegistryException | IOException | MqttsnException e){
+                logger.error("error encountered accepting connection;", e);
+                try {
+                    channel.close();
+                } catch(IOException ex){
+                    logger.warn("error closing channel;", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * A selector and the thread which services it. All IO for a connection happens on the thread of the loop
+     * it was assigned to; other threads submit work via {@link #execute(Runnable)}.
+     */
+    protected class EventLoop extends Thread {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        public EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            setName("mqtt-sn-nio-tcp-loop-" + index + "@" + System.identityHashCode(getRegistry().getRuntime()));
+            setDaemon(true);
+            setPriority(Thread.NORM_PRIORITY);
+        }
+
+        public void execute(Runnable task){
+            if(Thread.currentThread() == this){
+                task.run();
+            } else {
+                tasks.add(task);
+                selector.wakeup();
+            }
+        }
+
+        public void close() throws IOException {
+            selector.close();
+            interrupt();
+        }
+
+        public void run(){
+            while(active && selector.isOpen()){
+                try {
+                    selector.select();
+                    Runnable task;
+                    while((task = tasks.poll()) != null){
+                        task.run();
+                    }
+                    Iterator<SelectionKey> itr = selector.selectedKeys().iterator();
+                    while(itr.hasNext()){
+                        SelectionKey key = itr.next();
+                        itr.remove();
+                        if(!key.isValid()) continue;
+                        if(key.isAcceptable()){
+                            accept((ServerSocketChannel) key.channel());
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if(key.isReadable()) connection.read();
+                            if(key.isValid() && key.isWritable()) connection.flush();
+                        } catch(IOException | RuntimeException e){
+                            logger.debug("socket error", e);
+                            connection.close(e, true);
+                        }
+                    }
+                } catch(ClosedSelectorException e){
+                    return;
+                } catch(IOException e){
+                    logger.error("error encountered on event loop;", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A single connection, owned by an event loop. The read buffer is reused for the life of the connection and
+     * only grows (up to the max protocol message size) when a single frame will not fit.
+     */
+    protected class Connection {
+
+        private final INetworkContext context;
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private final SSLEngine engine;
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private SelectionKey key;
+        private ByteBuffer readBuffer;
+        private ByteBuffer netIn;
+        private ByteBuffer netOut;
+        private volatile boolean closed = false;
+
+        public Connection(INetworkContext context, SocketChannel channel, EventLoop loop, SSLEngine engine) {
+            this.context = context;
+            this.channel = channel;
+            this.loop = loop;
+            this.engine = engine;
+            this.readBuffer = ByteBuffer.allocate(options.getReadBufferSize());
+            if(engine != null){
+                int packetSize = engine.getSession().getPacketBufferSize();
+                readBuffer = ByteBuffer.allocate(Math.max(options.getReadBufferSize(),
+                        engine.getSession().getApplicationBufferSize()));
+                netIn = ByteBuffer.allocate(packetSize);
+                netOut = ByteBuffer.allocate(packetSize);
+                netOut.flip();
+            }
+        }
+
+        public void register() {
+            loop.execute(() -> {
+                try {
+                    key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+                    if(engine != null){
+                        engine.beginHandshake();
+                        handshake();
+                    }
+                    flush();
+                } catch(IOException e){
+                    logger.error("unable to register connection;", e);
+                    close(e, true);
+                }
+            });
+        }
+
+        public void write(byte[] data) throws IOException {
+            if(closed) throw new IOException("connection closed");
+            logger.debug("queuing {} bytes for write to channel", data.length);
+            outbound.add(ByteBuffer.wrap(data));
+            loop.execute(() -> {
+                try {
+                    flush();
+                } catch(IOException e){
+                    close(e, true);
+                }
+            });
+        }
+
+        protected void read() throws IOException {
+            int count;
+            if(engine == null){
+                ensureReadCapacity();
+                count = channel.read(readBuffer);
+            } else {
+                count = channel.read(netIn);
+                if(count > 0) unwrap();
+            }
+            if(count < 0) {
+                logger.info("received {} bytes from channel (end of stream - EOF), connection {}", count, context);
+                throw new ClosedChannelException();
+            }
+            processFrames();
+        }
+
+        protected void processFrames() throws IOException {
+            readBuffer.flip();
+            try {
+                int length;
+                while((length = MqttsnWireUtils.readMessageLength(readBuffer)) != -1){
+                    if(length < 2 || length > maxFrameLength()){
+                        throw new IOException("invalid message length " + length + " received on connection");
+                    }
+                    if(readBuffer.remaining() < length) break;
+                    byte[] frame = new byte[length];
+                    readBuffer.get(frame);
+                    logger.debug("received {} bytes from channel for {}", length, context);
+                    receiveFromTransport(context, frame);
+                }
+            } finally {
+                readBuffer.compact();
+            }
+        }
+
+        protected int maxFrameLength() {
+            return Math.max(registry.getOptions().getMaxProtocolMessageSize(), options.getReadBufferSize());
+        }
+
+        /**
+         * Make room in the read buffer for the frame currently at its head, growing it if necessary.
+         */
+        protected void ensureReadCapacity() {
+            if(readBuffer.hasRemaining()) return;
+            readBuffer.flip();
+            int length = MqttsnWireUtils.readMessageLength(readBuffer);
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(length, readBuffer.capacity() * 2));
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+
+        protected void unwrap() throws IOException {
+            while(true){
+                netIn.flip();
+                SSLEngineResult result;
+                try {
+                    result = engine.unwrap(netIn, readBuffer);
+                } finally {
+                    netIn.compact();
+                }
+                switch (result.getStatus()){
+                    case BUFFER_UNDERFLOW:
+                        if(netIn.position() == netIn.capacity()){
+                            ByteBuffer larger = ByteBuffer.allocate(engine.getSession().getPacketBufferSize() + netIn.capacity());
+                            netIn.flip();
+                            larger.put(netIn);
+                            netIn = larger;
+                        }
+                        return;
+                    case BUFFER_OVERFLOW:
+                        processFrames();
+                        if(readBuffer.remaining() < engine.getSession().getApplicationBufferSize()){
+                            ByteBuffer larger = ByteBuffer.allocate(readBuffer.position() + engine.getSession().getApplicationBufferSize());
+                            readBuffer.flip();
+                            larger.put(readBuffer);
+                            readBuffer = larger;
+                        }
+                        break;
+                    case CLOSED:
+                        throw new ClosedChannelException();
+                    default:
+                        if(result.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING){
+                            handshake();
+                            if(engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING){
+                                logger.debug("ssl handshake complete for {} using {}", context, engine.getSession().getProtocol());
+                                flush();
+                            }
+                        }
+                        if(netIn.position() == 0) return;
+                        if(result.bytesConsumed() == 0 && result.bytesProduced() == 0) return;
+                }
+            }
+        }
+
+        /**
+         * Drive the handshake as far as possible without blocking; further progress is made as network data arrives.
+         */
+        protected void handshake() throws IOException {
+            while(true){
+                switch (engine.getHandshakeStatus()){
+                    case NEED_TASK:
+                        Runnable task;
+                        while((task = engine.getDelegatedTask()) != null){
+                            task.run();
+                        }
+                        break;
+                    case NEED_WRAP:
+                        wrap(ByteBuffer.allocate(0));
+                        if(!flushNet()) return;
+                        break;
+                    case NEED_UNWRAP:
+                        if(netIn.position() == 0) return;
+                        int before = netIn.position();
+                        unwrap();
+                        if(netIn.position() == before) return;
+                        break;
+                    default:
+                        return;
+                }
+            }
+        }
+
+        protected void wrap(ByteBuffer src) throws SSLException {
+            netOut.compact();
+            try {
+                SSLEngineResult result = engine.wrap(src, netOut);
+                if(result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW && netOut.position() == 0){
+                    throw new SSLException("network buffer too small for ssl record");
+                }
+            } finally {
+                netOut.flip();
+            }
+        }
+
+        protected boolean flushNet() throws IOException {
+            while(netOut.hasRemaining()){
+                if(channel.write(netOut) == 0){
+                    interest(true);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Write as much of the outbound queue as the socket will accept, registering interest in writability
+         * for the remainder.
+         */
+        protected void flush() throws IOException {
+            if(key == null || closed) return;
+            if(engine == null){
+                ByteBuffer buf;
+                while((buf = outbound.peek()) != null){
+                    channel.write(buf);
+                    if(buf.hasRemaining()){
+                        interest(true);
+                        return;
+                    }
+                    outbound.poll();
+                }
+            } else {
+                if(!flushNet()) return;
+                SSLEngineResult.HandshakeStatus hs = engine.getHandshakeStatus();
+                if(hs != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING){
+                    handshake();
+                    if(engine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) return;
+                }
+                ByteBuffer buf;
+                while((buf = outbound.peek()) != null){
+                    wrap(buf);
+                    if(!buf.hasRemaining()) outbound.poll();
+                    if(!flushNet()) return;
+                }
+            }
+            interest(false);
+        }
+
+        protected void interest(boolean write) {
+            if(key.isValid()){
+                key.interestOps(write ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+        }
+
+        public void close(Throwable cause, boolean notify) {
+            if(closed) return;
+            closed = true;
+            Runnable task = () -> {
+                try {
+                    if(engine != null && key != null && channel.isOpen()){
+                        engine.closeOutbound();
+                        wrap(ByteBuffer.allocate(0));
+                        flushNet();
+                    }
+                } catch(IOException e){
+                    logger.debug("error sending ssl close notification;", e);
+                }
+                try {
+                    if(key != null) key.cancel();
+                    channel.close();
+                } catch(IOException e){
+                    logger.warn("error closing channel;", e);
+                }
+            };
+            //-- once the loops are stopping, nothing will service the task queue so close inline
+            if(active) loop.execute(task); else task.run();
+            if(!clientMode) connections.remove(context, this);
+            //it may have been that we asked for a stop, in which case we didnt LOSE the connection..
+            //only report lost if the service was meant to be running
+            if(notify && running){
+                try {
+                    connectionLost(context, cause);
+                } catch(RuntimeException e){
+                    //-- never let the runtime take down an event loop shared by other connections
+                    logger.warn("error reporting lost connection for {};", context, e);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Connection{" +
+                    "context=" + context +
+                    ", secure=" + (engine != null) +
+                    ", closed=" + closed +
+                    '}';
+        }
+    }
+
+    @Override
+    public StringTable getTransportDetails() {
+        StringTable st = new StringTable("Property", "Value");
+        st.setTableName("NIO TCP Transport");
+        st.addRow("Host", options.getHost());
+        st.addRow("TCP port", options.getPort());
+        st.addRow("Secure port", options.getSecurePort());
+        st.addRow("Max Connections", options.getMaxClientConnections());
+        st.addRow("Connect Timeout", options.getConnectTimeout());
+        st.addRow("Event Loops", eventLoops == null ? 0 : eventLoops.length);
+        st.addRow("Active Connections", clientMode ? (clientConnection == null ? 0 : 1) : connections.size());
+        return st;
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.slj.mqtt.sn.net;
+
+import org.slj.mqtt.sn.impl.AbstractMqttsnUdpTransport;
+import org.slj.mqtt.sn.impl.metrics.IMqttsnMetrics;
+import org.slj.mqtt.sn.impl.metrics.MqttsnCountingMetric;
+import org.slj.mqtt.sn.model.IMqttsnMetric;
+import org.slj.mqtt.sn.model.INetworkContext;
+import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.spi.MqttsnRuntimeException;
+import org.slj.mqtt.sn.spi.NetworkRegistryException;
+import org.slj.mqtt.sn.utils.ByteBufferPool;
+import org.slj.mqtt.sn.utils.StringTable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides a transport over User Datagram Protocol (UDP) using non-blocking NIO {@link DatagramChannel}s. A selector
+ * thread services the datagram channel, draining all available datagrams on each wakeup into buffers taken from a
+ * shared {@link ByteBufferPool}. The pooled buffers are reused for both receiving and sending so no per-packet
+ * receive buffer is allocated on the hot path.
+ *
+ * When configured with more than one receiver shard, the transport binds that number of channels onto the same
+ * port using SO_REUSEPORT, each with its own selector thread. The kernel then load-balances inbound datagrams
+ * across the channels using the source address tuple, which keeps the packets from any single device on the same
+ * shard (and so in order).
+ *
+ * This transport is a drop-in alternative to the {@link MqttsnUdpTransport} and is configured using the same
+ * {@link MqttsnUdpOptions}.
+ */
+public class MqttsnNioUdpTransport extends AbstractMqttsnUdpTransport {
+
+    /**
+     * The number of times a send will be re-attempted when the socket send buffer is full
+     */
+    protected static final int MAX_SEND_ATTEMPTS = 5;
+
+    private ByteBufferPool bufferPool;
+    private Shard[] shards;
+    private DatagramChannel broadcastChannel;
+    private boolean metricsLoaded = false;
+
+    public MqttsnNioUdpTransport(MqttsnUdpOptions udpOptions){
+        super(udpOptions);
+    }
+
+    @Override
+    protected synchronized void bind() throws IOException {
+
+        bufferPool = new ByteBufferPool(options.getBufferPoolSize(),
+                options.getReceiveBuffer(), options.isDirectBuffers());
+
+        int shardCount = Math.max(1, options.getReceiverShards());
+        SocketOption<Boolean> reusePort = getReusePortOption();
+        if(shardCount > 1 && reusePort == null){
+            logger.warn("SO_REUSEPORT is not supported on this platform, falling back to a single receiver shard");
+            shardCount = 1;
+        }
+
+        shards = new Shard[shardCount];
+        int port = Math.max(options.getPort(), 0);
+        for (int i = 0; i < shardCount; i++){
+            shards[i] = new Shard(i, openChannel(port, shardCount > 1 ? reusePort : null));
+            //-- when bound to an ephemeral port, subsequent shards must share the port the kernel assigned
+            port = shards[i].localPort;
+        }
+
+        if(options.getBindBroadcastListener() && registry.getOptions().isEnableDiscovery()) {
+            if(options.getBroadcastPort() > 0 && options.getBroadcastPort() != options.getPort()){
+                //-- Only activate a dedicated broadcast listener if its on a different port
+                broadcastChannel = openChannel(options.getBroadcastPort(), null);
+                broadcastChannel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+                shards[0].register(broadcastChannel);
+            }
+        }
+
+        registerMetrics();
+        for (Shard shard : shards){
+            shard.start();
+        }
+    }
+
+    protected DatagramChannel openChannel(int port, SocketOption<Boolean> reusePort) throws IOException {
+        DatagramChannel datagramChannel = DatagramChannel.open();
+        datagramChannel.configureBlocking(false);
+        if(reusePort != null){
+            datagramChannel.setOption(reusePort, true);
+        }
+        datagramChannel.bind(new InetSocketAddress(port));
+        logger.info("mqtt-sn nio udp {} bound channel to port {} with {} pooled {} buffer(s) of size {}",
+                registry.getOptions().getContextId(), datagramChannel.socket().getLocalPort(), options.getBufferPoolSize(),
+                options.isDirectBuffers() ? "direct" : "heap", options.getReceiveBuffer());
+        return datagramChannel;
+    }
+
+    protected void registerMetrics(){
+        if(registry.getMetrics() != null && !metricsLoaded){
+            for (Shard shard : shards){
+                registry.getMetrics().registerMetric(new MqttsnCountingMetric(IMqttsnMetrics.NETWORK_SHARD_PACKETS_IN + shard.index,
+                        "The number of datagrams received (ingress) by receiver shard " + shard.index + " in the time period.",
+                        IMqttsnMetrics.DEFAULT_MAX_SAMPLES, IMqttsnMetrics.DEFAULT_SAMPLES_TIME_MILLIS));
+                registry.getMetrics().registerMetric(new MqttsnCountingMetric(IMqttsnMetrics.NETWORK_SHARD_BYTES_IN + shard.index,
+                        "The number of network bytes received (ingress) by receiver shard " + shard.index + " in the time period.",
+                        IMqttsnMetrics.DEFAULT_MAX_SAMPLES, IMqttsnMetrics.DEFAULT_SAMPLES_TIME_MILLIS));
+            }
+            metricsLoaded = true;
+        }
+        if(registry.getMetrics() != null){
+            for (Shard shard : shards){
+                shard.packetsMetric = registry.getMetrics().getMetric(IMqttsnMetrics.NETWORK_SHARD_PACKETS_IN + shard.index);
+                shard.bytesMetric = registry.getMetrics().getMetric(IMqttsnMetrics.NETWORK_SHARD_BYTES_IN + shard.index);
+            }
+        }
+    }
+
+    /**
+     * SO_REUSEPORT is only available as a standard socket option from Java 9 onwards, so look it up reflectively
+     * @return the option, or null if it is not supported by the runtime or platform
+     */
+    @SuppressWarnings("unchecked")
+    protected static SocketOption<Boolean> getReusePortOption(){
+        try {
+            SocketOption<Boolean> option = (SocketOption<Boolean>)
+                    StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            try (DatagramChannel probe = DatagramChannel.open()){
+                return probe.supportedOptions().contains(option) ? option : null;
+            }
+        } catch(Exception e){
+            return null;
+        }
+    }
+
+    protected void receiveDatagramInternal(int localPort, InetSocketAddress source, ByteBuffer buffer)
+            throws IOException, NetworkRegistryException, MqttsnException {
+        INetworkContext context = registry.getNetworkRegistry().getContext(source);
+        if(context == null){
+            NetworkAddress address = NetworkAddress.from(source);
+            //-- if the network context does not exist in the registry, a new one is created by the factory -
+            //- NB: this is NOT auth, this is simply creating a context to which we can respond, auth can
+            //-- happen during the mqtt-sn context creation, at which point we can talk back to the device
+            //-- with error packets and the like
+            context = registry.getContextFactory().createInitialNetworkContext(this, address);
+        }
+        context.setReceivePort(localPort);
+        if(running){
+            receiveFromTransport(context, drain(buffer));
+        }
+    }
+
+    @Override
+    protected void writeToTransportInternal(INetworkContext context, byte[] data) {
+        if(!running){
+            logger.warn("transport is NOT RUNNING trying to send {} byte Datagram to {}",
+                    data.length, context);
+            return;
+        }
+        try {
+            NetworkAddress address = context.getNetworkAddress();
+            InetSocketAddress target = address.toSocketAddress();
+            logger.debug("sending {} byte Datagram to {} -> {}",
+                    data.length, address, address.getPort());
+            send(data, target);
+        } catch(IOException e){
+            throw new MqttsnRuntimeException(e);
+        }
+    }
+
+    protected void send(byte[] data, InetSocketAddress target) throws IOException {
+        ByteBuffer buffer = data.length <= bufferPool.getBufferSize() ? bufferPool.acquire() : null;
+        try {
+            ByteBuffer out = buffer == null ? ByteBuffer.wrap(data) : (ByteBuffer) buffer.put(data).flip();
+            send(out, target);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Write the remaining bytes of the buffer to the target as a single datagram
+     * @return true if the datagram was written to the socket, false if it was dropped
+     */
+    protected boolean send(ByteBuffer buffer, InetSocketAddress target) throws IOException {
+        Shard[] current = shards;
+        if(current == null) return false;
+        //-- spread the sends across the shard channels, keeping a remote on the same channel
+        DatagramChannel datagramChannel = current[(target.hashCode() & Integer.MAX_VALUE) % current.length].channel;
+        if(datagramChannel.isOpen()){
+            int attempts = 0;
+            //-- a non-blocking channel returns 0 when there is no room in the socket send buffer
+            while(datagramChannel.send(buffer, target) == 0){
+                if(++attempts >= MAX_SEND_ATTEMPTS){
+                    logger.warn("socket send buffer full after {} attempts, dropping {} byte Datagram to {}",
+                            attempts, buffer.remaining(), target);
+                    return false;
+                }
+                Thread.yield();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    protected ByteBufferPool getBufferPool(){
+        return bufferPool;
+    }
+
+    @Override
+    public void stop() throws MqttsnException {
+        long superTime = System.currentTimeMillis();
+        super.stop();
+        long channelTime = System.currentTimeMillis();
+        try {
+            if(shards != null){
+                for (Shard shard : shards){
+                    shard.close();
+                }
+            }
+            if(broadcastChannel != null){
+                broadcastChannel.close();
+            }
+        } catch(IOException e){
+            logger.warn("error closing udp channels;", e);
+        } finally {
+            shards = null;
+            broadcastChannel = null;
+        }
+
+        logger.info("stopped nio udp transport in superTime={}ms, channel={}ms",
+                System.currentTimeMillis() - superTime,
+                System.currentTimeMillis() - channelTime);
+    }
+
+    @Override
+    public void broadcast(IMqttsnMessage broadcastMessage) throws MqttsnException {
+        try {
+            byte[] arr = registry.getCodec().encode(broadcastMessage);
+            List<InetAddress> broadcastAddresses = registry.getNetworkRegistry().getAllBroadcastAddresses();
+            try (DatagramChannel broadcast = DatagramChannel.open()){
+                broadcast.setOption(StandardSocketOptions.SO_BROADCAST, true);
+                for(InetAddress address : broadcastAddresses) {
+                    logger.debug("broadcasting {} message to network interface {} -> {}",
+                            broadcastMessage.getMessageName(), address, options.getBroadcastPort());
+                    broadcast.send(ByteBuffer.wrap(arr),
+                            new InetSocketAddress(address, options.getBroadcastPort()));
+                }
+            }
+        } catch(Exception e){
+            throw new MqttsnException(e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "mqtt-sn-nio-udp";
+    }
+
+    @Override
+    public StringTable getTransportDetails() {
+        StringTable st = new StringTable("Property", "Value");
+        st.setTableName("NIO UDP Transport");
+        st.addRow("Host", options.getHost());
+        st.addRow("Datagram port", options.getPort());
+        st.addRow("Secure port", options.getSecurePort());
+        st.addRow("Broadcast port", options.getBroadcastPort());
+        st.addRow("MTU", options.getMtu());
+        if(bufferPool != null){
+            st.addRow("Buffer size", bufferPool.getBufferSize());
+            st.addRow("Buffers available", bufferPool.getAvailable());
+            st.addRow("Buffers allocated", bufferPool.getAllocationCount());
+        }
+        Shard[] current = shards;
+        if(current != null){
+            st.addRow("Receiver shards", current.length);
+            for (Shard shard : current){
+                st.addRow("Shard " + shard.index + " packets in", shard.packetsIn.get());
+                st.addRow("Shard " + shard.index + " bytes in", shard.bytesIn.get());
+            }
+        }
+        return st;
+    }
+
+    /**
+     * A receiver shard owns a channel bound to the datagram port and the selector thread which services it
+     */
+    protected class Shard {
+
+        private final int index;
+        private final int localPort;
+        private final DatagramChannel channel;
+        private final Selector selector;
+        private final AtomicLong packetsIn = new AtomicLong();
+        private final AtomicLong bytesIn = new AtomicLong();
+        private volatile IMqttsnMetric packetsMetric;
+        private volatile IMqttsnMetric bytesMetric;
+        private Thread receiverThread;
+
+        protected Shard(int index, DatagramChannel channel) throws IOException {
+            this.index = index;
+            this.channel = channel;
+            this.localPort = channel.socket().getLocalPort();
+            this.selector = Selector.open();
+            register(channel);
+        }
+
+        protected void register(DatagramChannel datagramChannel) throws IOException {
+            datagramChannel.register(selector, SelectionKey.OP_READ,
+                    datagramChannel.socket().getLocalPort());
+        }
+
+        protected void start(){
+            receiverThread = new Thread(this::select, "mqtt-sn-nio-udp-receiver-" + index);
+            receiverThread.setDaemon(true);
+            receiverThread.setPriority(Thread.MIN_PRIORITY + 1);
+            receiverThread.start();
+        }
+
+        protected void select(){
+            logger.info("mqtt-sn nio udp {} starting selector for shard {} on port {}, running ? {}",
+                    registry.getOptions().getContextId(), index, localPort, running);
+            while(running && selector.isOpen() &&
+                    !Thread.currentThread().isInterrupted()){
+                try {
+                    if(selector.select() == 0){
+                        continue;
+                    }
+                    Iterator<SelectionKey> itr = selector.selectedKeys().iterator();
+                    while(itr.hasNext()){
+                        SelectionKey key = itr.next();
+                        itr.remove();
+                        if(key.isValid() && key.isReadable()){
+                            drainChannel((DatagramChannel) key.channel(), (Integer) key.attachment());
+                        }
+                    }
+                }
+                catch(ClosedSelectorException e){
+                    break;
+                }
+                catch(IOException e){
+                    logger.warn("socket error, i/o channels closed;", e);
+                }
+                catch(Throwable e){
+                    logger.error("uncaught exception selecting datagrams", e);
+                }
+            }
+            logger.info("mqtt-sn nio udp {} stopping selector for shard {}, running ? {}",
+                    registry.getOptions().getContextId(), index, running);
+        }
+
+        /**
+         * Read every datagram currently available on the channel using a single pooled buffer
+         */
+        protected void drainChannel(DatagramChannel datagramChannel, int port) throws IOException {
+            ByteBuffer buffer = bufferPool.acquire();
+            long packets = 0, bytes = 0;
+            try {
+                SocketAddress source;
+                while(running && (source = datagramChannel.receive(buffer)) != null){
+                    buffer.flip();
+                    packets++;
+                    bytes += buffer.remaining();
+                    try {
+                        logger.debug("receiving {} byte Datagram from {} on shard {}", buffer.remaining(), source, index);
+                        receiveDatagramInternal(port, (InetSocketAddress) source, buffer);
+                    } catch(Throwable e){
+                        logger.error("uncaught exception handling datagram", e);
+                    } finally {
+                        buffer.clear();
+                    }
+                }
+            } finally {
+                bufferPool.release(buffer);
+                if(packets > 0){
+                    packetsIn.addAndGet(packets);
+                    bytesIn.addAndGet(bytes);
+                    if(packetsMetric != null) packetsMetric.increment(packets);
+                    if(bytesMetric != null) bytesMetric.increment(bytes);
+                }
+            }
+        }
+
+        protected void close() throws IOException {
+            try {
+                selector.close();
+                channel.close();
+            } finally {
+                if(receiverThread != null){
+                    receiverThread.interrupt();
+                    receiverThread = null;
+                }
+            }
+        }
+    }
+}
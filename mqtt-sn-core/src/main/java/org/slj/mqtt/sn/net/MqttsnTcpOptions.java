@@ -105,6 +105,10 @@ public class MqttsnTcpOptions extends AbstractOptions {
      */
     public static String DEFAULT_SSL_ALGORITHM = "TLS";
 
+    public static boolean DEFAULT_NON_BLOCKING = false;
+
+    public static int DEFAULT_EVENT_LOOP_THREADS = 2;
+
     SocketFactory clientSocketFactory = SocketFactory.getDefault();
     ServerSocketFactory serverSocketFactory = ServerSocketFactory.getDefault();
 
@@ -128,11 +132,33 @@ public class MqttsnTcpOptions extends AbstractOptions {
     String trustStorePassword = DEFAULT_KEYSTORE_PASSWORD;
     String sslAlgorithm = DEFAULT_SSL_ALGORITHM;
 
+    //-- NIO stuff
+    boolean nonBlocking = DEFAULT_NON_BLOCKING;
+    int eventLoopThreads = DEFAULT_EVENT_LOOP_THREADS;
+
     public MqttsnTcpOptions withSecure(boolean secure){
         this.secure = secure;
         return this;
     }
 
+    /**
+     * When set, {@link MqttsnTcpTransports#create(MqttsnTcpOptions, boolean)} will
+     * create a selector based transport serviced by a fixed number of event loop threads, instead of
+     * a thread per connection.
+     */
+    public MqttsnTcpOptions withNonBlocking(boolean nonBlocking){
+        this.nonBlocking = nonBlocking;
+        return this;
+    }
+
+    /**
+     * The number of selector threads used by the non-blocking transport to service connections
+     */
+    public MqttsnTcpOptions withEventLoopThreads(int eventLoopThreads){
+        this.eventLoopThreads = eventLoopThreads;
+        return this;
+    }
+
     public MqttsnTcpOptions withSSLAlgorithm(String sslAlgorithm){
         this.sslAlgorithm = sslAlgorithm;
         return this;
@@ -289,4 +315,12 @@ public class MqttsnTcpOptions extends AbstractOptions {
     public String getSslAlgorithm() {
         return sslAlgorithm;
     }
+
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
 }
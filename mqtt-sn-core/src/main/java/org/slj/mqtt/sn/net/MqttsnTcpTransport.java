@@ -24,7 +24,7 @@
 
 package org.slj.mqtt.sn.net;
 
-import org.slj.mqtt.sn.impl.AbstractMqttsnTransport;
+import org.slj.mqtt.sn.impl.AbstractMqttsnTcpTransport;
 import org.slj.mqtt.sn.model.INetworkContext;
 import org.slj.mqtt.sn.spi.*;
 import org.slj.mqtt.sn.utils.StringTable;
@@ -43,42 +43,14 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Supports running in both client and server mode.
  */
 public class MqttsnTcpTransport
-        extends AbstractMqttsnTransport {
-
-    protected final MqttsnTcpOptions options;
-    protected boolean clientMode = false;
+        extends AbstractMqttsnTcpTransport {
 
     static AtomicInteger connectionCount = new AtomicInteger(0);
-    private final Object monitor = new Object();
     protected Handler clientHandler;
     protected Server server;
 
     public MqttsnTcpTransport(MqttsnTcpOptions options, boolean clientMode) {
-        this.options = options;
-        this.clientMode = clientMode;
-    }
-
-    @Override
-    public synchronized void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
-        try {
-            super.start(runtime);
-            options.processFromSystemPropertyOverrides();
-            running = false;
-            if(clientMode){
-                logger.info("running in client mode, establishing tcp connection...");
-                connectClient();
-            } else {
-                logger.info("running in server mode, establishing tcp acceptors...");
-                startServer();
-            }
-            running = true;
-            synchronized (monitor){
-                monitor.notifyAll();
-            }
-        } catch(Exception e){
-            running = false;
-            throw new MqttsnException(e);
-        }
+        super(options, clientMode);
     }
 
     @Override
@@ -135,82 +107,7 @@ public class MqttsnTcpTransport
         }
     }
 
-    protected SSLContext initSSLContext()
-            throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException, UnrecoverableKeyException, KeyManagementException {
-
-        String keyStorePath = options.getKeyStorePath();
-        String trustStorePath = options.getTrustStorePath();
-        logger.info("initting SSL context with keystore {}, truststore {}", keyStorePath, trustStorePath);
-
-        //-- keystore
-        KeyStore keyStore = null;
-        KeyManager[] keyManagers = null;
-        if(keyStorePath != null){
-            File f = new File(keyStorePath);
-            if(!f.exists() || !f.canRead())
-                throw new KeyStoreException("unable to read keyStore " + keyStorePath);
-
-            keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-            KeyManagerFactory kmf = KeyManagerFactory
-                    .getInstance(KeyManagerFactory.getDefaultAlgorithm());
-
-            try(InputStream keyStoreData = new FileInputStream(f)) {
-                char[] password = options.getKeyStorePassword().toCharArray();
-                keyStore.load(keyStoreData, password);
-                Enumeration<String> aliases = keyStore.aliases();
-                while(aliases.hasMoreElements()){
-                    String el = aliases.nextElement();
-                    logger.info("keystore contains alias {}", el);
-                }
-                kmf.init(keyStore, password);
-                keyManagers = kmf.getKeyManagers();
-            }
-        }
-
-        TrustManager[] trustManagers = null;
-        if(trustStorePath == null){
-            logger.warn("!! ssl operating in trust-all mode, do not use this in production, nominate a trust store !!");
-            TrustManager trustAllCerts = new X509TrustManager() {
-                public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                    return null;
-                }
-                public void checkClientTrusted(java.security.cert.X509Certificate[] certs, String authType) {
-                }
-                public void checkServerTrusted(java.security.cert.X509Certificate[] certs, String authType) {
-                }
-            };
-            trustManagers = new TrustManager[] { trustAllCerts };
-        } else {
-            File f = new File(trustStorePath);
-            if(!f.exists() || !f.canRead())
-                throw new KeyStoreException("unable to read trustStore " + trustStorePath);
-
-            KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-            try(InputStream trustStoreData = new FileInputStream(f)) {
-                char[] password = options.getTrustStorePassword().toCharArray();
-                trustStore.load(trustStoreData, password);
-                Enumeration<String> aliases = keyStore.aliases();
-                while(aliases.hasMoreElements()){
-                    String el = aliases.nextElement();
-                    logger.info("truststore contains alias {}", el);
-                }
-                TrustManagerFactory tmf = TrustManagerFactory
-                        .getInstance(TrustManagerFactory.getDefaultAlgorithm());
-                tmf.init(keyStore);
-                trustManagers = tmf.getTrustManagers();
-            }
-        }
-        SSLContext ctx = SSLContext.getInstance(options.getSslAlgorithm());
-        logger.info("ssl initialised with algo {}", ctx.getProtocol());
-        logger.info("ssl initialised with JCSE provider {}", ctx.getProvider());
-        logger.info("ssl initialised with {} key manager(s)", keyManagers == null ? null : keyManagers.length);
-        logger.info("ssl initialised with {} trust manager(s)", trustManagers == null ? null : trustManagers.length);
-        ctx.init(keyManagers, trustManagers, new SecureRandom());
-//                SecureRandom.getInstanceStrong());
-        return ctx;
-
-    }
-
+    @Override
     protected void connectClient() throws MqttsnException {
         try {
             //-- check we have a valid network location to connect to
@@ -286,6 +183,7 @@ public class MqttsnTcpTransport
         }
     }
 
+    @Override
     protected void startServer()
             throws IOException, KeyStoreException, NoSuchAlgorithmException, KeyManagementException,
             CertificateException, UnrecoverableKeyException {
@@ -369,9 +267,9 @@ public class MqttsnTcpTransport
                     } else {
                         SocketAddress address = socket.getRemoteSocketAddress();
                         logger.info("new connection accepted from {}", address);
-                        NetworkAddress networkAddress = NetworkAddress.from((InetSocketAddress) address);
-                        INetworkContext context = registry.getNetworkRegistry().getContext(networkAddress);
+                        INetworkContext context = registry.getNetworkRegistry().getContext((InetSocketAddress) address);
                         if(context == null){
+                            NetworkAddress networkAddress = NetworkAddress.from((InetSocketAddress) address);
                             //-- if the network context does not exist in the registry, a new one is created by the factory -
                             //- NB: this is NOT auth, this is simply creating a context to which we can respond, auth can
                             //-- happen during the mqtt-sn context creation, at which point we can talk back to the device
@@ -545,11 +443,6 @@ public class MqttsnTcpTransport
         }
     }
 
-    @Override
-    public void broadcast(IMqttsnMessage message) throws MqttsnException {
-        throw new UnsupportedOperationException("broadcast not supported on TCP");
-    }
-
     @Override
     public StringTable getTransportDetails() {
         StringTable st = new StringTable("Property", "Value");
@@ -562,22 +455,6 @@ public class MqttsnTcpTransport
         st.addRow("So. Timeout", options.getSoTimeout());
         return st;
     }
-
-    @Override
-    public String getName() {
-        return "mqtt-sn-tcp";
-    }
-
-    @Override
-    public int getPort() {
-        return options.getPort();
-    }
-
-    @Override
-    public String getDescription() {
-        return "Exposes a TCP/IP port which is optionally protected by TLS. TCP requires a socket connection to the gateway which is created using a SYN, SYN ACK and ACK.";
-    }
-
 }
 
 interface ClosedListener {
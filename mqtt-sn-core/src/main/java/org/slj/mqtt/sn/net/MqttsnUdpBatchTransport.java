@@ -21,24 +21,39 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-
 package org.slj.mqtt.sn.net;
 
 import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
 import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.utils.StringTable;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class MqttsnUdpBatchTransport extends MqttsnUdpTransport {
+/**
+ * A UDP transport whose egress is decoupled from the calling threads. Outbound datagrams are placed on a bounded ring
+ * buffer and a single "mqtt-sn-sender" thread drains up to {@link MqttsnUdpOptions#getBatchSize()} of them per wakeup,
+ * (optionally lingering {@link MqttsnUdpOptions#getBatchLingerMillis()} for a batch to fill), writing them to the
+ * non-blocking channel in a tight loop using a single pooled buffer. When the ring buffer is full the
+ * {@link MqttsnUdpOptions#getBatchOverflowPolicy()} decides whether the caller blocks or a datagram is dropped.
+ */
+public class MqttsnUdpBatchTransport extends MqttsnNioUdpTransport {
 
-    protected LinkedBlockingQueue<DatagramPacket> queue;
+    protected final ArrayBlockingQueue<QueuedDatagram> queue;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
     private Thread senderThread;
 
     public MqttsnUdpBatchTransport(MqttsnUdpOptions udpOptions, int queueSize) {
         super(udpOptions);
-        queue = new LinkedBlockingQueue(queueSize);
+        queue = new ArrayBlockingQueue<>(queueSize);
     }
 
     @Override
@@ -49,14 +64,15 @@ public class MqttsnUdpBatchTransport extends MqttsnUdpTransport {
 
     private void initSender(){
         if(senderThread == null){
-            logger.info("starting udp datagram batching sender..");
+            logger.info("starting udp datagram batching sender, batchSize={}, linger={}ms, overflowPolicy={}..",
+                    options.getBatchSize(), options.getBatchLingerMillis(), options.getBatchOverflowPolicy());
             senderThread = new Thread(() -> {
+                int batchSize = Math.max(1, options.getBatchSize());
+                List<QueuedDatagram> batch = new ArrayList<>(batchSize);
                 while(running){
                     try {
-                        DatagramPacket packet = queue.take();
-                        if(packet != null) {
-                            MqttsnUdpBatchTransport.super.send(packet);
-                        }
+                        fillBatch(batch, batchSize);
+                        sendBatch(batch);
                     }
                     catch(InterruptedException e){
                         Thread.currentThread().interrupt();
@@ -65,11 +81,64 @@ public class MqttsnUdpBatchTransport extends MqttsnUdpTransport {
                     }
                     catch(Exception e){
                         logger.error("error on sending thread", e);
+                    } finally {
+                        batch.clear();
                     }
                 }
             }, "mqtt-sn-sender");
-            senderThread.start();
             senderThread.setPriority(Thread.NORM_PRIORITY);
+            senderThread.start();
+        }
+    }
+
+    /**
+     * Block until at least one datagram is available, then take as many as are available up to the batch size,
+     * lingering for more when configured to do so
+     */
+    protected void fillBatch(List<QueuedDatagram> batch, int batchSize) throws InterruptedException {
+        batch.add(queue.take());
+        queue.drainTo(batch, batchSize - batch.size());
+        long linger = options.getBatchLingerMillis();
+        if(linger > 0 && batch.size() < batchSize){
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(linger);
+            long remaining;
+            while(batch.size() < batchSize &&
+                    (remaining = deadline - System.nanoTime()) > 0){
+                QueuedDatagram next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if(next == null) break;
+                batch.add(next);
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+        }
+    }
+
+    protected void sendBatch(List<QueuedDatagram> batch) {
+        ByteBuffer buffer = getBufferPool().acquire();
+        try {
+            for (int i = 0, size = batch.size(); i < size; i++){
+                QueuedDatagram datagram = batch.get(i);
+                try {
+                    ByteBuffer out;
+                    if(datagram.data.length <= buffer.capacity()){
+                        buffer.clear();
+                        buffer.put(datagram.data).flip();
+                        out = buffer;
+                    } else {
+                        out = ByteBuffer.wrap(datagram.data);
+                    }
+                    if(send(out, datagram.target)){
+                        sent.incrementAndGet();
+                    } else {
+                        dropped.incrementAndGet();
+                    }
+                } catch(IOException e){
+                    dropped.incrementAndGet();
+                    logger.warn("error sending batched datagram to {};", datagram.target, e);
+                }
+            }
+            batches.incrementAndGet();
+        } finally {
+            getBufferPool().release(buffer);
         }
     }
 
@@ -80,14 +149,57 @@ public class MqttsnUdpBatchTransport extends MqttsnUdpTransport {
             senderThread.interrupt();
             senderThread = null;
         }
+        queue.clear();
     }
 
     @Override
-    protected void send(DatagramPacket packet) throws IOException {
-        try {
-            queue.put(packet);
-        } catch(InterruptedException e){
-            Thread.currentThread().interrupt();
+    protected void send(byte[] data, InetSocketAddress target) {
+        QueuedDatagram datagram = new QueuedDatagram(data, target);
+        switch (options.getBatchOverflowPolicy()){
+            case DROP_NEWEST:
+                if(!queue.offer(datagram)){
+                    dropped.incrementAndGet();
+                    logger.warn("batched send queue full, dropping {} byte Datagram to {}", data.length, target);
+                }
+                break;
+            case DROP_OLDEST:
+                while(!queue.offer(datagram)){
+                    if(queue.poll() != null){
+                        dropped.incrementAndGet();
+                        logger.warn("batched send queue full, dropping oldest Datagram to make room");
+                    }
+                }
+                break;
+            default:
+                try {
+                    queue.put(datagram);
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+        }
+    }
+
+    @Override
+    public StringTable getTransportDetails() {
+        StringTable st = super.getTransportDetails();
+        st.addRow("Batch size", options.getBatchSize());
+        st.addRow("Batch linger (ms)", options.getBatchLingerMillis());
+        st.addRow("Batch overflow policy", options.getBatchOverflowPolicy());
+        st.addRow("Batch queue depth", queue.size());
+        st.addRow("Batches sent", batches.get());
+        st.addRow("Datagrams sent", sent.get());
+        st.addRow("Datagrams dropped", dropped.get());
+        return st;
+    }
+
+    protected static class QueuedDatagram {
+
+        private final byte[] data;
+        private final InetSocketAddress target;
+
+        protected QueuedDatagram(byte[] data, InetSocketAddress target) {
+            this.data = data;
+            this.target = target;
         }
     }
 }
@@ -71,6 +71,57 @@ public class MqttsnUdpOptions extends AbstractOptions {
      */
     public static boolean DEFAULT_BIND_BROADCAST_LISTENER = false;
 
+    /**
+     * Default number of pooled buffers available to the NIO transport is 128
+     */
+    public static int DEFAULT_BUFFER_POOL_SIZE = 128;
+
+    /**
+     * By default the NIO transport will use direct (off-heap) buffers
+     */
+    public static boolean DEFAULT_DIRECT_BUFFERS = true;
+
+    /**
+     * By default the NIO transport will bind a single socket (and receiver thread) to the datagram port
+     */
+    public static int DEFAULT_RECEIVER_SHARDS = 1;
+
+    /**
+     * What the batching sender does with a datagram when its send queue is full
+     */
+    public enum BATCH_OVERFLOW_POLICY {
+
+        /**
+         * The caller will block until space is available
+         */
+        BLOCK,
+
+        /**
+         * The datagram being sent is dropped
+         */
+        DROP_NEWEST,
+
+        /**
+         * The oldest queued datagram is dropped to make room
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * Default maximum number of datagrams the batching sender will write per wakeup is 64
+     */
+    public static int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * Default time the batching sender will wait for a batch to fill is 0 (send whatever is available immediately)
+     */
+    public static int DEFAULT_BATCH_LINGER_MILLIS = 0;
+
+    /**
+     * By default the batching sender will block the caller when its queue is full
+     */
+    public static BATCH_OVERFLOW_POLICY DEFAULT_BATCH_OVERFLOW_POLICY = BATCH_OVERFLOW_POLICY.BLOCK;
+
     public String host = DEFAULT_LOCAL_BIND_INTERFACE;
     public int port = DEFAULT_LOCAL_PORT;
     public int mtu = DEFAULT_MTU;
@@ -78,6 +129,12 @@ public class MqttsnUdpOptions extends AbstractOptions {
     public int broadcastPort = DEFAULT_BROADCAST_PORT;
     public int receiveBuffer = DEFAULT_RECEIVE_BUFFER_SIZE;
     public boolean bindBroadcastListener = DEFAULT_BIND_BROADCAST_LISTENER;
+    public int bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE;
+    public boolean directBuffers = DEFAULT_DIRECT_BUFFERS;
+    public int receiverShards = DEFAULT_RECEIVER_SHARDS;
+    public int batchSize = DEFAULT_BATCH_SIZE;
+    public int batchLingerMillis = DEFAULT_BATCH_LINGER_MILLIS;
+    public BATCH_OVERFLOW_POLICY batchOverflowPolicy = DEFAULT_BATCH_OVERFLOW_POLICY;
 
     /**
      * Max allowable transmission unit
@@ -173,6 +230,91 @@ public class MqttsnUdpOptions extends AbstractOptions {
         return this;
     }
 
+    /**
+     * The number of reusable buffers the NIO transport will keep pooled for receiving and sending datagrams.
+     * Each buffer is sized using the receive buffer setting.
+     *
+     * @see {@link MqttsnUdpOptions#DEFAULT_BUFFER_POOL_SIZE}
+     *
+     * @param bufferPoolSize - The number of pooled buffers
+     * @return this config
+     */
+    public MqttsnUdpOptions withBufferPoolSize(int bufferPoolSize){
+        this.bufferPoolSize = bufferPoolSize;
+        return this;
+    }
+
+    /**
+     * Should the pooled buffers used by the NIO transport be allocated outside of the heap (direct)
+     *
+     * @see {@link MqttsnUdpOptions#DEFAULT_DIRECT_BUFFERS}
+     *
+     * @param directBuffers - Should the pooled buffers be direct
+     * @return this config
+     */
+    public MqttsnUdpOptions withDirectBuffers(boolean directBuffers){
+        this.directBuffers = directBuffers;
+        return this;
+    }
+
+    /**
+     * The number of sockets the NIO transport will bind onto the datagram port using SO_REUSEPORT, each serviced
+     * by its own receiver thread. The kernel load-balances inbound datagrams across the sockets by source address,
+     * so the packets from any single device are always received (in order) on the same shard. Where the platform does not
+     * support SO_REUSEPORT, a single shard is used.
+     *
+     * @see {@link MqttsnUdpOptions#DEFAULT_RECEIVER_SHARDS}
+     *
+     * @param receiverShards - The number of sockets (and receiver threads) to bind to the datagram port
+     * @return this config
+     */
+    public MqttsnUdpOptions withReceiverShards(int receiverShards){
+        this.receiverShards = receiverShards;
+        return this;
+    }
+
+    /**
+     * The maximum number of datagrams the batching sender will drain from its queue and write in a single pass
+     *
+     * @see {@link MqttsnUdpOptions#DEFAULT_BATCH_SIZE}
+     *
+     * @param batchSize - The maximum number of datagrams written per wakeup
+     * @return this config
+     */
+    public MqttsnUdpOptions withBatchSize(int batchSize){
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * How long the batching sender will wait for a partially filled batch to fill before writing it. A value of
+     * 0 means the available datagrams are written immediately.
+     *
+     * @see {@link MqttsnUdpOptions#DEFAULT_BATCH_LINGER_MILLIS}
+     *
+     * @param batchLingerMillis - The time in milliseconds to wait for a batch to fill
+     * @return this config
+     */
+    public MqttsnUdpOptions withBatchLingerMillis(int batchLingerMillis){
+        this.batchLingerMillis = batchLingerMillis;
+        return this;
+    }
+
+    /**
+     * What the batching sender should do when its queue is full
+     *
+     * @see {@link MqttsnUdpOptions#DEFAULT_BATCH_OVERFLOW_POLICY}
+     *
+     * @param batchOverflowPolicy - The overflow policy
+     * @return this config
+     */
+    public MqttsnUdpOptions withBatchOverflowPolicy(BATCH_OVERFLOW_POLICY batchOverflowPolicy){
+        if(batchOverflowPolicy == null)
+            throw new IllegalArgumentException("batch overflow policy must not be null");
+        this.batchOverflowPolicy = batchOverflowPolicy;
+        return this;
+    }
+
     public boolean getBindBroadcastListener() {
         return bindBroadcastListener;
     }
@@ -196,4 +338,28 @@ public class MqttsnUdpOptions extends AbstractOptions {
     }
 
     public int getMtu() { return mtu; }
+
+    public int getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    public boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    public int getReceiverShards() {
+        return receiverShards;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBatchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    public BATCH_OVERFLOW_POLICY getBatchOverflowPolicy() {
+        return batchOverflowPolicy;
+    }
 }
@@ -35,6 +35,7 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.util.List;
@@ -95,9 +96,10 @@ public class MqttsnUdpTransport extends AbstractMqttsnUdpTransport {
                     logger.debug("receiving {} byte Datagram, offset = {}, data = {}",
                             length, p.getOffset(), p.getData().length);
 
-                    NetworkAddress address = NetworkAddress.from(p.getPort(), p.getAddress().getHostAddress());
-                    INetworkContext context = registry.getNetworkRegistry().getContext(address);
+                    InetSocketAddress source = (InetSocketAddress) p.getSocketAddress();
+                    INetworkContext context = registry.getNetworkRegistry().getContext(source);
                     if(context == null){
+                        NetworkAddress address = NetworkAddress.from(source);
                         //-- if the network context does not exist in the registry, a new one is created by the factory -
                         //- NB: this is NOT auth, this is simply creating a context to which we can respond, auth can
                         //-- happen during the mqtt-sn context creation, at which point we can talk back to the device
@@ -190,9 +192,7 @@ public class MqttsnUdpTransport extends AbstractMqttsnUdpTransport {
             return;
         }
         NetworkAddress address = context.getNetworkAddress();
-        InetAddress inetAddress = InetAddress.getByName(address.getHostAddress());
-        packet.setAddress(inetAddress);
-        packet.setPort(address.getPort());
+        packet.setSocketAddress(address.toSocketAddress());
         logger.debug("sending {} byte Datagram to {} -> {}",
                     packet.getLength(), address, address.getPort());
         send(packet);
@@ -39,6 +39,7 @@ public class NetworkAddress implements Serializable {
 
     private final String address;
     private final int port;
+    private transient volatile InetSocketAddress socketAddress;
 
     /**
      * Create a new network address from the port and address supplied.
@@ -48,9 +49,23 @@ public class NetworkAddress implements Serializable {
      * @throws UnknownHostException - no host could be found
      */
     public NetworkAddress(int port, String address) throws UnknownHostException {
-        this.address = InetAddress.getByName(address).getHostAddress();
         if(port < 0 || port > 65535) throw new IllegalArgumentException("port must be in range 0 <= port <= 65535");
+        InetAddress inetAddress = InetAddress.getByName(address);
+        this.address = inetAddress.getHostAddress();
         this.port = port;
+        this.socketAddress = new InetSocketAddress(inetAddress, port);
+    }
+
+    /**
+     * Create a new network address from an already resolved socket address; no lookup is performed and the
+     * socket address is retained for use by the transport.
+     * @param socketAddress - a resolved socket address
+     */
+    public NetworkAddress(InetSocketAddress socketAddress) {
+        if(socketAddress.isUnresolved()) throw new IllegalArgumentException("socket address must be resolved");
+        this.address = socketAddress.getAddress().getHostAddress();
+        this.port = socketAddress.getPort();
+        this.socketAddress = socketAddress;
     }
 
     /**
@@ -71,6 +86,28 @@ public class NetworkAddress implements Serializable {
         return port;
     }
 
+    /**
+     * Obtain the resolved socket address for this network address. The result is cached so that transports
+     * do not parse or resolve the host address on each send.
+     * @return the resolved socket address
+     * @throws UnknownHostException - no host could be found
+     */
+    public InetSocketAddress toSocketAddress() throws UnknownHostException {
+        InetSocketAddress resolved = socketAddress;
+        if(resolved == null){
+            resolved = new InetSocketAddress(InetAddress.getByName(address), port);
+            socketAddress = resolved;
+        }
+        return resolved;
+    }
+
+    /**
+     * @return true if the socket address has already been resolved (and so may be obtained without a lookup)
+     */
+    public boolean hasSocketAddress() {
+        return socketAddress != null;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -89,8 +126,8 @@ public class NetworkAddress implements Serializable {
         return new NetworkAddress(address);
     }
 
-    public static NetworkAddress from(InetSocketAddress address) throws UnknownHostException {
-        return NetworkAddress.from(address.getPort(), address.getAddress().getHostAddress());
+    public static NetworkAddress from(InetSocketAddress address) {
+        return new NetworkAddress(address);
     }
 
     public static NetworkAddress from(int port, String hostAddress) throws UnknownHostException {
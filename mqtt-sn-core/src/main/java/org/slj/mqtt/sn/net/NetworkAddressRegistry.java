@@ -33,8 +33,10 @@ import org.slj.mqtt.sn.spi.MqttsnRuntimeException;
 import org.slj.mqtt.sn.spi.NetworkRegistryException;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
+import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -44,7 +46,11 @@ public class NetworkAddressRegistry implements INetworkAddressRegistry {
 
     static Logger logger = LoggerFactory.getLogger(NetworkAddressRegistry.class.getName());
 
+    //-- the key a context is held under in the socket address index, since its network address may be unresolved
+    private static final String SOCKET_ADDRESS_CONTEXT_KEY = "indexedSocketAddress";
+
     final protected Map<NetworkAddress, INetworkContext> networkRegistry;
+    final protected Map<InetSocketAddress, INetworkContext> socketAddressRegistry;
     final protected Map<IClientIdentifierContext, INetworkContext> mqttsnContextRegistry;
     final protected Map<INetworkContext, IClientIdentifierContext> networkContextRegistry;
 
@@ -52,6 +58,7 @@ public class NetworkAddressRegistry implements INetworkAddressRegistry {
 
     public NetworkAddressRegistry(int initialCapacity){
         networkRegistry = new ConcurrentHashMap(initialCapacity);
+        socketAddressRegistry = new ConcurrentHashMap(initialCapacity);
         mqttsnContextRegistry = new ConcurrentHashMap(initialCapacity);
         networkContextRegistry = new ConcurrentHashMap(initialCapacity);
     }
@@ -63,6 +70,20 @@ public class NetworkAddressRegistry implements INetworkAddressRegistry {
         return context;
     }
 
+    @Override
+    public INetworkContext getContext(InetSocketAddress address) throws NetworkRegistryException {
+        INetworkContext context = socketAddressRegistry.get(address);
+        if(context == null){
+            //-- the context may have been registered against an address which had not been resolved at the time
+            context = networkRegistry.get(NetworkAddress.from(address));
+            if(context != null){
+                indexSocketAddress(address, context);
+            }
+        }
+        logger.debug("getting network context from RAM registry by socket address {} -> {}", address, context);
+        return context;
+    }
+
     @Override
     public INetworkContext getContext(IClientIdentifierContext sessionContext) {
         INetworkContext context = mqttsnContextRegistry.get(sessionContext);
@@ -104,7 +125,16 @@ public class NetworkAddressRegistry implements INetworkAddressRegistry {
 
     @Override
     public void putContext(INetworkContext context) {
-        networkRegistry.put(context.getNetworkAddress(), context);
+        NetworkAddress address = context.getNetworkAddress();
+        networkRegistry.put(address, context);
+        if(address.hasSocketAddress()){
+            try {
+                indexSocketAddress(address.toSocketAddress(), context);
+            } catch(UnknownHostException e){
+                //-- cannot happen for a resolved address
+                logger.warn("unable to index network context by socket address {}", address, e);
+            }
+        }
         synchronized(mutex){
             mutex.notifyAll();
         }
@@ -128,7 +158,17 @@ public class NetworkAddressRegistry implements INetworkAddressRegistry {
 
         INetworkContext context = mqttsnContextRegistry.remove(clientId);
         if(context != null){
-            if(context.getNetworkAddress() != null) networkRegistry.remove(context.getNetworkAddress());
+            NetworkAddress address = context.getNetworkAddress();
+            if(address != null) {
+                networkRegistry.remove(address);
+            }
+            InetSocketAddress socketAddress;
+            synchronized (context){
+                socketAddress = (InetSocketAddress) context.getContextObject(SOCKET_ADDRESS_CONTEXT_KEY);
+            }
+            if(socketAddress != null){
+                socketAddressRegistry.remove(socketAddress, context);
+            }
             networkContextRegistry.remove(context);
             logger.info("removing network,session & address from RAM registry - {}", clientId);
             return true;
@@ -136,6 +176,17 @@ public class NetworkAddressRegistry implements INetworkAddressRegistry {
         return false;
     }
 
+    /**
+     * Index the context by socket address, recording the key on the context so it can be removed again without
+     * resolving the network address of the context (which is not retained once serialized)
+     */
+    protected void indexSocketAddress(InetSocketAddress socketAddress, INetworkContext context) {
+        synchronized (context){
+            context.putContextObject(SOCKET_ADDRESS_CONTEXT_KEY, socketAddress);
+        }
+        socketAddressRegistry.put(socketAddress, context);
+    }
+
     @Override
     public long size() {
         return networkRegistry.size();
@@ -29,6 +29,8 @@ import org.slj.mqtt.sn.model.MqttsnWaitToken;
 import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
 import org.slj.mqtt.sn.model.session.ISession;
 
+import java.util.List;
+
 /**
  * Queue implementation to store messages destined to and from gateways and clients. Queues will be flushed acccording
  * to the session semantics defined during CONNECT.
@@ -54,6 +56,20 @@ public interface IMqttsnMessageQueue extends IMqttsnService  {
     void offer(ISession session, IQueuedPublishMessage message)
             throws MqttsnException, MqttsnQueueAcceptException;
 
+    /**
+     * Offer each session its message in a single pass, as when one message is expanded onto many queues. The messages
+     * may share their data reference and publish data, but each must be its own instance as it carries the delivery
+     * state for its session. Sessions whose queue is full (the message being sent to the dead letter queue) or which
+     * otherwise fail to accept their message are skipped, and flushing is scheduled once for all the sessions which accepted their message.
+     * Each session's messages are queued in the order they are offered.
+     * @param sessions - the sessions whose queues youd like to append
+     * @param messages - the message metadata to queue, by the index of its session
+     * @return whether each session accepted its message, by the index of the session
+     * @throws MqttsnException - an error occurred
+     */
+    boolean[] offerAll(List<ISession> sessions, List<IQueuedPublishMessage> messages)
+            throws MqttsnException;
+
     /**
      * Offer the queue or a context a new message to add to the tail.
      * @param session  - the session whose queue youd like to append
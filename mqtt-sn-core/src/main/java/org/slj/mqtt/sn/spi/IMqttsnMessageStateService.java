@@ -30,6 +30,7 @@ import org.slj.mqtt.sn.model.MqttsnWaitToken;
 import org.slj.mqtt.sn.model.TopicInfo;
 import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
 
+import java.util.Collection;
 import java.util.Optional;
 
 /**
@@ -115,6 +116,17 @@ public interface IMqttsnMessageStateService extends IMqttsnService {
      */
     InflightMessage removeInflight(IClientIdentifierContext context, IMqttsnOriginatingMessageSource source, Integer packetId) throws MqttsnException ;
 
+    /**
+     * Remove the message associated with the token from the local inflight space, without requeuing it, and mark the
+     * token in error so anything waiting on it is released. A message which has not yet been sent (for example a
+     * PUBLISH still in the queue) is not removed, but its token is still released.
+     * @param context - The context to whom you are speaking
+     * @param token - The token returned when the message was sent
+     * @return - true if a message was removed from inflight
+     * @throws MqttsnException - an error has occurred
+     */
+    boolean cancelInflight(IClientIdentifierContext context, MqttsnWaitToken token) throws MqttsnException ;
+
     /**
      * According to the state rules, are we in a position to send PUBLISH messages to the given context
      * @param context - The context to whom you are speaking
@@ -123,6 +135,16 @@ public interface IMqttsnMessageStateService extends IMqttsnService {
      */
     boolean canSend(IClientIdentifierContext context) throws MqttsnException ;
 
+    /**
+     * Block until the state rules allow PUBLISH messages to be sent to the given context, that is until there is
+     * space in its outbound inflight window, or until the wait time has elapsed
+     * @param context - The context to whom you are speaking
+     * @param waitTime - The maximum time (in millis) to block for
+     * @return true if a PUBLISH can now be sent to the context, else false if the wait time elapsed first
+     * @throws MqttsnException - an error has occurred
+     */
+    boolean awaitCanSend(IClientIdentifierContext context, long waitTime) throws MqttsnException ;
+
     /**
      * Mark a context active to have its outbound queue processed
      * @param context - The context whose queue should be processed
@@ -130,6 +152,14 @@ public interface IMqttsnMessageStateService extends IMqttsnService {
      */
     void scheduleFlush(IClientIdentifierContext context) throws MqttsnException ;
 
+    /**
+     * Mark many contexts active to have their outbound queues processed, for example after a message has been expanded
+     * onto many queues, in a single pass
+     * @param contexts - The contexts whose queues should be processed
+     * @throws MqttsnException - an error has occurred
+     */
+    void scheduleFlush(Collection<IClientIdentifierContext> contexts) throws MqttsnException ;
+
     /**
      * UnMark a context active to have its outbound queue processed
      * @param context - The context whose queue should be processed
@@ -209,4 +209,9 @@ public interface IMqttsnRuntimeRegistry {
      * @see IMqttsnDeadLetterQueue
      */
     IMqttsnDeadLetterQueue getDeadLetterQueue() ;
+
+    /**
+     * @see IMqttsnTimerService
+     */
+    IMqttsnTimerService getTimerService();
 }
@@ -32,7 +32,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
-@MqttsnService
+@MqttsnService(order = MqttsnService.EARLY)
 public interface IMqttsnSessionRegistry extends IMqttsnService {
 
     Optional<IClientIdentifierContext> lookupClientIdSession(String clientId) throws MqttsnException;
@@ -28,6 +28,7 @@ import org.slj.mqtt.sn.model.IClientIdentifierContext;
 import org.slj.mqtt.sn.model.session.ISession;
 import org.slj.mqtt.sn.model.session.ISubscription;
 
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -76,6 +77,17 @@ public interface IMqttsnSubscriptionRegistry extends IMqttsnService {
      */
     Set<IClientIdentifierContext> matches(String topicPath) throws MqttsnException, MqttsnIllegalFormatException ;
 
+    /**
+     * As {@link #matches(String)}, but with the QoS at which each context is subscribed to the topic, so the caller
+     * need not look it up per recipient. Where a context holds more than one matching (overlapping) subscription, the
+     * highest of their QoS is granted.
+     *
+     * @param topicPath - the full clear text topicPath for the subscription e.g. foo/bar
+     * @return the contexts which hold valid subscriptions for the supplied topic, with the QoS granted to each
+     * @throws MqttsnException
+     */
+    Map<IClientIdentifierContext, Integer> matchesWithQoS(String topicPath) throws MqttsnException, MqttsnIllegalFormatException ;
+
 
     /**
      * A set of all the tracked subscriptions for the context
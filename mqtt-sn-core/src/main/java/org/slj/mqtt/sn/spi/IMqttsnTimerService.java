@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.spi;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A shared timer on which services schedule individual deadlines (keep alive, session expiry, inflight timeouts)
+ * rather than periodically scanning all of their state. Tasks are run on the timer thread when their deadline
+ * passes, so they should be short; anything which may block should be handed off to another executor.
+ */
+@MqttsnService(order = MqttsnService.FIRST)
+public interface IMqttsnTimerService extends IMqttsnService {
+
+    /**
+     * Schedule a task to run once, after the delay has elapsed. Deadlines are approximate to within the
+     * resolution of the timer.
+     *
+     * @param task - the task to run
+     * @param delay - the delay after which to run the task
+     * @param unit - unit of the delay
+     * @return a handle which may be used to cancel the task before it runs
+     */
+    IMqttsnTimeout schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * @return the number of tasks which are scheduled but have not yet run or been cancelled
+     */
+    int getPendingCount();
+}
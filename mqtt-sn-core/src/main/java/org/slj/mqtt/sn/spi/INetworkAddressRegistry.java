@@ -29,6 +29,7 @@ import org.slj.mqtt.sn.model.INetworkContext;
 import org.slj.mqtt.sn.net.NetworkAddress;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
@@ -42,6 +43,12 @@ public interface INetworkAddressRegistry {
 
     INetworkContext getContext(NetworkAddress address) throws NetworkRegistryException ;
 
+    /**
+     * Lookup a known context by the resolved socket address a transport received from. This avoids formatting
+     * and parsing the host address on the receive path.
+     */
+    INetworkContext getContext(InetSocketAddress address) throws NetworkRegistryException ;
+
     INetworkContext getContext(IClientIdentifierContext sessionContext);
 
     IClientIdentifierContext getMqttsnContext(INetworkContext networkContext);
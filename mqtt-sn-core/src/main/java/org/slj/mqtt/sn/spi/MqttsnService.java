@@ -33,7 +33,7 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 public @interface MqttsnService {
 
-    int FIRST = 100, ANY = 50, LAST = 10, RESERVED = 0;
+    int FIRST = 100, EARLY = 75, ANY = 50, LAST = 10, RESERVED = 0;
 
     int order() default ANY;
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.slj.mqtt.sn.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of fixed capacity {@link ByteBuffer}s which can be shared across threads. Buffers are created lazily
+ * and handed back to the pool on release, so in steady state no allocation is performed on the hot path.
+ * When the pool is exhausted a new (unpooled) buffer is allocated which is simply discarded on release if the
+ * pool is already full.
+ */
+public class ByteBufferPool {
+
+    private final BlockingQueue<ByteBuffer> pool;
+    private final int bufferSize;
+    private final boolean direct;
+    private final AtomicLong allocations = new AtomicLong();
+
+    public ByteBufferPool(int poolSize, int bufferSize, boolean direct){
+        if(poolSize < 1) throw new IllegalArgumentException("pool size must be greater than 0");
+        if(bufferSize < 1) throw new IllegalArgumentException("buffer size must be greater than 0");
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+    }
+
+    /**
+     * Obtain a cleared buffer from the pool, allocating a new buffer if none are available
+     * @return a buffer ready for writing, which MUST be returned using {@link #release(ByteBuffer)}
+     */
+    public ByteBuffer acquire(){
+        ByteBuffer buffer = pool.poll();
+        if(buffer == null){
+            allocations.incrementAndGet();
+            buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. The buffer is reset (position, limit, mark and byte order, its contents are not
+     * zeroed) so the next holder receives it as {@link #acquire()} would have allocated it. Buffers of a different
+     * capacity or kind to those managed by the pool are ignored.
+     * @param buffer - the buffer previously obtained from {@link #acquire()}
+     */
+    public void release(ByteBuffer buffer){
+        if(buffer != null && buffer.capacity() == bufferSize &&
+                buffer.isDirect() == direct && !buffer.isReadOnly()){
+            buffer.clear();
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            pool.offer(buffer);
+        }
+    }
+
+    public int getBufferSize(){
+        return bufferSize;
+    }
+
+    public int getAvailable(){
+        return pool.size();
+    }
+
+    /**
+     * @return the total number of buffers allocated by the pool since its creation
+     */
+    public long getAllocationCount(){
+        return allocations.get();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.utils;
+
+import java.util.*;
+
+/**
+ * An open-addressing map keyed on primitive ints, intended for small, bounded key spaces such as the message ids
+ * inflight on a single context. Keys and values are held in parallel slot arrays using linear probing with backward
+ * shift deletion, so there are no tombstones. The int methods do not box, the {@link Map} methods and views do.
+ * The table doubles when it becomes half full.
+ *
+ * All access is guarded by the map's own monitor, so callers iterating the {@link Map} views should synchronize on the
+ * map in the same way they would a {@link Collections#synchronizedMap(Map)}. Null values are not permitted.
+ */
+@SuppressWarnings("unchecked")
+public class IntSlotMap<V> extends AbstractMap<Integer, V> {
+
+    private static final int MIN_CAPACITY = 2;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public IntSlotMap(int expectedSize) {
+        int capacity = tableSizeFor(Math.max(MIN_CAPACITY, expectedSize * 2));
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    public synchronized V get(int key) {
+        int idx = indexOf(key);
+        return idx < 0 ? null : (V) values[idx];
+    }
+
+    public synchronized boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    public synchronized V put(int key, V value) {
+        if(value == null) throw new NullPointerException("null values are not supported");
+        int idx = slot(key);
+        while(values[idx] != null){
+            if(keys[idx] == key){
+                V old = (V) values[idx];
+                values[idx] = value;
+                return old;
+            }
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+        if(++size * 2 > values.length){
+            resize(values.length << 1);
+        }
+        return null;
+    }
+
+    public synchronized V remove(int key) {
+        int idx = indexOf(key);
+        if(idx < 0) return null;
+        V old = (V) values[idx];
+        delete(idx);
+        return old;
+    }
+
+    /**
+     * Remove the entry only if the value held against the key is the given instance
+     * @return true if the entry was removed
+     */
+    public synchronized boolean removeIfSame(int key, V expected) {
+        int idx = indexOf(key);
+        if(idx < 0 || values[idx] != expected) return false;
+        delete(idx);
+        return true;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && containsKey(((Integer) key).intValue());
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        return put(key.intValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * The entry set is backed by a snapshot of the entries taken when the iterator is created; removing through the
+     * iterator removes the key from the map.
+     */
+    @Override
+    public Set<Entry<Integer, V>> entrySet() {
+        return new AbstractSet<Entry<Integer, V>>() {
+            @Override
+            public Iterator<Entry<Integer, V>> iterator() {
+                return new SnapshotIterator(snapshot());
+            }
+
+            @Override
+            public int size() {
+                return IntSlotMap.this.size();
+            }
+        };
+    }
+
+    private synchronized List<Entry<Integer, V>> snapshot() {
+        List<Entry<Integer, V>> entries = new ArrayList<>(size);
+        for (int i = 0; i < values.length; i++){
+            if(values[i] != null){
+                entries.add(new SimpleImmutableEntry<>(keys[i], (V) values[i]));
+            }
+        }
+        return entries;
+    }
+
+    private int indexOf(int key) {
+        int idx = slot(key);
+        while(values[idx] != null){
+            if(keys[idx] == key) return idx;
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void delete(int idx) {
+        //-- shift any following entries in the probe run back into the vacated slot
+        int gap = idx;
+        int next = (gap + 1) & mask;
+        while(values[next] != null){
+            int home = slot(keys[next]);
+            if(((next - home) & mask) >= ((next - gap) & mask)){
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++){
+            if(oldValues[i] != null){
+                int idx = slot(oldKeys[i]);
+                while(values[idx] != null){
+                    idx = (idx + 1) & mask;
+                }
+                keys[idx] = oldKeys[i];
+                values[idx] = oldValues[i];
+            }
+        }
+    }
+
+    private static int tableSizeFor(int n) {
+        int c = Integer.highestOneBit(Math.max(MIN_CAPACITY, n) - 1) << 1;
+        return c <= 0 ? 1 << 30 : c;
+    }
+
+    private class SnapshotIterator implements Iterator<Entry<Integer, V>> {
+
+        private final Iterator<Entry<Integer, V>> itr;
+        private Entry<Integer, V> last;
+
+        SnapshotIterator(List<Entry<Integer, V>> entries) {
+            this.itr = entries.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return itr.hasNext();
+        }
+
+        @Override
+        public Entry<Integer, V> next() {
+            return last = itr.next();
+        }
+
+        @Override
+        public void remove() {
+            if(last == null) throw new IllegalStateException();
+            IntSlotMap.this.remove(last.getKey().intValue());
+            last = null;
+        }
+    }
+}
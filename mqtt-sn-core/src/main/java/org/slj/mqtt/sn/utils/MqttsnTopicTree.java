@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.utils;
+
+import org.slj.mqtt.sn.MqttsnConstants;
+import org.slj.mqtt.tree.MqttTree;
+
+import java.util.Set;
+
+/**
+ * An {@link MqttTree} which matches a single level wildcard reached by the last level of the topic. The tree does not
+ * collect the members of such a wildcard, nor of a multi level wildcard directly beneath it (so neither 'sport/tennis/+'
+ * nor 'sport/tennis/+/#' match 'sport/tennis/player1'); they are collected here before the tree carries on with its
+ * own reading of the wildcard.
+ */
+public class MqttsnTopicTree<T> extends MqttTree<T> {
+
+    public MqttsnTopicTree(char splitChar, boolean addSplitCharToPath) {
+        super(splitChar, addSplitCharToPath);
+    }
+
+    @Override
+    protected void readWildpathAtNextLevel(TrieNode<T> node, Set<T> matches, boolean first) {
+        if(first && node != null && MqttsnConstants.SINGLE_LEVEL_WILDCARD.equals(node.getPathSegment())){
+            copyMembersNullSafe(matches, node);
+            readWildcardAtNextLevel(node, matches);
+        }
+        super.readWildpathAtNextLevel(node, matches, first);
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent FIFO of opaque records, held in a directory of append-only segment files. Each record is written as
+ * [int length][int crc32][bytes] to the tail of the active segment; when a segment would exceed the configured size
+ * a new one is started. Records are never rewritten - consuming from the head simply advances a read cursor, and a
+ * segment file is deleted once the cursor has moved past it, so draining a backlog costs the same per record
+ * regardless of its size.
+ *
+ * The cursor is persisted (as [long segment][long position][int crc32]) to a temporary file which is forced to disk and
+ * then atomically moved over the previous cursor, so a crash leaves either the old or the new cursor in place. On open,
+ * records from the cursor onwards are re-scanned and validated against their checksums; a torn or corrupt record at the
+ * tail of a segment (and anything after it) is truncated away. Records consumed but not yet committed at the time of a
+ * crash will be returned again, giving at-least-once delivery.
+ *
+ * Reads can optionally be served from a read-only memory mapping of the segment at the head of the queue rather
+ * than positional channel reads. All methods are synchronized on the queue.
+ */
+public class SegmentedFileQueue implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    static final String SEGMENT_EXTENSION = ".seg";
+    static final String CURSOR_FILE = "cursor";
+    static final String CURSOR_TMP_FILE = "cursor.tmp";
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int CURSOR_SIZE = 20;
+
+    private final File dir;
+    private final int segmentSize;
+    private final boolean memoryMapped;
+
+    //-- segment id -> valid length of that segment in bytes
+    private final TreeMap<Long, Long> segments = new TreeMap<>();
+    private FileChannel writeChannel;
+    private long writeSegment;
+    private FileChannel readChannel;
+    private MappedByteBuffer readBuffer;
+    private long readSegment;
+    private long readPosition;
+    private long size;
+
+    public SegmentedFileQueue(File dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_SIZE, false);
+    }
+
+    public SegmentedFileQueue(File dir, int segmentSize, boolean memoryMapped) throws IOException {
+        if(segmentSize <= RECORD_HEADER_SIZE) throw new IllegalArgumentException("segment size too small");
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.memoryMapped = memoryMapped;
+        recover();
+    }
+
+    /**
+     * @return the number of records which have been appended and not yet consumed
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of segment files currently held on disk
+     */
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Add the record to the tail of the queue. The record is written through to the filesystem but not forced to the
+     * storage device, see {@link #force()}.
+     */
+    public synchronized void append(byte[] record) throws IOException {
+        long position = segments.get(writeSegment);
+        int length = RECORD_HEADER_SIZE + record.length;
+        if(position > 0 && position + length > segmentSize){
+            roll();
+            position = 0;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.putInt(record.length);
+        buf.putInt(crc(record, 0, record.length));
+        buf.put(record);
+        buf.flip();
+        while(buf.hasRemaining()){
+            position += writeChannel.write(buf, position);
+        }
+        segments.put(writeSegment, position);
+        size++;
+    }
+
+    /**
+     * Force any appended records to the storage device
+     */
+    public synchronized void force() throws IOException {
+        writeChannel.force(false);
+    }
+
+    /**
+     * Remove up to max records from the head of the queue, committing the new cursor position before returning.
+     * @return the records in the order they were appended, empty if the queue is empty
+     */
+    public synchronized List<byte[]> poll(int max) throws IOException {
+        List<byte[]> records = new ArrayList<>(Math.min(max, (int) Math.min(size, Integer.MAX_VALUE)));
+        while(records.size() < max && size > 0){
+            long limit = segments.get(readSegment);
+            if(readPosition >= limit){
+                if(readSegment == writeSegment) break;
+                //-- the cursor may still reference this segment on disk, which recovery treats as the start of
+                //-- the next segment so it is safe to delete ahead of the commit
+                deleteSegment(readSegment);
+                readSegment = segments.ceilingKey(readSegment);
+                readPosition = 0;
+                continue;
+            }
+            ByteBuffer header = read(readPosition, RECORD_HEADER_SIZE, limit);
+            int length = header.getInt();
+            int crc = header.getInt();
+            ByteBuffer body = read(readPosition + RECORD_HEADER_SIZE, length, limit);
+            byte[] record = new byte[length];
+            body.get(record);
+            if(crc(record, 0, length) != crc){
+                throw new IOException("record checksum mismatch in segment " + readSegment + " at " + readPosition);
+            }
+            readPosition += RECORD_HEADER_SIZE + length;
+            records.add(record);
+            size--;
+        }
+        if(!records.isEmpty()){
+            commit();
+        }
+        return records;
+    }
+
+    /**
+     * Discard all records and segment files, leaving an empty queue
+     */
+    public synchronized void clear() throws IOException {
+        closeChannels();
+        Files.delete(dir);
+        segments.clear();
+        recover();
+    }
+
+    /**
+     * Close the queue and delete its directory
+     */
+    public synchronized void delete() throws IOException {
+        closeChannels();
+        Files.delete(dir);
+        segments.clear();
+        size = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeChannels();
+    }
+
+    protected void recover() throws IOException {
+        if(!dir.exists() && !dir.mkdirs()){
+            throw new IOException("unable to create queue directory " + dir);
+        }
+        new File(dir, CURSOR_TMP_FILE).delete();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_EXTENSION));
+        if(files != null){
+            for (File f : files){
+                try {
+                    segments.put(Long.parseLong(f.getName().substring(0,
+                            f.getName().length() - SEGMENT_EXTENSION.length())), f.length());
+                } catch(NumberFormatException e){
+                    //-- not one of ours
+                }
+            }
+        }
+
+        readSegment = 0;
+        readPosition = 0;
+        readCursor();
+        if(segments.isEmpty()){
+            segments.put(readSegment, 0L);
+            readPosition = 0;
+        } else if(!segments.containsKey(readSegment)){
+            //-- the segment was deleted after being consumed but before the cursor moved on
+            Long next = segments.ceilingKey(readSegment);
+            readSegment = next == null ? segments.lastKey() + 1 : next;
+            readPosition = 0;
+            segments.putIfAbsent(readSegment, 0L);
+        }
+
+        //-- anything before the cursor has been consumed
+        for (Long id : new ArrayList<>(segments.headMap(readSegment).keySet())){
+            deleteSegment(id);
+        }
+
+        //-- validate everything from the cursor onwards, truncating at the first bad record
+        size = 0;
+        boolean truncated = false;
+        for (Map.Entry<Long, Long> segment : new ArrayList<>(segments.entrySet())){
+            long id = segment.getKey();
+            if(truncated){
+                deleteSegment(id);
+                continue;
+            }
+            long start = id == readSegment ? readPosition : 0;
+            try (FileChannel channel = FileChannel.open(segmentFile(id).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+                long length = channel.size();
+                long valid = start > length ? length : scan(channel, start, length);
+                if(valid < length){
+                    channel.truncate(valid);
+                    truncated = true;
+                }
+                segments.put(id, valid);
+            }
+        }
+        if(readPosition > segments.get(readSegment)){
+            readPosition = segments.get(readSegment);
+        }
+
+        writeSegment = segments.lastKey();
+        writeChannel = FileChannel.open(segmentFile(writeSegment).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Walk the records in the channel from the start position, counting the valid ones
+     * @return the position following the last valid record
+     */
+    private long scan(FileChannel channel, long position, long length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while(position + RECORD_HEADER_SIZE <= length){
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int recordLength = header.getInt();
+            int crc = header.getInt();
+            if(recordLength < 0 || position + RECORD_HEADER_SIZE + recordLength > length){
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(recordLength);
+            readFully(channel, body, position + RECORD_HEADER_SIZE);
+            if(crc(body.array(), 0, recordLength) != crc){
+                break;
+            }
+            position += RECORD_HEADER_SIZE + recordLength;
+            size++;
+        }
+        return position;
+    }
+
+    private void readCursor() throws IOException {
+        File cursor = new File(dir, CURSOR_FILE);
+        if(cursor.exists() && cursor.length() == CURSOR_SIZE){
+            ByteBuffer buf = ByteBuffer.wrap(Files.read(cursor));
+            long segment = buf.getLong();
+            long position = buf.getLong();
+            if(crc(buf.array(), 0, 16) == buf.getInt()){
+                readSegment = segment;
+                readPosition = position;
+            }
+        }
+    }
+
+    private void commit() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(CURSOR_SIZE);
+        buf.putLong(readSegment);
+        buf.putLong(readPosition);
+        buf.putInt(crc(buf.array(), 0, 16));
+        buf.flip();
+        File tmp = new File(dir, CURSOR_TMP_FILE);
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            while(buf.hasRemaining()){
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+        java.nio.file.Files.move(tmp.toPath(), new File(dir, CURSOR_FILE).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void roll() throws IOException {
+        writeChannel.close();
+        writeSegment++;
+        segments.put(writeSegment, 0L);
+        writeChannel = FileChannel.open(segmentFile(writeSegment).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private ByteBuffer read(long position, int length, long limit) throws IOException {
+        if(position + length > limit){
+            throw new IOException("record overruns segment " + readSegment + " at " + position);
+        }
+        if(readChannel == null){
+            readChannel = FileChannel.open(segmentFile(readSegment).toPath(), StandardOpenOption.READ);
+        }
+        if(memoryMapped){
+            if(readBuffer == null || readBuffer.capacity() < limit){
+                readBuffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, limit);
+            }
+            ByteBuffer slice = readBuffer.duplicate();
+            slice.position((int) position);
+            slice.limit((int) position + length);
+            return slice.slice();
+        } else {
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            readFully(readChannel, buf, position);
+            buf.flip();
+            return buf;
+        }
+    }
+
+    private void deleteSegment(long id) throws IOException {
+        if(id == readSegment){
+            closeReader();
+        }
+        segments.remove(id);
+        java.nio.file.Files.deleteIfExists(segmentFile(id).toPath());
+    }
+
+    private void closeReader() throws IOException {
+        readBuffer = null;
+        if(readChannel != null){
+            readChannel.close();
+            readChannel = null;
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        closeReader();
+        if(writeChannel != null){
+            writeChannel.close();
+            writeChannel = null;
+        }
+    }
+
+    private File segmentFile(long id){
+        return new File(dir, String.format("%020d%s", id, SEGMENT_EXTENSION));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while(buf.hasRemaining()){
+            int read = channel.read(buf, position + buf.position());
+            if(read < 0) throw new IOException("unexpected end of segment");
+        }
+    }
+
+    private static int crc(byte[] bytes, int offset, int length){
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.utils;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A fixed set of locks which keys are hashed onto, as a replacement for {@link TransientObjectLocks}. Nothing is
+ * allocated or globally synchronized to find the lock for a key, so callers working on different keys only contend
+ * when their keys share a stripe. The stripe count is rounded up to a power of two.
+ *
+ * Keys sharing a stripe share the lock, so a caller must not hold the lock for one key while acquiring the lock for
+ * another, since the two may be the same stripe in a different order on another thread.
+ */
+public class StripedLocks {
+
+    public static final int DEFAULT_STRIPES = 256;
+    private static final int MAX_STRIPES = 1 << 16;
+
+    private final Object[] mutexes;
+    private final ReadWriteLock[] readWriteLocks;
+    private final int mask;
+
+    public StripedLocks() {
+        this(DEFAULT_STRIPES, false);
+    }
+
+    public StripedLocks(int stripes) {
+        this(stripes, false);
+    }
+
+    /**
+     * @param stripes - the number of locks, rounded up to a power of two
+     * @param readWrite - also provide a {@link ReentrantReadWriteLock} per stripe
+     */
+    public StripedLocks(int stripes, boolean readWrite) {
+        if(stripes <= 0) throw new IllegalArgumentException("stripes must be > 0");
+        int size = tableSizeFor(stripes);
+        mask = size - 1;
+        mutexes = new Object[size];
+        for (int i = 0; i < size; i++){
+            mutexes[i] = new Object();
+        }
+        if(readWrite){
+            readWriteLocks = new ReadWriteLock[size];
+            for (int i = 0; i < size; i++){
+                readWriteLocks[i] = new ReentrantReadWriteLock();
+            }
+        } else {
+            readWriteLocks = null;
+        }
+    }
+
+    /**
+     * @return the monitor for the stripe the id hashes to, for use with synchronized
+     */
+    public Object mutex(String id) {
+        if (id == null) {
+            throw new NullPointerException();
+        }
+        return mutexes[stripe(id)];
+    }
+
+    /**
+     * @return the read write lock for the stripe the id hashes to
+     */
+    public ReadWriteLock readWriteLock(String id) {
+        if (id == null) {
+            throw new NullPointerException();
+        }
+        if (readWriteLocks == null) {
+            throw new IllegalStateException("striped locks were not created with read write locks");
+        }
+        return readWriteLocks[stripe(id)];
+    }
+
+    public int getStripeCount() {
+        return mutexes.length;
+    }
+
+    protected int stripe(String id) {
+        //-- spread the higher bits down, since only the low bits select the stripe
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & mask;
+    }
+
+    private static int tableSizeFor(int n) {
+        int size = 1;
+        while (size < n && size < MAX_STRIPES) size <<= 1;
+        return size;
+    }
+}
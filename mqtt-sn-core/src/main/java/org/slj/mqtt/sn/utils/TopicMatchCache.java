@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.utils;
+
+import java.util.*;
+
+/**
+ * A bounded cache keyed by topic name which evicts the least recently used topic once full. The cached topics are also
+ * indexed level by level, so the entries a topic filter matches are found by walking the filter down the index,
+ * visiting only the branches it can match rather than every cached topic. A multi level wildcard also matches its
+ * parent level, so 'sport/#' matches 'sport'.
+ *
+ * All access is guarded by the cache's own monitor, since a read moves the entry to the most recently used.
+ */
+public class TopicMatchCache<V> {
+
+    static final String PATHSEP = "/";
+    static final String WILDCARD = "#";
+    static final String WILDSEG = "+";
+
+    private final int maxSize;
+    private final LinkedHashMap<String, V> entries;
+    private final Level root = new Level(null, null);
+
+    public TopicMatchCache(int maxSize) {
+        if(maxSize <= 0) throw new IllegalArgumentException("cache size must be greater than 0");
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, V>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                if(size() > TopicMatchCache.this.maxSize){
+                    unindex(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized V get(String topic) {
+        return entries.get(topic);
+    }
+
+    public synchronized void put(String topic, V value) {
+        if(entries.put(topic, value) == null){
+            index(topic);
+        }
+    }
+
+    /**
+     * Remove the entry for the topic only if it is still the given value
+     * @return true if the entry was removed
+     */
+    public synchronized boolean remove(String topic, V value) {
+        if(entries.remove(topic, value)){
+            unindex(topic);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove every cached topic the filter matches
+     * @return the number of entries removed
+     */
+    public synchronized int invalidate(String topicFilter) {
+        if(entries.isEmpty()) return 0;
+        List<String> matched = new ArrayList<>();
+        collect(root, topicFilter.split(PATHSEP, -1), 0, matched);
+        for (String topic : matched){
+            entries.remove(topic);
+            unindex(topic);
+        }
+        return matched.size();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        root.children = null;
+    }
+
+    private void collect(Level level, String[] filter, int idx, List<String> matched) {
+        if(idx == filter.length){
+            if(level.topic != null) matched.add(level.topic);
+            return;
+        }
+        String segment = filter[idx];
+        if(WILDCARD.equals(segment)){
+            //-- 'a/#' also matches 'a'
+            collectAll(level, matched);
+        } else if(WILDSEG.equals(segment)){
+            if(level.children != null){
+                for (Level child : level.children.values()){
+                    collect(child, filter, idx + 1, matched);
+                }
+            }
+        } else if(level.children != null){
+            Level child = level.children.get(segment);
+            if(child != null){
+                collect(child, filter, idx + 1, matched);
+            }
+        }
+    }
+
+    private void collectAll(Level level, List<String> matched) {
+        if(level.topic != null) matched.add(level.topic);
+        if(level.children != null){
+            for (Level child : level.children.values()){
+                collectAll(child, matched);
+            }
+        }
+    }
+
+    private void index(String topic) {
+        Level level = root;
+        for (String segment : topic.split(PATHSEP, -1)){
+            if(level.children == null) level.children = new HashMap<>(4);
+            Level parent = level;
+            level = level.children.computeIfAbsent(segment, s -> new Level(parent, s));
+        }
+        level.topic = topic;
+    }
+
+    private void unindex(String topic) {
+        Level level = root;
+        for (String segment : topic.split(PATHSEP, -1)){
+            level = level.children == null ? null : level.children.get(segment);
+            if(level == null) return;
+        }
+        level.topic = null;
+        //-- prune the levels which no longer lead to a cached topic
+        while(level.parent != null && level.topic == null &&
+                (level.children == null || level.children.isEmpty())){
+            level.parent.children.remove(level.segment);
+            level = level.parent;
+        }
+    }
+
+    private static final class Level {
+
+        final Level parent;
+        final String segment;
+        Map<String, Level> children;
+        String topic;
+
+        Level(Level parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+    }
+}
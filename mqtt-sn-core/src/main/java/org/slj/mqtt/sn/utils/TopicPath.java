@@ -40,7 +40,9 @@ import java.util.Objects;
  * [MQTT-4.7.3-3]. See Section 1.5.3
  */
 
-public class TopicPath {
+public class TopicPath implements Serializable {
+
+    private static final long serialVersionUID = 7154018736453937226L;
 
     static final String WILDCARD = "#";
     static final String WILDSEG = "+";
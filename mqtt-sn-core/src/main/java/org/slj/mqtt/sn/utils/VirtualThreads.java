@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads (JDK 21+) from code compiled for Java 8. The builder API is resolved reflectively once; on
+ * a JDK without virtual threads (or where they are still a disabled preview) {@link #isSupported()} returns false and
+ * callers should fall back to platform threads.
+ */
+public class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_PREFIX;
+    private static final Method BUILDER_HANDLER;
+    private static final Method BUILDER_FACTORY;
+    private static final Method BUILDER_UNSTARTED;
+    private static final boolean SUPPORTED;
+
+    static {
+        Method ofVirtual = null, name = null, prefix = null, handler = null, factory = null, unstarted = null;
+        boolean supported = false;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class);
+            prefix = builder.getMethod("name", String.class, long.class);
+            handler = builder.getMethod("uncaughtExceptionHandler", Thread.UncaughtExceptionHandler.class);
+            factory = builder.getMethod("factory");
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+            //-- on 19 & 20 this throws unless --enable-preview was given
+            ofVirtual.invoke(null);
+            supported = true;
+        } catch(Throwable e){
+            supported = false;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_PREFIX = prefix;
+        BUILDER_HANDLER = handler;
+        BUILDER_FACTORY = factory;
+        BUILDER_UNSTARTED = unstarted;
+        SUPPORTED = supported;
+    }
+
+    public static boolean isSupported(){
+        return SUPPORTED;
+    }
+
+    /**
+     * @param prefix - thread names are the prefix followed by a counter starting at 1
+     * @param handler - optional handler for uncaught exceptions
+     * @return a factory producing virtual threads
+     */
+    public static ThreadFactory createFactory(String prefix, Thread.UncaughtExceptionHandler handler){
+        try {
+            Object builder = BUILDER_PREFIX.invoke(builder(handler), prefix, 1L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch(Exception e){
+            throw new UnsupportedOperationException("unable to create virtual thread factory", e);
+        }
+    }
+
+    /**
+     * @param name - the name of the thread
+     * @param task - the task the thread will run once started
+     * @return an unstarted virtual thread
+     */
+    public static Thread createThread(String name, Runnable task){
+        try {
+            Object builder = BUILDER_NAME.invoke(builder(null), name);
+            return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+        } catch(Exception e){
+            throw new UnsupportedOperationException("unable to create virtual thread", e);
+        }
+    }
+
+    private static Object builder(Thread.UncaughtExceptionHandler handler) throws Exception {
+        if(!SUPPORTED){
+            throw new UnsupportedOperationException("virtual threads are not supported on this JVM");
+        }
+        Object builder = OF_VIRTUAL.invoke(null);
+        if(handler != null){
+            builder = BUILDER_HANDLER.invoke(builder, handler);
+        }
+        return builder;
+    }
+}
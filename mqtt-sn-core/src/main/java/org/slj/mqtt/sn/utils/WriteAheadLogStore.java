@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * A durable key to value store made of a snapshot and a write-ahead log. Changes are appended to the log as whole value
+ * upserts or deletes, so replaying a record more than once is harmless. A checkpoint starts a new log generation and
+ * then writes a snapshot of the full state as that generation's base; once the snapshot is in place the older snapshot
+ * and logs are deleted. The state is therefore always the newest complete snapshot plus every log of the same or a later
+ * generation, replayed in order.
+ *
+ * Files are named by generation, snapshot-N.dat and wal-N.log. Log records are [int length][int crc32][byte op][key][value]
+ * and a torn or corrupt record at the tail of a log (and anything after it) is truncated away on recovery. Snapshots are
+ * written to a temporary file, forced to disk and then atomically renamed into place.
+ *
+ * The store is intended to have a single writer; all methods are synchronized on the store.
+ */
+public class WriteAheadLogStore implements Closeable {
+
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+    static final String SNAPSHOT_EXTENSION = ".dat";
+    static final String LOG_PREFIX = "wal-";
+    static final String LOG_EXTENSION = ".log";
+    static final String TMP_EXTENSION = ".tmp";
+    static final int SNAPSHOT_MAGIC = 0x4D534E53;
+    static final int SNAPSHOT_VERSION = 1;
+    static final byte OP_UPSERT = 1;
+    static final byte OP_DELETE = 2;
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private final File dir;
+    private final boolean sync;
+    private FileChannel log;
+    private long generation;
+    private long logSize;
+
+    /**
+     * @param sync - force the log to the storage device on every append rather than leaving it to the operating system
+     */
+    public WriteAheadLogStore(File dir, boolean sync) throws IOException {
+        this.dir = dir;
+        this.sync = sync;
+        if(!dir.exists() && !dir.mkdirs()){
+            throw new IOException("unable to create store directory " + dir);
+        }
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * @return the number of bytes written to the log since the last checkpoint
+     */
+    public synchronized long getLogSize() {
+        return logSize;
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Rebuild the state from the newest snapshot and the logs which follow it, and open the log for appending. Must be
+     * called before any other operation.
+     * @return the recovered values by key
+     */
+    public synchronized Map<String, byte[]> recover() throws IOException {
+        closeLog();
+        File[] tmps = dir.listFiles((d, n) -> n.endsWith(TMP_EXTENSION));
+        if(tmps != null){
+            for (File tmp : tmps){
+                tmp.delete();
+            }
+        }
+        TreeMap<Long, File> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_EXTENSION);
+        TreeMap<Long, File> logs = list(LOG_PREFIX, LOG_EXTENSION);
+        Map<String, byte[]> state = new HashMap<>();
+
+        generation = 0;
+        if(!snapshots.isEmpty()){
+            generation = snapshots.lastKey();
+            readSnapshot(snapshots.lastEntry().getValue(), state);
+        }
+        for (Map.Entry<Long, File> entry : logs.entrySet()){
+            if(entry.getKey() < generation){
+                entry.getValue().delete();
+            } else {
+                replay(entry.getValue(), state);
+            }
+        }
+        for (File f : snapshots.headMap(generation).values()){
+            f.delete();
+        }
+        long current = logs.isEmpty() ? generation : Math.max(generation, logs.lastKey());
+        openLog(current);
+        generation = current;
+        logSize = 0;
+        for (File f : list(LOG_PREFIX, LOG_EXTENSION).values()){
+            logSize += f.length();
+        }
+        return state;
+    }
+
+    /**
+     * Append a batch of changes to the log, forcing it once for the whole batch if the store is synchronous
+     */
+    public synchronized void append(Map<String, byte[]> upserts, Collection<String> deletes) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(baos);
+        if(deletes != null){
+            for (String key : deletes){
+                writeRecord(out, OP_DELETE, key, null);
+            }
+        }
+        if(upserts != null){
+            for (Map.Entry<String, byte[]> entry : upserts.entrySet()){
+                writeRecord(out, OP_UPSERT, entry.getKey(), entry.getValue());
+            }
+        }
+        out.flush();
+        ByteBuffer buf = ByteBuffer.wrap(baos.toByteArray());
+        while(buf.hasRemaining()){
+            logSize += log.write(buf);
+        }
+        if(sync){
+            log.force(false);
+        }
+    }
+
+    /**
+     * Start a new log generation and write the given state as its snapshot, then remove the files it supersedes. The
+     * state only needs to be at least as new as the last append, since later changes are also in the new log.
+     */
+    public synchronized void checkpoint(Iterator<Map.Entry<String, byte[]>> state) throws IOException {
+        long next = generation + 1;
+        log.force(false);
+        closeLog();
+        openLog(next);
+        generation = next;
+        logSize = 0;
+
+        File tmp = new File(dir, SNAPSHOT_PREFIX + name(next) + SNAPSHOT_EXTENSION + TMP_EXTENSION);
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))){
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            while(state.hasNext()){
+                Map.Entry<String, byte[]> entry = state.next();
+                writeRecord(out, OP_UPSERT, entry.getKey(), entry.getValue());
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        java.nio.file.Files.move(tmp.toPath(), new File(dir, SNAPSHOT_PREFIX + name(next) + SNAPSHOT_EXTENSION).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (File f : list(SNAPSHOT_PREFIX, SNAPSHOT_EXTENSION).headMap(next).values()){
+            f.delete();
+        }
+        for (File f : list(LOG_PREFIX, LOG_EXTENSION).headMap(next).values()){
+            f.delete();
+        }
+    }
+
+    /**
+     * Discard all state
+     */
+    public synchronized void clear() throws IOException {
+        closeLog();
+        Files.delete(dir);
+        if(!dir.mkdirs()){
+            throw new IOException("unable to create store directory " + dir);
+        }
+        generation = 0;
+        logSize = 0;
+        openLog(generation);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(log != null){
+            log.force(false);
+        }
+        closeLog();
+    }
+
+    private void readSnapshot(File f, Map<String, byte[]> state) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 64 * 1024))){
+            if(in.readInt() != SNAPSHOT_MAGIC){
+                throw new IOException("invalid snapshot header " + f);
+            }
+            int version = in.readInt();
+            if(version != SNAPSHOT_VERSION){
+                throw new IOException("unsupported snapshot version " + version + " " + f);
+            }
+            long remaining = f.length() - 8;
+            while(remaining > 0){
+                int length = readRecord(in, remaining, state);
+                if(length < 0){
+                    //-- snapshots are only ever renamed into place once complete
+                    throw new IOException("corrupt snapshot " + f);
+                }
+                remaining -= length;
+            }
+        }
+    }
+
+    private void replay(File f, Map<String, byte[]> state) throws IOException {
+        long valid = 0;
+        long length = f.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 64 * 1024))){
+            while(valid < length){
+                int read = readRecord(in, length - valid, state);
+                if(read < 0) break;
+                valid += read;
+            }
+        }
+        if(valid < length){
+            try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)){
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    /**
+     * Read one record into the state
+     * @return the number of bytes the record occupied, or -1 if the record was incomplete or corrupt
+     */
+    private static int readRecord(DataInputStream in, long available, Map<String, byte[]> state) throws IOException {
+        if(available < RECORD_HEADER_SIZE) return -1;
+        int length = in.readInt();
+        int crc = in.readInt();
+        if(length < 3 || length > available - RECORD_HEADER_SIZE) return -1;
+        byte[] body = new byte[length];
+        in.readFully(body);
+        if(crc(body) != crc) return -1;
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+        byte op = record.readByte();
+        byte[] key = new byte[record.readUnsignedShort()];
+        record.readFully(key);
+        String k = new String(key, StandardCharsets.UTF_8);
+        switch (op){
+            case OP_UPSERT:
+                byte[] value = new byte[length - 3 - key.length];
+                record.readFully(value);
+                state.put(k, value);
+                break;
+            case OP_DELETE:
+                state.remove(k);
+                break;
+            default:
+                return -1;
+        }
+        return RECORD_HEADER_SIZE + length;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte op, String key, byte[] value) throws IOException {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        if(k.length > 0xFFFF) throw new IOException("key too long");
+        int length = 3 + k.length + (value == null ? 0 : value.length);
+        byte[] body = new byte[length];
+        body[0] = op;
+        body[1] = (byte) (k.length >>> 8);
+        body[2] = (byte) k.length;
+        System.arraycopy(k, 0, body, 3, k.length);
+        if(value != null){
+            System.arraycopy(value, 0, body, 3 + k.length, value.length);
+        }
+        out.writeInt(length);
+        out.writeInt(crc(body));
+        out.write(body);
+    }
+
+    private void openLog(long generation) throws IOException {
+        log = FileChannel.open(new File(dir, LOG_PREFIX + name(generation) + LOG_EXTENSION).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeLog() throws IOException {
+        if(log != null){
+            log.close();
+            log = null;
+        }
+    }
+
+    private TreeMap<Long, File> list(String prefix, String extension){
+        TreeMap<Long, File> files = new TreeMap<>();
+        File[] matched = dir.listFiles((d, n) -> n.startsWith(prefix) && n.endsWith(extension));
+        if(matched != null){
+            for (File f : matched){
+                String n = f.getName();
+                try {
+                    files.put(Long.parseLong(n.substring(prefix.length(), n.length() - extension.length())), f);
+                } catch(NumberFormatException e){
+                    //-- not one of ours
+                }
+            }
+        }
+        return files;
+    }
+
+    private static String name(long generation){
+        return String.format("%020d", generation);
+    }
+
+    private static int crc(byte[] bytes){
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.slj.mqtt.sn.test;
+
+import org.slj.mqtt.sn.impl.AbstractMqttsnTransport;
+import org.slj.mqtt.sn.model.INetworkContext;
+import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.utils.StringTable;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A transport which puts nothing on the wire; the messages written to it are decoded and held for the test to inspect
+ */
+public class MqttsnTestTransport extends AbstractMqttsnTransport {
+
+    private final BlockingQueue<IMqttsnMessage> sent = new LinkedBlockingQueue<>();
+
+    @Override
+    protected void writeToTransportInternal(INetworkContext context, byte[] data) {
+        sent.add(getRegistry().getCodec().decode(data));
+    }
+
+    @Override
+    public void broadcast(IMqttsnMessage message) {
+        sent.add(message);
+    }
+
+    /**
+     * @return the next message written to the transport, or null if none is written within the timeout
+     */
+    public IMqttsnMessage nextSent(long timeout, TimeUnit unit) throws InterruptedException {
+        return sent.poll(timeout, unit);
+    }
+
+    public int countSent() {
+        return sent.size();
+    }
+
+    @Override
+    public StringTable getTransportDetails() {
+        StringTable st = new StringTable("Property", "Value");
+        st.setTableName("Test Transport");
+        return st;
+    }
+
+    @Override
+    public String getName() {
+        return "mqtt-sn-test";
+    }
+
+    @Override
+    public int getPort() {
+        return 0;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Test transport";
+    }
+}
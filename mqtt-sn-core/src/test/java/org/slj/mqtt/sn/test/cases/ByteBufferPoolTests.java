@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slj.mqtt.sn.utils.ByteBufferPool;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.InvalidMarkException;
+
+public class ByteBufferPoolTests {
+
+    static final int BUFFER_SIZE = 64;
+
+    @Test
+    public void testReleasedBufferIsReset() {
+        ByteBufferPool pool = new ByteBufferPool(2, BUFFER_SIZE, false);
+        ByteBuffer buffer = pool.acquire();
+        buffer.put(new byte[]{1, 2, 3, 4});
+        buffer.mark();
+        buffer.put((byte) 5);
+        buffer.flip();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire();
+        Assert.assertSame("the released buffer should be reused", buffer, reused);
+        Assert.assertEquals(0, reused.position());
+        Assert.assertEquals(BUFFER_SIZE, reused.limit());
+        Assert.assertEquals(ByteOrder.BIG_ENDIAN, reused.order());
+        try {
+            reused.reset();
+            Assert.fail("the mark should be discarded");
+        } catch(InvalidMarkException e){
+        }
+    }
+
+    @Test
+    public void testAllocatesOnlyWhenEmpty() {
+        ByteBufferPool pool = new ByteBufferPool(2, BUFFER_SIZE, false);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        Assert.assertEquals(2, pool.getAllocationCount());
+        pool.release(first);
+        pool.release(second);
+        Assert.assertEquals(2, pool.getAvailable());
+
+        for (int i = 0; i < 10; i++){
+            pool.release(pool.acquire());
+        }
+        Assert.assertEquals("steady state should not allocate", 2, pool.getAllocationCount());
+    }
+
+    @Test
+    public void testPoolIsBounded() {
+        ByteBufferPool pool = new ByteBufferPool(2, BUFFER_SIZE, false);
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int i = 0; i < buffers.length; i++){
+            buffers[i] = pool.acquire();
+        }
+        for (ByteBuffer buffer : buffers){
+            pool.release(buffer);
+        }
+        Assert.assertEquals("buffers over the pool size should be discarded", 2, pool.getAvailable());
+    }
+
+    @Test
+    public void testForeignBuffersAreIgnored() {
+        ByteBufferPool pool = new ByteBufferPool(4, BUFFER_SIZE, true);
+        pool.release(ByteBuffer.allocate(BUFFER_SIZE));
+        pool.release(ByteBuffer.allocateDirect(BUFFER_SIZE * 2));
+        pool.release(ByteBuffer.allocateDirect(BUFFER_SIZE).asReadOnlyBuffer());
+        pool.release(null);
+        Assert.assertEquals(0, pool.getAvailable());
+
+        ByteBuffer buffer = pool.acquire();
+        Assert.assertTrue(buffer.isDirect());
+        Assert.assertEquals(BUFFER_SIZE, buffer.capacity());
+        pool.release(buffer);
+        Assert.assertEquals(1, pool.getAvailable());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPoolSizeMustBePositive() {
+        new ByteBufferPool(0, BUFFER_SIZE, false);
+    }
+}
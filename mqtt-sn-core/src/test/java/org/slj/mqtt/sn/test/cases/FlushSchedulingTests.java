@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.impl.ram.MqttsnInMemoryMessageStateService;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.spi.IMqttsnMessageQueueProcessor;
+import org.slj.mqtt.sn.spi.IMqttsnMessageStateService;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FlushSchedulingTests {
+
+    private File dir;
+    private MqttsnTestRuntime runtime;
+    private BlockingStateService stateService;
+
+    @Before
+    public void setup() throws IOException, MqttsnException {
+        dir = java.nio.file.Files.createTempDirectory("flush-scheduling").toFile();
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "flush"), MqttsnTestRuntime.TEST_OPTIONS, false);
+        stateService = new BlockingStateService();
+        registry.withServiceReplaceIfExists(IMqttsnMessageStateService.class, stateService);
+        runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+    }
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            stateService.release.countDown();
+            runtime.stop();
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testFlushRequestedWhileProcessingIsNotLost() throws InterruptedException {
+        IClientIdentifierContext context = new ClientIdentifierContext(MqttsnTestRuntime.TEST_CLIENT_ID);
+        stateService.scheduleFlush(context);
+        Assert.assertTrue("the first flush should run", stateService.processing.await(5, TimeUnit.SECONDS));
+
+        //-- the running flush has already found the queue empty, so only the new request can deliver what follows
+        stateService.scheduleFlush(context);
+        stateService.release.countDown();
+        Assert.assertTrue("a flush requested while processing should not be lost",
+                stateService.reprocessed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFlushCanBeScheduledOnceWorkRetires() throws InterruptedException {
+        IClientIdentifierContext context = new ClientIdentifierContext(MqttsnTestRuntime.TEST_CLIENT_ID);
+        stateService.release.countDown();
+        stateService.scheduleFlush(context);
+        Assert.assertTrue("the first flush should run", stateService.processing.await(5, TimeUnit.SECONDS));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(stateService.calls.get() < 2 && System.currentTimeMillis() < deadline){
+            stateService.scheduleFlush(context);
+            Thread.sleep(10);
+        }
+        Assert.assertTrue("a flush scheduled after the work retired should run", stateService.calls.get() >= 2);
+    }
+
+    /**
+     * Holds the first flush of the queue in progress until released, and always reports the queue as drained
+     */
+    static class BlockingStateService extends MqttsnInMemoryMessageStateService {
+
+        final CountDownLatch processing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch reprocessed = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        BlockingStateService() {
+            super(false);
+        }
+
+        @Override
+        protected IMqttsnMessageQueueProcessor.RESULT processQueue(IClientIdentifierContext context) {
+            if(calls.incrementAndGet() == 1){
+                processing.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                reprocessed.countDown();
+            }
+            return IMqttsnMessageQueueProcessor.RESULT.REMOVE_PROCESS;
+        }
+    }
+}
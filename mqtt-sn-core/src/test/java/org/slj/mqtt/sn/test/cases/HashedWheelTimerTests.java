@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.impl.MqttsnHashedWheelTimer;
+import org.slj.mqtt.sn.spi.IMqttsnTimeout;
+import org.slj.mqtt.sn.spi.IMqttsnTimerService;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small wheel (8 slots of 10ms) so deadlines past one revolution of the wheel are exercised quickly.
+ */
+public class HashedWheelTimerTests {
+
+    static final long TICK = 10;
+    static final int WHEEL_SIZE = 8;
+    static final int MAX_WAIT = 5000;
+
+    private File dir;
+    private MqttsnTestRuntime runtime;
+    private IMqttsnTimerService timer;
+
+    @Before
+    public void setup() throws MqttsnException, IOException {
+        dir = java.nio.file.Files.createTempDirectory("timer").toFile();
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "timer"), MqttsnTestRuntime.TEST_OPTIONS, false);
+        registry.withTimerService(new MqttsnHashedWheelTimer(TICK, WHEEL_SIZE));
+        runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+        timer = registry.getTimerService();
+    }
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            runtime.stop();
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testTaskRunsAfterDelay() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        IMqttsnTimeout timeout = timer.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, timer.getPendingCount());
+
+        Assert.assertTrue("task should run", latch.await(MAX_WAIT, TimeUnit.MILLISECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("task should not run before its deadline, ran after " + elapsed, elapsed >= 50 - TICK);
+        Assert.assertTrue(timeout.isExpired());
+        Assert.assertFalse(timeout.isCancelled());
+        Assert.assertEquals(0, timer.getPendingCount());
+        Assert.assertFalse("an expired task cannot be cancelled", timeout.cancel());
+    }
+
+    @Test
+    public void testDeadlinesBeyondOneRevolution() throws InterruptedException {
+        //-- 8 slots of 10ms is an 80ms revolution, so these land in slots holding remaining rounds
+        long[] delays = {25, 105, 185, 265};
+        CountDownLatch latch = new CountDownLatch(delays.length);
+        List<Long> elapsed = new CopyOnWriteArrayList<>();
+        long start = System.nanoTime();
+        for (long delay : delays){
+            timer.schedule(() -> {
+                elapsed.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        Assert.assertTrue("all tasks should run", latch.await(MAX_WAIT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(delays.length, elapsed.size());
+        for (int i = 0; i < delays.length; i++){
+            Assert.assertTrue("tasks sharing a slot should run in deadline order, not the first revolution; " + elapsed,
+                    elapsed.get(i) >= delays[i] - TICK);
+        }
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun() throws InterruptedException {
+        AtomicInteger cancelledRuns = new AtomicInteger();
+        CountDownLatch later = new CountDownLatch(1);
+        IMqttsnTimeout timeout = timer.schedule(cancelledRuns::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        timer.schedule(later::countDown, 100, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(2, timer.getPendingCount());
+
+        Assert.assertTrue("a pending task can be cancelled", timeout.cancel());
+        Assert.assertFalse("a task can only be cancelled once", timeout.cancel());
+        Assert.assertTrue(timeout.isCancelled());
+        Assert.assertEquals(1, timer.getPendingCount());
+
+        Assert.assertTrue(later.await(MAX_WAIT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals("a cancelled task should not run", 0, cancelledRuns.get());
+        Assert.assertFalse(timeout.isExpired());
+        Assert.assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    public void testCancelAfterTransferToWheel() throws InterruptedException {
+        AtomicInteger cancelledRuns = new AtomicInteger();
+        CountDownLatch later = new CountDownLatch(1);
+        IMqttsnTimeout timeout = timer.schedule(cancelledRuns::incrementAndGet, 150, TimeUnit.MILLISECONDS);
+        timer.schedule(later::countDown, 250, TimeUnit.MILLISECONDS);
+
+        //-- let the worker move the task into its bucket before it is cancelled
+        Thread.sleep(5 * TICK);
+        Assert.assertTrue(timeout.cancel());
+        Assert.assertTrue(later.await(MAX_WAIT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals("a task cancelled on the wheel should not run", 0, cancelledRuns.get());
+    }
+
+    @Test
+    public void testTaskCanReschedule() throws InterruptedException {
+        int repeats = 5;
+        CountDownLatch latch = new CountDownLatch(repeats);
+        AtomicInteger runs = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+                latch.countDown();
+                if(latch.getCount() > 0){
+                    timer.schedule(this, 20, TimeUnit.MILLISECONDS);
+                }
+            }
+        };
+        timer.schedule(task, 20, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue("a task rescheduled from the timer thread should run again",
+                latch.await(MAX_WAIT, TimeUnit.MILLISECONDS));
+        Thread.sleep(5 * TICK);
+        Assert.assertEquals(repeats, runs.get());
+        Assert.assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    public void testCancelAndRescheduleDeadline() throws InterruptedException {
+        //-- as a keep alive is pushed back, the old deadline is cancelled and a new one scheduled
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        IMqttsnTimeout timeout = timer.schedule(latch::countDown, 60, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 4; i++){
+            Thread.sleep(30);
+            Assert.assertTrue("the deadline should not have passed yet", timeout.cancel());
+            timeout = timer.schedule(latch::countDown, 60, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertEquals(1, timer.getPendingCount());
+        Assert.assertTrue(latch.await(MAX_WAIT, TimeUnit.MILLISECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("only the last deadline should fire, fired after " + elapsed, elapsed >= 4 * 30 + 60 - TICK);
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopTimer() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(() -> { throw new RuntimeException("expected"); }, 10, TimeUnit.MILLISECONDS);
+        timer.schedule(latch::countDown, 40, TimeUnit.MILLISECONDS);
+        Assert.assertTrue("tasks after a failing task should run", latch.await(MAX_WAIT, TimeUnit.MILLISECONDS));
+    }
+}
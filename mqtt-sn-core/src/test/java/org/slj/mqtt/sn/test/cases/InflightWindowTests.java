@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.MqttsnConstants;
+import org.slj.mqtt.sn.PublishData;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.impl.ram.MqttsnInMemoryMessageStateService;
+import org.slj.mqtt.sn.impl.ram.MqttsnInMemorySlotMessageStateService;
+import org.slj.mqtt.sn.model.*;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
+import org.slj.mqtt.sn.net.NetworkContext;
+import org.slj.mqtt.sn.spi.*;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.test.MqttsnTestTransport;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Client mode sends over an inflight window, with acknowledgements delivered to the state service as though they
+ * had been received from the gateway.
+ */
+public class InflightWindowTests {
+
+    static final int MAX_WAIT = 5000;
+
+    private File dir;
+    private MqttsnTestRuntime runtime;
+    private IClientIdentifierContext context;
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            runtime.stop();
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testWindowedSendsDoNotWaitForAcks() throws Exception {
+        start(3);
+        IMqttsnMessageStateService stateService = runtime.getRegistry().getMessageStateService();
+        MqttsnWaitToken[] tokens = new MqttsnWaitToken[3];
+        for (int i = 0; i < 3; i++){
+            tokens[i] = send(i);
+        }
+        Assert.assertEquals("the whole window should be inflight", 3,
+                stateService.countInflight(context, IMqttsnOriginatingMessageSource.LOCAL));
+        Assert.assertFalse("a full window should not allow a send", stateService.canSend(context));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<MqttsnWaitToken> blocked = executor.submit(() -> send(3));
+            Thread.sleep(200);
+            Assert.assertFalse("a send on a full window should wait for a slot", blocked.isDone());
+
+            ack(tokens[1]);
+            Assert.assertNotNull("an ack should release the waiting send", blocked.get(MAX_WAIT, TimeUnit.MILLISECONDS));
+            Assert.assertTrue(tokens[1].isComplete());
+            Assert.assertFalse(tokens[0].isComplete());
+            Assert.assertEquals(3, stateService.countInflight(context, IMqttsnOriginatingMessageSource.LOCAL));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOutOfOrderAcksReleaseTheWindow() throws Exception {
+        start(3);
+        IMqttsnMessageStateService stateService = runtime.getRegistry().getMessageStateService();
+        MqttsnWaitToken[] tokens = new MqttsnWaitToken[3];
+        for (int i = 0; i < 3; i++){
+            tokens[i] = send(i);
+        }
+
+        int[] order = {2, 0, 1};
+        for (int i = 0; i < order.length; i++){
+            ack(tokens[order[i]]);
+            Assert.assertTrue("acked message should complete", tokens[order[i]].isComplete());
+            Assert.assertFalse(tokens[order[i]].isError());
+            Assert.assertEquals("each ack should free its own slot", 2 - i,
+                    stateService.countInflight(context, IMqttsnOriginatingMessageSource.LOCAL));
+            Assert.assertTrue(stateService.canSend(context));
+        }
+        for (int i = 0; i < 3; i++){
+            Assert.assertNotNull("each message should have been sent", send(3 + i));
+        }
+    }
+
+    @Test
+    public void testContextIsDroppedOnceNothingIsInflight() throws Exception {
+        start(3);
+        MqttsnInMemoryMessageStateService stateService =
+                (MqttsnInMemoryMessageStateService) runtime.getRegistry().getMessageStateService();
+        assertContextIsDroppedOnceNothingIsInflight(stateService, stateService::getActiveInflights);
+    }
+
+    @Test
+    public void testSlotContextIsDroppedOnceNothingIsInflight() throws Exception {
+        start(3, new MqttsnInMemorySlotMessageStateService(true));
+        MqttsnInMemorySlotMessageStateService stateService =
+                (MqttsnInMemorySlotMessageStateService) runtime.getRegistry().getMessageStateService();
+        assertContextIsDroppedOnceNothingIsInflight(stateService, stateService::getActiveInflights);
+    }
+
+    @Test
+    public void testSlotContextIsNotCreatedByReads() throws Exception {
+        start(3, new MqttsnInMemorySlotMessageStateService(true));
+        MqttsnInMemorySlotMessageStateService stateService =
+                (MqttsnInMemorySlotMessageStateService) runtime.getRegistry().getMessageStateService();
+        Assert.assertTrue(stateService.getInflightMessages(context, IMqttsnOriginatingMessageSource.LOCAL).isEmpty());
+        Assert.assertTrue(stateService.getInflightMessages(context, IMqttsnOriginatingMessageSource.REMOTE).isEmpty());
+        Assert.assertEquals(0, stateService.countInflight(context, IMqttsnOriginatingMessageSource.LOCAL));
+        Assert.assertTrue(stateService.canSend(context));
+        Assert.assertTrue("reading the inflight state should not create a context",
+                stateService.getActiveInflights().isEmpty());
+    }
+
+    private void assertContextIsDroppedOnceNothingIsInflight(IMqttsnMessageStateService stateService,
+                                    Supplier<List<IClientIdentifierContext>> activeInflights) throws Exception {
+        MqttsnWaitToken first = send(0);
+        MqttsnWaitToken second = send(1);
+        Assert.assertTrue(activeInflights.get().contains(context));
+
+        ack(first);
+        Assert.assertTrue("a context with a message inflight should be held",
+                activeInflights.get().contains(context));
+        ack(second);
+        Assert.assertFalse("a context with nothing inflight should be dropped",
+                activeInflights.get().contains(context));
+
+        Assert.assertEquals(0, stateService.countInflight(context, IMqttsnOriginatingMessageSource.LOCAL));
+        Assert.assertTrue(stateService.canSend(context));
+        Assert.assertFalse("reading the inflight state should not recreate the context",
+                activeInflights.get().contains(context));
+
+        send(2);
+        Assert.assertEquals("a context should be recreated on the next send", 1,
+                stateService.countInflight(context, IMqttsnOriginatingMessageSource.LOCAL));
+    }
+
+    @Test
+    public void testProcessorDoesNotWaitOnWindowOfOne() throws Exception {
+        start(1);
+        IMqttsnMessageStateService stateService = runtime.getRegistry().getMessageStateService();
+        ISession session = runtime.getRegistry().getSessionRegistry().getSession(context, true);
+        runtime.getRegistry().getSessionRegistry().modifyClientState(session, ClientState.ACTIVE);
+        send(0);
+
+        IDataRef ref = runtime.getRegistry().getMessageRegistry().add("queued".getBytes(StandardCharsets.UTF_8));
+        runtime.getRegistry().getMessageQueue().offer(session,
+                new QueuedPublishMessageImpl(ref, new PublishData("window/topic", 1, false)));
+
+        long start = System.currentTimeMillis();
+        Assert.assertEquals("a full window of one should back off", IMqttsnMessageQueueProcessor.RESULT.BACKOFF_PROCESS,
+                runtime.getRegistry().getQueueProcessor().process(context));
+        Assert.assertTrue("a full window of one should not be waited on",
+                System.currentTimeMillis() - start < MAX_WAIT / 2);
+    }
+
+    private void start(int window) throws IOException, MqttsnException {
+        start(window, null);
+    }
+
+    private void start(int window, IMqttsnMessageStateService stateService) throws IOException, MqttsnException {
+        dir = java.nio.file.Files.createTempDirectory("inflight-window").toFile();
+        MqttsnOptions options = new MqttsnOptions().
+                withMaxMessagesInflight(window).
+                withMaxWait(MAX_WAIT);
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "window"), options, true);
+        MqttsnTestTransport transport = new MqttsnTestTransport();
+        registry.withTransport(transport);
+        if(stateService != null){
+            registry.withServiceReplaceIfExists(IMqttsnMessageStateService.class, stateService);
+        }
+        runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+
+        context = new ClientIdentifierContext(MqttsnTestRuntime.TEST_CLIENT_ID);
+        runtime.getRegistry().getNetworkRegistry().bindContexts(
+                new NetworkContext(transport, MqttsnTestRuntime.TEST_ADDRESS), context);
+    }
+
+    /**
+     * Send a publish as the queue processor would, with a wait token attached as an application publish has
+     */
+    private MqttsnWaitToken send(int i) throws MqttsnException {
+        IDataRef ref = runtime.getRegistry().getMessageRegistry().add(("message-" + i).getBytes(StandardCharsets.UTF_8));
+        QueuedPublishMessageImpl message = new QueuedPublishMessageImpl(ref, new PublishData("window/topic", 1, false));
+        MqttsnWaitToken token = MqttsnWaitToken.from(message);
+        message.setToken(token);
+        runtime.getRegistry().getMessageStateService().sendPublishMessage(context,
+                new TopicInfo(MqttsnConstants.TOPIC_TYPE.PREDEFINED, 1), message);
+        Assert.assertTrue("a packet id should be assigned", message.getPacketId() > 0);
+        return token;
+    }
+
+    private void ack(MqttsnWaitToken token) throws MqttsnException {
+        IMqttsnMessage puback = runtime.getRegistry().getMessageFactory().createPuback(1, MqttsnConstants.RETURN_CODE_ACCEPTED);
+        puback.setId(token.getMessage().getId());
+        runtime.getRegistry().getMessageStateService().notifyMessageReceived(context, puback);
+    }
+}
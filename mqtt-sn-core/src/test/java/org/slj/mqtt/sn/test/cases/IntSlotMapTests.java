@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slj.mqtt.sn.utils.IntSlotMap;
+
+import java.util.*;
+
+/**
+ * A map created for 4 entries has 8 slots, so keys are chosen by their home slot (using the same hash as the map)
+ * to build probe runs which collide and which wrap past the end of the table.
+ */
+public class IntSlotMapTests {
+
+    static final int EXPECTED = 4;
+    static final int MASK = 7;
+
+    @Test
+    public void testCollidingKeys() {
+        IntSlotMap<String> map = new IntSlotMap<>(EXPECTED);
+        int[] keys = keysWithHome(3, 3);
+        for (int key : keys){
+            Assert.assertNull(map.put(key, "v" + key));
+        }
+        Assert.assertEquals(3, map.size());
+        for (int key : keys){
+            Assert.assertEquals("v" + key, map.get(key));
+        }
+        Assert.assertEquals("replacing should return the old value", "v" + keys[1], map.put(keys[1], "x"));
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals("x", map.get(keys[1]));
+    }
+
+    @Test
+    public void testRemoveFromHeadOfProbeRun() {
+        IntSlotMap<String> map = new IntSlotMap<>(EXPECTED);
+        int[] keys = keysWithHome(3, 3);
+        for (int key : keys){
+            map.put(key, "v" + key);
+        }
+        //-- the entries after the removed head must shift back to stay reachable
+        Assert.assertEquals("v" + keys[0], map.remove(keys[0]));
+        Assert.assertNull(map.get(keys[0]));
+        Assert.assertEquals("v" + keys[1], map.get(keys[1]));
+        Assert.assertEquals("v" + keys[2], map.get(keys[2]));
+        Assert.assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testRemoveDoesNotShiftEntriesPastTheirHome() {
+        IntSlotMap<String> map = new IntSlotMap<>(EXPECTED);
+        int[] run = keysWithHome(2, 2);
+        int[] home3 = keysWithHome(3, 1);
+        //-- slots 2,3 hold the run, the key at home 3 is displaced to 4
+        map.put(run[0], "a");
+        map.put(run[1], "b");
+        map.put(home3[0], "c");
+        map.remove(run[0]);
+        Assert.assertEquals("b", map.get(run[1]));
+        Assert.assertEquals("c", map.get(home3[0]));
+        map.remove(run[1]);
+        Assert.assertEquals("c", map.get(home3[0]));
+        Assert.assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testProbeWrapsAroundTable() {
+        IntSlotMap<String> map = new IntSlotMap<>(EXPECTED);
+        int[] keys = keysWithHome(MASK, 3);
+        int[] home0 = keysWithHome(0, 1);
+        for (int key : keys){
+            map.put(key, "v" + key);
+        }
+        //-- the run occupies slots 7, 0 and 1, so a key at home 0 probes on to 2
+        map.put(home0[0], "zero");
+        for (int key : keys){
+            Assert.assertEquals("v" + key, map.get(key));
+        }
+        Assert.assertEquals("zero", map.get(home0[0]));
+
+        Assert.assertEquals("v" + keys[0], map.remove(keys[0]));
+        Assert.assertEquals("v" + keys[1], map.get(keys[1]));
+        Assert.assertEquals("v" + keys[2], map.get(keys[2]));
+        Assert.assertEquals("zero", map.get(home0[0]));
+        Assert.assertTrue(map.removeIfSame(keys[2], map.get(keys[2])));
+        Assert.assertEquals("zero", map.get(home0[0]));
+    }
+
+    @Test
+    public void testSlotReuseAfterRemove() {
+        IntSlotMap<String> map = new IntSlotMap<>(EXPECTED);
+        //-- message ids cycle through the whole 16 bit space while only a few are ever held
+        for (int id = 1; id < 65536; id++){
+            map.put(id, "v" + id);
+            if(id > 3){
+                Assert.assertEquals("v" + (id - 3), map.remove(id - 3));
+            }
+            Assert.assertTrue(map.size() <= 3);
+        }
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals("v65535", map.get(65535));
+        Assert.assertEquals("v65533", map.get(65533));
+        Assert.assertNull(map.get(65532));
+    }
+
+    @Test
+    public void testRemoveIfSame() {
+        IntSlotMap<String> map = new IntSlotMap<>(EXPECTED);
+        String value = new String("value");
+        map.put(1, value);
+        Assert.assertFalse("an equal but different instance should not be removed",
+                map.removeIfSame(1, new String("value")));
+        Assert.assertTrue(map.containsKey(1));
+        Assert.assertTrue(map.removeIfSame(1, value));
+        Assert.assertFalse(map.containsKey(1));
+        Assert.assertFalse(map.removeIfSame(1, value));
+    }
+
+    @Test
+    public void testIteratorRemovesFromMap() {
+        IntSlotMap<String> map = new IntSlotMap<>(EXPECTED);
+        for (int i = 1; i <= 10; i++){
+            map.put(i, "v" + i);
+        }
+        Iterator<Map.Entry<Integer, String>> itr = map.entrySet().iterator();
+        while(itr.hasNext()){
+            if(itr.next().getKey() % 2 == 0){
+                itr.remove();
+            }
+        }
+        Assert.assertEquals(5, map.size());
+        for (int i = 1; i <= 10; i++){
+            Assert.assertEquals(i % 2 != 0, map.containsKey(i));
+        }
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(42);
+        IntSlotMap<String> map = new IntSlotMap<>(EXPECTED);
+        Map<Integer, String> model = new HashMap<>();
+        for (int i = 0; i < 200000; i++){
+            int key = random.nextInt(64);
+            if(random.nextBoolean()){
+                Assert.assertEquals(model.put(key, "v" + i), map.put(key, "v" + i));
+            } else {
+                Assert.assertEquals(model.remove(key), map.remove(key));
+            }
+            Assert.assertEquals(model.size(), map.size());
+        }
+        Assert.assertEquals(model, new HashMap<>(map));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValuesRejected() {
+        new IntSlotMap<String>(EXPECTED).put(1, null);
+    }
+
+    private static int[] keysWithHome(int home, int count){
+        int[] keys = new int[count];
+        int found = 0;
+        for (int key = 1; found < count; key++){
+            if(slot(key) == home){
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+
+    private static int slot(int key){
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & MASK;
+    }
+}
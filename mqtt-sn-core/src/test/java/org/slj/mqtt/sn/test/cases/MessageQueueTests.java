@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.PublishData;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.IDataRef;
+import org.slj.mqtt.sn.model.MqttsnOptions;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
+import org.slj.mqtt.sn.spi.IMqttsnMessageQueue;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Offering one message to many session queues at once, as the gateway does when expanding a publish to its subscribers.
+ */
+public class MessageQueueTests {
+
+    static final int MAX_QUEUE_SIZE = 3;
+
+    private File dir;
+    private MqttsnTestRuntime runtime;
+    private IMqttsnMessageQueue queue;
+
+    @Before
+    public void setup() throws MqttsnException, IOException {
+        dir = java.nio.file.Files.createTempDirectory("message-queue").toFile();
+        MqttsnOptions options = new MqttsnOptions().withMaxMessagesInQueue(MAX_QUEUE_SIZE);
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "message-queue"), options, false);
+        runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+        queue = runtime.getRegistry().getMessageQueue();
+    }
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            runtime.stop();
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testOfferAllReportsEachRecipient() throws Exception {
+        List<ISession> sessions = sessions("a", "b", "c", "d");
+        //-- fill the queues of b and d so only a and c have room
+        for (int i = 0; i < MAX_QUEUE_SIZE; i++){
+            queue.offer(sessions.get(1), message("fill"));
+            queue.offer(sessions.get(3), message("fill"));
+        }
+        long deadLetters = runtime.getRegistry().getDeadLetterQueue().size();
+
+        boolean[] accepted = queue.offerAll(sessions, messages(sessions.size(), "fanout"));
+        Assert.assertArrayEquals(new boolean[]{true, false, true, false}, accepted);
+        Assert.assertEquals("each rejected message should be dead lettered", deadLetters + 2,
+                runtime.getRegistry().getDeadLetterQueue().size());
+        Assert.assertEquals(1, queue.queueSize(sessions.get(0)));
+        Assert.assertEquals(MAX_QUEUE_SIZE, queue.queueSize(sessions.get(1)));
+        Assert.assertEquals(1, queue.queueSize(sessions.get(2)));
+        Assert.assertEquals(MAX_QUEUE_SIZE, queue.queueSize(sessions.get(3)));
+    }
+
+    @Test
+    public void testOfferAllStopsAcceptingAtCapacity() throws Exception {
+        List<ISession> sessions = sessions("a", "b");
+        queue.offer(sessions.get(1), message("fill"));
+        for (int i = 0; i < MAX_QUEUE_SIZE; i++){
+            boolean[] accepted = queue.offerAll(sessions, messages(sessions.size(), "fanout-" + i));
+            Assert.assertTrue(accepted[0]);
+            Assert.assertEquals("b should accept until its queue is full", i < MAX_QUEUE_SIZE - 1, accepted[1]);
+        }
+    }
+
+    @Test
+    public void testOfferAllPreservesOrder() throws Exception {
+        List<ISession> sessions = sessions("a", "b", "c");
+        int count = MAX_QUEUE_SIZE;
+        for (int i = 0; i < count; i++){
+            boolean[] accepted = queue.offerAll(sessions, messages(sessions.size(), "message-" + i));
+            Assert.assertArrayEquals(new boolean[]{true, true, true}, accepted);
+        }
+        for (ISession session : sessions){
+            for (int i = 0; i < count; i++){
+                IQueuedPublishMessage message = queue.poll(session);
+                Assert.assertNotNull(message);
+                Assert.assertEquals("each queue should be in the order offered", "message-" + i,
+                        message.getData().getTopicPath());
+            }
+            Assert.assertNull(queue.poll(session));
+        }
+    }
+
+    @Test(expected = MqttsnException.class)
+    public void testOfferAllRequiresAMessagePerSession() throws Exception {
+        queue.offerAll(sessions("a", "b"), messages(1, "message"));
+    }
+
+    private List<ISession> sessions(String... clientIds) throws MqttsnException {
+        List<ISession> sessions = new ArrayList<>(clientIds.length);
+        for (String clientId : clientIds){
+            sessions.add(runtime.getRegistry().getSessionRegistry().getSession(
+                    new ClientIdentifierContext(clientId), true));
+        }
+        return sessions;
+    }
+
+    /**
+     * One message per session sharing the data and publish data, as an expansion does; the topic path identifies it
+     */
+    private List<IQueuedPublishMessage> messages(int count, String topicPath) throws MqttsnException {
+        IDataRef ref = runtime.getRegistry().getMessageRegistry().add(topicPath.getBytes(StandardCharsets.UTF_8));
+        PublishData data = new PublishData(topicPath, 1, false);
+        IQueuedPublishMessage[] messages = new IQueuedPublishMessage[count];
+        for (int i = 0; i < count; i++){
+            messages[i] = new QueuedPublishMessageImpl(ref, data);
+        }
+        return Arrays.asList(messages);
+    }
+
+    private IQueuedPublishMessage message(String topicPath) throws MqttsnException {
+        return messages(1, topicPath).get(0);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.model.INetworkContext;
+import org.slj.mqtt.sn.net.NetworkAddress;
+import org.slj.mqtt.sn.net.NetworkAddressRegistry;
+import org.slj.mqtt.sn.net.NetworkContext;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+
+/**
+ * Contexts are indexed both by network address and by socket address, the socket address index must be kept in
+ * step with the network address index whether or not the network address of a context has been resolved.
+ */
+public class NetworkAddressRegistryTests {
+
+    static final InetSocketAddress SOCKET_ADDRESS = new InetSocketAddress("127.0.0.1", 2442);
+
+    private NetworkAddressRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new NetworkAddressRegistry(16);
+    }
+
+    @Test
+    public void testPutLookupRemove() throws Exception {
+        NetworkAddress address = NetworkAddress.from(SOCKET_ADDRESS);
+        Assert.assertTrue(address.hasSocketAddress());
+        INetworkContext context = new NetworkContext(null, address);
+        IClientIdentifierContext clientId = new ClientIdentifierContext("client-1");
+        registry.bindContexts(context, clientId);
+
+        Assert.assertSame(context, registry.getContext(address));
+        Assert.assertSame(context, registry.getContext(SOCKET_ADDRESS));
+        Assert.assertSame(context, registry.getContext(clientId));
+        Assert.assertSame(clientId, registry.getMqttsnContext(context));
+        Assert.assertEquals(1, registry.size());
+
+        Assert.assertTrue(registry.removeExistingClientId(clientId));
+        Assert.assertNull(registry.getContext(address));
+        Assert.assertNull("the socket address index should be cleared", registry.getContext(SOCKET_ADDRESS));
+        Assert.assertFalse(registry.hasBoundSessionContext(context));
+        Assert.assertEquals(0, registry.size());
+        Assert.assertFalse(registry.removeExistingClientId(clientId));
+    }
+
+    @Test
+    public void testRemoveContextIndexedOnLookup() throws Exception {
+        //-- the resolved socket address is not retained once serialized, so it is only indexed on first lookup
+        NetworkAddress address = roundTrip(NetworkAddress.from(SOCKET_ADDRESS));
+        Assert.assertFalse(address.hasSocketAddress());
+        INetworkContext context = new NetworkContext(null, address);
+        IClientIdentifierContext clientId = new ClientIdentifierContext("client-1");
+        registry.bindContexts(context, clientId);
+
+        Assert.assertSame("an unresolved context should be found by socket address", context,
+                registry.getContext(SOCKET_ADDRESS));
+        Assert.assertFalse("removal should not depend on the network address being resolved",
+                address.hasSocketAddress());
+
+        Assert.assertTrue(registry.removeExistingClientId(clientId));
+        Assert.assertNull("the socket address index should be cleared", registry.getContext(SOCKET_ADDRESS));
+        Assert.assertEquals(0, registry.size());
+    }
+
+    private static <T extends Serializable> T roundTrip(T object) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(object);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            return (T) ois.readObject();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.impl.AbstractMqttsnTcpTransport;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.model.INetworkContext;
+import org.slj.mqtt.sn.net.MqttsnNioTcpTransport;
+import org.slj.mqtt.sn.net.MqttsnTcpOptions;
+import org.slj.mqtt.sn.net.MqttsnTcpTransport;
+import org.slj.mqtt.sn.net.MqttsnTcpTransports;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the non-blocking TCP transport in server mode and drives it from a plain socket over loopback, so frames can
+ * be split and coalesced on the wire. The frames received are captured in place of being decoded.
+ */
+public class NioTcpTransportTests {
+
+    static final int MAX_WAIT = 5000;
+    static final int READ_BUFFER_SIZE = 16;
+
+    private File dir;
+    private MqttsnTestRuntime runtime;
+    private CapturingTransport transport;
+    private Socket socket;
+
+    @Before
+    public void setup() throws MqttsnException, IOException {
+        dir = java.nio.file.Files.createTempDirectory("nio-tcp").toFile();
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)){
+            port = probe.getLocalPort();
+        }
+        MqttsnTcpOptions options = new MqttsnTcpOptions().
+                withNonBlocking(true).
+                withEventLoopThreads(2).
+                withReadBufferSize(READ_BUFFER_SIZE).
+                withPort(port);
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "nio-tcp"), MqttsnTestRuntime.TEST_OPTIONS, false);
+        transport = new CapturingTransport(options);
+        registry.withTransport(transport);
+        runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+    }
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            socket.close();
+            runtime.stop();
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testFactorySelectsTransport() {
+        Assert.assertTrue(MqttsnTcpTransports.create(new MqttsnTcpOptions().withNonBlocking(true), false)
+                instanceof MqttsnNioTcpTransport);
+        Assert.assertTrue(MqttsnTcpTransports.create(new MqttsnTcpOptions(), false)
+                instanceof MqttsnTcpTransport);
+    }
+
+    @Test
+    public void testSingleFrame() throws Exception {
+        byte[] frame = frame(8, 1);
+        write(frame);
+        Assert.assertArrayEquals(frame, nextFrame());
+        Assert.assertNull("only one frame should be received", transport.received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testPartialFrameIsHeldUntilComplete() throws Exception {
+        byte[] frame = frame(12, 1);
+        write(slice(frame, 0, 1));
+        Thread.sleep(100);
+        write(slice(frame, 1, 5));
+        Thread.sleep(100);
+        Assert.assertNull("a partial frame should not be delivered", transport.received.poll(100, TimeUnit.MILLISECONDS));
+
+        write(slice(frame, 5, frame.length));
+        Assert.assertArrayEquals(frame, nextFrame());
+    }
+
+    @Test
+    public void testMultipleFramesInOneWrite() throws Exception {
+        byte[] first = frame(4, 1);
+        byte[] second = frame(9, 2);
+        byte[] third = frame(6, 3);
+        byte[] fourth = frame(10, 4);
+        //-- the last frame is split so the read ends part way through it
+        write(concat(first, second, third, slice(fourth, 0, 3)));
+        Assert.assertArrayEquals(first, nextFrame());
+        Assert.assertArrayEquals(second, nextFrame());
+        Assert.assertArrayEquals(third, nextFrame());
+        Assert.assertNull(transport.received.poll(100, TimeUnit.MILLISECONDS));
+
+        write(slice(fourth, 3, fourth.length));
+        Assert.assertArrayEquals(fourth, nextFrame());
+    }
+
+    @Test
+    public void testFrameLargerThanReadBuffer() throws Exception {
+        //-- extended length header (0x01 + 2 byte length), larger than the read buffer so it must grow
+        byte[] large = new byte[READ_BUFFER_SIZE * 20];
+        large[0] = 0x01;
+        large[1] = (byte) (large.length >> 8);
+        large[2] = (byte) large.length;
+        for (int i = 3; i < large.length; i++){
+            large[i] = (byte) i;
+        }
+        byte[] small = frame(5, 7);
+        write(slice(large, 0, 10));
+        Thread.sleep(100);
+        write(concat(slice(large, 10, large.length), small));
+        Assert.assertArrayEquals(large, nextFrame());
+        Assert.assertArrayEquals(small, nextFrame());
+    }
+
+    @Test
+    public void testWriteToConnection() throws Exception {
+        write(frame(4, 1));
+        nextFrame();
+        byte[] reply = frame(6, 9);
+        transport.writeToTransport(transport.lastContext, reply);
+
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        socket.setSoTimeout(MAX_WAIT);
+        byte[] read = new byte[reply.length];
+        in.readFully(read);
+        Assert.assertArrayEquals(reply, read);
+    }
+
+    @Test
+    public void testConnectionCloseIsReported() throws Exception {
+        write(frame(4, 1));
+        nextFrame();
+        Assert.assertEquals(1, activeConnections());
+
+        socket.close();
+        INetworkContext lost = transport.lost.poll(MAX_WAIT, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull("closing the socket should report the connection lost", lost);
+        Assert.assertEquals(transport.lastContext, lost);
+        long deadline = System.currentTimeMillis() + MAX_WAIT;
+        while(activeConnections() > 0 && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("a closed connection should be released", 0, activeConnections());
+    }
+
+    @Test
+    public void testInvalidLengthClosesConnection() throws Exception {
+        write(new byte[]{0x01, 0x00, 0x01});
+        Assert.assertNotNull("an invalid frame length should close the connection",
+                transport.lost.poll(MAX_WAIT, TimeUnit.MILLISECONDS));
+        socket.setSoTimeout(MAX_WAIT);
+        Assert.assertEquals("the socket should be closed by the transport", -1, socket.getInputStream().read());
+    }
+
+    private int activeConnections() {
+        for (String[] row : transport.getTransportDetails().getRows()){
+            if("Active Connections".equals(row[0])) return Integer.parseInt(row[1]);
+        }
+        throw new IllegalStateException("no active connections row");
+    }
+
+    private byte[] nextFrame() throws InterruptedException {
+        byte[] frame = transport.received.poll(MAX_WAIT, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull("frame should be received", frame);
+        return frame;
+    }
+
+    private void write(byte[] data) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(data);
+        out.flush();
+    }
+
+    private static byte[] frame(int length, int fill){
+        byte[] frame = new byte[length];
+        frame[0] = (byte) length;
+        for (int i = 1; i < length; i++){
+            frame[i] = (byte) (fill + i);
+        }
+        return frame;
+    }
+
+    private static byte[] slice(byte[] arr, int from, int to){
+        byte[] slice = new byte[to - from];
+        System.arraycopy(arr, from, slice, 0, slice.length);
+        return slice;
+    }
+
+    private static byte[] concat(byte[]... arrs) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (byte[] arr : arrs){
+            baos.write(arr);
+        }
+        return baos.toByteArray();
+    }
+
+    static class CapturingTransport extends MqttsnNioTcpTransport {
+
+        final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+        final BlockingQueue<INetworkContext> lost = new LinkedBlockingQueue<>();
+        volatile INetworkContext lastContext;
+
+        CapturingTransport(MqttsnTcpOptions options) {
+            super(options, false);
+        }
+
+        @Override
+        protected void receiveFromTransportInternal(INetworkContext context, byte[] data) {
+            lastContext = context;
+            received.add(data);
+        }
+
+        @Override
+        public void connectionLost(INetworkContext context, Throwable t) {
+            lost.add(context);
+        }
+    }
+}
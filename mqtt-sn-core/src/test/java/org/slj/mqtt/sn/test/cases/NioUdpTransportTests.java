@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.model.INetworkContext;
+import org.slj.mqtt.sn.net.MqttsnNioUdpTransport;
+import org.slj.mqtt.sn.net.MqttsnUdpOptions;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs the non-blocking UDP transport with its receive sharded across channels, driven from plain datagram sockets
+ * over loopback. The datagrams received are captured in place of being decoded.
+ */
+public class NioUdpTransportTests {
+
+    static final int MAX_WAIT = 5000;
+    static final int SHARDS = 2;
+
+    private File dir;
+    private MqttsnTestRuntime runtime;
+    private CapturingTransport transport;
+    private InetSocketAddress gateway;
+
+    @Before
+    public void setup() throws MqttsnException, IOException {
+        dir = java.nio.file.Files.createTempDirectory("nio-udp").toFile();
+        int port;
+        try (DatagramSocket probe = new DatagramSocket(0, InetAddress.getLoopbackAddress())){
+            port = probe.getLocalPort();
+        }
+        MqttsnUdpOptions options = new MqttsnUdpOptions().
+                withReceiverShards(SHARDS).
+                withPort(port);
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "nio-udp"), MqttsnTestRuntime.TEST_OPTIONS, false);
+        transport = new CapturingTransport(options);
+        registry.withTransport(transport);
+        runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+        gateway = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            runtime.stop();
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testEachRemoteIsReceivedInOrder() throws Exception {
+        int remotes = 8;
+        int count = 50;
+        List<DatagramSocket> sockets = new ArrayList<>();
+        try {
+            for (int r = 0; r < remotes; r++){
+                sockets.add(new DatagramSocket(0, InetAddress.getLoopbackAddress()));
+            }
+            //-- interleave the remotes so each shard and stripe has work from more than one of them
+            for (int i = 0; i < count; i++){
+                for (DatagramSocket socket : sockets){
+                    byte[] data = new byte[]{4, (byte) (i >> 8), (byte) i, 0};
+                    socket.send(new DatagramPacket(data, data.length, gateway));
+                }
+                if(i % 10 == 9) Thread.sleep(5);
+            }
+
+            long deadline = System.currentTimeMillis() + MAX_WAIT;
+            while(transport.total() < remotes * count && System.currentTimeMillis() < deadline){
+                Thread.sleep(10);
+            }
+            Assert.assertEquals("every datagram should be received", remotes * count, transport.total());
+            for (DatagramSocket socket : sockets){
+                List<Integer> seen = transport.received.get(socket.getLocalPort());
+                Assert.assertNotNull(seen);
+                for (int i = 0; i < count; i++){
+                    Assert.assertEquals("datagrams from a remote should be processed in order", i, (int) seen.get(i));
+                }
+            }
+        } finally {
+            for (DatagramSocket socket : sockets){
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void testShardsShareThePort() throws Exception {
+        int shards = (int) detail("Receiver shards");
+        Assert.assertTrue(shards == SHARDS || shards == 1);
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())){
+            byte[] data = new byte[]{4, 0, 1, 0};
+            socket.send(new DatagramPacket(data, data.length, gateway));
+            long deadline = System.currentTimeMillis() + MAX_WAIT;
+            while(transport.total() < 1 && System.currentTimeMillis() < deadline){
+                Thread.sleep(10);
+            }
+        }
+        long packets = 0;
+        for (int i = 0; i < shards; i++){
+            packets += detail("Shard " + i + " packets in");
+        }
+        Assert.assertEquals("the datagram should be received by exactly one shard", 1, packets);
+    }
+
+    private long detail(String name) {
+        for (String[] row : transport.getTransportDetails().getRows()){
+            if(name.equals(row[0])) return Long.parseLong(row[1]);
+        }
+        throw new IllegalStateException("no row " + name);
+    }
+
+    static class CapturingTransport extends MqttsnNioUdpTransport {
+
+        final Map<Integer, List<Integer>> received = new ConcurrentHashMap<>();
+
+        CapturingTransport(MqttsnUdpOptions options) {
+            super(options);
+        }
+
+        int total(){
+            return received.values().stream().mapToInt(List::size).sum();
+        }
+
+        @Override
+        protected void receiveFromTransportInternal(INetworkContext context, byte[] data) {
+            received.computeIfAbsent(context.getNetworkAddress().getPort(), p -> new CopyOnWriteArrayList<>()).
+                    add(((data[1] & 0xFF) << 8) | (data[2] & 0xFF));
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slj.mqtt.sn.PublishData;
+import org.slj.mqtt.sn.impl.MqttsnBinaryReaderWriter;
+import org.slj.mqtt.sn.impl.MqttsnVMObjectReaderWriter;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.IntegerDataRef;
+import org.slj.mqtt.sn.model.MqttsnClientCredentials;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
+import org.slj.mqtt.sn.model.session.ISubscription;
+import org.slj.mqtt.sn.model.session.ITopicRegistration;
+import org.slj.mqtt.sn.model.session.impl.*;
+import org.slj.mqtt.sn.spi.IMqttsnObjectReaderWriter;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.utils.TopicPath;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+
+public class ObjectReaderWriterTests {
+
+    static final byte[] PAYLOAD = "hello world".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testQueuedPublishMessageBinary() throws MqttsnException {
+        testQueuedPublishMessage(new MqttsnBinaryReaderWriter());
+    }
+
+    @Test
+    public void testQueuedPublishMessageVM() throws MqttsnException {
+        testQueuedPublishMessage(new MqttsnVMObjectReaderWriter());
+    }
+
+    @Test
+    public void testSessionBeanBinary() throws MqttsnException {
+        testSessionBean(new MqttsnBinaryReaderWriter());
+    }
+
+    @Test
+    public void testSessionBeanVM() throws MqttsnException {
+        testSessionBean(new MqttsnVMObjectReaderWriter());
+    }
+
+    @Test
+    public void testClientStateCodesAreStable() throws MqttsnException {
+        //-- persisted sessions depend on these, a reordered or new state must not change them
+        Assert.assertEquals(0, ClientState.ACTIVE.getCode());
+        Assert.assertEquals(1, ClientState.DISCONNECTED.getCode());
+        Assert.assertEquals(2, ClientState.AWAKE.getCode());
+        Assert.assertEquals(3, ClientState.ASLEEP.getCode());
+        Assert.assertEquals(4, ClientState.LOST.getCode());
+        Assert.assertNull(ClientState.fromCode(-1));
+
+        IMqttsnObjectReaderWriter rw = new MqttsnBinaryReaderWriter();
+        for (ClientState state : ClientState.values()){
+            Assert.assertEquals(state, ClientState.fromCode(state.getCode()));
+            SessionBeanImpl read = roundTrip(rw, new SessionBeanImpl(new ClientIdentifierContext("client-id"), state));
+            Assert.assertEquals("state should match", state, read.getClientState());
+        }
+        SessionBeanImpl read = roundTrip(rw, new SessionBeanImpl(new ClientIdentifierContext("client-id"), null));
+        Assert.assertNull("no state should round trip", read.getClientState());
+    }
+
+    @Test
+    public void testSubscriptionAndRegistrationBinary() throws MqttsnException {
+        IMqttsnObjectReaderWriter rw = new MqttsnBinaryReaderWriter();
+        SubscriptionImpl subscription = roundTrip(rw, new SubscriptionImpl(new TopicPath("a/+/c"), 2));
+        Assert.assertEquals("topic path should match", new TopicPath("a/+/c"), subscription.getTopicPath());
+        Assert.assertEquals("qos should match", 2, subscription.getGrantedQoS());
+
+        TopicRegistrationImpl registration = roundTrip(rw, new TopicRegistrationImpl("a/b/c", 65535, true));
+        Assert.assertEquals("topic path should match", "a/b/c", registration.getTopicPath());
+        Assert.assertEquals("alias should match", 65535, registration.getAliasId());
+        Assert.assertTrue("confirmed should match", registration.isConfirmed());
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanVM() throws MqttsnException {
+        IQueuedPublishMessage message = createMessage();
+        int binary = new MqttsnBinaryReaderWriter().write(message).length;
+        int vm = new MqttsnVMObjectReaderWriter().write(message).length;
+        Assert.assertTrue("binary form (" + binary + ") should be smaller than vm form (" + vm + ")", binary * 4 < vm);
+    }
+
+    @Test
+    public void testBinaryFallsBackToJavaSerialization() throws MqttsnException {
+        MqttsnClientCredentials credentials = new MqttsnClientCredentials();
+        MqttsnClientCredentials read = roundTrip(new MqttsnBinaryReaderWriter(), credentials);
+        Assert.assertNotNull("type without a codec should still round trip", read);
+    }
+
+    @Test
+    public void testBinaryCustomCodec() throws MqttsnException {
+        MqttsnBinaryReaderWriter rw = new MqttsnBinaryReaderWriter().withCodec(
+                MqttsnBinaryReaderWriter.MIN_CUSTOM_TYPE_ID, Custom.class, new MqttsnBinaryReaderWriter.Codec<Custom>() {
+                    @Override
+                    public void write(MqttsnBinaryReaderWriter.BinaryOutput out, Custom value) {
+                        out.writeString(value.name);
+                        out.writeLong(value.value);
+                    }
+
+                    @Override
+                    public Custom read(MqttsnBinaryReaderWriter.BinaryInput in, int version) throws IOException {
+                        return new Custom(in.readString(), in.readLong());
+                    }
+                });
+        Custom custom = roundTrip(rw, new Custom("name", Long.MIN_VALUE));
+        Assert.assertEquals("name should match", "name", custom.name);
+        Assert.assertEquals("value should match", Long.MIN_VALUE, custom.value);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBinaryReservedTypeId() {
+        new MqttsnBinaryReaderWriter().withCodec(MqttsnBinaryReaderWriter.MIN_CUSTOM_TYPE_ID - 1, Custom.class, null);
+    }
+
+    @Test(expected = MqttsnException.class)
+    public void testBinaryRejectsFutureVersion() throws MqttsnException {
+        IMqttsnObjectReaderWriter rw = new MqttsnBinaryReaderWriter();
+        byte[] arr = rw.write(new IntegerDataRef(1));
+        arr[0] = (byte) (MqttsnBinaryReaderWriter.FORMAT_VERSION + 1);
+        rw.load(IntegerDataRef.class, arr);
+    }
+
+    @Test(expected = MqttsnException.class)
+    public void testBinaryRejectsTruncatedRecord() throws MqttsnException {
+        IMqttsnObjectReaderWriter rw = new MqttsnBinaryReaderWriter();
+        byte[] arr = rw.write(createMessage());
+        byte[] truncated = new byte[arr.length - 4];
+        System.arraycopy(arr, 0, truncated, 0, truncated.length);
+        rw.load(QueuedPublishMessageImpl.class, truncated);
+    }
+
+    private static void testQueuedPublishMessage(IMqttsnObjectReaderWriter rw) throws MqttsnException {
+        QueuedPublishMessageImpl message = createMessage();
+        QueuedPublishMessageImpl read = roundTrip(rw, message);
+        assertMessage(message, read);
+    }
+
+    private static void testSessionBean(IMqttsnObjectReaderWriter rw) throws MqttsnException {
+        ClientIdentifierContext context = new ClientIdentifierContext("client-id");
+        context.setProtocolVersion(2);
+        context.setAssignedClientId(true);
+        SessionBeanImpl session = new SessionBeanImpl(context, ClientState.ASLEEP);
+        session.setLastSeen(new Date(1000));
+        session.setKeepAlive(60);
+        session.setSessionExpiryInterval(4294967295L);
+        session.setMaxPacketSize(1024);
+        session.setProtocolVersion(2);
+        session.addSubscription(new SubscriptionImpl(new TopicPath("a/#"), 1));
+        session.addSubscription(new SubscriptionImpl(new TopicPath("b/c"), 0));
+        session.addTopicRegistration(new TopicRegistrationImpl("a/b", 1, true));
+        session.addTopicRegistration(new TopicRegistrationImpl("b/c", 2, false));
+        session.setWillData(new WillDataImpl(new TopicPath("will"), PAYLOAD, 1, true));
+        QueuedPublishMessageImpl message = createMessage();
+        session.offer(message);
+
+        SessionBeanImpl read = roundTrip(rw, session);
+        Assert.assertEquals("context should match", context, read.getContext());
+        Assert.assertEquals("protocol version should match", 2, read.getContext().getProtocolVersion());
+        Assert.assertTrue("assigned client id should match", read.getContext().isAssignedClientId());
+        Assert.assertEquals("state should match", ClientState.ASLEEP, read.getClientState());
+        Assert.assertEquals("last seen should match", session.getLastSeen(), read.getLastSeen());
+        Assert.assertEquals("session started should match", session.getSessionStarted(), read.getSessionStarted());
+        Assert.assertEquals("keep alive should match", 60, read.getKeepAlive());
+        Assert.assertEquals("expiry should match", 4294967295L, read.getSessionExpiryInterval());
+        Assert.assertEquals("max packet size should match", 1024, read.getMaxPacketSize());
+        Assert.assertEquals("subscriptions should match", session.getSubscriptions(), read.getSubscriptions());
+        for (ISubscription subscription : read.getSubscriptions()){
+            Assert.assertEquals("granted qos should match",
+                    subscription.getTopicPath().toString().equals("a/#") ? 1 : 0, subscription.getGrantedQoS());
+        }
+        Map<String, ITopicRegistration> registrations = read.getRegistrations();
+        Assert.assertEquals("registrations should match", 2, registrations.size());
+        Assert.assertEquals("alias should match", 2, registrations.get("b/c").getAliasId());
+        Assert.assertFalse("confirmed should match", registrations.get("b/c").isConfirmed());
+        Assert.assertEquals("will topic should match", "will", read.getWillData().getTopicPath().toString());
+        Assert.assertArrayEquals("will data should match", PAYLOAD, read.getWillData().getData());
+        Assert.assertTrue("will retained should match", read.getWillData().isRetained());
+        Assert.assertEquals("queue size should match", 1, read.getQueueSize());
+        assertMessage(message, (QueuedPublishMessageImpl) read.peek());
+    }
+
+    private static QueuedPublishMessageImpl createMessage(){
+        QueuedPublishMessageImpl message = new QueuedPublishMessageImpl(new IntegerDataRef(12345),
+                new PublishData("some/topic/path", 2, true, PAYLOAD));
+        message.setPacketId(77);
+        message.setRetryCount(3);
+        message.setGrantedQoS(1);
+        return message;
+    }
+
+    private static void assertMessage(QueuedPublishMessageImpl expected, QueuedPublishMessageImpl read){
+        Assert.assertEquals("data ref should match", expected.getDataRefId(), read.getDataRefId());
+        Assert.assertEquals("created should match", expected.getCreated(), read.getCreated());
+        Assert.assertEquals("packet id should match", expected.getPacketId(), read.getPacketId());
+        Assert.assertEquals("retry count should match", expected.getRetryCount(), read.getRetryCount());
+        Assert.assertEquals("granted qos should match", expected.getGrantedQoS(), read.getGrantedQoS());
+        Assert.assertEquals("topic should match", expected.getData().getTopicPath(), read.getData().getTopicPath());
+        Assert.assertEquals("qos should match", expected.getData().getQos(), read.getData().getQos());
+        Assert.assertEquals("retained should match", expected.getData().isRetained(), read.getData().isRetained());
+        Assert.assertArrayEquals("payload should match", expected.getData().getData(), read.getData().getData());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Serializable> T roundTrip(IMqttsnObjectReaderWriter rw, T o) throws MqttsnException {
+        return (T) rw.load(o.getClass(), rw.write(o));
+    }
+
+    static class Custom implements Serializable {
+        final String name;
+        final long value;
+
+        Custom(String name, long value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.PublishData;
+import org.slj.mqtt.sn.impl.MqttsnBinaryReaderWriter;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.impl.MqttsnSegmentedFileMessageQueue;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.IDataRef;
+import org.slj.mqtt.sn.model.MqttsnOptions;
+import org.slj.mqtt.sn.model.MqttsnQueueAcceptException;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
+import org.slj.mqtt.sn.spi.IMqttsnMessageQueue;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The segmented queue driven through a running runtime; with a queue of 100 and a disk threshold of 10% the first
+ * 11 messages are held in memory and the rest spill to disk, in segments small enough to hold only a few records.
+ */
+public class SegmentedFileMessageQueueTests {
+
+    static final int SEGMENT_SIZE = 256;
+    static final int IN_MEMORY = 11;
+
+    private File dir;
+    private MqttsnFilesystemStorageService storageService;
+    private MqttsnTestRuntime runtime;
+
+    @Before
+    public void setup() throws IOException, MqttsnException {
+        dir = java.nio.file.Files.createTempDirectory("segmented-message-queue").toFile();
+        runtime = start();
+    }
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            runtime.stop();
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testSpillToDiskRollsSegmentsInOrder() throws Exception {
+        ISession session = createSession();
+        offer(session, 0, 60);
+        Assert.assertEquals("queue size should include the disk queue", 60, queue().queueSize(session));
+        Assert.assertTrue("disk queue should roll over to new segments", segments().length > 1);
+
+        drain(session, 0, 60);
+        Assert.assertEquals(0, queue().queueSize(session));
+        Assert.assertTrue("consumed segments should be deleted", segments().length <= 1);
+    }
+
+    @Test
+    public void testTornFinalRecordDiscardedOnRecovery() throws Exception {
+        offer(createSession(), 0, 30);
+        restart(last -> {
+            try (RandomAccessFile raf = new RandomAccessFile(last, "rw")){
+                raf.setLength(raf.length() - 3);
+            }
+        });
+        ISession session = createSession();
+        Assert.assertEquals("torn record should be discarded, the in memory portion is not durable",
+                30 - IN_MEMORY - 1, queue().queueSize(session));
+        drain(session, IN_MEMORY, 30 - IN_MEMORY - 1);
+    }
+
+    @Test
+    public void testCrcMismatchTruncatesOnRecovery() throws Exception {
+        offer(createSession(), 0, 30);
+        restart(last -> {
+            try (RandomAccessFile raf = new RandomAccessFile(last, "rw")){
+                raf.seek(raf.length() - 1);
+                int b = raf.read();
+                raf.seek(raf.length() - 1);
+                raf.write(b ^ 0xFF);
+            }
+        });
+        ISession session = createSession();
+        Assert.assertEquals("record failing its checksum should be discarded",
+                30 - IN_MEMORY - 1, queue().queueSize(session));
+        drain(session, IN_MEMORY, 30 - IN_MEMORY - 1);
+    }
+
+    @Test
+    public void testCursorCommittedAsDiskQueueDrains() throws Exception {
+        ISession session = createSession();
+        offer(session, 0, 30);
+        //-- the memory portion drains, then a batch of 10 moves from disk to memory committing the cursor past it
+        drain(session, 0, 15);
+        restart(last -> {});
+        session = createSession();
+        Assert.assertEquals("records moved to memory should not be recovered from disk",
+                30 - IN_MEMORY - 10, queue().queueSize(session));
+        drain(session, IN_MEMORY + 10, 30 - IN_MEMORY - 10);
+    }
+
+    private MqttsnTestRuntime start() throws MqttsnException {
+        storageService = new MqttsnFilesystemStorageService(dir, "queue");
+        MqttsnOptions options = new MqttsnOptions().
+                withMaxMessagesInQueue(100).
+                withMessageQueueDiskStorageThreshold(10);
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(storageService, options, false);
+        registry.withServiceReplaceIfExists(IMqttsnMessageQueue.class,
+                new MqttsnSegmentedFileMessageQueue(new MqttsnBinaryReaderWriter(), SEGMENT_SIZE, false));
+        MqttsnTestRuntime runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+        //-- the workspace lock is only released on exit, release it so the workspace can be reopened
+        new File(storageService.getWorkspaceRoot(), ".lck").delete();
+        return runtime;
+    }
+
+    /**
+     * Stop the runtime, apply the damage to the last segment of the disk queue and start again on the same workspace
+     */
+    private void restart(SegmentAction damage) throws Exception {
+        runtime.stop();
+        File[] segments = segments();
+        damage.apply(segments[segments.length - 1]);
+        runtime = start();
+    }
+
+    private File[] segments() {
+        File root = new File(storageService.getWorkspaceRoot(), "_message-queues-segmented");
+        File[] queues = root.listFiles(File::isDirectory);
+        Assert.assertNotNull("disk queue should exist", queues);
+        Assert.assertEquals("one disk queue should exist", 1, queues.length);
+        File[] segments = queues[0].listFiles((d, n) -> n.endsWith(".seg"));
+        Arrays.sort(segments, (a, b) -> Long.compare(segmentId(a), segmentId(b)));
+        return segments;
+    }
+
+    private ISession createSession() throws MqttsnException {
+        return runtime.getRegistry().getSessionRegistry().getSession(
+                new ClientIdentifierContext(MqttsnTestRuntime.TEST_CLIENT_ID), true);
+    }
+
+    private IMqttsnMessageQueue queue() {
+        return runtime.getRegistry().getMessageQueue();
+    }
+
+    private void offer(ISession session, int from, int count) throws MqttsnException, MqttsnQueueAcceptException {
+        for (int i = from; i < from + count; i++){
+            IDataRef ref = runtime.getRegistry().getMessageRegistry().add(("payload-" + i).getBytes(StandardCharsets.UTF_8));
+            QueuedPublishMessageImpl message = new QueuedPublishMessageImpl(ref, new PublishData("queue/" + i, 1, false));
+            message.setCreated(i);
+            queue().offer(session, message);
+        }
+    }
+
+    /**
+     * Consume as the queue processor does, peeking (which refills memory from disk) before polling
+     */
+    private void drain(ISession session, int from, int count) throws MqttsnException {
+        for (int i = from; i < from + count; i++){
+            Assert.assertNotNull("message " + i + " should be queued", queue().peek(session));
+            IQueuedPublishMessage message = queue().poll(session);
+            Assert.assertEquals("messages should be consumed in order", "queue/" + i, message.getData().getTopicPath());
+        }
+    }
+
+    private static long segmentId(File segment){
+        return Long.parseLong(segment.getName().substring(0, segment.getName().indexOf('.')));
+    }
+
+    interface SegmentAction {
+        void apply(File segment) throws IOException;
+    }
+}
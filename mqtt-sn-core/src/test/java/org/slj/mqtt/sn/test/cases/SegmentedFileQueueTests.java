@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.utils.Files;
+import org.slj.mqtt.sn.utils.SegmentedFileQueue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class SegmentedFileQueueTests {
+
+    static final int SEGMENT_SIZE = 256;
+
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = java.nio.file.Files.createTempDirectory("segmented-queue").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testFifoAcrossSegments() throws IOException {
+        testFifoAcrossSegments(false);
+    }
+
+    @Test
+    public void testFifoAcrossSegmentsMemoryMapped() throws IOException {
+        testFifoAcrossSegments(true);
+    }
+
+    private void testFifoAcrossSegments(boolean memoryMapped) throws IOException {
+        try (SegmentedFileQueue queue = new SegmentedFileQueue(dir, SEGMENT_SIZE, memoryMapped)){
+            append(queue, 0, 100);
+            Assert.assertEquals("queue size should match appended", 100, queue.size());
+            Assert.assertTrue("records should span segments", queue.segmentCount() > 1);
+            int segments = queue.segmentCount();
+            assertRecords(queue.poll(60), 0, 60);
+            Assert.assertTrue("consumed segments should be deleted", queue.segmentCount() < segments);
+            append(queue, 100, 10);
+            assertRecords(queue.poll(100), 60, 50);
+            Assert.assertTrue("queue should be empty", queue.isEmpty());
+            Assert.assertEquals("poll on empty queue should return nothing", 0, queue.poll(10).size());
+        }
+    }
+
+    @Test
+    public void testCursorRecoveredOnReopen() throws IOException {
+        try (SegmentedFileQueue queue = new SegmentedFileQueue(dir, SEGMENT_SIZE, false)){
+            append(queue, 0, 50);
+            assertRecords(queue.poll(20), 0, 20);
+        }
+        try (SegmentedFileQueue queue = new SegmentedFileQueue(dir, SEGMENT_SIZE, true)){
+            Assert.assertEquals("recovered size should exclude consumed records", 30, queue.size());
+            append(queue, 50, 5);
+            assertRecords(queue.poll(100), 20, 35);
+        }
+    }
+
+    @Test
+    public void testTornTailTruncatedOnRecovery() throws IOException {
+        File last;
+        try (SegmentedFileQueue queue = new SegmentedFileQueue(dir, SEGMENT_SIZE, false)){
+            append(queue, 0, 10);
+            File[] segments = dir.listFiles((d, n) -> n.endsWith(".seg"));
+            java.util.Arrays.sort(segments);
+            last = segments[segments.length - 1];
+        }
+        //-- simulate a crash part way through writing a record
+        try (RandomAccessFile raf = new RandomAccessFile(last, "rw")){
+            raf.setLength(raf.length() - 3);
+        }
+        try (SegmentedFileQueue queue = new SegmentedFileQueue(dir, SEGMENT_SIZE, false)){
+            Assert.assertEquals("torn record should be discarded", 9, queue.size());
+            append(queue, 9, 1);
+            assertRecords(queue.poll(100), 0, 10);
+        }
+    }
+
+    @Test
+    public void testCorruptCursorReplaysFromHead() throws IOException {
+        try (SegmentedFileQueue queue = new SegmentedFileQueue(dir, SEGMENT_SIZE * 100, false)){
+            append(queue, 0, 10);
+            assertRecords(queue.poll(4), 0, 4);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "cursor"), "rw")){
+            raf.seek(0);
+            raf.write(0xFF);
+        }
+        try (SegmentedFileQueue queue = new SegmentedFileQueue(dir, SEGMENT_SIZE * 100, false)){
+            Assert.assertEquals("invalid cursor should replay all records", 10, queue.size());
+            assertRecords(queue.poll(100), 0, 10);
+        }
+    }
+
+    private static void append(SegmentedFileQueue queue, int from, int count) throws IOException {
+        for (int i = from; i < from + count; i++){
+            queue.append(record(i));
+        }
+    }
+
+    private static void assertRecords(List<byte[]> records, int from, int count){
+        Assert.assertEquals("record count should match", count, records.size());
+        for (int i = 0; i < count; i++){
+            Assert.assertArrayEquals("record should match in order", record(from + i), records.get(i));
+        }
+    }
+
+    private static byte[] record(int i){
+        return ("record-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.impl.MqttsnSessionRegistry;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+public class SessionRegistryTests {
+
+    private File dir;
+    private MqttsnTestRuntime runtime;
+
+    @Before
+    public void setup() throws IOException, MqttsnException {
+        dir = java.nio.file.Files.createTempDirectory("session-registry").toFile();
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "registry"), MqttsnTestRuntime.TEST_OPTIONS, false);
+        runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+    }
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            runtime.stop();
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testSessionStateCountsFollowTransitions() throws MqttsnException {
+
+        MqttsnSessionRegistry sessionRegistry = (MqttsnSessionRegistry) runtime.getRegistry().getSessionRegistry();
+        ISession first = sessionRegistry.getSession(new ClientIdentifierContext("first"), true);
+        ISession second = sessionRegistry.getSession(new ClientIdentifierContext("second"), true);
+        Assert.assertEquals("new sessions should be disconnected", 2, sessionRegistry.countSessions(ClientState.DISCONNECTED));
+
+        sessionRegistry.modifyClientState(first, ClientState.ACTIVE);
+        sessionRegistry.modifyClientState(second, ClientState.ACTIVE);
+        sessionRegistry.modifyClientState(second, ClientState.ACTIVE);
+        Assert.assertEquals(2, sessionRegistry.countSessions(ClientState.ACTIVE));
+        Assert.assertEquals(0, sessionRegistry.countSessions(ClientState.DISCONNECTED));
+
+        sessionRegistry.modifyClientState(second, ClientState.ASLEEP);
+        Assert.assertEquals(1, sessionRegistry.countSessions(ClientState.ACTIVE));
+        Assert.assertEquals(1, sessionRegistry.countSessions(ClientState.ASLEEP));
+
+        sessionRegistry.clear(first);
+        Assert.assertEquals("cleared session should not be counted", 0, sessionRegistry.countSessions(ClientState.ACTIVE));
+
+        sessionRegistry.modifyClientState(first, ClientState.LOST);
+        Assert.assertEquals("state changes after removal should not be counted", 0, sessionRegistry.countSessions(ClientState.LOST));
+        Assert.assertTrue("maintained counts should match the sessions", sessionRegistry.checkStateCounts());
+    }
+}
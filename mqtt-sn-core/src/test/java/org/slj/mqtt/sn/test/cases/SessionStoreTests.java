@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.impl.MqttsnBinaryReaderWriter;
+import org.slj.mqtt.sn.impl.MqttsnDurableSessionRegistry;
+import org.slj.mqtt.sn.PublishData;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.IClientIdentifierContext;
+import org.slj.mqtt.sn.model.IDataRef;
+import org.slj.mqtt.sn.model.IntegerDataRef;
+import org.slj.mqtt.sn.model.MqttsnQueueAcceptException;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
+import org.slj.mqtt.sn.model.session.impl.SessionBeanImpl;
+import org.slj.mqtt.sn.spi.IMqttsnSessionRegistry;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.spi.MqttsnIllegalFormatException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+import org.slj.mqtt.sn.utils.WriteAheadLogStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class SessionStoreTests {
+
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = java.nio.file.Files.createTempDirectory("session-store").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testRecoverFromLog() throws IOException {
+        try (WriteAheadLogStore store = new WriteAheadLogStore(dir, true)){
+            Assert.assertTrue("new store should be empty", store.recover().isEmpty());
+            store.append(values("a", "b", "c"), null);
+            store.append(values("b"), Collections.singletonList("c"));
+        }
+        try (WriteAheadLogStore store = new WriteAheadLogStore(dir, true)){
+            Map<String, byte[]> state = store.recover();
+            Assert.assertEquals("deleted key should not be recovered", 2, state.size());
+            Assert.assertEquals("a", new String(state.get("a"), StandardCharsets.UTF_8));
+            Assert.assertFalse(state.containsKey("c"));
+        }
+    }
+
+    @Test
+    public void testRecoverFromCheckpoint() throws IOException {
+        try (WriteAheadLogStore store = new WriteAheadLogStore(dir, false)){
+            store.recover();
+            store.append(values("a", "b"), null);
+            store.checkpoint(values("a", "b").entrySet().iterator());
+            Assert.assertEquals("checkpoint should reset the log", 0, store.getLogSize());
+            store.append(values("c"), Collections.singletonList("a"));
+        }
+        Assert.assertEquals("superseded files should be removed", 2, dir.listFiles().length);
+        try (WriteAheadLogStore store = new WriteAheadLogStore(dir, false)){
+            Map<String, byte[]> state = store.recover();
+            Assert.assertEquals(new HashSet<>(Arrays.asList("b", "c")), state.keySet());
+        }
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        try (WriteAheadLogStore store = new WriteAheadLogStore(dir, true)){
+            store.recover();
+            store.append(values("a"), null);
+            store.append(values("b"), null);
+        }
+        File log = dir.listFiles((d, n) -> n.endsWith(".log"))[0];
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")){
+            raf.setLength(raf.length() - 1);
+        }
+        try (WriteAheadLogStore store = new WriteAheadLogStore(dir, true)){
+            Map<String, byte[]> state = store.recover();
+            Assert.assertEquals("torn record should be discarded", Collections.singleton("a"), state.keySet());
+            store.append(values("c"), null);
+        }
+        try (WriteAheadLogStore store = new WriteAheadLogStore(dir, true)){
+            Assert.assertEquals("appends after truncation should be readable",
+                    new HashSet<>(Arrays.asList("a", "c")), store.recover().keySet());
+        }
+    }
+
+    @Test
+    public void testDurableSessionSurvivesRestart() throws MqttsnException, MqttsnIllegalFormatException {
+        MqttsnTestRuntime runtime = start();
+        try {
+            ISession session = createSession(runtime);
+            runtime.getRegistry().getSessionRegistry().modifyKeepAlive(session, 60);
+            runtime.getRegistry().getSessionRegistry().modifyClientState(session, ClientState.DISCONNECTED);
+            runtime.getRegistry().getSubscriptionRegistry().subscribe(session, "durable/topic", 1);
+        } finally {
+            runtime.stop();
+        }
+
+        runtime = start();
+        try {
+            IMqttsnSessionRegistry sessionRegistry = runtime.getRegistry().getSessionRegistry();
+            Assert.assertEquals("session should be recovered", 1, sessionRegistry.countTotalSessions());
+            ISession session = sessionRegistry.iterator().next();
+            Assert.assertEquals(MqttsnTestRuntime.TEST_CLIENT_ID, session.getContext().getId());
+            Assert.assertEquals(60, session.getKeepAlive());
+            Assert.assertEquals("recovered subscription should be matched", 1,
+                    runtime.getRegistry().getSubscriptionRegistry().matches("durable/topic").size());
+        } finally {
+            runtime.stop();
+        }
+    }
+
+    @Test
+    public void testQueuedMessagesSurviveRestart() throws MqttsnException, MqttsnQueueAcceptException {
+        MqttsnTestRuntime runtime = start();
+        try {
+            ISession session = createSession(runtime);
+            runtime.getRegistry().getSessionRegistry().modifyClientState(session, ClientState.DISCONNECTED);
+            for (int i = 0; i < 3; i++){
+                IDataRef ref = runtime.getRegistry().getMessageRegistry().add(("payload-" + i).getBytes(StandardCharsets.UTF_8));
+                QueuedPublishMessageImpl message = new QueuedPublishMessageImpl(ref, new PublishData("durable/topic", 1, false));
+                message.setCreated(i);
+                runtime.getRegistry().getMessageQueue().offer(session, message);
+            }
+            Assert.assertNotNull(runtime.getRegistry().getMessageQueue().poll(session));
+        } finally {
+            runtime.stop();
+        }
+
+        runtime = start();
+        try {
+            ISession session = runtime.getRegistry().getSessionRegistry().iterator().next();
+            Assert.assertEquals("taken message should not be recovered", 2,
+                    runtime.getRegistry().getMessageQueue().queueSize(session));
+            for (int i = 1; i < 3; i++){
+                IQueuedPublishMessage message = runtime.getRegistry().getMessageQueue().poll(session);
+                Assert.assertEquals("payload should be recovered in order", "payload-" + i,
+                        new String(runtime.getRegistry().getMessageRegistry().get(message.getDataRefId()), StandardCharsets.UTF_8));
+            }
+        } finally {
+            runtime.stop();
+        }
+
+        runtime = start();
+        try {
+            ISession session = runtime.getRegistry().getSessionRegistry().iterator().next();
+            Assert.assertEquals("messages taken after recovery should not be recovered again", 0,
+                    runtime.getRegistry().getMessageQueue().queueSize(session));
+        } finally {
+            runtime.stop();
+        }
+    }
+
+    @Test
+    public void testQueueAndLastSeenDoNotChangeSession() {
+        SessionBeanImpl session = new SessionBeanImpl(new ClientIdentifierContext(MqttsnTestRuntime.TEST_CLIENT_ID), ClientState.ACTIVE);
+        List<ISession> changes = new ArrayList<>();
+        List<IQueuedPublishMessage> offered = new ArrayList<>();
+        List<IQueuedPublishMessage> removed = new ArrayList<>();
+        session.setChangeListener(changes::add);
+        session.setQueueListener(new SessionBeanImpl.QueueListener() {
+            @Override
+            public void offered(SessionBeanImpl s, IQueuedPublishMessage message) {
+                offered.add(message);
+            }
+
+            @Override
+            public void removed(SessionBeanImpl s, IQueuedPublishMessage message) {
+                removed.add(message);
+            }
+        });
+
+        session.setLastSeen(new Date());
+        session.setClientState(ClientState.ACTIVE);
+        QueuedPublishMessageImpl message = new QueuedPublishMessageImpl(new IntegerDataRef(1), new PublishData("durable/topic", 1, false));
+        session.offer(message);
+        session.offer(new QueuedPublishMessageImpl(new IntegerDataRef(2), new PublishData("durable/topic", 1, false)));
+        session.poll();
+        session.clearMessageQueue();
+        Assert.assertTrue("ephemeral and queue changes should not change the session", changes.isEmpty());
+        Assert.assertEquals(2, offered.size());
+        Assert.assertEquals("poll and clear should each notify removal", offered, removed);
+
+        session.setClientState(ClientState.DISCONNECTED);
+        Assert.assertEquals("state change should change the session", 1, changes.size());
+    }
+
+    private MqttsnTestRuntime start() throws MqttsnException {
+        MqttsnFilesystemStorageService storageService = new MqttsnFilesystemStorageService(dir, "durable");
+        MqttsnTestRuntimeRegistry registry =
+                MqttsnTestRuntimeRegistry.defaultConfiguration(storageService, MqttsnTestRuntime.TEST_OPTIONS, false);
+        registry.withServiceReplaceIfExists(IMqttsnSessionRegistry.class,
+                new MqttsnDurableSessionRegistry(new MqttsnBinaryReaderWriter(), 10, 1024 * 1024, true));
+        MqttsnTestRuntime runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+        //-- the workspace lock is only released on exit, release it so the workspace can be reopened
+        new File(storageService.getWorkspaceRoot(), ".lck").delete();
+        return runtime;
+    }
+
+    private ISession createSession(MqttsnTestRuntime runtime) throws MqttsnException {
+        IClientIdentifierContext context = new ClientIdentifierContext(MqttsnTestRuntime.TEST_CLIENT_ID);
+        return runtime.getRegistry().getSessionRegistry().getSession(context, true);
+    }
+
+    private static Map<String, byte[]> values(String... keys){
+        Map<String, byte[]> map = new LinkedHashMap<>();
+        for (String key : keys){
+            map.put(key, key.getBytes(StandardCharsets.UTF_8));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.impl.MqttsnStripedExecutor;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class StripedExecutorTests {
+
+    static final int STRIPES = 4;
+    static final int MAX_WAIT = 5000;
+
+    private ExecutorService[] stripes;
+    private MqttsnStripedExecutor executor;
+
+    @Before
+    public void setup() {
+        stripes = new ExecutorService[STRIPES];
+        for (int i = 0; i < STRIPES; i++){
+            stripes[i] = Executors.newSingleThreadExecutor();
+        }
+        executor = new MqttsnStripedExecutor(stripes);
+    }
+
+    @After
+    public void tearDown() {
+        for (ExecutorService stripe : stripes){
+            stripe.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEqualKeysShareAStripe() {
+        for (int port = 1000; port < 1100; port++){
+            Assert.assertSame("equal keys should be assigned the same stripe",
+                    executor.forKey(new InetSocketAddress("127.0.0.1", port)),
+                    executor.forKey(new InetSocketAddress("127.0.0.1", port)));
+        }
+        Assert.assertSame(executor.forKey(null), executor.forKey(null));
+    }
+
+    @Test
+    public void testKeysDifferingInPortSpreadAcrossStripes() {
+        Set<ExecutorService> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int port = 1000; port < 1064; port++){
+            used.add(executor.forKey(new InetSocketAddress("127.0.0.1", port)));
+        }
+        Assert.assertEquals("remotes on one host should use every stripe", STRIPES, used.size());
+    }
+
+    @Test
+    public void testWorkForAKeyRunsInOrderOnOneThread() throws Exception {
+        int keys = 16;
+        int tasks = 500;
+        Map<Integer, List<Integer>> order = new ConcurrentHashMap<>();
+        Map<Integer, Set<Thread>> threads = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(keys * tasks);
+
+        //-- several producers interleave their keys onto the shared stripes
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        try {
+            for (int k = 0; k < keys; k++){
+                final Integer key = k;
+                order.put(key, new ArrayList<>());
+                threads.put(key, ConcurrentHashMap.newKeySet());
+                producers.submit(() -> {
+                    for (int i = 0; i < tasks; i++){
+                        final int seq = i;
+                        executor.forKey(key).submit(() -> {
+                            order.get(key).add(seq);
+                            threads.get(key).add(Thread.currentThread());
+                            done.countDown();
+                        });
+                    }
+                });
+            }
+            Assert.assertTrue("all tasks should run", done.await(MAX_WAIT, TimeUnit.MILLISECONDS));
+        } finally {
+            producers.shutdownNow();
+        }
+
+        for (int k = 0; k < keys; k++){
+            List<Integer> seen = order.get(k);
+            Assert.assertEquals(tasks, seen.size());
+            for (int i = 0; i < tasks; i++){
+                Assert.assertEquals("work for key " + k + " should run in submission order", i, (int) seen.get(i));
+            }
+            Assert.assertEquals("work for key " + k + " should run on one thread", 1, threads.get(k).size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequiresAStripe() {
+        new MqttsnStripedExecutor(new ExecutorService[0]);
+    }
+}
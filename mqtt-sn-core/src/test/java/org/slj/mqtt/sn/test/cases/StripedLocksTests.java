@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slj.mqtt.sn.utils.StripedLocks;
+
+import java.util.*;
+
+/**
+ * Stripes are only observable through the identity of the lock handed out for a key, so spread is measured by
+ * counting the distinct monitors a set of keys maps to.
+ */
+public class StripedLocksTests {
+
+    @Test
+    public void testStripeCountIsRoundedToPowerOfTwo() {
+        Assert.assertEquals(1, new StripedLocks(1).getStripeCount());
+        Assert.assertEquals(2, new StripedLocks(2).getStripeCount());
+        Assert.assertEquals(4, new StripedLocks(3).getStripeCount());
+        Assert.assertEquals(128, new StripedLocks(100).getStripeCount());
+        Assert.assertEquals(256, new StripedLocks(256).getStripeCount());
+        Assert.assertEquals(StripedLocks.DEFAULT_STRIPES, new StripedLocks().getStripeCount());
+    }
+
+    @Test
+    public void testStripeCountIsCapped() {
+        Assert.assertEquals(1 << 16, new StripedLocks((1 << 16) + 1).getStripeCount());
+        Assert.assertEquals(1 << 16, new StripedLocks(Integer.MAX_VALUE).getStripeCount());
+    }
+
+    @Test
+    public void testSameKeySameLock() {
+        StripedLocks locks = new StripedLocks(64, true);
+        Assert.assertSame(locks.mutex("client-1"), locks.mutex(new String("client-1")));
+        Assert.assertSame(locks.readWriteLock("client-1"), locks.readWriteLock(new String("client-1")));
+    }
+
+    @Test
+    public void testKeysSpreadAcrossStripes() {
+        StripedLocks locks = new StripedLocks(256);
+        Map<Object, Integer> counts = new IdentityHashMap<>();
+        for (int i = 0; i < 4096; i++){
+            counts.merge(locks.mutex("client-" + i), 1, Integer::sum);
+        }
+        Assert.assertEquals("every stripe should be used", 256, counts.size());
+        Assert.assertTrue("no stripe should take more than a few times its share",
+                Collections.max(counts.values()) <= 16 * 3);
+    }
+
+    @Test
+    public void testKeysDifferingInHighBitsSpreadAcrossStripes() {
+        //-- keys whose hash codes share the low bits would all land on one stripe without spreading the high bits
+        StripedLocks locks = new StripedLocks(256);
+        Set<Object> mutexes = Collections.newSetFromMap(new IdentityHashMap<>());
+        int found = 0;
+        for (int i = 0; found < 64; i++){
+            String id = "client-" + i;
+            if((id.hashCode() & 0xFF) == 0){
+                mutexes.add(locks.mutex(id));
+                found++;
+            }
+        }
+        Assert.assertTrue("keys sharing low hash bits should use many stripes, used " + mutexes.size(),
+                mutexes.size() > 32);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReadWriteLockRequiresReadWriteStripes() {
+        new StripedLocks(16).readWriteLock("client-1");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullMutexKey() {
+        new StripedLocks(16).mutex(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullReadWriteLockKey() {
+        new StripedLocks(16, true).readWriteLock(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroStripes() {
+        new StripedLocks(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeStripes() {
+        new StripedLocks(-1, true);
+    }
+}
@@ -30,17 +30,19 @@ import org.junit.Before;
 import org.junit.Test;
 import org.slj.mqtt.sn.MqttsnConstants;
 import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
 import org.slj.mqtt.sn.model.IClientIdentifierContext;
-import org.slj.mqtt.sn.model.INetworkContext;
 import org.slj.mqtt.sn.model.session.ISession;
 import org.slj.mqtt.sn.spi.IMqttsnSubscriptionRegistry;
-import org.slj.mqtt.sn.spi.IMqttsnTransport;
 import org.slj.mqtt.sn.spi.MqttsnException;
 import org.slj.mqtt.sn.spi.MqttsnIllegalFormatException;
 import org.slj.mqtt.sn.test.MqttsnTestRuntime;
 import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -51,11 +53,13 @@ public class SubscriptionTests {
     final static String TEST_SINGLE_WILDCARD_TOPIC = "test/+/topic";
     final static String TEST_MULTI_WILDCARD_TOPIC = "test/#";
 
+    private File dir;
     private MqttsnTestRuntime runtime;
 
     @Before
-    public void setup() throws MqttsnException {
-        MqttsnFilesystemStorageService storageService = new MqttsnFilesystemStorageService("mqtt-sn-test");
+    public void setup() throws MqttsnException, IOException {
+        dir = java.nio.file.Files.createTempDirectory("subscription").toFile();
+        MqttsnFilesystemStorageService storageService = new MqttsnFilesystemStorageService(dir, "mqtt-sn-test");
         MqttsnTestRuntimeRegistry registry =
                 MqttsnTestRuntimeRegistry.defaultConfiguration(storageService, MqttsnTestRuntime.TEST_OPTIONS, false);
         runtime = new MqttsnTestRuntime();
@@ -68,6 +72,7 @@ public class SubscriptionTests {
             runtime.stop();
         } finally {
             runtime.close();
+            Files.delete(dir);
         }
     }
 
@@ -109,6 +114,65 @@ public class SubscriptionTests {
                 subscriptionRegistry.matches(TEST_TOPIC).size());
     }
 
+    @Test
+    public void testOverlappingSubscriptionsGrantHighestQoS() throws MqttsnException, MqttsnIllegalFormatException {
+
+        ISession session = createConfirmedTestSession(MqttsnTestRuntime.TEST_CLIENT_ID, 1);
+        ISession other = createConfirmedTestSession(MqttsnTestRuntime.TEST_CLIENT_ID + "other", 1);
+
+        IMqttsnSubscriptionRegistry subscriptionRegistry = runtime.getRegistry().getSubscriptionRegistry();
+        subscriptionRegistry.subscribe(session, TEST_MULTI_WILDCARD_TOPIC, 0);
+        subscriptionRegistry.subscribe(session, TEST_SINGLE_WILDCARD_TOPIC, 2);
+        subscriptionRegistry.subscribe(session, TEST_TOPIC, 1);
+        subscriptionRegistry.subscribe(other, TEST_TOPIC, 1);
+
+        Map<IClientIdentifierContext, Integer> matches = subscriptionRegistry.matchesWithQoS("test/a/topic");
+        Assert.assertEquals("both wildcards should match for the session only", 1, matches.size());
+        Assert.assertEquals("highest overlapping QoS should be granted", Integer.valueOf(2),
+                matches.get(session.getContext()));
+
+        matches = subscriptionRegistry.matchesWithQoS(TEST_TOPIC);
+        Assert.assertEquals("both sessions should match", 2, matches.size());
+        Assert.assertEquals(Integer.valueOf(1), matches.get(session.getContext()));
+
+        subscriptionRegistry.subscribe(session, TEST_SINGLE_WILDCARD_TOPIC, 0);
+        Assert.assertEquals("downgraded subscription should be re-indexed", Integer.valueOf(0),
+                subscriptionRegistry.matchesWithQoS("test/a/topic").get(session.getContext()));
+
+        subscriptionRegistry.unsubscribe(session, TEST_MULTI_WILDCARD_TOPIC);
+        subscriptionRegistry.unsubscribe(session, TEST_TOPIC);
+        Assert.assertEquals("remaining subscription should match", Integer.valueOf(0),
+                subscriptionRegistry.matchesWithQoS("test/a/topic").get(session.getContext()));
+    }
+
+    @Test
+    public void testMatchCacheInvalidatedBySubscriptionChanges() throws MqttsnException, MqttsnIllegalFormatException {
+
+        ISession session = createConfirmedTestSession(MqttsnTestRuntime.TEST_CLIENT_ID, 1);
+        ISession other = createConfirmedTestSession(MqttsnTestRuntime.TEST_CLIENT_ID + "other", 1);
+
+        IMqttsnSubscriptionRegistry subscriptionRegistry = runtime.getRegistry().getSubscriptionRegistry();
+        subscriptionRegistry.subscribe(session, TEST_SINGLE_WILDCARD_TOPIC, 1);
+
+        Map<IClientIdentifierContext, Integer> matches = subscriptionRegistry.matchesWithQoS("test/a/topic");
+        Assert.assertEquals(1, matches.size());
+        Assert.assertSame("repeat match should be served from the cache", matches,
+                subscriptionRegistry.matchesWithQoS("test/a/topic"));
+
+        subscriptionRegistry.subscribe(other, "other/topic", 1);
+        Assert.assertSame("unrelated subscription should not invalidate the cache", matches,
+                subscriptionRegistry.matchesWithQoS("test/a/topic"));
+
+        subscriptionRegistry.subscribe(other, TEST_MULTI_WILDCARD_TOPIC, 2);
+        Assert.assertEquals("matching subscription should invalidate the cache", 2,
+                subscriptionRegistry.matchesWithQoS("test/a/topic").size());
+
+        subscriptionRegistry.unsubscribe(session, TEST_SINGLE_WILDCARD_TOPIC);
+        matches = subscriptionRegistry.matchesWithQoS("test/a/topic");
+        Assert.assertEquals("removed subscription should invalidate the cache", 1, matches.size());
+        Assert.assertEquals(Integer.valueOf(2), matches.get(other.getContext()));
+    }
+
     @Test
     public void testConcurrentAccessSubscriptionManipulated() throws MqttsnException, MqttsnIllegalFormatException {
 
@@ -257,19 +321,12 @@ public class SubscriptionTests {
     public ISession createConfirmedTestSession(String clientId, int protocolVersion)
             throws MqttsnException {
 
-        IClientIdentifierContext context = runtime.getRegistry().getContextFactory().createInitialApplicationContext(
-                createUnconfirmedTestContext(), clientId, protocolVersion);
+        ClientIdentifierContext context = new ClientIdentifierContext(clientId);
+        context.setProtocolVersion(protocolVersion);
         ISession session = runtime.getRegistry().getSessionRegistry().getSession(context, true);
         return session;
     }
 
-    public INetworkContext createUnconfirmedTestContext()
-            throws MqttsnException {
-
-        return runtime.getRegistry().getContextFactory().
-                createInitialNetworkContext((IMqttsnTransport) runtime.getRegistry().getDefaultTransport(), MqttsnTestRuntime.TEST_ADDRESS);
-    }
-
 
 //    @Test
 //    public void testManySubscriptions() throws MqttsnException, MqttsnIllegalFormatException {
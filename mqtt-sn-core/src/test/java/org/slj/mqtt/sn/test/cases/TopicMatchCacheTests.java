@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slj.mqtt.sn.utils.TopicMatchCache;
+import org.slj.mqtt.sn.utils.TopicPath;
+
+import java.util.*;
+
+public class TopicMatchCacheTests {
+
+    static final String[] TOPICS = new String[]{
+            "sport", "sport/tennis", "sport/tennis/player1", "sport/tennis/player1/ranking", "sport/golf/player1",
+            "/sport", "sport/", "/", "other"
+    };
+
+    static final String[] FILTERS = new String[]{
+            "#", "+", "+/+", "/+", "/", "sport/#", "sport/+", "sport/tennis/+", "sport/+/player1", "+/tennis/#",
+            "sport/tennis/player1", "unknown/#"
+    };
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        TopicMatchCache<String> cache = new TopicMatchCache<>(3);
+        cache.put("a", "a");
+        cache.put("b", "b");
+        cache.put("c", "c");
+        Assert.assertEquals("a", cache.get("a"));
+        cache.put("d", "d");
+        Assert.assertEquals(3, cache.size());
+        Assert.assertNull("the least recently used should be evicted", cache.get("b"));
+        Assert.assertEquals("a", cache.get("a"));
+        Assert.assertEquals("c", cache.get("c"));
+        Assert.assertEquals("d", cache.get("d"));
+        Assert.assertEquals("evicted topics should leave the index", 3, cache.invalidate("#"));
+    }
+
+    @Test
+    public void testInvalidateSingleLevelWildcard() {
+        TopicMatchCache<String> cache = filled();
+        Assert.assertEquals(2, cache.invalidate("sport/+/player1"));
+        Assert.assertNull(cache.get("sport/tennis/player1"));
+        Assert.assertNull(cache.get("sport/golf/player1"));
+        Assert.assertNotNull(cache.get("sport/tennis/player1/ranking"));
+        Assert.assertEquals(TOPICS.length - 2, cache.size());
+    }
+
+    @Test
+    public void testInvalidateMultiLevelWildcardIncludesParent() {
+        TopicMatchCache<String> cache = filled();
+        Assert.assertEquals(6, cache.invalidate("sport/#"));
+        Assert.assertNull(cache.get("sport"));
+        Assert.assertNull(cache.get("sport/"));
+        Assert.assertNotNull(cache.get("/sport"));
+        Assert.assertNotNull(cache.get("other"));
+    }
+
+    @Test
+    public void testInvalidateAgreesWithTopicPath() throws Exception {
+        for (String filter : FILTERS){
+            TopicMatchCache<String> cache = filled();
+            Set<String> expected = new HashSet<>();
+            for (String topic : TOPICS){
+                if(new TopicPath(filter).matches(topic)) expected.add(topic);
+            }
+            Assert.assertEquals("removed count for " + filter, expected.size(), cache.invalidate(filter));
+            for (String topic : TOPICS){
+                Assert.assertEquals(filter + " against " + topic, expected.contains(topic), cache.get(topic) == null);
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidateAfterReplaceAndRemove() {
+        TopicMatchCache<String> cache = filled();
+        cache.put("sport/tennis", "replaced");
+        Assert.assertFalse("a stale value should not be removed", cache.remove("sport", "stale"));
+        Assert.assertTrue(cache.remove("sport", "sport"));
+        Assert.assertEquals("each topic is indexed once", 5, cache.invalidate("sport/#"));
+        Assert.assertEquals(0, cache.invalidate("sport/#"));
+        Assert.assertEquals(TOPICS.length - 6, cache.size());
+    }
+
+    private static TopicMatchCache<String> filled() {
+        TopicMatchCache<String> cache = new TopicMatchCache<>(100);
+        for (String topic : TOPICS){
+            cache.put(topic, topic);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.impl.ram.MqttsnInMemoryTopicRegistry;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.MqttsnOptions;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.model.session.impl.SessionBeanImpl;
+import org.slj.mqtt.sn.model.session.impl.TopicRegistrationImpl;
+import org.slj.mqtt.sn.spi.IMqttsnTopicRegistry;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+public class TopicRegistrationTests {
+
+    @Test
+    public void testRegistrationIndexedByAlias() throws MqttsnException {
+
+        SessionBeanImpl session = new SessionBeanImpl(new ClientIdentifierContext("test"), ClientState.ACTIVE);
+        Assert.assertTrue("new registration should be added",
+                session.addTopicRegistration(new TopicRegistrationImpl("foo/bar", 1, true)));
+        Assert.assertEquals("registration should be found by alias", "foo/bar",
+                session.getTopicRegistration(1).getTopicPath());
+
+        Assert.assertFalse("same registration should be accepted again",
+                session.addTopicRegistration(new TopicRegistrationImpl("foo/bar", 1, true)));
+
+        session.addTopicRegistration(new TopicRegistrationImpl("foo/bar", 2, true));
+        Assert.assertNull("old alias should be released", session.getTopicRegistration(1));
+        Assert.assertEquals("registration should be found by new alias", "foo/bar",
+                session.getTopicRegistration(2).getTopicPath());
+        Assert.assertEquals("one alias should be in use", 1, session.getRegisteredAliases().size());
+
+        session.removeTopicRegistration(new TopicRegistrationImpl("foo/bar", 2, true));
+        Assert.assertNull("alias should be released on remove", session.getTopicRegistration(2));
+        Assert.assertTrue("no aliases should be in use", session.getRegisteredAliases().isEmpty());
+    }
+
+    @Test(expected = MqttsnException.class)
+    public void testAliasConflictRejected() throws MqttsnException {
+
+        SessionBeanImpl session = new SessionBeanImpl(new ClientIdentifierContext("test"), ClientState.ACTIVE);
+        session.addTopicRegistration(new TopicRegistrationImpl("foo/bar", 1, true));
+        session.addTopicRegistration(new TopicRegistrationImpl("foo/baz", 1, true));
+    }
+
+    @Test
+    public void testPredefinedIndexRebuiltOnlyOnChange() throws MqttsnException, IOException {
+
+        File dir = java.nio.file.Files.createTempDirectory("predefined").toFile();
+        MqttsnOptions options = new MqttsnOptions().withPredefinedTopic("foo/bar", 1);
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "predefined"), options, false);
+        IndexedTopicRegistry topicRegistry = new IndexedTopicRegistry();
+        registry.withServiceReplaceIfExists(IMqttsnTopicRegistry.class, topicRegistry);
+        MqttsnTestRuntime runtime = new MqttsnTestRuntime();
+        try {
+            runtime.start(registry);
+            ClientIdentifierContext context = new ClientIdentifierContext("test");
+            context.setProtocolVersion(1);
+            ISession session = registry.getSessionRegistry().getSession(context, true);
+
+            Assert.assertEquals("foo/bar", topicRegistry.lookupPredefined(session, 1));
+            Map<Integer, String> index = topicRegistry.index();
+            Assert.assertNull("unknown alias should not be found", topicRegistry.lookupPredefined(session, 2));
+            Assert.assertNull(topicRegistry.lookupPredefined(session, 3));
+            Assert.assertSame("a miss should not rebuild the index", index, topicRegistry.index());
+
+            options.withPredefinedTopic("foo/baz", 2);
+            Assert.assertEquals("a new predefined topic should be found", "foo/baz", topicRegistry.lookupPredefined(session, 2));
+            Assert.assertNotSame(index, topicRegistry.index());
+
+            index = topicRegistry.index();
+            options.getPredefinedTopics().remove("foo/bar");
+            Assert.assertNull("a removed predefined topic should not be found", topicRegistry.lookupPredefined(session, 1));
+            Assert.assertEquals("foo/baz", topicRegistry.lookupPredefined(session, 2));
+            Assert.assertNotSame(index, topicRegistry.index());
+        } finally {
+            runtime.stop();
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testPredefinedTopicChangesAreVersioned() {
+        MqttsnOptions options = new MqttsnOptions();
+        Map<String, Integer> topics = options.getPredefinedTopics();
+
+        int version = options.getPredefinedTopicsVersion();
+        topics.put("foo/bar", 1);
+        version = assertChanged(options, version, "put");
+        topics.putAll(Collections.singletonMap("foo/baz", 2));
+        version = assertChanged(options, version, "putAll");
+        topics.merge("foo/bar", 3, (a, b) -> b);
+        version = assertChanged(options, version, "merge");
+        topics.entrySet().iterator().next().setValue(4);
+        version = assertChanged(options, version, "entry setValue");
+        topics.replaceAll((k, v) -> v + 10);
+        version = assertChanged(options, version, "replaceAll");
+        Assert.assertEquals(2, topics.size());
+        Assert.assertTrue(topics.values().contains(12));
+
+        topics.remove("foo/missing");
+        Assert.assertEquals("removing a missing topic is not a change", version, options.getPredefinedTopicsVersion());
+        topics.keySet().remove("foo/baz");
+        version = assertChanged(options, version, "keySet remove");
+        topics.values().removeIf(v -> true);
+        version = assertChanged(options, version, "values removeIf");
+        Assert.assertTrue(topics.isEmpty());
+
+        topics.put("foo/bar", 1);
+        version = assertChanged(options, version, "put");
+        topics.clear();
+        assertChanged(options, version, "clear");
+    }
+
+    private static int assertChanged(MqttsnOptions options, int version, String operation) {
+        Assert.assertNotEquals(operation + " should change the predefined topics version",
+                version, options.getPredefinedTopicsVersion());
+        return options.getPredefinedTopicsVersion();
+    }
+
+    static class IndexedTopicRegistry extends MqttsnInMemoryTopicRegistry {
+
+        Map<Integer, String> index() {
+            return getPredefinedTopicsForInteger(null);
+        }
+    }
+}
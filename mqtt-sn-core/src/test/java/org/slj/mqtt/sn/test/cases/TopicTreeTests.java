@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.MqttsnConstants;
+import org.slj.mqtt.sn.utils.MqttsnTopicTree;
+import org.slj.mqtt.tree.MqttTree;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class TopicTreeTests {
+
+    private MqttTree<String> tree;
+
+    @Before
+    public void setup() {
+        tree = new MqttsnTopicTree<>(MqttsnConstants.PATH_SEP, true);
+    }
+
+    @Test
+    public void testTerminatingSingleLevelWildcardMatchesLastLevel() throws Exception {
+        tree.subscribe("sport/tennis/+", "a");
+        Assert.assertEquals(Collections.singleton("a"), tree.search("sport/tennis/player1"));
+    }
+
+    @Test
+    public void testTerminatingSingleLevelWildcardMatchesOneLevelOnly() throws Exception {
+        tree.subscribe("sport/tennis/+", "a");
+        Assert.assertTrue("the wildcard should not match the level above it",
+                tree.search("sport/tennis").isEmpty());
+        Assert.assertTrue("the wildcard should not match more than one level",
+                tree.search("sport/tennis/player1/ranking").isEmpty());
+    }
+
+    @Test
+    public void testSingleLevelWildcardAlone() throws Exception {
+        tree.subscribe("+", "a");
+        Assert.assertEquals(Collections.singleton("a"), tree.search("sport"));
+        Assert.assertTrue(tree.search("sport/tennis").isEmpty());
+    }
+
+    @Test
+    public void testTerminatingWildcardAlongsideOtherFilters() throws Exception {
+        tree.subscribe("sport/tennis/+", "a");
+        tree.subscribe("sport/tennis/player1", "b");
+        tree.subscribe("sport/+/player1", "c");
+        tree.subscribe("sport/#", "d");
+        tree.subscribe("sport/tennis/+/#", "e");
+        tree.subscribe("sport/football/+", "f");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d", "e")),
+                tree.search("sport/tennis/player1"));
+    }
+
+    @Test
+    public void testUnsubscribedTerminatingWildcardNoLongerMatches() throws Exception {
+        tree.subscribe("sport/tennis/+", "a");
+        tree.unsubscribe("sport/tennis/+", "a");
+        Assert.assertTrue(tree.search("sport/tennis/player1").isEmpty());
+    }
+}
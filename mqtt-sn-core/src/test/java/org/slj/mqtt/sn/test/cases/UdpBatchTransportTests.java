@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.model.INetworkContext;
+import org.slj.mqtt.sn.net.MqttsnUdpBatchTransport;
+import org.slj.mqtt.sn.net.MqttsnUdpOptions;
+import org.slj.mqtt.sn.net.NetworkAddress;
+import org.slj.mqtt.sn.net.NetworkContext;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the batching UDP transport over loopback against a plain datagram socket. The datagrams received are
+ * captured in place of being decoded.
+ */
+public class UdpBatchTransportTests {
+
+    static final int MAX_WAIT = 5000;
+
+    private File dir;
+    private MqttsnTestRuntime runtime;
+    private CapturingTransport transport;
+    private DatagramSocket socket;
+    private INetworkContext context;
+
+    private void start(MqttsnUdpOptions options, int queueSize, boolean holdFirstBatch)
+            throws MqttsnException, IOException {
+        dir = java.nio.file.Files.createTempDirectory("udp-batch").toFile();
+        int port;
+        try (DatagramSocket probe = new DatagramSocket(0, InetAddress.getLoopbackAddress())){
+            port = probe.getLocalPort();
+        }
+        options.withPort(port);
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "udp-batch"), MqttsnTestRuntime.TEST_OPTIONS, false);
+        transport = new CapturingTransport(options, queueSize, holdFirstBatch);
+        registry.withTransport(transport);
+        runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+
+        socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        socket.setSoTimeout(MAX_WAIT);
+        context = new NetworkContext(transport,
+                NetworkAddress.from((InetSocketAddress) socket.getLocalSocketAddress()));
+    }
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            if(socket != null) socket.close();
+            if(runtime != null) runtime.stop();
+        } finally {
+            if(dir != null) Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testReceive() throws Exception {
+        start(new MqttsnUdpOptions(), 16, false);
+        InetSocketAddress gateway = new InetSocketAddress(InetAddress.getLoopbackAddress(), transport.getPort());
+        for (int i = 0; i < 3; i++){
+            byte[] data = datagram(6, i);
+            socket.send(new DatagramPacket(data, data.length, gateway));
+            byte[] received = transport.received.poll(MAX_WAIT, TimeUnit.MILLISECONDS);
+            Assert.assertArrayEquals(data, received);
+        }
+    }
+
+    @Test
+    public void testBatchedSendsArriveInOrder() throws Exception {
+        int count = 50;
+        start(new MqttsnUdpOptions().withBatchSize(8).withBatchLingerMillis(20), count, false);
+        for (int i = 0; i < count; i++){
+            write(datagram(10, i));
+        }
+        for (int i = 0; i < count; i++){
+            Assert.assertArrayEquals(datagram(10, i), receive());
+        }
+        //-- the counters are updated after the datagram leaves the socket, so may lag the receive
+        Assert.assertEquals(count, awaitDetail("Datagrams sent", count));
+        long batches = detail("Batches sent");
+        Assert.assertEquals(0, detail("Datagrams dropped"));
+        Assert.assertTrue("datagrams should be sent in batches, was " + batches, batches > 0 && batches < count);
+    }
+
+    @Test
+    public void testRepliesLeaveFromTheGatewayPort() throws Exception {
+        start(new MqttsnUdpOptions(), 16, false);
+        write(datagram(4, 1));
+        DatagramPacket packet = new DatagramPacket(new byte[64], 64);
+        socket.receive(packet);
+        Assert.assertEquals(transport.getPort(), packet.getPort());
+    }
+
+    @Test
+    public void testDropNewestWhenQueueFull() throws Exception {
+        start(new MqttsnUdpOptions().withBatchSize(1).
+                withBatchOverflowPolicy(MqttsnUdpOptions.BATCH_OVERFLOW_POLICY.DROP_NEWEST), 2, true);
+        fillWhileHeld();
+        Assert.assertArrayEquals(datagram(4, 0), receive());
+        Assert.assertArrayEquals(datagram(4, 1), receive());
+        Assert.assertArrayEquals(datagram(4, 2), receive());
+        Assert.assertEquals(1, detail("Datagrams dropped"));
+    }
+
+    @Test
+    public void testDropOldestWhenQueueFull() throws Exception {
+        start(new MqttsnUdpOptions().withBatchSize(1).
+                withBatchOverflowPolicy(MqttsnUdpOptions.BATCH_OVERFLOW_POLICY.DROP_OLDEST), 2, true);
+        fillWhileHeld();
+        Assert.assertArrayEquals(datagram(4, 0), receive());
+        Assert.assertArrayEquals(datagram(4, 2), receive());
+        Assert.assertArrayEquals(datagram(4, 3), receive());
+        Assert.assertEquals(1, detail("Datagrams dropped"));
+    }
+
+    /**
+     * The first datagram is taken by the sender which is then held, the next three are offered to a queue of 2
+     */
+    private void fillWhileHeld() throws Exception {
+        write(datagram(4, 0));
+        Assert.assertTrue(transport.holding.await(MAX_WAIT, TimeUnit.MILLISECONDS));
+        for (int i = 1; i < 4; i++){
+            write(datagram(4, i));
+        }
+        transport.release.countDown();
+    }
+
+    private void write(byte[] data) throws Exception {
+        //-- wait for each write to reach the send queue so the order of the queue is the order written
+        transport.writeToTransport(context, data).get(MAX_WAIT, TimeUnit.MILLISECONDS);
+    }
+
+    private byte[] receive() throws IOException {
+        DatagramPacket packet = new DatagramPacket(new byte[64], 64);
+        socket.receive(packet);
+        byte[] data = new byte[packet.getLength()];
+        System.arraycopy(packet.getData(), packet.getOffset(), data, 0, data.length);
+        return data;
+    }
+
+    private long awaitDetail(String name, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + MAX_WAIT;
+        long value;
+        while((value = detail(name)) != expected && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        return value;
+    }
+
+    private long detail(String name) {
+        for (String[] row : transport.getTransportDetails().getRows()){
+            if(name.equals(row[0])) return Long.parseLong(row[1]);
+        }
+        throw new IllegalStateException("no row " + name);
+    }
+
+    private static byte[] datagram(int length, int fill){
+        byte[] datagram = new byte[length];
+        datagram[0] = (byte) length;
+        for (int i = 1; i < length; i++){
+            datagram[i] = (byte) (fill + i);
+        }
+        return datagram;
+    }
+
+    static class CapturingTransport extends MqttsnUdpBatchTransport {
+
+        final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+        final CountDownLatch holding = new CountDownLatch(1);
+        final CountDownLatch release;
+
+        CapturingTransport(MqttsnUdpOptions options, int queueSize, boolean holdFirstBatch) {
+            super(options, queueSize);
+            release = new CountDownLatch(holdFirstBatch ? 1 : 0);
+        }
+
+        @Override
+        protected void sendBatch(List<QueuedDatagram> batch) {
+            holding.countDown();
+            try {
+                release.await(MAX_WAIT, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            super.sendBatch(batch);
+        }
+
+        @Override
+        protected void receiveFromTransportInternal(INetworkContext context, byte[] data) {
+            received.add(data);
+        }
+    }
+}
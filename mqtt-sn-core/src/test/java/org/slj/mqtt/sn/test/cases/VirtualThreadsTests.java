@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.test.cases;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.model.MqttsnOptions;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.test.MqttsnTestRuntime;
+import org.slj.mqtt.sn.test.MqttsnTestRuntimeRegistry;
+import org.slj.mqtt.sn.utils.Files;
+import org.slj.mqtt.sn.utils.VirtualThreads;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Virtual threads are only available from JDK 21; on earlier JVMs the virtual path is skipped and the runtime is
+ * checked to fall back to platform threads.
+ */
+public class VirtualThreadsTests {
+
+    static final int MAX_WAIT = 5000;
+
+    private File dir;
+    private MqttsnTestRuntime runtime;
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            if(runtime != null) runtime.stop();
+        } finally {
+            if(dir != null) Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testSupportMatchesJvm() {
+        //-- 19 and 20 support them only as a preview, so either answer is valid there
+        int version = javaVersion();
+        if(version >= 21) Assert.assertTrue("virtual threads should be supported from JDK 21", VirtualThreads.isSupported());
+        if(version < 19) Assert.assertFalse("virtual threads should not be supported before JDK 19", VirtualThreads.isSupported());
+    }
+
+    @Test
+    public void testCreateVirtualThread() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+        CompletableFuture<Thread> ran = new CompletableFuture<>();
+        Thread thread = VirtualThreads.createThread("virtual-test", () -> ran.complete(Thread.currentThread()));
+        Assert.assertEquals("virtual-test", thread.getName());
+        Assert.assertTrue(isVirtual(thread));
+        thread.start();
+        Assert.assertSame(thread, ran.get(MAX_WAIT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testVirtualFactoryNamesAndHandlesErrors() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+        CompletableFuture<Throwable> uncaught = new CompletableFuture<>();
+        ThreadFactory factory = VirtualThreads.createFactory("virtual-pool-", (t, e) -> uncaught.complete(e));
+        Thread first = factory.newThread(() -> {});
+        Thread second = factory.newThread(() -> { throw new IllegalStateException("expected"); });
+        Assert.assertEquals("virtual-pool-1", first.getName());
+        Assert.assertEquals("virtual-pool-2", second.getName());
+        Assert.assertTrue(isVirtual(first));
+        second.start();
+        Assert.assertTrue(uncaught.get(MAX_WAIT, TimeUnit.MILLISECONDS) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testRuntimeUsesVirtualThreads() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+        start(true);
+        Assert.assertTrue(runtime.isVirtualThreads());
+        Assert.assertTrue("general purpose work should run on a virtual thread", isVirtual(generalPurposeThread()));
+    }
+
+    @Test
+    public void testUnsupportedJvmThrows() {
+        Assume.assumeFalse(VirtualThreads.isSupported());
+        try {
+            VirtualThreads.createThread("virtual-test", () -> {});
+            Assert.fail("creating a virtual thread should fail when unsupported");
+        } catch(UnsupportedOperationException e){
+        }
+        try {
+            VirtualThreads.createFactory("virtual-pool-", null);
+            Assert.fail("creating a virtual thread factory should fail when unsupported");
+        } catch(UnsupportedOperationException e){
+        }
+    }
+
+    @Test
+    public void testRuntimeFallsBackToPlatformThreads() throws Exception {
+        Assume.assumeFalse(VirtualThreads.isSupported());
+        start(true);
+        Assert.assertFalse("an unsupported JVM should fall back", runtime.isVirtualThreads());
+        assertPlatformThread(generalPurposeThread());
+    }
+
+    @Test
+    public void testPlatformThreadsByDefault() throws Exception {
+        start(false);
+        Assert.assertFalse(runtime.isVirtualThreads());
+        assertPlatformThread(generalPurposeThread());
+    }
+
+    private void start(boolean virtualThreads) throws MqttsnException, IOException {
+        dir = java.nio.file.Files.createTempDirectory("virtual-threads").toFile();
+        MqttsnOptions options = new MqttsnOptions().withVirtualThreads(virtualThreads);
+        MqttsnTestRuntimeRegistry registry = MqttsnTestRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "virtual-threads"), options, false);
+        runtime = new MqttsnTestRuntime();
+        runtime.start(registry);
+    }
+
+    private Thread generalPurposeThread() throws Exception {
+        CompletableFuture<Thread> ran = new CompletableFuture<>();
+        runtime.generalPurposeSubmit(() -> ran.complete(Thread.currentThread()));
+        return ran.get(MAX_WAIT, TimeUnit.MILLISECONDS);
+    }
+
+    private static void assertPlatformThread(Thread thread) {
+        Assert.assertFalse("should be a platform thread", isVirtual(thread));
+        Assert.assertTrue("unexpected thread " + thread.getName(),
+                thread.getName().startsWith("mqtt-sn-general-purpose-thread-"));
+    }
+
+    /**
+     * Thread#isVirtual does not exist before JDK 19, where every thread is a platform thread
+     */
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch(NoSuchMethodException e){
+            return false;
+        } catch(Exception e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+}
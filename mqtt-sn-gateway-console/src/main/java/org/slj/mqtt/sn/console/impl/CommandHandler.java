@@ -29,6 +29,7 @@ import org.slj.mqtt.sn.console.http.HttpConstants;
 import org.slj.mqtt.sn.console.http.HttpException;
 import org.slj.mqtt.sn.console.http.HttpInternalServerError;
 import org.slj.mqtt.sn.console.http.IHttpRequestResponse;
+import org.slj.mqtt.sn.impl.MqttsnSegmentedFileMessageQueue;
 import org.slj.mqtt.sn.impl.ram.MqttsnFileBackedInMemoryMessageQueue;
 import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
 
@@ -54,6 +55,11 @@ public class CommandHandler extends MqttsnConsoleAjaxRealmHandler {
                         writeMessageBeanResponse(request, HttpConstants.SC_OK, new Message("Successfully cleared system cache"));
                         return;
                     }
+                    else if(getRegistry().getMessageQueue() instanceof MqttsnSegmentedFileMessageQueue){
+                        ((MqttsnSegmentedFileMessageQueue)getRegistry().getMessageQueue()).clearFilesystemOnly();
+                        writeMessageBeanResponse(request, HttpConstants.SC_OK, new Message("Successfully cleared system cache"));
+                        return;
+                    }
                     else {
                         writeMessageBeanResponse(request, HttpConstants.SC_OK, new Message("Unable to clear system cache", false));
                         return;
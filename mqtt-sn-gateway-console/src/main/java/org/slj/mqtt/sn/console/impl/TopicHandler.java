@@ -61,6 +61,7 @@ public class TopicHandler extends MqttsnConsoleAjaxRealmHandler {
                         writeMessageBeanResponse(request, HttpConstants.SC_OK, new Message("Topic already existed", false));
                     } else {
                         aliass.put(topic, topicAlias);
+                        registry.getOptions().predefinedTopicsChanged();
                         writeMessageBeanResponse(request, HttpConstants.SC_OK, new Message("New Predefined Topic Alias added", true));
                         modified = true;
                     }
@@ -85,6 +86,7 @@ public class TopicHandler extends MqttsnConsoleAjaxRealmHandler {
                 String topicPath = getParameter(request, "remove");
                 Map<String, Integer> aliass = registry.getOptions().getPredefinedTopics();
                 if(aliass.remove(topicPath) != null){
+                    registry.getOptions().predefinedTopicsChanged();
                     modified = true;
                 }
                 writeMessageBeanResponse(request, HttpConstants.SC_OK, new Message("Removed Client Identifier from runtime (if existed)", modified));
@@ -33,6 +33,7 @@ import org.slj.mqtt.sn.gateway.spi.gateway.MqttsnGatewayOptions;
 import org.slj.mqtt.sn.impl.AbstractMqttsnRuntime;
 import org.slj.mqtt.sn.impl.AbstractMqttsnRuntimeRegistry;
 import org.slj.mqtt.sn.impl.ram.MqttsnInMemoryMessageStateService;
+import org.slj.mqtt.sn.impl.ram.MqttsnInMemorySlotMessageStateService;
 import org.slj.mqtt.sn.model.*;
 import org.slj.mqtt.sn.model.session.ISession;
 import org.slj.mqtt.sn.net.MqttsnUdpBatchTransport;
@@ -234,14 +235,19 @@ public abstract class MqttsnInteractiveGateway extends AbstractInteractiveCli {
 
     protected void inflight(){
         MqttsnGatewayRuntimeRegistry gatewayRuntimeRegistry = getRuntimeRegistry();
-        List<IClientIdentifierContext> m = ((MqttsnInMemoryMessageStateService)gatewayRuntimeRegistry.getMessageStateService()).getActiveInflights();
-        Iterator<IClientIdentifierContext> itr = m.iterator();
-        while (itr.hasNext()){
-            IClientIdentifierContext c = itr.next();
-            renderInflight(c,
-                ((MqttsnInMemoryMessageStateService)gatewayRuntimeRegistry.getMessageStateService()).getInflightMessages(c, IMqttsnOriginatingMessageSource.LOCAL));
-            renderInflight(c,
-                    ((MqttsnInMemoryMessageStateService)gatewayRuntimeRegistry.getMessageStateService()).getInflightMessages(c, IMqttsnOriginatingMessageSource.REMOTE));
+        IMqttsnMessageStateService stateService = gatewayRuntimeRegistry.getMessageStateService();
+        if(stateService instanceof MqttsnInMemoryMessageStateService){
+            MqttsnInMemoryMessageStateService service = (MqttsnInMemoryMessageStateService) stateService;
+            for (IClientIdentifierContext c : service.getActiveInflights()){
+                renderInflight(c, service.getInflightMessages(c, IMqttsnOriginatingMessageSource.LOCAL));
+                renderInflight(c, service.getInflightMessages(c, IMqttsnOriginatingMessageSource.REMOTE));
+            }
+        } else if(stateService instanceof MqttsnInMemorySlotMessageStateService){
+            MqttsnInMemorySlotMessageStateService service = (MqttsnInMemorySlotMessageStateService) stateService;
+            for (IClientIdentifierContext c : service.getActiveInflights()){
+                renderInflight(c, service.getInflightMessages(c, IMqttsnOriginatingMessageSource.LOCAL));
+                renderInflight(c, service.getInflightMessages(c, IMqttsnOriginatingMessageSource.REMOTE));
+            }
         }
     }
 
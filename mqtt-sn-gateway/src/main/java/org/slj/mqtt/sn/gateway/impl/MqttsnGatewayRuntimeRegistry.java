@@ -57,10 +57,11 @@ public class MqttsnGatewayRuntimeRegistry extends AbstractMqttsnRuntimeRegistry
                 withWillRegistry(new MqttsnInMemoryWillRegistry()).
                 withTopicModifier(new MqttsnDefaultTopicModifier()).
                 withMessageQueue(new MqttsnInMemoryMessageQueue()).
-//                withMessageQueue(new MqttsnFileBackedInMemoryMessageQueue(
-//                        new MqttsnJacksonReaderWriter())).
+//                withMessageQueue(new MqttsnSegmentedFileMessageQueue(
+//                        new MqttsnBinaryReaderWriter())).
                 withContextFactory(new MqttsnContextFactory()).
                 withSessionRegistry(new MqttsnSessionRegistry()).
+//                withSessionRegistry(new MqttsnDurableSessionRegistry()).
                 withSecurityService(new MqttsnSecurityService()).
                 withTopicRegistry(new MqttsnInMemoryTopicRegistry()).
                 withMetrics(new MqttsnMetricsService()).
@@ -73,6 +74,10 @@ public class MqttsnGatewayRuntimeRegistry extends AbstractMqttsnRuntimeRegistry
                 withMessageStateService(new MqttsnInMemoryMessageStateService(false));
 
         registry.withProtocolBridgeService(new ProtocolBridgeService());
+        if(options.isRetainedMessagesEnabled()){
+            registry.withRetainedMessageStore(new MqttsnInMemoryRetainedMessageStore());
+//            registry.withRetainedMessageStore(new MqttsnInMemoryRetainedMessageStore(true));
+        }
         return registry;
     }
 
@@ -106,6 +111,11 @@ public class MqttsnGatewayRuntimeRegistry extends AbstractMqttsnRuntimeRegistry
         return this;
     }
 
+    public MqttsnGatewayRuntimeRegistry withRetainedMessageStore(IMqttsnRetainedMessageStore retainedMessageStore){
+        withService(retainedMessageStore);
+        return this;
+    }
+
     @Override
     public IMqttsnGatewaySessionService getGatewaySessionService() {
         return getService(IMqttsnGatewaySessionService.class);
@@ -135,6 +145,11 @@ public class MqttsnGatewayRuntimeRegistry extends AbstractMqttsnRuntimeRegistry
         return getService(IMqttsnGatewayExpansionHandler.class);
     }
 
+    @Override
+    public IMqttsnRetainedMessageStore getRetainedMessageStore() {
+        return getOptionalService(IMqttsnRetainedMessageStore.class).orElse(null);
+    }
+
     @Override
     public IMqttsnGatewayRuntimeRegistry withProtocolBridgeService(IProtocolBridgeService protocolBridge) {
         withService(protocolBridge);
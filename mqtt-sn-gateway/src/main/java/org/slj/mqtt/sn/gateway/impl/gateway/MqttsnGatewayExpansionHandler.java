@@ -27,17 +27,21 @@ package org.slj.mqtt.sn.gateway.impl.gateway;
 import org.slj.mqtt.sn.PublishData;
 import org.slj.mqtt.sn.gateway.spi.GatewayMetrics;
 import org.slj.mqtt.sn.gateway.spi.gateway.IMqttsnGatewayExpansionHandler;
+import org.slj.mqtt.sn.gateway.spi.gateway.IMqttsnGatewayRuntimeRegistry;
+import org.slj.mqtt.sn.gateway.spi.gateway.IMqttsnRetainedMessageStore;
 import org.slj.mqtt.sn.model.IClientIdentifierContext;
 import org.slj.mqtt.sn.model.IDataRef;
 import org.slj.mqtt.sn.model.MqttsnDeadLetterQueueBean;
-import org.slj.mqtt.sn.model.MqttsnQueueAcceptException;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
 import org.slj.mqtt.sn.model.session.ISession;
 import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
 import org.slj.mqtt.sn.spi.AbstractMqttsnService;
 import org.slj.mqtt.sn.spi.MqttsnException;
 import org.slj.mqtt.sn.spi.MqttsnIllegalFormatException;
 
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -51,26 +55,36 @@ public class MqttsnGatewayExpansionHandler extends AbstractMqttsnService impleme
 
     @Override
     public void receiveToSessions(String topicPath, int qos, boolean retained, byte[] payload) throws MqttsnException {
-        Set<IClientIdentifierContext> recipients = null;
+        IMqttsnRetainedMessageStore store = ((IMqttsnGatewayRuntimeRegistry) getRegistry()).getRetainedMessageStore();
+        if(retained && store != null){
+            try {
+                store.retain(topicPath, qos, payload);
+            } catch(MqttsnException e){
+                logger.warn("unable to retain message on {}, continue with expansion", topicPath, e);
+            }
+        }
+
+        Map<IClientIdentifierContext, Integer> recipients = null;
         try {
-            recipients = getRegistry().getSubscriptionRegistry().matches(topicPath);
+            recipients = getRegistry().getSubscriptionRegistry().matchesWithQoS(topicPath);
         } catch(MqttsnIllegalFormatException e){
             throw new MqttsnException("illegal format supplied", e);
         }
 
         logger.debug("receiving broker side message into [{}] sessions", recipients.size());
 
+        //-- the payload is stored once and every recipient's message references it, along with the one publish data
         IDataRef dataId = getRegistry().getMessageRegistry().add(payload);
-        int successfulExpansion = 0;
         PublishData data = new PublishData(topicPath, qos, retained);
+        List<ISession> sessions = new ArrayList<>(recipients.size());
+        List<IQueuedPublishMessage> messages = new ArrayList<>(recipients.size());
 
-        for (IClientIdentifierContext context : recipients){
+        for (Map.Entry<IClientIdentifierContext, Integer> recipient : recipients.entrySet()){
+            IClientIdentifierContext context = recipient.getKey();
             try {
                 ISession session = getRegistry().getSessionRegistry().getSession(context, false);
-                int grantedQos = registry.getSubscriptionRegistry().getQos(session, topicPath);
-                grantedQos = Math.min(grantedQos,qos);
                 QueuedPublishMessageImpl impl = new QueuedPublishMessageImpl(dataId, data);
-                impl.setGrantedQoS(grantedQos);
+                impl.setGrantedQoS(Math.min(recipient.getValue(), qos));
                 if(session != null){
                     if(session.getMaxPacketSize() != 0 &&
                             payload.length + 9 > session.getMaxPacketSize()){
@@ -79,23 +93,38 @@ public class MqttsnGatewayExpansionHandler extends AbstractMqttsnService impleme
                                 MqttsnDeadLetterQueueBean.REASON.MAX_SIZE_EXCEEDED,
                                 context, impl);
                     } else {
-                        try {
-                            registry.getMessageQueue().offer(session, impl);
-                            successfulExpansion++;
-                        } catch(MqttsnQueueAcceptException e){
-                            //-- the queue was full nothing to be done here
-                        }
+                        sessions.add(session);
+                        messages.add(impl);
                     }
                 } else {
                     logger.warn("detected <null> session state for subscription ({})", context);
                 }
             } catch(MqttsnException e){
                 logger.warn("detected issue for session receipt.. ignore client ({})", context, e);
-            } finally {
-                getRegistry().getMetrics().getMetric(GatewayMetrics.BACKEND_CONNECTOR_EXPANSION).increment(1);
             }
         }
 
+        int successfulExpansion = 0;
+        try {
+            if(!sessions.isEmpty()){
+                boolean[] accepted = registry.getMessageQueue().offerAll(sessions, messages);
+                for (int i = 0; i < accepted.length; i++){
+                    if(accepted[i]){
+                        successfulExpansion++;
+                    } else {
+                        logger.debug("message on {} was not accepted by the queue for [{}]",
+                                topicPath, sessions.get(i).getContext());
+                    }
+                }
+                if(successfulExpansion < accepted.length){
+                    logger.warn("message on {} was not accepted by {} of {} recipient queues",
+                            topicPath, accepted.length - successfulExpansion, accepted.length);
+                }
+            }
+        } finally {
+            getRegistry().getMetrics().getMetric(GatewayMetrics.BACKEND_CONNECTOR_EXPANSION).increment(recipients.size());
+        }
+
         getRegistry().getMetrics().getMetric(GatewayMetrics.BACKEND_CONNECTOR_PUBLISH_RECEIVE).increment(1);
 
         if(successfulExpansion == 0){
@@ -27,20 +27,28 @@ package org.slj.mqtt.sn.gateway.impl.gateway;
 import org.slj.mqtt.sn.MqttsnConstants;
 import org.slj.mqtt.sn.MqttsnMessageRules;
 import org.slj.mqtt.sn.MqttsnSpecificationValidator;
+import org.slj.mqtt.sn.PublishData;
 import org.slj.mqtt.sn.codec.MqttsnCodecException;
 import org.slj.mqtt.sn.gateway.spi.*;
 import org.slj.mqtt.sn.gateway.spi.gateway.IMqttsnGatewayRuntimeRegistry;
+import org.slj.mqtt.sn.gateway.spi.gateway.IMqttsnRetainedMessageStore;
+import org.slj.mqtt.sn.gateway.spi.gateway.MqttsnRetainedMessage;
 import org.slj.mqtt.sn.impl.AbstractMqttsnMessageHandler;
+import org.slj.mqtt.sn.model.IDataRef;
 import org.slj.mqtt.sn.model.IMqttsnMessageContext;
 import org.slj.mqtt.sn.model.ClientState;
+import org.slj.mqtt.sn.model.MqttsnQueueAcceptException;
 import org.slj.mqtt.sn.model.TopicInfo;
 import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.model.session.impl.QueuedPublishMessageImpl;
 import org.slj.mqtt.sn.spi.*;
 import org.slj.mqtt.sn.utils.MqttsnUtils;
 import org.slj.mqtt.sn.wire.MqttsnWireUtils;
 import org.slj.mqtt.sn.wire.version1_2.payload.*;
 import org.slj.mqtt.sn.wire.version2_0.payload.*;
 
+import java.util.List;
+
 public class MqttsnGatewayMessageHandler
         extends AbstractMqttsnMessageHandler {
 
@@ -114,6 +122,12 @@ public class MqttsnGatewayMessageHandler
             }
 
             ISession session = context.getSession();
+            if(session != null && messageOut != null && !messageOut.isErrorMessage() &&
+                    (messageIn instanceof MqttsnSubscribe || messageIn instanceof MqttsnSubscribe_V2_0)){
+                //-- the SUBACK has gone, so any retained messages can now follow it
+                queueRetainedMessages(session, messageIn);
+            }
+
             if(session != null){
                 //active session means we can try and see if there is anything to flush here if its a terminal message
                 if(messageIn != null && MqttsnMessageRules.isTerminalMessage(getRegistry().getCodec(), messageIn) && !messageIn.isErrorMessage() ||
@@ -131,6 +145,51 @@ public class MqttsnGatewayMessageHandler
         }
     }
 
+    /**
+     * Queue the retained messages which match a new subscription from the retained message store (when one is
+     * configured), so a subscriber receives them without a round trip to the backend.
+     */
+    protected void queueRetainedMessages(ISession session, IMqttsnMessage subscribe) throws MqttsnException {
+
+        IMqttsnRetainedMessageStore store = getRegistry().getRetainedMessageStore();
+        if(store == null) return;
+
+        int topicIdType;
+        byte[] topicData;
+        if(subscribe instanceof MqttsnSubscribe_V2_0){
+            topicIdType = ((MqttsnSubscribe_V2_0) subscribe).getTopicIdType();
+            topicData = ((MqttsnSubscribe_V2_0) subscribe).getTopicData();
+        } else {
+            topicIdType = ((MqttsnSubscribe) subscribe).getTopicType();
+            topicData = ((MqttsnSubscribe) subscribe).getTopicData();
+        }
+
+        TopicInfo info = registry.getTopicRegistry().normalize((byte) topicIdType, topicData, topicIdType == 0);
+        String topicPath = info.getType() == MqttsnConstants.TOPIC_TYPE.PREDEFINED ?
+                registry.getTopicRegistry().lookupPredefined(session, info.getTopicId()) : info.getTopicPath();
+        if(topicPath == null) return;
+
+        topicPath = registry.getTopicModifier().modifyTopic(session.getContext(), topicPath);
+        List<MqttsnRetainedMessage> retained = store.match(topicPath);
+        if(retained.isEmpty()) return;
+
+        int grantedQoS = registry.getSubscriptionRegistry().getQos(session, topicPath);
+        logger.debug("queuing [{}] retained messages for new subscription {} on {}", retained.size(), topicPath, session.getContext());
+        for (MqttsnRetainedMessage message : retained){
+            IDataRef dataId = registry.getMessageRegistry().add(message.getPayload());
+            QueuedPublishMessageImpl impl = new QueuedPublishMessageImpl(dataId,
+                    new PublishData(message.getTopicPath(), message.getQos(), true));
+            impl.setGrantedQoS(Math.min(grantedQoS, message.getQos()));
+            try {
+                registry.getMessageQueue().offer(session, impl);
+            } catch(MqttsnQueueAcceptException e){
+                //-- the queue is full, the message has been dead lettered so dont try the rest
+                registry.getMessageRegistry().remove(dataId);
+                break;
+            }
+        }
+    }
+
     @Override
     protected IMqttsnMessage handleConnect(IMqttsnMessageContext context, IMqttsnMessage connect) throws MqttsnException, MqttsnCodecException {
 
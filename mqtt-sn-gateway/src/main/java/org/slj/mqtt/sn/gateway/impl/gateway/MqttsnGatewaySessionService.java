@@ -30,14 +30,16 @@ import org.slj.mqtt.sn.gateway.spi.*;
 import org.slj.mqtt.sn.gateway.spi.gateway.IMqttsnGatewayRuntimeRegistry;
 import org.slj.mqtt.sn.gateway.spi.gateway.IMqttsnGatewaySessionService;
 import org.slj.mqtt.sn.gateway.spi.gateway.MqttsnGatewayOptions;
-import org.slj.mqtt.sn.impl.AbstractMqttsnBackoffThreadService;
 import org.slj.mqtt.sn.model.IClientIdentifierContext;
 import org.slj.mqtt.sn.model.ClientState;
 import org.slj.mqtt.sn.model.IMqttsnMessageContext;
 import org.slj.mqtt.sn.model.TopicInfo;
 import org.slj.mqtt.sn.model.session.ISession;
 import org.slj.mqtt.sn.model.session.IWillData;
+import org.slj.mqtt.sn.spi.AbstractMqttsnService;
 import org.slj.mqtt.sn.spi.IMqttsnMessage;
+import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
+import org.slj.mqtt.sn.spi.IMqttsnTimeout;
 import org.slj.mqtt.sn.spi.MqttsnException;
 import org.slj.mqtt.sn.spi.MqttsnIllegalFormatException;
 import org.slj.mqtt.sn.utils.MqttsnUtils;
@@ -47,68 +49,130 @@ import org.slj.mqtt.sn.wire.version2_0.payload.MqttsnConnect_V2_0;
 
 import java.util.Date;
 import java.util.Iterator;
-
-public class MqttsnGatewaySessionService extends AbstractMqttsnBackoffThreadService
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session lifecycle for the gateway. Rather than periodically walking every session, each session has a single deadline
+ * scheduled on the runtime timer for the next point at which its state could change (keep alive expiry, session expiry or
+ * the stale queue check). When the deadline fires the session is re-evaluated against its current state and last seen time,
+ * and the next deadline scheduled, so activity in between never needs to touch the timer.
+ */
+public class MqttsnGatewaySessionService extends AbstractMqttsnService
         implements IMqttsnGatewaySessionService {
     private static final int MIN_SESSION_MONITOR_CHECK = 30000;
 
+    private final Map<IClientIdentifierContext, IMqttsnTimeout> sessionMonitors = new ConcurrentHashMap<>();
+
     protected IMqttsnGatewayRuntimeRegistry getRegistry(){
         return (IMqttsnGatewayRuntimeRegistry) super.getRegistry();
     }
 
     @Override
-    protected long doWork() {
+    public synchronized void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
+        super.start(runtime);
+        //-- sessions restored from storage need their first deadline scheduling
+        Iterator<ISession> itr = getRegistry().getSessionRegistry().iterator();
+        while(itr.hasNext()){
+            ISession session = itr.next();
+            if(session != null){
+                monitorSession(session.getContext(), 0);
+            }
+        }
+    }
+
+    @Override
+    public void stop() throws MqttsnException {
+        super.stop();
+        sessionMonitors.values().forEach(IMqttsnTimeout::cancel);
+        sessionMonitors.clear();
+    }
+
+    /**
+     * Replace any pending deadline for the context with a check after the given delay
+     */
+    protected void monitorSession(IClientIdentifierContext context, long delayMillis){
+        IMqttsnTimeout timeout = getRegistry().getTimerService().schedule(() -> {
+            //-- a check may publish a will to the backend so keep it off the timer thread
+            if(running){
+                getRegistry().getRuntime().generalPurposeSubmit(() -> checkSession(context));
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        IMqttsnTimeout previous = sessionMonitors.put(context, timeout);
+        if(previous != null){
+            previous.cancel();
+        }
+    }
+
+    protected void checkSession(IClientIdentifierContext context){
         try {
-            Iterator<ISession> itr = getRegistry().getSessionRegistry().iterator();
-            while(itr.hasNext()){
-                ISession session = itr.next();
-                if(session == null) continue;
-
-                //check keep alive timing
-                if(session.getClientState() == ClientState.ACTIVE ||
-                        session.getClientState() == ClientState.ASLEEP){
-                    long time = System.currentTimeMillis();
-                    if(session.getKeepAlive() > 0){
-                        Date lastSeen = getLastSeen(session);
-                        long expires = lastSeen.getTime() + (int) ((session.getKeepAlive() * 1000) * 1.5);
-                        if(expires < time){
-                            markSessionLost(session);
-                        }
-                    } else {
-                        //This is a condition in case the sender was blocked when it attempted to send a message,
-                        //we need something to ensure devices don't get stuck in the stale state (ie. ready to receive with messages
-                        //in the queue but noone doing the work - this won't be needed 99% of the time
-                        if(session.getClientState() == ClientState.ACTIVE){
-                            try {
-                                if(getRegistry().getMessageQueue().queueSize(session) > 0){
-                                    getRegistry().getMessageStateService().scheduleFlush(session.getContext());
-                                }
-                            } catch(MqttsnException e){
-                                logger.warn("error scheduling flush", e);
-                            }
-                        }
-                    }
+            ISession session = getRegistry().getSessionRegistry().getSession(context, false);
+            long next = session == null ? 0 : checkSession(session);
+            if(next > 0){
+                monitorSession(context, next);
+            } else {
+                sessionMonitors.remove(context);
+            }
+        } catch(Exception e){
+            logger.error("error monitoring ongoing session state - handled;", e);
+            monitorSession(context, MIN_SESSION_MONITOR_CHECK);
+        }
+    }
+
+    /**
+     * Evaluate the session against its keep alive and expiry
+     * @return the time in milliseconds until the session next needs checking, or 0 if it no longer needs monitoring
+     */
+    protected long checkSession(ISession session) throws MqttsnException {
+
+        long time = System.currentTimeMillis();
+        //check keep alive timing
+        if(session.getClientState() == ClientState.ACTIVE ||
+                session.getClientState() == ClientState.ASLEEP){
+            if(session.getKeepAlive() > 0){
+                Date lastSeen = getLastSeen(session);
+                long expires = lastSeen.getTime() + (int) ((session.getKeepAlive() * 1000) * 1.5);
+                if(expires < time){
+                    markSessionLost(session);
+                    //-- now LOST, so schedule against the session expiry
+                    return checkSession(session);
                 }
-                else if(MqttsnUtils.in(session.getClientState(), ClientState.DISCONNECTED, ClientState.LOST)){
-                    // check last seen time
-                    long time = System.currentTimeMillis();
-                    if(session.getSessionExpiryInterval() > 0 && //-- it may have literally just been initialised so if 0 ignore
-                            session.getSessionExpiryInterval() < MqttsnConstants.UNSIGNED_MAX_32){
-                        Date lastSeen = getLastSeen(session);
-                        //TODO allow the % grace per the spec
-                        long expires = lastSeen.getTime() + (session.getSessionExpiryInterval() * 1000);
-                        //only expire sessions set to less than the max which means forever
-                        if(expires < time){
-                            logger.warn("removing session {} state last seen {} > allowed {} seconds ago", session.getContext(), lastSeen, session.getSessionExpiryInterval());
-                            getRegistry().getSessionRegistry().clear(session);
+                return Math.max(1, expires - time);
+            } else {
+                //This is a condition in case the sender was blocked when it attempted to send a message,
+                //we need something to ensure devices don't get stuck in the stale state (ie. ready to receive with messages
+                //in the queue but noone doing the work - this won't be needed 99% of the time
+                if(session.getClientState() == ClientState.ACTIVE){
+                    try {
+                        if(getRegistry().getMessageQueue().queueSize(session) > 0){
+                            getRegistry().getMessageStateService().scheduleFlush(session.getContext());
                         }
-                    } else if(session.getSessionExpiryInterval() == 0){
-                        // delete the session on terminal event
+                    } catch(MqttsnException e){
+                        logger.warn("error scheduling flush", e);
                     }
                 }
+                return MIN_SESSION_MONITOR_CHECK;
             }
-        } catch(Exception e){
-            logger.error("error monitoring ongoing session state - handled;", e);
+        }
+        else if(MqttsnUtils.in(session.getClientState(), ClientState.DISCONNECTED, ClientState.LOST)){
+            // check last seen time
+            if(session.getSessionExpiryInterval() > 0 && //-- it may have literally just been initialised so if 0 ignore
+                    session.getSessionExpiryInterval() < MqttsnConstants.UNSIGNED_MAX_32){
+                Date lastSeen = getLastSeen(session);
+                //TODO allow the % grace per the spec
+                long expires = lastSeen.getTime() + (session.getSessionExpiryInterval() * 1000);
+                //only expire sessions set to less than the max which means forever
+                if(expires < time){
+                    logger.warn("removing session {} state last seen {} > allowed {} seconds ago", session.getContext(), lastSeen, session.getSessionExpiryInterval());
+                    getRegistry().getSessionRegistry().clear(session);
+                    return 0;
+                }
+                return Math.max(1, expires - time);
+            }
+            //-- sessions which never expire (or are deleted on a terminal event) need no further checks
+            //-- until they reconnect
+            return 0;
         }
         return MIN_SESSION_MONITOR_CHECK;
     }
@@ -230,6 +294,7 @@ public class MqttsnGatewaySessionService extends AbstractMqttsnBackoffThreadServ
             logger.error("handled connection request for {} with cleanSession {} -> {}, {}", session.getContext(), cleanSession, result.getStatus(), result.getMessage());
         } else {
             logger.info("handled connection request for {} with cleanSession {} -> {}, {}", session.getContext(), cleanSession, result.getStatus(), result.getMessage());
+            monitorSession(session.getContext(), 0);
         }
         return result;
     }
@@ -255,6 +320,7 @@ public class MqttsnGatewaySessionService extends AbstractMqttsnBackoffThreadServ
                     logger.info("{} disconnecting client", session.getContext());
                     getRegistry().getSessionRegistry().modifyClientState(session, ClientState.DISCONNECTED);
                 }
+                monitorSession(session.getContext(), 0);
             }
         }
         return result;
@@ -408,9 +474,4 @@ public class MqttsnGatewaySessionService extends AbstractMqttsnBackoffThreadServ
         }
         return session;
     }
-
-    @Override
-    protected String getDaemonName() {
-        return "gateway-session";
-    }
 }
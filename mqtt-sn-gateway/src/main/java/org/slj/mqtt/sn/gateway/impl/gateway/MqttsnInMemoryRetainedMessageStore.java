@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.gateway.impl.gateway;
+
+import org.slj.mqtt.sn.MqttsnConstants;
+import org.slj.mqtt.sn.MqttsnSpecificationValidator;
+import org.slj.mqtt.sn.gateway.spi.gateway.IMqttsnRetainedMessageStore;
+import org.slj.mqtt.sn.gateway.spi.gateway.MqttsnGatewayOptions;
+import org.slj.mqtt.sn.gateway.spi.gateway.MqttsnRetainedMessage;
+import org.slj.mqtt.sn.spi.AbstractMqttsnService;
+import org.slj.mqtt.sn.spi.IMqttsnRuntimeRegistry;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.utils.WriteAheadLogStore;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Retained messages held in a trie of topic levels, so a subscription is matched by walking only the branches its
+ * filter can reach; a single level wildcard visits each child at its level and a multi level wildcard collects the
+ * whole branch below it. As in MQTT, wildcards at the first level do not match topics beginning with '$'.
+ *
+ * Messages expire after {@link MqttsnGatewayOptions#getRetainedMessageExpirySeconds()} (if set) and at most
+ * {@link MqttsnGatewayOptions#getMaxRetainedMessages()} topics are held; once full, expired messages are purged and
+ * if there is still no room the new topic is not retained. When persistent, the messages are also written to a
+ * {@link WriteAheadLogStore} in the workspace and reloaded on start.
+ */
+public class MqttsnInMemoryRetainedMessageStore extends AbstractMqttsnService implements IMqttsnRetainedMessageStore {
+
+    static final String DIR = "_retained-messages";
+    static final String WILDCARD = MqttsnConstants.SINGLE_LEVEL_WILDCARD;
+    static final String WILDPATH = MqttsnConstants.MULTI_LEVEL_WILDCARD;
+    static final String SYSTEM_PREFIX = "$";
+    static final long CHECKPOINT_THRESHOLD_BYTES = 16 * 1024 * 1024;
+
+    private final boolean persistent;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node();
+    private int count;
+    private int maxMessages;
+    private long expiryMillis;
+    private WriteAheadLogStore store;
+
+    public MqttsnInMemoryRetainedMessageStore() {
+        this(false);
+    }
+
+    /**
+     * @param persistent - write the retained messages to the workspace so they survive a restart
+     */
+    public MqttsnInMemoryRetainedMessageStore(boolean persistent) {
+        this.persistent = persistent;
+    }
+
+    @Override
+    public void start(IMqttsnRuntimeRegistry runtime) throws MqttsnException {
+        super.start(runtime);
+        maxMessages = MqttsnGatewayOptions.DEFAULT_MAX_RETAINED_MESSAGES;
+        expiryMillis = MqttsnGatewayOptions.DEFAULT_RETAINED_MESSAGE_EXPIRY_SECONDS * 1000L;
+        if(runtime.getOptions() instanceof MqttsnGatewayOptions){
+            MqttsnGatewayOptions options = (MqttsnGatewayOptions) runtime.getOptions();
+            maxMessages = options.getMaxRetainedMessages();
+            expiryMillis = options.getRetainedMessageExpirySeconds() * 1000L;
+        }
+        if(persistent){
+            try {
+                store = new WriteAheadLogStore(new File(
+                        runtime.getStorageService().getWorkspaceRoot(), DIR), false);
+                recover();
+            } catch(IOException e){
+                throw new MqttsnException("unable to recover retained messages;", e);
+            }
+        }
+    }
+
+    @Override
+    public void stop() throws MqttsnException {
+        try {
+            if(store != null){
+                store.close();
+            }
+        } catch(IOException e){
+            throw new MqttsnException("error closing retained message store;", e);
+        } finally {
+            super.stop();
+        }
+    }
+
+    @Override
+    public void retain(String topicPath, int qos, byte[] payload) throws MqttsnException {
+        if(!MqttsnSpecificationValidator.isValidPublishTopic(topicPath)){
+            throw new MqttsnException("invalid topic for retained message " + topicPath);
+        }
+        if(payload == null || payload.length == 0){
+            remove(topicPath);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        MqttsnRetainedMessage message = new MqttsnRetainedMessage(topicPath, qos, payload, now,
+                expiryMillis > 0 ? now + expiryMillis : 0);
+        lock.writeLock().lock();
+        try {
+            Node existing = find(topicPath);
+            if(existing == null || existing.message == null){
+                if(count >= maxMessages && purgeExpired(now) == 0){
+                    logger.warn("retained message store is full ({}), not retaining {}", maxMessages, topicPath);
+                    return;
+                }
+                count++;
+            }
+            Node node = root;
+            for (String level : split(topicPath)){
+                node = node.children.computeIfAbsent(level, k -> new Node());
+            }
+            node.message = message;
+            persist(topicPath, message);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MqttsnRetainedMessage> match(String topicFilter) throws MqttsnException {
+        if(!MqttsnSpecificationValidator.isValidSubscriptionTopic(topicFilter)){
+            throw new MqttsnException("invalid topic filter " + topicFilter);
+        }
+        long now = System.currentTimeMillis();
+        List<MqttsnRetainedMessage> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            match(root, split(topicFilter), 0, now, matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    @Override
+    public boolean remove(String topicPath) throws MqttsnException {
+        lock.writeLock().lock();
+        try {
+            Node node = find(topicPath);
+            if(node == null || node.message == null) return false;
+            node.message = null;
+            count--;
+            prune(topicPath);
+            persist(topicPath, null);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() throws MqttsnException {
+        lock.writeLock().lock();
+        try {
+            root.children.clear();
+            count = 0;
+            if(store != null){
+                store.clear();
+            }
+        } catch(IOException e){
+            throw new MqttsnException("error clearing retained message store;", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    protected void match(Node node, String[] filter, int level, long now, List<MqttsnRetainedMessage> matches){
+        if(level == filter.length){
+            if(node.message != null && !node.message.isExpired(now)){
+                matches.add(node.message);
+            }
+            return;
+        }
+        String token = filter[level];
+        if(WILDPATH.equals(token)){
+            //-- the parent level is matched by a multi level wildcard as well as everything below it
+            if(level > 0 && node.message != null && !node.message.isExpired(now)){
+                matches.add(node.message);
+            }
+            collect(node, level == 0, now, matches);
+        } else if(WILDCARD.equals(token)){
+            for (Map.Entry<String, Node> child : node.children.entrySet()){
+                if(level == 0 && child.getKey().startsWith(SYSTEM_PREFIX)) continue;
+                match(child.getValue(), filter, level + 1, now, matches);
+            }
+        } else {
+            Node child = node.children.get(token);
+            if(child != null){
+                match(child, filter, level + 1, now, matches);
+            }
+        }
+    }
+
+    private void collect(Node node, boolean root, long now, List<MqttsnRetainedMessage> matches){
+        for (Map.Entry<String, Node> child : node.children.entrySet()){
+            if(root && child.getKey().startsWith(SYSTEM_PREFIX)) continue;
+            Node n = child.getValue();
+            if(n.message != null && !n.message.isExpired(now)){
+                matches.add(n.message);
+            }
+            collect(n, false, now, matches);
+        }
+    }
+
+    /**
+     * Remove every expired message, must hold the write lock
+     * @return the number removed
+     */
+    protected int purgeExpired(long now) throws MqttsnException {
+        if(expiryMillis <= 0) return 0;
+        List<String> expired = new ArrayList<>();
+        collectExpired(root, now, expired);
+        for (String topicPath : expired){
+            remove(topicPath);
+        }
+        return expired.size();
+    }
+
+    private void collectExpired(Node node, long now, List<String> expired){
+        for (Node child : node.children.values()){
+            if(child.message != null && child.message.isExpired(now)){
+                expired.add(child.message.getTopicPath());
+            }
+            collectExpired(child, now, expired);
+        }
+    }
+
+    private Node find(String topicPath){
+        Node node = root;
+        for (String level : split(topicPath)){
+            node = node.children.get(level);
+            if(node == null) return null;
+        }
+        return node;
+    }
+
+    /**
+     * Remove the nodes along the path which no longer hold a message or children
+     */
+    private void prune(String topicPath){
+        String[] levels = split(topicPath);
+        Node[] path = new Node[levels.length + 1];
+        path[0] = root;
+        for (int i = 0; i < levels.length; i++){
+            path[i + 1] = path[i].children.get(levels[i]);
+            if(path[i + 1] == null) return;
+        }
+        for (int i = levels.length; i > 0; i--){
+            Node node = path[i];
+            if(node.message != null || !node.children.isEmpty()) break;
+            path[i - 1].children.remove(levels[i - 1]);
+        }
+    }
+
+    protected void recover() throws IOException, MqttsnException {
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        for (Map.Entry<String, byte[]> entry : store.recover().entrySet()){
+            MqttsnRetainedMessage message = decode(entry.getKey(), entry.getValue());
+            if(message.isExpired(now)){
+                expired++;
+                continue;
+            }
+            Node node = root;
+            for (String level : split(message.getTopicPath())){
+                node = node.children.computeIfAbsent(level, k -> new Node());
+            }
+            node.message = message;
+            count++;
+        }
+        logger.info("recovered {} retained messages ({} expired) from {}", count, expired, store.getDirectory());
+        checkpoint();
+    }
+
+    private void persist(String topicPath, MqttsnRetainedMessage message) throws MqttsnException {
+        if(store == null) return;
+        try {
+            if(message == null){
+                store.append(null, Collections.singletonList(topicPath));
+            } else {
+                store.append(Collections.singletonMap(topicPath, encode(message)), null);
+            }
+            if(store.getLogSize() > CHECKPOINT_THRESHOLD_BYTES){
+                checkpoint();
+            }
+        } catch(IOException e){
+            throw new MqttsnException("error persisting retained message;", e);
+        }
+    }
+
+    private void checkpoint() throws IOException {
+        List<MqttsnRetainedMessage> all = new ArrayList<>(count);
+        collect(root, false, 0, all);
+        Iterator<MqttsnRetainedMessage> itr = all.iterator();
+        store.checkpoint(new Iterator<Map.Entry<String, byte[]>>() {
+            @Override
+            public boolean hasNext() {
+                return itr.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                MqttsnRetainedMessage message = itr.next();
+                return new AbstractMap.SimpleImmutableEntry<>(message.getTopicPath(), encode(message));
+            }
+        });
+    }
+
+    private static byte[] encode(MqttsnRetainedMessage message){
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(message.getPayload().length + 24);
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeByte(message.getQos());
+            out.writeLong(message.getCreated());
+            out.writeLong(message.getExpires());
+            out.writeInt(message.getPayload().length);
+            out.write(message.getPayload());
+            out.flush();
+            return baos.toByteArray();
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MqttsnRetainedMessage decode(String topicPath, byte[] arr) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(arr));
+        int qos = in.readByte();
+        long created = in.readLong();
+        long expires = in.readLong();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        return new MqttsnRetainedMessage(topicPath, qos, payload, created, expires);
+    }
+
+    private static String[] split(String topicPath){
+        return topicPath.split(String.valueOf(MqttsnConstants.PATH_SEP), -1);
+    }
+
+    static final class Node {
+        final Map<String, Node> children = new HashMap<>(4);
+        MqttsnRetainedMessage message;
+    }
+}
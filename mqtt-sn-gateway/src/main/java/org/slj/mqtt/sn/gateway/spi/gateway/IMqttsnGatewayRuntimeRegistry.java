@@ -46,6 +46,8 @@ public interface IMqttsnGatewayRuntimeRegistry extends IMqttsnRuntimeRegistry {
 
     IMqttsnGatewayExpansionHandler getExpansionHandler();
 
+    IMqttsnRetainedMessageStore getRetainedMessageStore();
+
     IMqttsnGatewayRuntimeRegistry withConnector(IMqttsnConnector connector);
 
     IMqttsnGatewayRuntimeRegistry withProtocolBridgeService(IProtocolBridgeService protocolBridge);
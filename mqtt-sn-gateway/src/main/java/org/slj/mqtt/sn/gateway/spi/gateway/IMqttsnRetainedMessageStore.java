@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.gateway.spi.gateway;
+
+import org.slj.mqtt.sn.spi.IMqttsnService;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.spi.MqttsnService;
+
+import java.util.List;
+
+/**
+ * Holds the last retained message published to each topic, so that it can be delivered to new subscriptions by the
+ * gateway itself without having to go to the backend.
+ */
+@MqttsnService
+public interface IMqttsnRetainedMessageStore extends IMqttsnService {
+
+    /**
+     * Replace the retained message for a topic. A message with an empty payload removes the retained message for the
+     * topic.
+     * @param topicPath - the full clear text topicPath e.g. foo/bar
+     * @throws MqttsnException - an error occurred
+     */
+    void retain(String topicPath, int qos, byte[] payload) throws MqttsnException;
+
+    /**
+     * The retained messages which match a subscription
+     * @param topicFilter - the subscription, which may include wildcards e.g. foo/+/bar
+     * @return the unexpired retained messages whose topics match the filter
+     * @throws MqttsnException - an error occurred
+     */
+    List<MqttsnRetainedMessage> match(String topicFilter) throws MqttsnException;
+
+    /**
+     * @return true if a retained message was removed
+     */
+    boolean remove(String topicPath) throws MqttsnException;
+
+    int size();
+
+    void clear() throws MqttsnException;
+}
@@ -56,6 +56,22 @@ public final class MqttsnGatewayOptions extends MqttsnOptions {
      */
     public static final int DEFAULT_MAX_BACKEND_QUEUE_SIZE = 10000;
 
+    /**
+     * By default the gateway does NOT hold retained messages of its own, new subscriptions rely on the backend
+     * for their retained messages
+     */
+    public static final boolean DEFAULT_RETAINED_MESSAGES_ENABLED = false;
+
+    /**
+     * The maximum number of topics for which the gateway will hold a retained message
+     */
+    public static final int DEFAULT_MAX_RETAINED_MESSAGES = 10000;
+
+    /**
+     * By default retained messages are held until replaced or cleared (0)
+     */
+    public static final int DEFAULT_RETAINED_MESSAGE_EXPIRY_SECONDS = 0;
+
     public int maxClientSessions = DEFAULT_MAX_CLIENT_SESSIONS;
     public double maxBrokerPublishesPerSecond = DEFAULT_MAX_BROKER_PUBLISHES_PER_SECOND;
 
@@ -63,6 +79,9 @@ public final class MqttsnGatewayOptions extends MqttsnOptions {
 
     public int gatewayAdvertiseTime = DEFAULT_GATEWAY_ADVERTISE_TIME;
     public int gatewayId = DEFAULT_GATEWAY_ID;
+    public boolean retainedMessagesEnabled = DEFAULT_RETAINED_MESSAGES_ENABLED;
+    public int maxRetainedMessages = DEFAULT_MAX_RETAINED_MESSAGES;
+    public int retainedMessageExpirySeconds = DEFAULT_RETAINED_MESSAGE_EXPIRY_SECONDS;
 
     public MqttsnGatewayOptions withMaxBrokerPublishesPerSecond(double maxBrokerPublishesPerSecond){
         this.maxBrokerPublishesPerSecond = maxBrokerPublishesPerSecond;
@@ -84,6 +103,41 @@ public final class MqttsnGatewayOptions extends MqttsnOptions {
         return this;
     }
 
+    /**
+     * Should the gateway hold the last retained message on each topic and serve it to new subscriptions. When enabled
+     * the default configuration installs an in memory retained message store.
+     *
+     * @param retainedMessagesEnabled - Should the gateway hold retained messages
+     * @return this configuration
+     * @see {@link MqttsnGatewayOptions#DEFAULT_RETAINED_MESSAGES_ENABLED}
+     */
+    public MqttsnGatewayOptions withRetainedMessagesEnabled(boolean retainedMessagesEnabled){
+        this.retainedMessagesEnabled = retainedMessagesEnabled;
+        return this;
+    }
+
+    public MqttsnGatewayOptions withMaxRetainedMessages(int maxRetainedMessages){
+        this.maxRetainedMessages = maxRetainedMessages;
+        return this;
+    }
+
+    public MqttsnGatewayOptions withRetainedMessageExpirySeconds(int retainedMessageExpirySeconds){
+        this.retainedMessageExpirySeconds = retainedMessageExpirySeconds;
+        return this;
+    }
+
+    public boolean isRetainedMessagesEnabled() {
+        return retainedMessagesEnabled;
+    }
+
+    public int getMaxRetainedMessages() {
+        return maxRetainedMessages;
+    }
+
+    public int getRetainedMessageExpirySeconds() {
+        return retainedMessageExpirySeconds;
+    }
+
     public int getGatewayAdvertiseTime() {
         return gatewayAdvertiseTime;
     }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.gateway.spi.gateway;
+
+/**
+ * The last retained message published to a topic
+ */
+public final class MqttsnRetainedMessage {
+
+    private final String topicPath;
+    private final int qos;
+    private final byte[] payload;
+    private final long created;
+    private final long expires;
+
+    /**
+     * @param expires - the time (epoch millis) at which the message expires, or 0 if it does not
+     */
+    public MqttsnRetainedMessage(String topicPath, int qos, byte[] payload, long created, long expires) {
+        this.topicPath = topicPath;
+        this.qos = qos;
+        this.payload = payload;
+        this.created = created;
+        this.expires = expires;
+    }
+
+    public String getTopicPath() {
+        return topicPath;
+    }
+
+    public int getQos() {
+        return qos;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+
+    public boolean isExpired(long now) {
+        return expires > 0 && expires <= now;
+    }
+
+    @Override
+    public String toString() {
+        return "MqttsnRetainedMessage{" +
+                "topicPath='" + topicPath + '\'' +
+                ", qos=" + qos +
+                ", payload=" + (payload == null ? 0 : payload.length) +
+                ", created=" + created +
+                ", expires=" + expires +
+                '}';
+    }
+}
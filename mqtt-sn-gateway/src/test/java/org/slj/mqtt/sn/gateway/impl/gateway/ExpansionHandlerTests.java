@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.gateway.impl.gateway;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.codec.MqttsnCodecs;
+import org.slj.mqtt.sn.gateway.impl.MqttsnGateway;
+import org.slj.mqtt.sn.gateway.impl.MqttsnGatewayRuntimeRegistry;
+import org.slj.mqtt.sn.gateway.spi.GatewayMetrics;
+import org.slj.mqtt.sn.gateway.spi.gateway.MqttsnGatewayOptions;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.impl.metrics.IMqttsnMetrics;
+import org.slj.mqtt.sn.impl.metrics.MqttsnCountingMetric;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ExpansionHandlerTests {
+
+    static final int MAX_QUEUE_SIZE = 3;
+    static final String TOPIC = "expansion/topic";
+
+    private File dir;
+    private MqttsnGateway runtime;
+    private MqttsnGatewayRuntimeRegistry registry;
+
+    @Before
+    public void setup() throws MqttsnException, IOException {
+        dir = java.nio.file.Files.createTempDirectory("expansion").toFile();
+        MqttsnGatewayOptions options = new MqttsnGatewayOptions();
+        options.withMaxMessagesInQueue(MAX_QUEUE_SIZE);
+        registry = (MqttsnGatewayRuntimeRegistry) MqttsnGatewayRuntimeRegistry.defaultConfiguration(
+                new MqttsnFilesystemStorageService(dir, "mqtt-sn-test"), options).
+                withCodec(MqttsnCodecs.MQTTSN_CODEC_VERSION_1_2);
+        runtime = new MqttsnGateway();
+        runtime.start(registry);
+        //-- the expansion metrics are registered by the backend connector, which is not started here
+        registry.getMetrics().registerMetric(new MqttsnCountingMetric(GatewayMetrics.BACKEND_CONNECTOR_PUBLISH_RECEIVE,
+                "received", IMqttsnMetrics.DEFAULT_MAX_SAMPLES, IMqttsnMetrics.DEFAULT_SAMPLES_TIME_MILLIS));
+        registry.getMetrics().registerMetric(new MqttsnCountingMetric(GatewayMetrics.BACKEND_CONNECTOR_EXPANSION,
+                "expanded", IMqttsnMetrics.DEFAULT_MAX_SAMPLES, IMqttsnMetrics.DEFAULT_SAMPLES_TIME_MILLIS));
+    }
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            runtime.stop();
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testFullQueueDoesNotStopExpansionToOthers() throws Exception {
+        ISession first = subscribe("first");
+        ISession full = subscribe("full");
+        ISession last = subscribe("last");
+        //-- fill one queue from a topic only it subscribes to
+        registry.getSubscriptionRegistry().subscribe(full, "other/#", 1);
+        for (int i = 0; i < MAX_QUEUE_SIZE; i++){
+            registry.getExpansionHandler().receiveToSessions("other/" + i, 1, false, payload(i));
+        }
+        Assert.assertEquals(MAX_QUEUE_SIZE, registry.getMessageQueue().queueSize(full));
+        long deadLetters = registry.getDeadLetterQueue().size();
+
+        registry.getExpansionHandler().receiveToSessions(TOPIC, 1, false, payload(9));
+        Assert.assertEquals(1, registry.getMessageQueue().queueSize(first));
+        Assert.assertEquals(MAX_QUEUE_SIZE, registry.getMessageQueue().queueSize(full));
+        Assert.assertEquals(1, registry.getMessageQueue().queueSize(last));
+        Assert.assertEquals("only the full queue should dead letter", deadLetters + 1,
+                registry.getDeadLetterQueue().size());
+    }
+
+    @Test
+    public void testExpansionPreservesOrder() throws Exception {
+        ISession[] sessions = {subscribe("a"), subscribe("b"), subscribe("c")};
+        for (int i = 0; i < MAX_QUEUE_SIZE; i++){
+            registry.getExpansionHandler().receiveToSessions(TOPIC, 1, false, payload(i));
+        }
+        for (ISession session : sessions){
+            for (int i = 0; i < MAX_QUEUE_SIZE; i++){
+                IQueuedPublishMessage message = registry.getMessageQueue().poll(session);
+                Assert.assertNotNull(message);
+                Assert.assertArrayEquals("each queue should be in publish order", payload(i),
+                        registry.getMessageRegistry().get(message.getDataRefId()));
+            }
+        }
+    }
+
+    private ISession subscribe(String clientId) throws Exception {
+        ClientIdentifierContext context = new ClientIdentifierContext(clientId);
+        context.setProtocolVersion(1);
+        ISession session = registry.getSessionRegistry().getSession(context, true);
+        registry.getSubscriptionRegistry().subscribe(session, TOPIC, 1);
+        return session;
+    }
+
+    private static byte[] payload(int i){
+        return new byte[]{(byte) i, 0x01, 0x02};
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2021 Simon Johnson <simon622 AT gmail DOT com>
+ *
+ * Find me on GitHub:
+ * https://github.com/simon622
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.slj.mqtt.sn.gateway.impl.gateway;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slj.mqtt.sn.codec.MqttsnCodecs;
+import org.slj.mqtt.sn.gateway.impl.MqttsnGateway;
+import org.slj.mqtt.sn.gateway.impl.MqttsnGatewayRuntimeRegistry;
+import org.slj.mqtt.sn.gateway.spi.gateway.IMqttsnRetainedMessageStore;
+import org.slj.mqtt.sn.gateway.spi.gateway.MqttsnGatewayOptions;
+import org.slj.mqtt.sn.gateway.spi.gateway.MqttsnRetainedMessage;
+import org.slj.mqtt.sn.impl.MqttsnFilesystemStorageService;
+import org.slj.mqtt.sn.model.ClientIdentifierContext;
+import org.slj.mqtt.sn.model.session.IQueuedPublishMessage;
+import org.slj.mqtt.sn.model.session.ISession;
+import org.slj.mqtt.sn.spi.MqttsnException;
+import org.slj.mqtt.sn.spi.MqttsnIllegalFormatException;
+import org.slj.mqtt.sn.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class RetainedMessageTests {
+
+    static final byte[] PAYLOAD = new byte[]{0x01, 0x02, 0x03};
+
+    private File dir;
+    private MqttsnGateway runtime;
+    private MqttsnGatewayRuntimeRegistry registry;
+
+    @Before
+    public void setup() throws MqttsnException, IOException {
+        dir = java.nio.file.Files.createTempDirectory("retained").toFile();
+        start(new MqttsnGatewayOptions().withRetainedMessagesEnabled(true));
+    }
+
+    @After
+    public void tearDown() throws MqttsnException, IOException {
+        try {
+            runtime.stop();
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testRetainedMessagesAreOptIn() throws MqttsnException {
+        Assert.assertNotNull("store should be configured when enabled", registry.getRetainedMessageStore());
+        restart(new MqttsnGatewayOptions());
+        Assert.assertNull("store should not be configured by default", registry.getRetainedMessageStore());
+    }
+
+    @Test
+    public void testExactAndWildcardMatching() throws MqttsnException {
+        IMqttsnRetainedMessageStore store = registry.getRetainedMessageStore();
+        store.retain("a/b/c", 1, PAYLOAD);
+        store.retain("a/x/c", 1, PAYLOAD);
+        store.retain("a/b", 1, PAYLOAD);
+        store.retain("b/b/c", 1, PAYLOAD);
+
+        Assert.assertEquals(topics("a/b/c"), topics(store.match("a/b/c")));
+        Assert.assertEquals(topics("a/b/c", "a/x/c"), topics(store.match("a/+/c")));
+        Assert.assertEquals(topics("a/b/c", "b/b/c"), topics(store.match("+/b/c")));
+        Assert.assertEquals(topics("a/b", "a/b/c", "a/x/c"), topics(store.match("a/#")));
+        Assert.assertEquals(topics("a/b", "a/b/c"), topics(store.match("a/b/#")));
+        Assert.assertEquals(topics("a/b/c", "a/x/c", "a/b", "b/b/c"), topics(store.match("#")));
+        Assert.assertTrue("nothing should match an unknown branch", store.match("c/+").isEmpty());
+    }
+
+    @Test
+    public void testWildcardsDoNotMatchSystemTopics() throws MqttsnException {
+        IMqttsnRetainedMessageStore store = registry.getRetainedMessageStore();
+        store.retain("$SYS/uptime", 0, PAYLOAD);
+        store.retain("uptime/value", 0, PAYLOAD);
+
+        Assert.assertEquals(topics("uptime/value"), topics(store.match("#")));
+        Assert.assertEquals(topics("uptime/value"), topics(store.match("+/value")));
+        Assert.assertEquals(topics("$SYS/uptime"), topics(store.match("$SYS/#")));
+    }
+
+    @Test
+    public void testEmptyPayloadClearsRetainedMessage() throws MqttsnException {
+        IMqttsnRetainedMessageStore store = registry.getRetainedMessageStore();
+        store.retain("a/b", 1, PAYLOAD);
+        store.retain("a/b/c", 1, PAYLOAD);
+        Assert.assertEquals(2, store.size());
+
+        store.retain("a/b", 1, new byte[0]);
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals(topics("a/b/c"), topics(store.match("a/#")));
+
+        store.retain("a/b/c", 1, null);
+        Assert.assertEquals(0, store.size());
+        Assert.assertTrue("cleared topics should not match", store.match("#").isEmpty());
+    }
+
+    @Test
+    public void testRetainReplacesExistingMessage() throws MqttsnException {
+        IMqttsnRetainedMessageStore store = registry.getRetainedMessageStore();
+        store.retain("a/b", 1, PAYLOAD);
+        store.retain("a/b", 2, new byte[]{0x09});
+        Assert.assertEquals(1, store.size());
+        List<MqttsnRetainedMessage> matches = store.match("a/b");
+        Assert.assertEquals(1, matches.size());
+        Assert.assertEquals(2, matches.get(0).getQos());
+        Assert.assertArrayEquals(new byte[]{0x09}, matches.get(0).getPayload());
+    }
+
+    @Test
+    public void testStoreIsBoundedByOptions() throws MqttsnException {
+        restart(new MqttsnGatewayOptions().withRetainedMessagesEnabled(true).withMaxRetainedMessages(2));
+
+        IMqttsnRetainedMessageStore store = registry.getRetainedMessageStore();
+        store.retain("a", 0, PAYLOAD);
+        store.retain("b", 0, PAYLOAD);
+        store.retain("c", 0, PAYLOAD);
+        Assert.assertEquals(2, store.size());
+        Assert.assertTrue("a full store should not retain a new topic", store.match("c").isEmpty());
+
+        store.retain("a", 0, new byte[]{0x09});
+        Assert.assertArrayEquals("an existing topic can still be replaced when full",
+                new byte[]{0x09}, store.match("a").get(0).getPayload());
+    }
+
+    @Test
+    public void testSubscribeQueuesRetainedMessages() throws MqttsnException, MqttsnIllegalFormatException {
+        IMqttsnRetainedMessageStore store = registry.getRetainedMessageStore();
+        store.retain("sensors/1/temp", 2, PAYLOAD);
+        store.retain("sensors/2/temp", 0, PAYLOAD);
+        store.retain("sensors/1/humidity", 2, PAYLOAD);
+
+        ClientIdentifierContext context = new ClientIdentifierContext("retained-client");
+        context.setProtocolVersion(1);
+        ISession session = registry.getSessionRegistry().getSession(context, true);
+        registry.getSubscriptionRegistry().subscribe(session, "sensors/+/temp", 1);
+
+        MqttsnGatewayMessageHandler handler = (MqttsnGatewayMessageHandler) registry.getMessageHandler();
+        handler.queueRetainedMessages(session,
+                registry.getCodec().createMessageFactory().createSubscribe(1, "sensors/+/temp"));
+
+        Assert.assertEquals("only the matching retained messages should be queued",
+                2, registry.getMessageQueue().queueSize(session));
+        for (int i = 0; i < 2; i++){
+            IQueuedPublishMessage queued = registry.getMessageQueue().poll(session);
+            Assert.assertTrue("queued message should be flagged retained", queued.getData().isRetained());
+            Assert.assertTrue("unexpected topic " + queued.getData().getTopicPath(),
+                    queued.getData().getTopicPath().endsWith("/temp"));
+            int expected = Math.min(1, queued.getData().getQos());
+            Assert.assertEquals("granted QoS should be capped by the subscription",
+                    expected, queued.getGrantedQoS());
+        }
+    }
+
+    @Test
+    public void testSubscribeWithoutStoreQueuesNothing() throws MqttsnException, MqttsnIllegalFormatException {
+        restart(new MqttsnGatewayOptions());
+
+        ClientIdentifierContext context = new ClientIdentifierContext("retained-client");
+        context.setProtocolVersion(1);
+        ISession session = registry.getSessionRegistry().getSession(context, true);
+        registry.getSubscriptionRegistry().subscribe(session, "sensors/#", 1);
+
+        MqttsnGatewayMessageHandler handler = (MqttsnGatewayMessageHandler) registry.getMessageHandler();
+        handler.queueRetainedMessages(session,
+                registry.getCodec().createMessageFactory().createSubscribe(1, "sensors/#"));
+        Assert.assertEquals(0, registry.getMessageQueue().queueSize(session));
+    }
+
+    private void restart(MqttsnGatewayOptions options) throws MqttsnException {
+        runtime.stop();
+        new File(registry.getStorageService().getWorkspaceRoot(), ".lck").delete();
+        start(options);
+    }
+
+    private void start(MqttsnGatewayOptions options) throws MqttsnException {
+        MqttsnFilesystemStorageService storageService = new MqttsnFilesystemStorageService(dir, "mqtt-sn-test");
+        registry = (MqttsnGatewayRuntimeRegistry) MqttsnGatewayRuntimeRegistry.defaultConfiguration(storageService, options).
+                withCodec(MqttsnCodecs.MQTTSN_CODEC_VERSION_1_2);
+        runtime = new MqttsnGateway();
+        runtime.start(registry);
+    }
+
+    private static Set<String> topics(String... topics){
+        return java.util.Arrays.stream(topics).collect(Collectors.toSet());
+    }
+
+    private static Set<String> topics(List<MqttsnRetainedMessage> messages){
+        return messages.stream().map(MqttsnRetainedMessage::getTopicPath).collect(Collectors.toSet());
+    }
+}